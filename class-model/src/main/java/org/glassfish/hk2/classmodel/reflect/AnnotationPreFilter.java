@@ -0,0 +1,177 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.classmodel.reflect;
+
+import org.glassfish.hk2.external.org.objectweb.asm.ClassReader;
+import org.glassfish.hk2.external.org.objectweb.asm.ClassVisitor;
+import org.glassfish.hk2.external.org.objectweb.asm.Opcodes;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Models the classes that cannot be annotated with any of the
+ * {@link org.glassfish.hk2.classmodel.reflect.util.ParsingConfig#getAnnotationsOfInterest()}
+ * without a full visit of the class file.
+ * <p>
+ * The fields and methods of a class are only modelled when the class is
+ * annotated with an annotation of interest, and the descriptor of such an
+ * annotation is then in the constant pool of the class.  A class whose constant
+ * pool has none of these descriptors is therefore modelled from its header and
+ * its own attributes, which are read directly instead of having the class reader
+ * go through every field and method.  Classes that carry annotations of their
+ * own are still visited by the class reader, since their annotations are
+ * modelled whether or not they are of interest
+ * 
+ * @author jwells
+ */
+/* package */ class AnnotationPreFilter {
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    private final static int UTF8_TAG = 1;
+    
+    /** Not known to this version of the class reader, which cannot visit modules */
+    private final static int ACC_MODULE = 0x8000;
+    
+    /** The descriptors of the annotations of interest, by their length */
+    private final Map<Integer, List<byte[]>> descriptors = new HashMap<Integer, List<byte[]>>();
+    
+    /* package */ AnnotationPreFilter(Collection<String> annotationsOfInterest) {
+        for (String annotation : annotationsOfInterest) {
+            byte[] descriptor = ("L" + annotation.replace('.', '/') + ";").getBytes(UTF8);
+            
+            List<byte[]> sameLength = descriptors.get(descriptor.length);
+            if (sameLength == null) {
+                sameLength = new ArrayList<byte[]>(1);
+                descriptors.put(descriptor.length, sameLength);
+            }
+            sameLength.add(descriptor);
+        }
+    }
+    
+    /**
+     * Models the class from its header if it cannot be annotated with an
+     * annotation of interest and has no annotations of its own
+     * 
+     * @param cr The reader of the class
+     * @param cv The model visitor of the class
+     * @return true if the class was modelled, false if it must be
+     * visited by the class reader
+     */
+    /* package */ boolean visitHeader(ClassReader cr, ClassVisitor cv) {
+        // With no annotations of interest every class is visited completely
+        if (descriptors.isEmpty()) return false;
+        
+        int access = cr.readUnsignedShort(cr.header);
+        if ((access & ACC_MODULE) != 0) return false;
+        if (hasDescriptorOfInterest(cr)) return false;
+        
+        char[] buf = new char[cr.getMaxStringLength()];
+        
+        // Skips the interfaces, then the fields and the methods
+        int u = cr.header + 8 + 2 * cr.readUnsignedShort(cr.header + 6);
+        for (int members = 0; members < 2; members++) {
+            int count = cr.readUnsignedShort(u);
+            u += 2;
+            for (int lcv = 0; lcv < count; lcv++) {
+                int attributes = cr.readUnsignedShort(u + 6);
+                u += 8;
+                for (int attribute = 0; attribute < attributes; attribute++) {
+                    u += 6 + cr.readInt(u + 2);
+                }
+            }
+        }
+        
+        String signature = null;
+        int attributes = cr.readUnsignedShort(u);
+        u += 2;
+        for (int attribute = 0; attribute < attributes; attribute++) {
+            String name = cr.readUTF8(u, buf);
+            if ("RuntimeVisibleAnnotations".equals(name) || "RuntimeInvisibleAnnotations".equals(name)) {
+                return false;
+            }
+            if ("Signature".equals(name)) {
+                signature = cr.readUTF8(u + 6, buf);
+            }
+            else if ("Deprecated".equals(name)) {
+                access |= Opcodes.ACC_DEPRECATED;
+            }
+            else if ("Synthetic".equals(name)) {
+                access |= Opcodes.ACC_SYNTHETIC;
+            }
+            u += 6 + cr.readInt(u + 2);
+        }
+        
+        cv.visit(cr.readInt(4), access, cr.getClassName(), signature, cr.getSuperName(), cr.getInterfaces());
+        cv.visitEnd();
+        return true;
+    }
+    
+    private boolean hasDescriptorOfInterest(ClassReader cr) {
+        byte[] b = cr.b;
+        
+        int count = cr.getItemCount();
+        for (int lcv = 1; lcv < count; lcv++) {
+            int offset = cr.getItem(lcv);
+            
+            // Unused entries after long and double constants have no offset
+            if (offset == 0 || b[offset - 1] != UTF8_TAG) continue;
+            
+            List<byte[]> sameLength = descriptors.get(cr.readUnsignedShort(offset));
+            if (sameLength == null) continue;
+            
+            for (byte[] descriptor : sameLength) {
+                if (regionMatches(b, offset + 2, descriptor)) return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    private static boolean regionMatches(byte[] b, int offset, byte[] descriptor) {
+        for (int lcv = 0; lcv < descriptor.length; lcv++) {
+            if (b[offset + lcv] != descriptor[lcv]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,1043 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.classmodel.reflect;
+
+import org.glassfish.hk2.external.org.objectweb.asm.AnnotationVisitor;
+import org.glassfish.hk2.external.org.objectweb.asm.ClassVisitor;
+import org.glassfish.hk2.external.org.objectweb.asm.FieldVisitor;
+import org.glassfish.hk2.external.org.objectweb.asm.MethodVisitor;
+import org.glassfish.hk2.external.org.objectweb.asm.Opcodes;
+import org.glassfish.hk2.external.org.objectweb.asm.Type;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An on-disk cache of what the model visitors were told about each archive,
+ * so that an archive that has not changed since it was last parsed can be
+ * modelled again without reading any of its class files.
+ * <p>
+ * While an archive is parsed the visits made by the class reader to the
+ * model visitor of each class are recorded, except for the code of the
+ * methods which the model never looks at.  When an archive with the same
+ * size, modification time and content hash is parsed again the visits are
+ * replayed into new model visitors.  Every visit is recorded, including the
+ * ones the model visitor ignored, so that the cache does not depend on whether
+ * unannotated members are modelled.  The annotations of interest decide which
+ * classes are visited completely (see {@link AnnotationPreFilter}) and are
+ * therefore part of the content hash.
+ * <p>
+ * Only jar files and directories are cached, and only when they do not
+ * contain other jar files (which are also parsed as archives of their own).
+ * The content hash of a jar file is taken from the names, sizes and CRCs
+ * in its central directory, the one of a directory from the names, sizes
+ * and modification times of the files in it
+ * 
+ * @author jwells
+ */
+/* package */ class ArchiveModelCache {
+    private final static int MAGIC = 0x484b3243;
+    
+    /** Must be incremented whenever the recorded visits change */
+    private final static int VERSION = 2;
+    
+    private final static String SUFFIX = ".model";
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    
+    private final static byte END = 0;
+    private final static byte ENTRY = 1;
+    private final static byte CLASS = 2;
+    private final static byte ANNOTATION = 3;
+    private final static byte FIELD = 4;
+    private final static byte METHOD = 5;
+    private final static byte ANNOTATION_DEFAULT = 6;
+    private final static byte VALUE = 7;
+    private final static byte ENUM = 8;
+    private final static byte ARRAY = 9;
+    private final static byte NESTED_ANNOTATION = 10;
+    private final static byte SEGMENT = 11;
+    
+    private final static int NULL_STRING = -1;
+    private final static int NEW_STRING = -2;
+    
+    private final File directory;
+    private final Logger logger;
+    
+    /* package */ ArchiveModelCache(File directory, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+    
+    /**
+     * Computes the key of the archive with the given URI
+     * 
+     * @param uri The URI of the archive
+     * @param annotationsOfInterest The annotations of interest of the parsing config
+     * @return The key of the archive, or null if the archive cannot be cached
+     */
+    /* package */ Key getKey(URI uri, Collection<String> annotationsOfInterest) {
+        if (!"file".equals(uri.getScheme())) return null;
+        
+        try {
+            File file = new File(uri);
+            
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            boolean cacheable;
+            if (file.isFile()) {
+                cacheable = hashJar(file, digest);
+            }
+            else if (file.isDirectory()) {
+                cacheable = hashDirectory(file, "", digest);
+            }
+            else {
+                cacheable = false;
+            }
+            if (!cacheable) return null;
+            
+            for (String annotation : new TreeSet<String>(annotationsOfInterest)) {
+                digest.update(annotation.getBytes(UTF8));
+                digest.update((byte) 0);
+            }
+            
+            return new Key(uri.toString(), file.length(), file.lastModified(), toHex(digest.digest()));
+        }
+        catch (IllegalArgumentException e) {
+            // Not a hierarchical file URI
+            return null;
+        }
+        catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        catch (IOException e) {
+            logger.log(Level.FINE, "Cannot compute the cache key of " + uri, e);
+            return null;
+        }
+    }
+    
+    private static boolean hashJar(File file, MessageDigest digest) throws IOException {
+        ZipFile zip = new ZipFile(file);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().endsWith(".jar")) return false;
+                
+                digest.update(entry.getName().getBytes(UTF8));
+                digest.update(toBytes(entry.getCrc()));
+                digest.update(toBytes(entry.getSize()));
+            }
+            return true;
+        }
+        finally {
+            zip.close();
+        }
+    }
+    
+    private static boolean hashDirectory(File dir, String path, MessageDigest digest) {
+        File[] files = dir.listFiles();
+        if (files == null) return false;
+        
+        for (File f : files) {
+            String name = path + f.getName();
+            if (f.isDirectory()) {
+                if (!hashDirectory(f, name + "/", digest)) return false;
+                continue;
+            }
+            if (name.endsWith(".jar")) return false;
+            
+            digest.update(name.getBytes(UTF8));
+            digest.update(toBytes(f.length()));
+            digest.update(toBytes(f.lastModified()));
+        }
+        return true;
+    }
+    
+    private static byte[] toBytes(long value) {
+        byte[] retVal = new byte[8];
+        for (int lcv = 7; lcv >= 0; lcv--) {
+            retVal[lcv] = (byte) value;
+            value >>>= 8;
+        }
+        return retVal;
+    }
+    
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+    
+    private File getCacheFile(Key key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return new File(directory, toHex(digest.digest(key.uri.getBytes(UTF8))) + SUFFIX);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Replays the recorded visits of an archive into the model visitors of the context
+     * 
+     * @param key The current key of the archive
+     * @param uri The URI of the archive
+     * @param context The context whose model visitors should be visited
+     * @return true if the archive was modelled from the cache, false if
+     * there is no valid recording for the archive and nothing was visited
+     */
+    /* package */ boolean replay(Key key, URI uri, ParsingContext context) {
+        File cacheFile = getCacheFile(key);
+        if (!cacheFile.isFile()) return false;
+        
+        ByteBuffer body;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(readFully(cacheFile));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return false;
+            
+            Key recorded = new Key(readUTF(buffer), buffer.getLong(), buffer.getLong(), readUTF(buffer));
+            if (!recorded.equals(key)) return false;
+            
+            int length = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (buffer.remaining() != length) return false;
+            
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), buffer.position(), length);
+            if (crc.getValue() != checksum) return false;
+            
+            body = buffer.slice();
+        }
+        catch (IOException e) {
+            logger.log(Level.FINE, "Cannot read the cached model of " + uri, e);
+            return false;
+        }
+        catch (BufferUnderflowException e) {
+            return false;
+        }
+        
+        new Replayer(body, uri, context).replay();
+        return true;
+    }
+    
+    private static byte[] readFully(File file) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            long length = file.length();
+            if (length > Integer.MAX_VALUE) throw new IOException("Cache file " + file + " is too large");
+            
+            byte[] retVal = new byte[(int) length];
+            int offset = 0;
+            while (offset < retVal.length) {
+                int read = is.read(retVal, offset, retVal.length - offset);
+                if (read < 0) throw new IOException("Cache file " + file + " was truncated");
+                offset += read;
+            }
+            return retVal;
+        }
+        finally {
+            is.close();
+        }
+    }
+    
+    private static String readUTF(ByteBuffer buffer) {
+        byte[] utf = new byte[buffer.getInt()];
+        buffer.get(utf);
+        return new String(utf, UTF8);
+    }
+    
+    /**
+     * Starts the recording of the visits made while an archive is parsed
+     * 
+     * @param key The key of the archive, as it is before it is parsed
+     * @return The recording to wrap each model visitor with
+     */
+    /* package */ Recording startRecording(Key key) {
+        return new Recording(key);
+    }
+    
+    /**
+     * Writes a complete recording to the cache, replacing any previous one
+     * 
+     * @param recording The recording of every visit of the archive
+     */
+    /* package */ void write(Recording recording) {
+        List<Output> segments = recording.getSegments();
+        
+        int length = 0;
+        CRC32 crc = new CRC32();
+        for (Output segment : segments) {
+            if (segment.failed) return;
+            
+            crc.update(segment.buffer(), 0, segment.size());
+            length += segment.size();
+        }
+        
+        Output header = new Output();
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeUTF(recording.key.uri);
+        header.writeLong(recording.key.size);
+        header.writeLong(recording.key.lastModified);
+        header.writeUTF(recording.key.contentHash);
+        header.writeInt(length);
+        header.writeLong(crc.getValue());
+        
+        File target = getCacheFile(recording.key);
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+                throw new IOException("Cannot create cache directory " + directory);
+            }
+            
+            File tmp = File.createTempFile("hk2", ".tmp", directory);
+            OutputStream os = new FileOutputStream(tmp);
+            try {
+                header.writeTo(os);
+                for (Output segment : segments) {
+                    segment.writeTo(os);
+                }
+            }
+            finally {
+                os.close();
+            }
+            
+            if (!tmp.renameTo(target)) {
+                target.delete();
+                if (!tmp.renameTo(target)) {
+                    tmp.delete();
+                    throw new IOException("Cannot rename " + tmp + " to " + target);
+                }
+            }
+        }
+        catch (IOException e) {
+            logger.log(Level.FINE, "Cannot write the cached model of " + recording.key.uri, e);
+        }
+    }
+    
+    /**
+     * Identifies one version of an archive
+     */
+    /* package */ static class Key {
+        private final String uri;
+        private final long size;
+        private final long lastModified;
+        private final String contentHash;
+        
+        private Key(String uri, long size, long lastModified, String contentHash) {
+            this.uri = uri;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            
+            return uri.equals(other.uri) &&
+                    size == other.size &&
+                    lastModified == other.lastModified &&
+                    contentHash.equals(other.contentHash);
+        }
+        
+        @Override
+        public int hashCode() {
+            return uri.hashCode() ^ contentHash.hashCode();
+        }
+    }
+    
+    /**
+     * The visits made while one archive was parsed
+     */
+    /* package */ static class Recording {
+        private final Key key;
+        
+        /** Each thread records into a segment of its own */
+        private final Map<Thread, Output> segments = new LinkedHashMap<Thread, Output>();
+        
+        private Recording(Key key) {
+            this.key = key;
+        }
+        
+        /**
+         * Records the visits of one class.  Classes may be recorded by
+         * several threads at the same time
+         * 
+         * @param entryName The name of the archive entry of the class
+         * @param delegate The model visitor that is told about the class
+         * @return The visitor to give to the class reader
+         */
+        /* package */ ClassVisitor record(String entryName, ClassVisitor delegate) {
+            Output out = getSegment();
+            
+            out.write(ENTRY);
+            out.writeString(entryName);
+            
+            // The length of the visits of the class, known once it is done
+            out.writeInt(0);
+            out.entryStart = out.size();
+            
+            return new RecordingClassVisitor(delegate, out);
+        }
+        
+        /**
+         * Called once the class reader is done with a class, whether or not
+         * the class could be visited completely.  The visits of a class that
+         * failed part way are replayed up to the visit that failed
+         */
+        /* package */ void done() {
+            Output out = getSegment();
+            if (out.entryStart < 0) return;
+            
+            out.setInt(out.entryStart - 4, out.size() - out.entryStart);
+            out.entryStart = -1;
+        }
+        
+        private Output getSegment() {
+            synchronized (segments) {
+                Output retVal = segments.get(Thread.currentThread());
+                if (retVal == null) {
+                    retVal = new Output();
+                    retVal.write(SEGMENT);
+                    segments.put(Thread.currentThread(), retVal);
+                }
+                return retVal;
+            }
+        }
+        
+        private List<Output> getSegments() {
+            synchronized (segments) {
+                return new ArrayList<Output>(segments.values());
+            }
+        }
+    }
+    
+    /**
+     * The visits recorded by one thread, with each distinct string only written once
+     */
+    private static class Output extends ByteArrayOutputStream {
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        private boolean failed;
+        private int entryStart = -1;
+        
+        private byte[] buffer() {
+            return buf;
+        }
+        
+        private void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+        
+        private void setInt(int position, int value) {
+            buf[position] = (byte) (value >>> 24);
+            buf[position + 1] = (byte) (value >>> 16);
+            buf[position + 2] = (byte) (value >>> 8);
+            buf[position + 3] = (byte) value;
+        }
+        
+        private void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+        
+        private void writeUTF(String value) {
+            byte[] utf = value.getBytes(UTF8);
+            writeInt(utf.length);
+            write(utf, 0, utf.length);
+        }
+        
+        private void writeString(String value) {
+            if (value == null) {
+                writeInt(NULL_STRING);
+                return;
+            }
+            
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeInt(index);
+                return;
+            }
+            
+            strings.put(value, strings.size());
+            writeInt(NEW_STRING);
+            writeUTF(value);
+        }
+        
+        private void writeStrings(String[] values) {
+            if (values == null) {
+                writeInt(-1);
+                return;
+            }
+            
+            writeInt(values.length);
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+        
+        private void writeValue(Object value) {
+            if (value == null) {
+                write('N');
+            }
+            else if (value instanceof String) {
+                write('s');
+                writeString((String) value);
+            }
+            else if (value instanceof Integer) {
+                write('I');
+                writeInt((Integer) value);
+            }
+            else if (value instanceof Long) {
+                write('J');
+                writeLong((Long) value);
+            }
+            else if (value instanceof Boolean) {
+                write('Z');
+                write(((Boolean) value) ? 1 : 0);
+            }
+            else if (value instanceof Byte) {
+                write('B');
+                write((Byte) value);
+            }
+            else if (value instanceof Character) {
+                write('C');
+                writeInt((Character) value);
+            }
+            else if (value instanceof Short) {
+                write('S');
+                writeInt((Short) value);
+            }
+            else if (value instanceof Float) {
+                write('F');
+                writeInt(Float.floatToRawIntBits((Float) value));
+            }
+            else if (value instanceof Double) {
+                write('D');
+                writeLong(Double.doubleToRawLongBits((Double) value));
+            }
+            else if (value instanceof Type) {
+                write('T');
+                writeString(((Type) value).getDescriptor());
+            }
+            else if (value instanceof byte[]) {
+                byte[] array = (byte[]) value;
+                write('b');
+                writeInt(array.length);
+                write(array, 0, array.length);
+            }
+            else if (value instanceof boolean[]) {
+                boolean[] array = (boolean[]) value;
+                write('z');
+                writeInt(array.length);
+                for (boolean b : array) write(b ? 1 : 0);
+            }
+            else if (value instanceof char[]) {
+                char[] array = (char[]) value;
+                write('c');
+                writeInt(array.length);
+                for (char c : array) writeInt(c);
+            }
+            else if (value instanceof short[]) {
+                short[] array = (short[]) value;
+                write('s' - 1);
+                writeInt(array.length);
+                for (short s : array) writeInt(s);
+            }
+            else if (value instanceof int[]) {
+                int[] array = (int[]) value;
+                write('i');
+                writeInt(array.length);
+                for (int i : array) writeInt(i);
+            }
+            else if (value instanceof long[]) {
+                long[] array = (long[]) value;
+                write('j');
+                writeInt(array.length);
+                for (long l : array) writeLong(l);
+            }
+            else if (value instanceof float[]) {
+                float[] array = (float[]) value;
+                write('f');
+                writeInt(array.length);
+                for (float f : array) writeInt(Float.floatToRawIntBits(f));
+            }
+            else if (value instanceof double[]) {
+                double[] array = (double[]) value;
+                write('d');
+                writeInt(array.length);
+                for (double d : array) writeLong(Double.doubleToRawLongBits(d));
+            }
+            else {
+                // Not a value the class reader produces
+                failed = true;
+                write('N');
+            }
+        }
+    }
+    
+    private static class RecordingClassVisitor extends ClassVisitor {
+        private final Output out;
+        
+        private RecordingClassVisitor(ClassVisitor delegate, Output out) {
+            super(Opcodes.ASM5, delegate);
+            
+            this.out = out;
+        }
+        
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            out.write(CLASS);
+            out.writeInt(version);
+            out.writeInt(access);
+            out.writeString(name);
+            out.writeString(signature);
+            out.writeString(superName);
+            out.writeStrings(interfaces);
+            
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+        
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            out.write(ANNOTATION);
+            out.writeString(desc);
+            out.write(visible ? 1 : 0);
+            
+            return new RecordingAnnotationVisitor(super.visitAnnotation(desc, visible), out);
+        }
+        
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            out.write(FIELD);
+            out.writeInt(access);
+            out.writeString(name);
+            out.writeString(desc);
+            out.writeString(signature);
+            out.writeValue(value);
+            
+            return new RecordingFieldVisitor(super.visitField(access, name, desc, signature, value), out);
+        }
+        
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            out.write(METHOD);
+            out.writeInt(access);
+            out.writeString(name);
+            out.writeString(desc);
+            out.writeString(signature);
+            out.writeStrings(exceptions);
+            
+            return new RecordingMethodVisitor(super.visitMethod(access, name, desc, signature, exceptions), out);
+        }
+        
+        @Override
+        public void visitEnd() {
+            out.write(END);
+            
+            super.visitEnd();
+        }
+    }
+    
+    private static class RecordingFieldVisitor extends FieldVisitor {
+        private final Output out;
+        
+        private RecordingFieldVisitor(FieldVisitor delegate, Output out) {
+            super(Opcodes.ASM5, delegate);
+            
+            this.out = out;
+        }
+        
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            out.write(ANNOTATION);
+            out.writeString(desc);
+            out.write(visible ? 1 : 0);
+            
+            return new RecordingAnnotationVisitor(super.visitAnnotation(desc, visible), out);
+        }
+        
+        @Override
+        public void visitEnd() {
+            out.write(END);
+            
+            super.visitEnd();
+        }
+    }
+    
+    private static class RecordingMethodVisitor extends MethodVisitor {
+        private final Output out;
+        
+        private RecordingMethodVisitor(MethodVisitor delegate, Output out) {
+            super(Opcodes.ASM5, delegate);
+            
+            this.out = out;
+        }
+        
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            out.write(ANNOTATION);
+            out.writeString(desc);
+            out.write(visible ? 1 : 0);
+            
+            return new RecordingAnnotationVisitor(super.visitAnnotation(desc, visible), out);
+        }
+        
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+            out.write(ANNOTATION_DEFAULT);
+            
+            return new RecordingAnnotationVisitor(super.visitAnnotationDefault(), out);
+        }
+        
+        @Override
+        public void visitEnd() {
+            out.write(END);
+            
+            super.visitEnd();
+        }
+    }
+    
+    private static class RecordingAnnotationVisitor extends AnnotationVisitor {
+        private final Output out;
+        
+        private RecordingAnnotationVisitor(AnnotationVisitor delegate, Output out) {
+            super(Opcodes.ASM5, delegate);
+            
+            this.out = out;
+        }
+        
+        @Override
+        public void visit(String name, Object value) {
+            out.write(VALUE);
+            out.writeString(name);
+            out.writeValue(value);
+            
+            super.visit(name, value);
+        }
+        
+        @Override
+        public void visitEnum(String name, String desc, String value) {
+            out.write(ENUM);
+            out.writeString(name);
+            out.writeString(desc);
+            out.writeString(value);
+            
+            super.visitEnum(name, desc, value);
+        }
+        
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String desc) {
+            out.write(NESTED_ANNOTATION);
+            out.writeString(name);
+            out.writeString(desc);
+            
+            return new RecordingAnnotationVisitor(super.visitAnnotation(name, desc), out);
+        }
+        
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            out.write(ARRAY);
+            out.writeString(name);
+            
+            return new RecordingAnnotationVisitor(super.visitArray(name), out);
+        }
+        
+        @Override
+        public void visitEnd() {
+            out.write(END);
+            
+            super.visitEnd();
+        }
+    }
+    
+    /**
+     * Replays a recording into the model visitors of a context
+     */
+    private static class Replayer {
+        private final ByteBuffer in;
+        private final URI uri;
+        private final ParsingContext context;
+        private final List<String> strings = new ArrayList<String>();
+        
+        private Replayer(ByteBuffer in, URI uri, ParsingContext context) {
+            this.in = in;
+            this.uri = uri;
+            this.context = context;
+        }
+        
+        private void replay() {
+            while (in.hasRemaining()) {
+                byte tag = in.get();
+                if (tag == SEGMENT) {
+                    // Each segment has strings of its own
+                    strings.clear();
+                    continue;
+                }
+                if (tag != ENTRY) throw new IllegalStateException("Unexpected tag " + tag);
+                
+                String entryName = readString();
+                int length = in.getInt();
+                int end = in.position() + length;
+                
+                ClassVisitor cv = context.getClassVisitor(uri, entryName, true);
+                in.limit(end);
+                try {
+                    if (length > 0) replayClass(cv);
+                }
+                catch (BufferUnderflowException e) {
+                    // The class could not be visited completely when it was parsed
+                }
+                catch (Throwable e) {
+                    context.logger.log(Level.SEVERE, "Exception while visiting " + entryName + " of " + uri, e);
+                }
+                finally {
+                    in.limit(in.capacity());
+                    in.position(end);
+                }
+            }
+        }
+        
+        private void replayClass(ClassVisitor cv) {
+            while (true) {
+                byte tag = in.get();
+                switch (tag) {
+                case CLASS:
+                    cv.visit(in.getInt(), in.getInt(), readString(), readString(), readString(), readStrings());
+                    break;
+                case ANNOTATION:
+                    replayAnnotation(cv.visitAnnotation(readString(), in.get() != 0));
+                    break;
+                case FIELD:
+                    replayField(cv.visitField(in.getInt(), readString(), readString(), readString(), readValue()));
+                    break;
+                case METHOD:
+                    replayMethod(cv.visitMethod(in.getInt(), readString(), readString(), readString(), readStrings()));
+                    break;
+                case END:
+                    cv.visitEnd();
+                    return;
+                default:
+                    throw new IllegalStateException("Unexpected tag " + tag);
+                }
+            }
+        }
+        
+        private void replayField(FieldVisitor fv) {
+            while (true) {
+                byte tag = in.get();
+                switch (tag) {
+                case ANNOTATION:
+                    String desc = readString();
+                    boolean visible = in.get() != 0;
+                    replayAnnotation(fv == null ? null : fv.visitAnnotation(desc, visible));
+                    break;
+                case END:
+                    if (fv != null) fv.visitEnd();
+                    return;
+                default:
+                    throw new IllegalStateException("Unexpected tag " + tag);
+                }
+            }
+        }
+        
+        private void replayMethod(MethodVisitor mv) {
+            while (true) {
+                byte tag = in.get();
+                switch (tag) {
+                case ANNOTATION:
+                    String desc = readString();
+                    boolean visible = in.get() != 0;
+                    replayAnnotation(mv == null ? null : mv.visitAnnotation(desc, visible));
+                    break;
+                case ANNOTATION_DEFAULT:
+                    replayAnnotation(mv == null ? null : mv.visitAnnotationDefault());
+                    break;
+                case END:
+                    if (mv != null) mv.visitEnd();
+                    return;
+                default:
+                    throw new IllegalStateException("Unexpected tag " + tag);
+                }
+            }
+        }
+        
+        private void replayAnnotation(AnnotationVisitor av) {
+            while (true) {
+                byte tag = in.get();
+                String name;
+                switch (tag) {
+                case VALUE:
+                    name = readString();
+                    Object value = readValue();
+                    if (av != null) av.visit(name, value);
+                    break;
+                case ENUM:
+                    name = readString();
+                    String enumDesc = readString();
+                    String enumValue = readString();
+                    if (av != null) av.visitEnum(name, enumDesc, enumValue);
+                    break;
+                case NESTED_ANNOTATION:
+                    name = readString();
+                    String desc = readString();
+                    replayAnnotation(av == null ? null : av.visitAnnotation(name, desc));
+                    break;
+                case ARRAY:
+                    name = readString();
+                    replayAnnotation(av == null ? null : av.visitArray(name));
+                    break;
+                case END:
+                    if (av != null) av.visitEnd();
+                    return;
+                default:
+                    throw new IllegalStateException("Unexpected tag " + tag);
+                }
+            }
+        }
+        
+        private String readString() {
+            int index = in.getInt();
+            if (index == NULL_STRING) return null;
+            if (index != NEW_STRING) return strings.get(index);
+            
+            String retVal = readUTF(in);
+            strings.add(retVal);
+            return retVal;
+        }
+        
+        private String[] readStrings() {
+            int length = in.getInt();
+            if (length < 0) return null;
+            
+            String[] retVal = new String[length];
+            for (int lcv = 0; lcv < length; lcv++) {
+                retVal[lcv] = readString();
+            }
+            return retVal;
+        }
+        
+        private Object readValue() {
+            int code = in.get();
+            int length;
+            switch (code) {
+            case 'N': return null;
+            case 's': return readString();
+            case 'I': return in.getInt();
+            case 'J': return in.getLong();
+            case 'Z': return in.get() != 0;
+            case 'B': return in.get();
+            case 'C': return (char) in.getInt();
+            case 'S': return (short) in.getInt();
+            case 'F': return Float.intBitsToFloat(in.getInt());
+            case 'D': return Double.longBitsToDouble(in.getLong());
+            case 'T': return Type.getType(readString());
+            case 'b':
+                byte[] bytes = new byte[in.getInt()];
+                in.get(bytes);
+                return bytes;
+            case 'z':
+                boolean[] booleans = new boolean[in.getInt()];
+                for (int lcv = 0; lcv < booleans.length; lcv++) booleans[lcv] = in.get() != 0;
+                return booleans;
+            case 'c':
+                char[] chars = new char[in.getInt()];
+                for (int lcv = 0; lcv < chars.length; lcv++) chars[lcv] = (char) in.getInt();
+                return chars;
+            case 's' - 1:
+                short[] shorts = new short[in.getInt()];
+                for (int lcv = 0; lcv < shorts.length; lcv++) shorts[lcv] = (short) in.getInt();
+                return shorts;
+            case 'i':
+                length = in.getInt();
+                int[] ints = new int[length];
+                for (int lcv = 0; lcv < length; lcv++) ints[lcv] = in.getInt();
+                return ints;
+            case 'j':
+                length = in.getInt();
+                long[] longs = new long[length];
+                for (int lcv = 0; lcv < length; lcv++) longs[lcv] = in.getLong();
+                return longs;
+            case 'f':
+                length = in.getInt();
+                float[] floats = new float[length];
+                for (int lcv = 0; lcv < length; lcv++) floats[lcv] = Float.intBitsToFloat(in.getInt());
+                return floats;
+            case 'd':
+                length = in.getInt();
+                double[] doubles = new double[length];
+                for (int lcv = 0; lcv < length; lcv++) doubles[lcv] = Double.longBitsToDouble(in.getLong());
+                return doubles;
+            default:
+                throw new IllegalStateException("Unexpected value code " + code);
+            }
+        }
+    }
+}
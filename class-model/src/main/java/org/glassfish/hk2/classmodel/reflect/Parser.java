@@ -45,6 +45,7 @@ import org.glassfish.hk2.classmodel.reflect.util.DirectoryArchive;
 import org.glassfish.hk2.classmodel.reflect.util.JarArchive;
 import org.glassfish.hk2.classmodel.reflect.util.ResourceLocator;
 import org.glassfish.hk2.external.org.objectweb.asm.ClassReader;
+import org.glassfish.hk2.external.org.objectweb.asm.ClassVisitor;
 
 import java.io.Closeable;
 import java.io.File;
@@ -74,6 +75,8 @@ public class Parser implements Closeable {
     private final Stack<Future<Result>> futures = new Stack<Future<Result>>();
     private final ExecutorService executorService;
     private final boolean ownES;
+    private final ArchiveModelCache cache;
+    private final AnnotationPreFilter preFilter;
 
     // used to safeguard between await and parse
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
@@ -85,6 +88,8 @@ public class Parser implements Closeable {
         this.context = context;
         executorService = (context.executorService==null?createExecutorService():context.executorService);
         ownES = context.executorService==null;
+        cache = (context.cacheDirectory==null?null:new ArchiveModelCache(context.cacheDirectory, context.logger));
+        preFilter = new AnnotationPreFilter(context.getConfig().getAnnotationsOfInterest());
     }
     
     public Exception[] awaitTermination() throws InterruptedException {
@@ -341,30 +346,59 @@ public class Parser implements Closeable {
                 logger.log(Level.FINE, "Parsing file {0}", uri.getPath());
             }
 
-            adapter.onSelectedEntries(
-                    new ArchiveAdapter.Selector() {
-                        @Override
-                        public boolean isSelected(ArchiveAdapter.Entry entry) {
-                            return entry.name.endsWith(".class");
+            final ArchiveModelCache.Key key = (cache == null ? null : cache.getKey(uri, context.getConfig().getAnnotationsOfInterest()));
+            if (key != null && cache.replay(key, uri, context)) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE, "Reusing the cached model of {0}", uri.getPath());
+                }
+            }
+            else {
+                final ArchiveModelCache.Recording recording = (key == null ? null : cache.startRecording(key));
+                
+                ArchiveAdapter.Selector selector = new ArchiveAdapter.Selector() {
+                    @Override
+                    public boolean isSelected(ArchiveAdapter.Entry entry) {
+                        return entry.name.endsWith(".class");
+                    }
+                };
+                ArchiveAdapter.EntryTask task = new ArchiveAdapter.EntryTask() {
+                    @Override
+                    public void on(ArchiveAdapter.Entry entry, InputStream is) throws IOException {
+                        if (logger.isLoggable(Level.FINER)) {
+                            logger.log(Level.FINER, "Parsing class " + entry.name);
                         }
-                    },
-                    new ArchiveAdapter.EntryTask() {
-                        @Override
-                        public void on(ArchiveAdapter.Entry entry, InputStream is) throws IOException {
-                            if (logger.isLoggable(Level.FINER)) {
-                                logger.log(Level.FINER, "Parsing class " + entry.name);
+                        try {
+                            ClassVisitor visitor = context.getClassVisitor(uri, entry.name, true);
+                            if (recording != null) {
+                                visitor = recording.record(entry.name, visitor);
                             }
-                            try {
-                                ClassReader cr = new ClassReader(is);
-                                cr.accept(context.getClassVisitor(uri, entry.name, true), ClassReader.SKIP_DEBUG);
-                            } catch (Throwable e) {
-                                logger.log(Level.SEVERE, "Exception while visiting " + entry.name
-                                        + " of size " + entry.size, e);
+                            
+                            ClassReader cr = new ClassReader(is);
+                            if (!preFilter.visitHeader(cr, visitor)) {
+                                // The model has no use for the code of the methods
+                                cr.accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG);
                             }
+                        } catch (Throwable e) {
+                            logger.log(Level.SEVERE, "Exception while visiting " + entry.name
+                                    + " of size " + entry.size, e);
+                        }
+                        if (recording != null) {
+                            recording.done();
                         }
-                    },
-                    logger
-            );
+                    }
+                };
+
+                if (context.archiveChunkSize > 0 && adapter instanceof JarArchive) {
+                    ((JarArchive) adapter).onSelectedEntries(selector, task, logger, executorService, context.archiveChunkSize);
+                }
+                else {
+                    adapter.onSelectedEntries(selector, task, logger);
+                }
+                
+                if (recording != null) {
+                    cache.write(recording);
+                }
+            }
             saveResult(uri, context.getTypes());
         }
         if (logger.isLoggable(Level.FINE)) {
@@ -48,6 +48,7 @@ import org.glassfish.hk2.classmodel.reflect.util.ParsingConfig;
 import org.glassfish.hk2.classmodel.reflect.util.ResourceLocator;
 import org.glassfish.hk2.external.org.objectweb.asm.ClassVisitor;
 
+import java.io.File;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -72,6 +73,8 @@ public class ParsingContext {
         ArchiveSelector archiveSelector=null;
         ParsingConfig config=null;
         ResourceLocator locator=null;
+        File cacheDirectory=null;
+        int archiveChunkSize=0;
 
         /**
          * Returns the configured or default logger for the class-model library.
@@ -153,6 +156,38 @@ public class ParsingContext {
             return this;
         }
 
+        /**
+         * Sets the directory in which the model of each parsed jar file or
+         * directory is kept, so that archives that have not changed since they
+         * were last parsed are not parsed again.  An archive is considered
+         * unchanged when its size, modification time and content hash are the
+         * same.  Defaults to null, in which case nothing is cached
+         *
+         * @param cacheDirectory the directory of the cached models, created if needed
+         * @return itself
+         */
+        public Builder cacheDirectory(File cacheDirectory) {
+            this.cacheDirectory = cacheDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the number of class files of a jar file that are visited
+         * together by one thread.  Jar files with more class files than this
+         * are split in chunks that are visited in parallel by the threads of
+         * the executor service, see {@link #executorService(ExecutorService)},
+         * which should then have more than one thread.  Defaults to 0, in
+         * which case all the class files of a jar file are visited by the
+         * same thread
+         *
+         * @param archiveChunkSize the number of class files in a chunk, or 0
+         * @return itself
+         */
+        public Builder archiveChunkSize(int archiveChunkSize) {
+            this.archiveChunkSize = archiveChunkSize;
+            return this;
+        }
+
         /**
          * Build the final ParsingContext with the provided configuration.
          *
@@ -171,6 +206,8 @@ public class ParsingContext {
     final Logger logger;
     final ParsingConfig config;
     final ResourceLocator locator;
+    final File cacheDirectory;
+    final int archiveChunkSize;
 
     private ParsingContext(Builder builder) {
 //        Runtime runtime = Runtime.getRuntime();
@@ -178,6 +215,8 @@ public class ParsingContext {
         this.archiveSelector = builder.archiveSelector;
         this.logger = builder.logger;
         this.locator = builder.locator;
+        this.cacheDirectory = builder.cacheDirectory;
+        this.archiveChunkSize = builder.archiveChunkSize;
         this.config = builder.config!=null?builder.config:new ParsingConfig() {
             final Set<String> emptyList = Collections.emptySet();
             @Override
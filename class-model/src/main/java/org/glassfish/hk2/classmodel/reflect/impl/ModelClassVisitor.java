@@ -165,8 +165,10 @@ public class ModelClassVisitor extends ClassVisitor {
                         String interfaceName = org.glassfish.hk2.external.org.objectweb.asm.Type.getObjectType(intf).getClassName();
                         TypeImpl interfaceModel = typeBuilder.getType(Opcodes.ACC_INTERFACE, interfaceName, null);
                         TypeProxy<InterfaceModel> typeProxy = typeBuilder.getHolder(interfaceName, InterfaceModel.class);
-                        if (typeProxy.get() == null) {
-                            typeProxy.set((InterfaceModel) interfaceModel);
+                        synchronized (typeProxy) {
+                            if (typeProxy.get() == null) {
+                                typeProxy.set((InterfaceModel) interfaceModel);
+                            }
                         }
                         
                         classModel.isImplementing(typeProxy);
@@ -83,18 +83,30 @@ public class TypesCtr implements Types {
             }
         }
         // ok let's look in our unknown storage pool.
-        if (unknownTypesStorage.containsKey(name)) {
-            return unknownTypesStorage.get(name);
+        TypeProxy<Type> unknown = unknownTypesStorage.get(name);
+        if (unknown!=null) {
+            return unknown;
         }
-        // ok we don't have and since we don't know its type
-        // let's put it in the unknown storage pool.
-        TypeProxy<Type> typeProxy = new TypeProxy<Type>(null, name);
-        TypeProxy<Type> old = unknownTypesStorage.putIfAbsent(name, typeProxy);
-        if (old==null) {
+        // proxies are only created and moved between the storage pools
+        // under this lock so that there is never more than one per name
+        synchronized (unknownTypesStorage) {
+            for (Map<String, TypeProxy<Type>> map : storage.values()) {
+                TypeProxy<Type> proxy = map.get(name);
+                if (proxy!=null) {
+                    return proxy;
+                }
+            }
+            unknown = unknownTypesStorage.get(name);
+            if (unknown!=null) {
+                return unknown;
+            }
+            // ok we don't have and since we don't know its type
+            // let's put it in the unknown storage pool.
+            TypeProxy<Type> typeProxy = new TypeProxy<Type>(null, name);
+            unknownTypesStorage.put(name, typeProxy);
             nonVisited.push(typeProxy);
             return typeProxy;
         }
-        return old;
     }
 
     public <T extends Type> TypeProxy<Type> getHolder(String name, Class<T> type) {
@@ -110,30 +122,21 @@ public class TypesCtr implements Types {
         }
         TypeProxy<Type> typeProxy = typeStorage.get(name);
         if (typeProxy ==null) {
-            // in our unknown type pool ? 
-            TypeProxy<Type> tmp = unknownTypesStorage.get(name);
-            // in our unknown type pool ?
-            if (tmp!=null) {
-                synchronized (unknownTypesStorage) {
-                    typeProxy = unknownTypesStorage.remove(name);
-                    if (typeProxy == null) { 
-                        typeProxy = tmp; 
-                     }
-                }
-                if (typeProxy!=null) {
-                    TypeProxy<Type> old = typeStorage.putIfAbsent(name, typeProxy);
-                    if (old!=null) {
-                        typeProxy = old;
+            synchronized (unknownTypesStorage) {
+                typeProxy = typeStorage.get(name);
+                if (typeProxy==null) {
+                    // in our unknown type pool ? it is put in the typed pool before
+                    // it leaves the unknown one so that getHolder(name) always finds it
+                    typeProxy = unknownTypesStorage.get(name);
+                    if (typeProxy!=null) {
+                        typeStorage.put(name, typeProxy);
+                        unknownTypesStorage.remove(name);
+                    } else {
+                        typeProxy = new TypeProxy<Type>(null, name);
+                        typeStorage.put(name, typeProxy);
+                        nonVisited.push(typeProxy);
                     }
                 }
-            } else {
-                typeProxy = new TypeProxy<Type>(null, name);
-                TypeProxy<Type> old = typeStorage.putIfAbsent(name, typeProxy);
-                if (old==null) {
-                    nonVisited.push(typeProxy);
-                } else {
-                    typeProxy=old;
-                }
             }
         }
         return typeProxy;
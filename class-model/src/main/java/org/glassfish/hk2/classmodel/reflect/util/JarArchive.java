@@ -45,8 +45,14 @@ import java.net.URI;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -137,6 +143,103 @@ public class JarArchive extends AbstractAdapter {
      }
     
 
+    /**
+     * Performs a task on the selected entries like {@link #onSelectedEntries(Selector, EntryTask, Logger)},
+     * except that when more than chunkSize entries are selected they are split in chunks of
+     * chunkSize entries that are given to the threads of the executor service.  The calling
+     * thread also takes chunks, and this method returns once every chunk has been done.  The
+     * entries are then read from a memory-mapped view of the jar file, so that the threads
+     * do not have to take turns reading the file.  The task must therefore be safe to run on
+     * several threads at the same time.
+     * <p>
+     * Jar files that contain other jar files, or that cannot be mapped, are done serially
+     *
+     * @param selector selects the entries to perform the task on
+     * @param task the task to perform, which must be thread safe
+     * @param logger for any logging activity
+     * @param executorService the executor service to run the chunks on
+     * @param chunkSize the number of entries done together by one thread
+     * @throws IOException can be generated while reading the archive entries
+     */
+    public void onSelectedEntries(Selector selector, final EntryTask task, final Logger logger,
+            ExecutorService executorService, int chunkSize) throws IOException {
+        if (executorService == null || chunkSize <= 0) {
+            onSelectedEntries(selector, task, logger);
+            return;
+        }
+
+        final MappedZipFile mapped;
+        try {
+            mapped = new MappedZipFile(new File(uri));
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Cannot map " + uri + ", its entries will be visited serially", e);
+            onSelectedEntries(selector, task, logger);
+            return;
+        }
+
+        final List<MappedZipFile.MappedEntry> selected = new ArrayList<MappedZipFile.MappedEntry>();
+        for (MappedZipFile.MappedEntry entry : mapped.getEntries()) {
+            if (entry.name.endsWith(".jar")) {
+                onSelectedEntries(selector, task, logger);
+                return;
+            }
+            if (selector.isSelected(new Entry(entry.name, entry.size))) {
+                selected.add(entry);
+            }
+        }
+
+        if (selected.size() <= chunkSize) {
+            onSelectedEntries(selector, task, logger);
+            return;
+        }
+
+        final int size = chunkSize;
+        final int chunks = (selected.size() + size - 1) / size;
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(chunks);
+
+        Runnable chunkRunner = new Runnable() {
+            @Override
+            public void run() {
+                int chunk;
+                while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                    try {
+                        int end = Math.min(selected.size(), (chunk + 1) * size);
+                        for (MappedZipFile.MappedEntry entry : selected.subList(chunk * size, end)) {
+                            try {
+                                task.on(new Entry(entry.name, entry.size), mapped.getInputStream(entry));
+                            } catch (Exception e) {
+                                logger.log(Level.SEVERE, "Exception while processing " + entry.name
+                                        + " inside " + jar.getName() + " of size " + entry.size, e);
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }
+        };
+
+        // Helpers that start once every chunk was taken return at once
+        try {
+            for (int lcv = 1; lcv < chunks; lcv++) {
+                executorService.execute(chunkRunner);
+            }
+        } catch (RejectedExecutionException e) {
+            logger.log(Level.FINE, "Executor service is not accepting more chunks of " + uri, e);
+        }
+
+        chunkRunner.run();
+
+        // Only chunks that were taken by a running helper can be left
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while visiting " + uri);
+        }
+    }
+
     @Override
     public Manifest getManifest() throws IOException {
         return jar.getManifest();
@@ -0,0 +1,236 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.classmodel.reflect.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A read-only view of a zip file mapped into memory, from which any
+ * number of threads can read entries at the same time.  Only the
+ * central directory is read when the file is opened.
+ * <p>
+ * Zip64 files, encrypted entries and entries compressed with another
+ * method than deflate are not supported and raise a {@link ZipException}
+ * 
+ * @author jwells
+ */
+/* package */ class MappedZipFile {
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    
+    private final static int LOCAL_HEADER = 0x04034b50;
+    private final static int CENTRAL_HEADER = 0x02014b50;
+    private final static int END_HEADER = 0x06054b50;
+    
+    private final static int LOCAL_HEADER_LENGTH = 30;
+    private final static int CENTRAL_HEADER_LENGTH = 46;
+    private final static int END_HEADER_LENGTH = 22;
+    private final static int MAX_COMMENT_LENGTH = 0xffff;
+    
+    private final static int STORED = 0;
+    private final static int DEFLATED = 8;
+    private final static int ENCRYPTED = 1;
+    
+    private final ByteBuffer mapped;
+    private final List<MappedEntry> entries;
+    
+    /* package */ MappedZipFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new ZipException(file + " is too large to be mapped");
+            }
+            
+            // The mapping stays valid once the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            mapped = buffer;
+        }
+        finally {
+            raf.close();
+        }
+        
+        entries = Collections.unmodifiableList(readCentralDirectory());
+    }
+    
+    private List<MappedEntry> readCentralDirectory() throws ZipException {
+        ByteBuffer b = view();
+        
+        int end = -1;
+        int lowest = Math.max(0, b.limit() - END_HEADER_LENGTH - MAX_COMMENT_LENGTH);
+        for (int lcv = b.limit() - END_HEADER_LENGTH; lcv >= lowest; lcv--) {
+            if (b.getInt(lcv) == END_HEADER) {
+                end = lcv;
+                break;
+            }
+        }
+        if (end < 0) throw new ZipException("No end of central directory found");
+        
+        int count = b.getShort(end + 10) & 0xffff;
+        long offset = b.getInt(end + 16) & 0xffffffffL;
+        if (count == 0xffff || offset == 0xffffffffL) throw new ZipException("Zip64 files are not supported");
+        
+        List<MappedEntry> retVal = new ArrayList<MappedEntry>(count);
+        int u = (int) offset;
+        for (int lcv = 0; lcv < count; lcv++) {
+            if (b.getInt(u) != CENTRAL_HEADER) throw new ZipException("Invalid central directory header at " + u);
+            
+            int flags = b.getShort(u + 8) & 0xffff;
+            int method = b.getShort(u + 10) & 0xffff;
+            long compressedSize = b.getInt(u + 20) & 0xffffffffL;
+            long size = b.getInt(u + 24) & 0xffffffffL;
+            int nameLength = b.getShort(u + 28) & 0xffff;
+            int extraLength = b.getShort(u + 30) & 0xffff;
+            int commentLength = b.getShort(u + 32) & 0xffff;
+            long localOffset = b.getInt(u + 42) & 0xffffffffL;
+            
+            byte[] name = new byte[nameLength];
+            b.position(u + CENTRAL_HEADER_LENGTH);
+            b.get(name);
+            
+            retVal.add(new MappedEntry(new String(name, UTF8), flags, method, compressedSize, size, localOffset));
+            u += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+        }
+        
+        return retVal;
+    }
+    
+    private ByteBuffer view() {
+        return mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Returns the entries of the file, in the order of the central directory
+     * 
+     * @return The entries of the file
+     */
+    /* package */ List<MappedEntry> getEntries() {
+        return entries;
+    }
+    
+    /**
+     * Reads the uncompressed content of an entry, which can be done by
+     * several threads at the same time
+     * 
+     * @param entry An entry of this file
+     * @return The content of the entry
+     * @throws IOException if the entry cannot be read
+     */
+    /* package */ InputStream getInputStream(MappedEntry entry) throws IOException {
+        if ((entry.flags & ENCRYPTED) != 0) throw new ZipException(entry.name + " is encrypted");
+        if (entry.size > Integer.MAX_VALUE) throw new ZipException(entry.name + " is too large");
+        
+        ByteBuffer b = view();
+        int u = (int) entry.localOffset;
+        if (b.getInt(u) != LOCAL_HEADER) throw new ZipException("Invalid local header for " + entry.name);
+        
+        b.position(u + LOCAL_HEADER_LENGTH + (b.getShort(u + 26) & 0xffff) + (b.getShort(u + 28) & 0xffff));
+        
+        byte[] data = new byte[(int) entry.size];
+        if (entry.method == STORED) {
+            b.get(data);
+            return new ByteArrayInputStream(data);
+        }
+        if (entry.method != DEFLATED) throw new ZipException(entry.name + " uses unsupported compression method " + entry.method);
+        
+        // The inflater needs an extra byte when there is no zlib header
+        byte[] compressed = new byte[(int) entry.compressedSize + 1];
+        b.get(compressed, 0, (int) entry.compressedSize);
+        
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int read = 0;
+            while (read < data.length) {
+                int inflated = inflater.inflate(data, read, data.length - read);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException(entry.name + " is truncated");
+                }
+                read += inflated;
+            }
+        }
+        catch (DataFormatException e) {
+            ZipException ze = new ZipException(entry.name + " is corrupt");
+            ze.initCause(e);
+            throw ze;
+        }
+        finally {
+            inflater.end();
+        }
+        
+        return new ByteArrayInputStream(data);
+    }
+    
+    /**
+     * An entry of the central directory
+     */
+    /* package */ static class MappedEntry {
+        /* package */ final String name;
+        /* package */ final long size;
+        private final int flags;
+        private final int method;
+        private final long compressedSize;
+        private final long localOffset;
+        
+        private MappedEntry(String name, int flags, int method, long compressedSize, long size, long localOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localOffset = localOffset;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.classmodel.reflect.test.cache;
+
+import org.glassfish.hk2.classmodel.reflect.*;
+import org.glassfish.hk2.classmodel.reflect.test.method.SimpleAnnotatedMethod;
+import org.glassfish.hk2.classmodel.reflect.test.method.SomeAnnotation;
+import org.glassfish.hk2.classmodel.reflect.util.ParsingConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Tests the on-disk cache of the models of unchanged archives
+ * 
+ * @author jwells
+ */
+public class ModelCacheTest {
+    private final static String REUSED = "Reusing the cached model of {0}";
+    
+    private File cacheDirectory;
+    private File modelDir;
+    
+    @Before
+    public void before() throws IOException {
+        cacheDirectory = File.createTempFile("hk2-model-cache", "");
+        Assert.assertTrue(cacheDirectory.delete());
+        
+        modelDir = new File(new File(System.getProperty("user.dir")), "target" + File.separator + "test-classes");
+    }
+    
+    @After
+    public void after() {
+        File[] files = cacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDirectory.delete();
+    }
+    
+    private int parse(Types[] result) throws IOException, InterruptedException {
+        final int[] reused = new int[1];
+        
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setLevel(Level.FINE);
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (REUSED.equals(record.getMessage())) reused[0]++;
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        
+        ParsingContext pc = new ParsingContext.Builder().logger(logger).cacheDirectory(cacheDirectory).config(new ParsingConfig() {
+            @Override
+            public Set<String> getAnnotationsOfInterest() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public Set<String> getTypesOfInterest() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public boolean modelUnAnnotatedMembers() {
+                return true;
+            }
+        }).build();
+        
+        Parser parser = new Parser(pc);
+        parser.parse(modelDir, null);
+        Exception[] exceptions = parser.awaitTermination(100, TimeUnit.SECONDS);
+        Assert.assertTrue("Exceptions returned", exceptions == null || exceptions.length == 0);
+        parser.close();
+        
+        result[0] = pc.getTypes();
+        return reused[0];
+    }
+    
+    private static Set<String> describe(Types types) {
+        Set<String> retVal = new TreeSet<String>();
+        for (Type type : types.getAllTypes()) {
+            retVal.add(type.getName() + " " + describe(type));
+            for (MethodModel method : type.getMethods()) {
+                retVal.add(type.getName() + "." + method.getName() + method.getSignature() + " " + describe(method));
+            }
+            if (type instanceof ClassModel) {
+                for (FieldModel field : ((ClassModel) type).getFields()) {
+                    retVal.add(type.getName() + "." + field.getName() + " " + describe(field));
+                }
+            }
+        }
+        return retVal;
+    }
+    
+    private static Set<String> describe(AnnotatedElement element) {
+        Set<String> retVal = new TreeSet<String>();
+        for (AnnotationModel annotation : element.getAnnotations()) {
+            retVal.add(annotation.getType().getName() + annotation.getValues());
+        }
+        return retVal;
+    }
+    
+    /**
+     * An unchanged directory is modelled from the cache, with the same result
+     * as when it was parsed
+     */
+    @Test
+    public void testUnchangedArchiveIsReused() throws IOException, InterruptedException {
+        Types[] parsed = new Types[1];
+        Assert.assertEquals(0, parse(parsed));
+        Assert.assertEquals(1, cacheDirectory.list().length);
+        
+        Types[] cached = new Types[1];
+        Assert.assertEquals(1, parse(cached));
+        
+        Assert.assertEquals(describe(parsed[0]), describe(cached[0]));
+        
+        AnnotationType annotation = (AnnotationType) cached[0].getBy(SomeAnnotation.class.getName());
+        Assert.assertEquals("java.lang.Void", annotation.getDefaultValues().get("environment"));
+        
+        MethodModel setFoo = null;
+        for (MethodModel method : ((ClassModel) cached[0].getBy(SimpleAnnotatedMethod.class.getName())).getMethods()) {
+            if ("setFoo".equals(method.getName())) setFoo = method;
+        }
+        Assert.assertNotNull(setFoo);
+        
+        AnnotationModel model = setFoo.getAnnotations().iterator().next();
+        Assert.assertEquals(10L, model.getValues().get("aLong"));
+        Assert.assertEquals("java.lang.Void", model.getValues().get("aClass"));
+    }
+    
+    /**
+     * A directory in which a file was modified is parsed again
+     */
+    @Test
+    public void testChangedArchiveIsParsed() throws IOException, InterruptedException {
+        Types[] result = new Types[1];
+        Assert.assertEquals(0, parse(result));
+        
+        File classFile = new File(modelDir, SimpleAnnotatedMethod.class.getName().replace('.', File.separatorChar) + ".class");
+        Assert.assertTrue(classFile.setLastModified(classFile.lastModified() + 2000));
+        
+        Assert.assertEquals(0, parse(result));
+        Assert.assertEquals(1, parse(result));
+    }
+}
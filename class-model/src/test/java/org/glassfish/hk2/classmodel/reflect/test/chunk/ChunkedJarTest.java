@@ -0,0 +1,215 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.classmodel.reflect.test.chunk;
+
+import org.glassfish.hk2.classmodel.reflect.*;
+import org.glassfish.hk2.classmodel.reflect.test.parameterized.PathRouteBuilder;
+import org.glassfish.hk2.classmodel.reflect.util.ParsingConfig;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Tests the visit of the class files of one jar file by several threads
+ * 
+ * @author jwells
+ */
+public class ChunkedJarTest {
+    private File jar;
+    private File cacheDirectory;
+    private ExecutorService executorService;
+    
+    @Before
+    public void before() throws IOException {
+        File modelDir = new File(new File(System.getProperty("user.dir")), "target" + File.separator + "test-classes");
+        
+        jar = File.createTempFile("hk2-chunked", ".jar");
+        JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            addClasses(jos, modelDir, "");
+        }
+        finally {
+            jos.close();
+        }
+        
+        cacheDirectory = File.createTempFile("hk2-chunked", "");
+        Assert.assertTrue(cacheDirectory.delete());
+        
+        executorService = Executors.newFixedThreadPool(4);
+    }
+    
+    @After
+    public void after() {
+        executorService.shutdown();
+        jar.delete();
+        
+        File[] files = cacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDirectory.delete();
+    }
+    
+    private static void addClasses(JarOutputStream jos, File dir, String path) throws IOException {
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory()) {
+                addClasses(jos, file, path + file.getName() + "/");
+                continue;
+            }
+            if (!file.getName().endsWith(".class")) continue;
+            
+            byte[] content = new byte[(int) file.length()];
+            InputStream is = new FileInputStream(file);
+            try {
+                int offset = 0;
+                while (offset < content.length) {
+                    offset += is.read(content, offset, content.length - offset);
+                }
+            }
+            finally {
+                is.close();
+            }
+            
+            // Some of the entries are stored rather than deflated
+            JarEntry entry = new JarEntry(path + file.getName());
+            if (content.length % 2 == 0) {
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.length);
+                entry.setCrc(crc.getValue());
+            }
+            jos.putNextEntry(entry);
+            jos.write(content);
+            jos.closeEntry();
+        }
+    }
+    
+    private Types parse(int chunkSize, File cache) throws IOException, InterruptedException {
+        ParsingContext.Builder builder = new ParsingContext.Builder().config(new ParsingConfig() {
+            @Override
+            public Set<String> getAnnotationsOfInterest() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public Set<String> getTypesOfInterest() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public boolean modelUnAnnotatedMembers() {
+                return true;
+            }
+        }).executorService(executorService).archiveChunkSize(chunkSize).cacheDirectory(cache);
+        ParsingContext pc = builder.build();
+        
+        Parser parser = new Parser(pc);
+        parser.parse(jar, null);
+        Exception[] exceptions = parser.awaitTermination(100, TimeUnit.SECONDS);
+        Assert.assertTrue("Exceptions returned", exceptions == null || exceptions.length == 0);
+        parser.close();
+        
+        return pc.getTypes();
+    }
+    
+    private static Set<String> describe(Types types) {
+        Set<String> retVal = new TreeSet<String>();
+        for (Type type : types.getAllTypes()) {
+            StringBuilder sb = new StringBuilder(type.getName()).append(' ').append(type.getClass().getSimpleName());
+            for (AnnotationModel annotation : type.getAnnotations()) {
+                sb.append(" @").append(annotation.getType().getName());
+            }
+            if (type instanceof ExtensibleType) {
+                ExtensibleType<?> extensible = (ExtensibleType<?>) type;
+                sb.append(" extends ").append(extensible.getParent() == null ? null : extensible.getParent().getName());
+                sb.append(" implements ").append(extensible.getInterfaces().size() + extensible.getParameterizedInterfaces().size());
+            }
+            
+            Set<String> methods = new TreeSet<String>();
+            for (MethodModel method : type.getMethods()) {
+                methods.add(method.getName() + method.getSignature());
+            }
+            sb.append(' ').append(methods);
+            
+            retVal.add(sb.toString());
+        }
+        return retVal;
+    }
+    
+    /**
+     * The model of a jar file visited in chunks, directly and from the cache,
+     * is the same as when it is visited serially
+     */
+    @Test
+    public void testChunkedModelIsTheSame() throws IOException, InterruptedException {
+        Set<String> serial = describe(parse(0, null));
+        
+        Types chunked = parse(3, null);
+        Assert.assertEquals(serial, describe(chunked));
+        
+        ExtensibleType<?> pathRouteBuilder = (ExtensibleType<?>) chunked.getBy(PathRouteBuilder.class.getName());
+        Assert.assertEquals(1, pathRouteBuilder.getParameterizedInterfaces().size());
+        
+        // Recorded by several threads, then replayed
+        Assert.assertEquals(serial, describe(parse(3, cacheDirectory)));
+        Assert.assertEquals(1, cacheDirectory.list().length);
+        Assert.assertEquals(serial, describe(parse(3, cacheDirectory)));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.classmodel.reflect.test.filter;
+
+import org.glassfish.hk2.classmodel.reflect.*;
+import org.glassfish.hk2.classmodel.reflect.test.model.SecurePaymentProcessor;
+import org.glassfish.hk2.classmodel.reflect.test.model.SynchronousPaymentProcessor;
+import org.glassfish.hk2.classmodel.reflect.test.ordering.MethodDeclarationOrderTest;
+import org.glassfish.hk2.classmodel.reflect.test.parameterized.PathRouteBuilder;
+import org.glassfish.hk2.classmodel.reflect.util.ParsingConfig;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the models of classes that cannot carry any of the annotations of interest
+ * 
+ * @author jwells
+ */
+public class AnnotationFilterTest {
+    
+    private static Types parse(final Set<String> annotationsOfInterest) throws IOException, InterruptedException {
+        File modelDir = new File(new File(System.getProperty("user.dir")), "target" + File.separator + "test-classes");
+        
+        ParsingContext pc = new ParsingContext.Builder().config(new ParsingConfig() {
+            @Override
+            public Set<String> getAnnotationsOfInterest() {
+                return annotationsOfInterest;
+            }
+
+            @Override
+            public Set<String> getTypesOfInterest() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public boolean modelUnAnnotatedMembers() {
+                return true;
+            }
+        }).build();
+        
+        Parser parser = new Parser(pc);
+        parser.parse(modelDir, null);
+        Exception[] exceptions = parser.awaitTermination(100, TimeUnit.SECONDS);
+        Assert.assertTrue("Exceptions returned", exceptions == null || exceptions.length == 0);
+        parser.close();
+        
+        return pc.getTypes();
+    }
+    
+    private static Set<String> describeHierarchy(Types types) {
+        Set<String> retVal = new TreeSet<String>();
+        for (Type type : types.getAllTypes()) {
+            // Types only referenced from the members of deeply visited classes are left out
+            if (type.getDefiningURIs().isEmpty()) continue;
+            
+            StringBuilder sb = new StringBuilder(type.getName()).append(' ').append(type.getClass().getSimpleName());
+            for (AnnotationModel annotation : type.getAnnotations()) {
+                sb.append(" @").append(annotation.getType().getName()).append(annotation.getValues());
+            }
+            if (type instanceof ExtensibleType) {
+                ExtensibleType<?> extensible = (ExtensibleType<?>) type;
+                sb.append(" extends ").append(extensible.getParent() == null ? null : extensible.getParent().getName());
+                
+                Set<String> interfaces = new TreeSet<String>();
+                for (InterfaceModel intf : extensible.getInterfaces()) {
+                    interfaces.add(intf.getName());
+                }
+                for (ParameterizedInterfaceModel intf : extensible.getParameterizedInterfaces()) {
+                    interfaces.add(intf.getName());
+                }
+                sb.append(" implements ").append(interfaces);
+            }
+            retVal.add(sb.toString());
+        }
+        return retVal;
+    }
+    
+    /**
+     * Only the classes annotated with an annotation of interest have their
+     * members modelled, and every class has the same hierarchy and annotations
+     * as when all classes are visited completely
+     */
+    @Test
+    public void testClassesWithoutAnnotationsOfInterest() throws IOException, InterruptedException {
+        Set<String> ignored = Collections.singleton(Ignore.class.getName());
+        Types filtered = parse(ignored);
+        
+        Type annotated = filtered.getBy(MethodDeclarationOrderTest.class.getName());
+        Assert.assertEquals(4, annotated.getMethods().size());
+        
+        ExtensibleType<?> unannotated = (ExtensibleType<?>) filtered.getBy(PathRouteBuilder.class.getName());
+        Assert.assertTrue(unannotated.getMethods().isEmpty());
+        Assert.assertEquals(1, unannotated.getParameterizedInterfaces().size());
+        
+        Type otherAnnotation = filtered.getBy(SynchronousPaymentProcessor.class.getName());
+        Assert.assertTrue(otherAnnotation.getMethods().isEmpty());
+        Assert.assertEquals(1, otherAnnotation.getAnnotations().size());
+        
+        ClassModel subclass = (ClassModel) filtered.getBy(SecurePaymentProcessor.class.getName());
+        Assert.assertSame(otherAnnotation, subclass.getParent());
+        
+        Assert.assertEquals(describeHierarchy(parse(Collections.<String>emptySet())), describeHierarchy(filtered));
+    }
+}
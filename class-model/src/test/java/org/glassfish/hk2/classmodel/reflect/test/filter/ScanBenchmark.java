@@ -0,0 +1,140 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.classmodel.reflect.test.filter;
+
+import org.glassfish.hk2.classmodel.reflect.Parser;
+import org.glassfish.hk2.classmodel.reflect.ParsingContext;
+import org.glassfish.hk2.classmodel.reflect.util.ParsingConfig;
+import org.junit.Ignore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * main program that reports how many classes per second are scanned
+ * from all the jar files found under a directory, such as a local
+ * maven repository
+ * 
+ * @author jwells
+ */
+@Ignore
+public class ScanBenchmark {
+    private final static int ROUNDS = 5;
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("usage : ScanBenchmark <directory> [annotationOfInterest]*");
+            return;
+        }
+        
+        List<File> jars = new ArrayList<File>();
+        findJars(new File(args[0]), jars);
+        
+        int classes = 0;
+        for (File jar : jars) {
+            ZipFile zip = new ZipFile(jar);
+            try {
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    if (entries.nextElement().getName().endsWith(".class")) classes++;
+                }
+            }
+            finally {
+                zip.close();
+            }
+        }
+        
+        final Set<String> annotationsOfInterest = new HashSet<String>(Arrays.asList(args).subList(1, args.length));
+        for (int round = 0; round < ROUNDS; round++) {
+            ParsingContext pc = new ParsingContext.Builder().config(new ParsingConfig() {
+                @Override
+                public Set<String> getAnnotationsOfInterest() {
+                    return annotationsOfInterest;
+                }
+
+                @Override
+                public Set<String> getTypesOfInterest() {
+                    return Collections.emptySet();
+                }
+
+                @Override
+                public boolean modelUnAnnotatedMembers() {
+                    return false;
+                }
+            }).build();
+            
+            long start = System.currentTimeMillis();
+            Parser parser = new Parser(pc);
+            for (File jar : jars) {
+                parser.parse(jar, null);
+            }
+            parser.awaitTermination(10, TimeUnit.MINUTES);
+            parser.close();
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+            
+            System.out.println("Scanned " + classes + " classes of " + jars.size() + " jars in " + elapsed +
+                    "ms, " + (classes * 1000L / elapsed) + " classes/s");
+        }
+    }
+    
+    private static void findJars(File dir, List<File> jars) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        
+        for (File file : files) {
+            if (file.isDirectory()) {
+                findJars(file, jars);
+            }
+            else if (file.getName().endsWith(".jar")) {
+                jars.add(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.DynamicConfigurationListener;
+import org.glassfish.hk2.api.InstanceLifecycleListener;
+import org.glassfish.hk2.api.messaging.Topic;
+import org.glassfish.hk2.api.messaging.TopicDistributionService;
+import org.glassfish.hk2.utilities.AsyncTopicDistributionConfiguration;
+import org.glassfish.hk2.utilities.AsyncTopicDistributionConfiguration.BackpressurePolicy;
+import org.glassfish.hk2.utilities.AsyncTopicDistributionMetrics;
+import org.jvnet.hk2.annotations.ContractsProvided;
+import org.jvnet.hk2.annotations.Optional;
+
+/**
+ * This is the asynchronous implementation of the TopicDistributionService.
+ * The subscribers of a message are found on the publishing thread, after which
+ * the message is put into a bounded queue belonging to each subscriber.  Each
+ * queue is drained in batches by at most one thread of the executor at a time,
+ * and hence messages are delivered to a subscriber in the order in which they
+ * were queued
+ * 
+ * @author jwells
+ */
+@Singleton
+@Named(TopicDistributionService.HK2_DEFAULT_TOPIC_DISTRIBUTOR)
+@ContractsProvided({TopicDistributionService.class, InstanceLifecycleListener.class, DynamicConfigurationListener.class,
+    AsyncTopicDistributionMetrics.class})
+public class AsyncTopicDistributionService extends DefaultTopicDistributionService implements AsyncTopicDistributionMetrics {
+    private static final ThreadFactory THREAD_FACTORY = new AsyncTopicThreadFactory();
+    
+    private static final Executor DEFAULT_EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60L, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(true),
+            THREAD_FACTORY);
+    
+    private final ConcurrentHashMap<SubscriberInfo, SubscriberQueue> queues = new ConcurrentHashMap<SubscriberInfo, SubscriberQueue>();
+    
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maximumLatency = new AtomicLong();
+    
+    private final Executor executor;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final BackpressurePolicy backpressurePolicy;
+    
+    @Inject
+    private AsyncTopicDistributionService(@Optional AsyncTopicDistributionConfiguration configuration) {
+        if (configuration == null) configuration = new AsyncTopicDistributionConfiguration();
+        
+        executor = (configuration.getExecutor() == null) ? DEFAULT_EXECUTOR : configuration.getExecutor() ;
+        queueCapacity = configuration.getQueueCapacity();
+        batchSize = configuration.getBatchSize();
+        backpressurePolicy = configuration.getBackpressurePolicy();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.internal.DefaultTopicDistributionService#distributeMessage(org.glassfish.hk2.api.messaging.Topic, java.lang.Object)
+     */
+    @Override
+    public void distributeMessage(Topic<?> topic, Object message) {
+        List<FireResults> fireResults = getFireResults(topic);
+        if (fireResults.isEmpty()) return;
+        
+        long now = System.nanoTime();
+        
+        // Every target of the same subscriber shares a queue
+        LinkedHashMap<SubscriberInfo, List<FireResults>> bySubscriber = new LinkedHashMap<SubscriberInfo, List<FireResults>>();
+        for (FireResults fireResult : fireResults) {
+            List<FireResults> subscriberResults = bySubscriber.get(fireResult.subscriberInfo);
+            if (subscriberResults == null) {
+                subscriberResults = new LinkedList<FireResults>();
+                bySubscriber.put(fireResult.subscriberInfo, subscriberResults);
+            }
+            
+            subscriberResults.add(fireResult);
+        }
+        
+        for (Map.Entry<SubscriberInfo, List<FireResults>> entry : bySubscriber.entrySet()) {
+            SubscriberQueue queue = getQueue(entry.getKey());
+            if (queue == null) continue;
+            
+            queue.enqueue(new Delivery(topic, message, entry.getValue(), now));
+        }
+    }
+    
+    private SubscriberQueue getQueue(SubscriberInfo subscriberInfo) {
+        SubscriberQueue retVal = queues.get(subscriberInfo);
+        if (retVal != null) return retVal;
+        
+        retVal = new SubscriberQueue();
+        SubscriberQueue existing = queues.putIfAbsent(subscriberInfo, retVal);
+        if (existing != null) return existing;
+        
+        if (subscriberInfo.removed) {
+            // Raced with the removal of the subscriber, which has already
+            // tried to remove its queue
+            queues.remove(subscriberInfo);
+            return null;
+        }
+        
+        return retVal;
+    }
+    
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.internal.DefaultTopicDistributionService#subscriberRemoved(org.glassfish.hk2.internal.DefaultTopicDistributionService.SubscriberInfo)
+     */
+    @Override
+    /* package */ void subscriberRemoved(SubscriberInfo subscriberInfo) {
+        // Messages already queued are still delivered by whoever holds the queue
+        queues.remove(subscriberInfo);
+    }
+    
+    private void deliver(Delivery delivery) {
+        try {
+            fireAll(delivery.topic, delivery.message, delivery.fireResults);
+        }
+        finally {
+            long latency = System.nanoTime() - delivery.queuedAt;
+            
+            delivered.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            
+            long currentMax;
+            while (latency > (currentMax = maximumLatency.get())) {
+                if (maximumLatency.compareAndSet(currentMax, latency)) break;
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.AsyncTopicDistributionMetrics#getQueueDepth()
+     */
+    @Override
+    public int getQueueDepth() {
+        int retVal = 0;
+        for (SubscriberQueue queue : queues.values()) {
+            retVal += queue.deliveries.size();
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.AsyncTopicDistributionMetrics#getMaximumQueueDepth()
+     */
+    @Override
+    public int getMaximumQueueDepth() {
+        int retVal = 0;
+        for (SubscriberQueue queue : queues.values()) {
+            retVal = Math.max(retVal, queue.deliveries.size());
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.AsyncTopicDistributionMetrics#getDeliveredCount()
+     */
+    @Override
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.AsyncTopicDistributionMetrics#getDroppedCount()
+     */
+    @Override
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.AsyncTopicDistributionMetrics#getAverageLatency()
+     */
+    @Override
+    public long getAverageLatency() {
+        long count = delivered.get();
+        if (count == 0L) return 0L;
+        
+        return totalLatency.get() / count;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.AsyncTopicDistributionMetrics#getMaximumLatency()
+     */
+    @Override
+    public long getMaximumLatency() {
+        return maximumLatency.get();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.utilities.AsyncTopicDistributionMetrics#reset()
+     */
+    @Override
+    public void reset() {
+        delivered.set(0L);
+        dropped.set(0L);
+        totalLatency.set(0L);
+        maximumLatency.set(0L);
+    }
+    
+    @Override
+    public String toString() {
+        return "AsyncTopicDistributionService(" + queueCapacity + "," + batchSize + "," +
+            backpressurePolicy + "," + System.identityHashCode(this) + ")";
+    }
+    
+    /**
+     * The bounded queue of a single subscriber.  Deliveries are only ever
+     * made with the drain lock held, which is what keeps them in order
+     * 
+     * @author jwells
+     *
+     */
+    private class SubscriberQueue implements Runnable {
+        private final ArrayBlockingQueue<Delivery> deliveries = new ArrayBlockingQueue<Delivery>(queueCapacity);
+        private final ReentrantLock drainLock = new ReentrantLock();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        
+        private void enqueue(Delivery delivery) {
+            if (deliveries.offer(delivery)) {
+                schedule();
+                return;
+            }
+            
+            // The queue is full
+            switch (backpressurePolicy) {
+            case BLOCK:
+                if (drainLock.isHeldByCurrentThread()) {
+                    // A subscriber publishing to itself would wait forever
+                    runOnCaller(delivery);
+                    return;
+                }
+                
+                try {
+                    deliveries.put(delivery);
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    
+                    dropped.incrementAndGet();
+                    return;
+                }
+                
+                schedule();
+                return;
+            case DROP:
+                dropped.incrementAndGet();
+                return;
+            case CALLER_RUNS:
+            default:
+                runOnCaller(delivery);
+                return;
+            }
+        }
+        
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) return;
+            
+            try {
+                executor.execute(this);
+            }
+            catch (RejectedExecutionException ree) {
+                scheduled.set(false);
+                
+                runOnCaller(null);
+            }
+        }
+        
+        /**
+         * Delivers everything in the queue and then the given delivery on
+         * the calling thread
+         * 
+         * @param delivery The delivery to make after the queue is empty, may be null
+         */
+        private void runOnCaller(Delivery delivery) {
+            drainLock.lock();
+            try {
+                Delivery queued;
+                while ((queued = deliveries.poll()) != null) {
+                    deliver(queued);
+                }
+                
+                if (delivery != null) {
+                    deliver(delivery);
+                }
+            }
+            finally {
+                drainLock.unlock();
+            }
+        }
+
+        /**
+         * Delivers one batch and gives the thread back to the executor,
+         * rescheduling itself if there is more to deliver
+         */
+        @Override
+        public void run() {
+            try {
+                drainLock.lock();
+                try {
+                    ArrayList<Delivery> batch = new ArrayList<Delivery>(Math.min(batchSize, deliveries.size()));
+                    deliveries.drainTo(batch, batchSize);
+                    
+                    for (Delivery delivery : batch) {
+                        deliver(delivery);
+                    }
+                }
+                finally {
+                    drainLock.unlock();
+                }
+            }
+            finally {
+                scheduled.set(false);
+            }
+            
+            if (!deliveries.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+    
+    private static class Delivery {
+        private final Topic<?> topic;
+        private final Object message;
+        private final List<FireResults> fireResults;
+        private final long queuedAt;
+        
+        private Delivery(Topic<?> topic, Object message, List<FireResults> fireResults, long queuedAt) {
+            this.topic = topic;
+            this.message = message;
+            this.fireResults = fireResults;
+            this.queuedAt = queuedAt;
+        }
+    }
+    
+    private static class AsyncTopicThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread activeThread = new Thread(runnable, "hk2-topic-distributor-" + threadNumber.getAndIncrement());
+            activeThread.setDaemon(true);
+                
+            return activeThread;
+        }
+    }
+
+}
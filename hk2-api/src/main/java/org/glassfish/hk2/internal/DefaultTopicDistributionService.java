@@ -44,14 +44,14 @@ import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -108,6 +108,11 @@ public class DefaultTopicDistributionService implements
     private final HashMap<ActiveDescriptor<?>, Set<Class<?>>> descriptor2Classes = new HashMap<ActiveDescriptor<?>, Set<Class<?>>>();
     private final HashMap<ActivatorClassKey, List<SubscriberInfo>> class2Subscribers = new HashMap<ActivatorClassKey, List<SubscriberInfo>>();
     
+    /* Only subscribers with at least one target are in the index */
+    private final HashMap<SubscriberKey, Set<SubscriberInfo>> subscriberIndex = new HashMap<SubscriberKey, Set<SubscriberInfo>>();
+    /* Filled in under the read lock, cleared under the write lock whenever the keys of the index change */
+    private final ConcurrentHashMap<Class<?>, List<SubscriberKey>> eventClass2Keys = new ConcurrentHashMap<Class<?>, List<SubscriberKey>>();
+    
     private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
     private final WriteLock wLock = readWriteLock.writeLock();
     private final ReadLock rLock = readWriteLock.readLock();
@@ -115,7 +120,8 @@ public class DefaultTopicDistributionService implements
     private static void fire(Object message, Method subscription, SubscriberInfo subscriptionInfo, Object target, ServiceLocator locator) throws Throwable {
         Object arguments[] = new Object[subscriptionInfo.otherInjectees.length];
         
-        List<ServiceHandle<?>> destroyMe = new LinkedList<ServiceHandle<?>>();
+        // Only allocated if there are PerLookup services to destroy
+        List<ServiceHandle<?>> destroyMe = null;
         try {
             for (int lcv = 0; lcv < subscriptionInfo.otherInjectees.length; lcv++) {
                 InjecteeImpl injectee = subscriptionInfo.otherInjectees[lcv];
@@ -142,6 +148,9 @@ public class DefaultTopicDistributionService implements
                     ServiceHandle<?> handle = locator.getServiceHandle(injecteeDescriptor);
                     if (injecteeDescriptor.getScope().equals(PerLookup.class.getName())) {
                         // Only will live as long as the method
+                        if (destroyMe == null) {
+                            destroyMe = new LinkedList<ServiceHandle<?>>();
+                        }
                         destroyMe.add(handle);
                     }
                     
@@ -153,82 +162,147 @@ public class DefaultTopicDistributionService implements
             ReflectionHelper.invoke(target, subscription, arguments, locator.getNeutralContextClassLoader());
         }
         finally {
-            for (ServiceHandle<?> dead : destroyMe) {
-                dead.destroy();
+            if (destroyMe != null) {
+                for (ServiceHandle<?> dead : destroyMe) {
+                    dead.destroy();
+                }
             }
         }
     }
     
-    private List<FireResults> handleDescriptorToClass(ActiveDescriptor<?> descriptor, Class<?> clazz, Type eventType, Topic<?> topic) {
-        LinkedList<FireResults> retVal = new LinkedList<FireResults>();
+    private static void handleSubscriber(SubscriberInfo subscriberInfo, Type eventType, Topic<?> topic, List<FireResults> fireResults) {
+        Type subscriptionType = subscriberInfo.eventType;
         
-        List<SubscriberInfo> subscribers = class2Subscribers.get(new ActivatorClassKey(descriptor, clazz));
-        if (subscribers == null) subscribers = Collections.emptyList();
+        if (!TypeChecker.isRawTypeSafe(subscriptionType, eventType)) {
+            // Not a type match
+            return;
+        }
         
-        for (SubscriberInfo subscriberInfo : subscribers) {    
-            Type subscriptionType = subscriberInfo.eventType;
-            
-            if (!TypeChecker.isRawTypeSafe(subscriptionType, eventType)) {
-                // Not a type match
-                continue;
+        if ((subscriberInfo.unqualified != null) && !topic.getTopicQualifiers().isEmpty()) {
+            if (subscriberInfo.unqualified.value().length == 0) {
+                // publisher must not have any qualifiers,
+                // but it DOES have some, so forget it!
+                return;
             }
-                
-            if (!subscriberInfo.eventQualifiers.isEmpty()) {
-                if (!ReflectionHelper.annotationContainsAll(topic.getTopicQualifiers(), subscriberInfo.eventQualifiers)) {
-                    // The qualifiers do not match
-                    continue;
-                }
+            
+            Set<Class<? extends Annotation>> topicQualifierClasses = new HashSet<Class<? extends Annotation>>();
+            for (Annotation topicQualifier : topic.getTopicQualifiers()) {
+                topicQualifierClasses.add(topicQualifier.annotationType());
             }
             
-            if ((subscriberInfo.unqualified != null) && !topic.getTopicQualifiers().isEmpty()) {
-                if (subscriberInfo.unqualified.value().length == 0) {
-                    // publisher must not have any qualifiers,
-                    // but it DOES have some, so forget it!
-                    continue;
-                }
-                
-                Set<Class<? extends Annotation>> topicQualifierClasses = new HashSet<Class<? extends Annotation>>();
-                for (Annotation topicQualifier : topic.getTopicQualifiers()) {
-                    topicQualifierClasses.add(topicQualifier.annotationType());
-                }
-                    
-                boolean found = false;
-                for (Class<? extends Annotation> verbotenQualifier : subscriberInfo.unqualified.value()) {
-                    if (topicQualifierClasses.contains(verbotenQualifier)) {
-                        found = true;
-                        break;
-                    }
-                }
-                    
-                if (found) {
+            for (Class<? extends Annotation> verbotenQualifier : subscriberInfo.unqualified.value()) {
+                if (topicQualifierClasses.contains(verbotenQualifier)) {
                     // Found one of the qualifiers we are not allowed to have!
-                    continue;
+                    return;
                 }
             }
-            
-            for (WeakReference<Object> targetReference : subscriberInfo.targets) {
-                Object target = targetReference.get();
-                retVal.add(new FireResults(subscriberInfo.method, subscriberInfo, target));
-            }    
         }
         
+        for (WeakReference<Object> targetReference : subscriberInfo.targets) {
+            Object target = targetReference.get();
+            fireResults.add(new FireResults(subscriberInfo.method, subscriberInfo, target));
+        }
+    }
+    
+    /**
+     * Must be called with at least the read lock held
+     * 
+     * @param eventClass The raw class of the event being distributed
+     * @return The keys of the index whose event class is assignable from the event class
+     */
+    private List<SubscriberKey> getMatchingKeys(Class<?> eventClass) {
+        List<SubscriberKey> retVal = eventClass2Keys.get(eventClass);
+        if (retVal != null) return retVal;
+        
+        retVal = new LinkedList<SubscriberKey>();
+        for (SubscriberKey key : subscriberIndex.keySet()) {
+            if (key.eventClass.isAssignableFrom(eventClass)) {
+                retVal.add(key);
+            }
+        }
+        
+        eventClass2Keys.put(eventClass, retVal);
+        
         return retVal;
     }
+    
+    /**
+     * Must be called with the write lock held
+     */
+    private void addToIndex(SubscriberInfo subscriberInfo) {
+        SubscriberKey key = subscriberInfo.key;
+        if (key == null) return;
+        
+        Set<SubscriberInfo> infos = subscriberIndex.get(key);
+        if (infos == null) {
+            infos = new LinkedHashSet<SubscriberInfo>();
+            subscriberIndex.put(key, infos);
+            
+            eventClass2Keys.clear();
+        }
+        
+        infos.add(subscriberInfo);
+    }
+    
+    /**
+     * Must be called with the write lock held
+     */
+    private void removeFromIndex(SubscriberInfo subscriberInfo) {
+        SubscriberKey key = subscriberInfo.key;
+        if (key == null) return;
+        
+        Set<SubscriberInfo> infos = subscriberIndex.get(key);
+        if (infos == null) return;
+        
+        infos.remove(subscriberInfo);
+        if (infos.isEmpty()) {
+            subscriberIndex.remove(key);
+            
+            eventClass2Keys.clear();
+        }
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.messaging.TopicDistributionService#distributeMessage(org.glassfish.hk2.api.messaging.Topic, java.lang.Object)
      */
     @Override
     public void distributeMessage(Topic<?> topic, Object message) {
+        List<FireResults> fireResults = getFireResults(topic);
         
+        // Do everything else outside the lock
+        fireAll(topic, message, fireResults);
+    }
+    
+    /**
+     * Finds every subscriber (and subscriber target) that should receive
+     * a message published to the given topic.  Takes the read lock
+     * 
+     * @param topic The topic the message is being published to
+     * @return The subscribers to fire, in subscriber order.  Dead targets have
+     * a null target
+     */
+    /* package */ List<FireResults> getFireResults(Topic<?> topic) {
         Type eventType = topic.getTopicType();
         
         LinkedList<FireResults> fireResults = new LinkedList<FireResults>();
+        
+        Class<?> eventClass = ReflectionHelper.getRawClass(eventType);
+        if (eventClass == null) return fireResults;
+        eventClass = ReflectionHelper.translatePrimitiveType(eventClass);
+        
         rLock.lock();
         try {
-            for (Map.Entry<ActiveDescriptor<?>, Set<Class<?>>> d2cEntry : descriptor2Classes.entrySet()) {
-                for (Class<?> clazz : d2cEntry.getValue()) {
-                    fireResults.addAll(handleDescriptorToClass(d2cEntry.getKey(), clazz, eventType, topic));
+            // Only the subscribers that could possibly take this event are looked at
+            for (SubscriberKey key : getMatchingKeys(eventClass)) {
+                if (!key.eventQualifiers.isEmpty()) {
+                    if (!ReflectionHelper.annotationContainsAll(topic.getTopicQualifiers(), key.eventQualifiers)) {
+                        // The qualifiers do not match
+                        continue;
+                    }
+                }
+                
+                for (SubscriberInfo subscriberInfo : subscriberIndex.get(key)) {
+                    handleSubscriber(subscriberInfo, eventType, topic, fireResults);
                 }
             }
         }
@@ -236,7 +310,21 @@ public class DefaultTopicDistributionService implements
             rLock.unlock();
         }
         
-        // Do everything else outside the lock
+        return fireResults;
+    }
+    
+    /**
+     * Invokes the given subscribers with the message, reports any failures
+     * to the error services and cleans up dead targets.  Must be called
+     * with no locks held
+     * 
+     * @param topic The topic the message was published to
+     * @param message The message to deliver
+     * @param fireResults The subscribers to invoke, as returned from {@link #getFireResults(Topic)}
+     */
+    /* package */ void fireAll(Topic<?> topic, Object message, List<FireResults> fireResults) {
+        if (fireResults.isEmpty()) return;
+        
         Set<SubscriberInfo> hasDeadReferences = new HashSet<SubscriberInfo>();
         
         MultiException errors = null;
@@ -290,6 +378,10 @@ public class DefaultTopicDistributionService implements
                             iterator.remove();
                         }
                     }
+                    
+                    if (sInfo.targets.isEmpty()) {
+                        removeFromIndex(sInfo);
+                    }
                 }
             
             }
@@ -321,6 +413,11 @@ public class DefaultTopicDistributionService implements
             
                 if (existingMethods != null) {
                     for (SubscriberInfo info : existingMethods) {
+                        if (info.targets.isEmpty()) {
+                            // Was taken out of the index when its last target went away
+                            addToIndex(info);
+                        }
+                        
                         info.targets.add(new WeakReference<Object>(target));
                     }
                 
@@ -401,6 +498,7 @@ public class DefaultTopicDistributionService implements
             si.targets.add(new WeakReference<Object>(target));
             
             existingMethods.add(si);
+            addToIndex(si);
         }
         
     }
@@ -524,6 +622,10 @@ public class DefaultTopicDistributionService implements
                         targetIterator.remove();
                     }
                 }
+                
+                if (subscriberInfo.targets.isEmpty()) {
+                    removeFromIndex(subscriberInfo);
+                }
             }
         }
         
@@ -570,7 +672,15 @@ public class DefaultTopicDistributionService implements
                 if (clazzes == null) continue;
                 
                 for (Class<?> clazz : clazzes) {
-                    class2Subscribers.remove(new ActivatorClassKey(parent, clazz));
+                    List<SubscriberInfo> subscribers = class2Subscribers.remove(new ActivatorClassKey(parent, clazz));
+                    if (subscribers == null) continue;
+                    
+                    for (SubscriberInfo subscriberInfo : subscribers) {
+                        removeFromIndex(subscriberInfo);
+                        
+                        subscriberInfo.removed = true;
+                        subscriberRemoved(subscriberInfo);
+                    }
                 }
             }
         }
@@ -581,13 +691,25 @@ public class DefaultTopicDistributionService implements
         
     }
     
-    private static class SubscriberInfo {
+    /**
+     * Called with the write lock held when a subscriber is permanently
+     * removed because its descriptor has been removed from the locator
+     * 
+     * @param subscriberInfo The subscriber that will never be fired again
+     */
+    /* package */ void subscriberRemoved(SubscriberInfo subscriberInfo) {
+        // Nothing to do in the synchronous case
+    }
+    
+    /* package */ static class SubscriberInfo {
         private final Method method;
         private final LinkedList<WeakReference<Object>> targets = new LinkedList<WeakReference<Object>>();
         private final Type eventType;
         private final Set<Annotation> eventQualifiers;
         private final Unqualified unqualified;
         private final InjecteeImpl otherInjectees[];  // There will be a null in the slot for the event
+        private final SubscriberKey key;  // null if this subscriber can never match any event
+        /* package */ volatile boolean removed;  // set once the descriptor of this subscriber is gone
         
         private SubscriberInfo(Method method,
                 Type eventType,
@@ -599,12 +721,52 @@ public class DefaultTopicDistributionService implements
             this.eventQualifiers = eventQualifiers;
             this.unqualified = unqualified;
             this.otherInjectees = otherInjectees;
+            
+            Class<?> eventClass = ReflectionHelper.getRawClass(eventType);
+            if (eventClass == null) {
+                key = null;
+            }
+            else {
+                key = new SubscriberKey(ReflectionHelper.translatePrimitiveType(eventClass), eventQualifiers);
+            }
+        }
+    }
+    
+    /**
+     * The key of the subscriber index.  Subscribers are indexed by the raw
+     * class of their event type and by their event qualifiers
+     * 
+     * @author jwells
+     *
+     */
+    private static class SubscriberKey {
+        private final Class<?> eventClass;
+        private final Set<Annotation> eventQualifiers;
+        private final int hashCode;
+        
+        private SubscriberKey(Class<?> eventClass, Set<Annotation> eventQualifiers) {
+            this.eventClass = eventClass;
+            this.eventQualifiers = eventQualifiers;
+            this.hashCode = eventClass.hashCode() ^ eventQualifiers.hashCode();
+        }
+        
+        public int hashCode() {
+            return hashCode;
+        }
+        
+        public boolean equals(Object o) {
+            if (o == null) return false;
+            if (!(o instanceof SubscriberKey)) return false;
+            
+            SubscriberKey other = (SubscriberKey) o;
+            
+            return eventClass.equals(other.eventClass) && eventQualifiers.equals(other.eventQualifiers);
         }
     }
     
-    private static class FireResults {
+    /* package */ static class FireResults {
         private final Method subscriberMethod;
-        private final SubscriberInfo subscriberInfo;
+        /* package */ final SubscriberInfo subscriberInfo;
         private final Object target;
         
         private FireResults(Method subscriberMethod, SubscriberInfo subscriberInfo, Object target) {
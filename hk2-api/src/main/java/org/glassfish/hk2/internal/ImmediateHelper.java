@@ -69,7 +69,9 @@ import org.glassfish.hk2.api.ValidationInformation;
 import org.glassfish.hk2.api.ValidationService;
 import org.glassfish.hk2.api.Validator;
 import org.glassfish.hk2.api.Visibility;
+import org.glassfish.hk2.utilities.ImmediateConfiguration;
 import org.glassfish.hk2.utilities.ImmediateErrorHandler;
+import org.glassfish.hk2.utilities.general.GeneralUtilities;
 
 /**
  * The implementation of the immediate context.  This should NOT be added
@@ -106,8 +108,13 @@ public class ImmediateHelper implements DynamicConfigurationListener, Runnable,
             new SynchronousQueue<Runnable>(true),
             THREAD_FACTORY);
     
+    /** Null if the JVM does not support virtual threads */
+    private static final Executor VIRTUAL_EXECUTOR =
+            GeneralUtilities.getVirtualThreadPerTaskExecutor(ImmediateThread.class.getSimpleName() + "-");
+    
     private final Filter validationFilter;
     private final ServiceLocator locator;
+    private volatile Executor executor;
     
     private final HashMap<ActiveDescriptor<?>, HandleAndService> currentImmediateServices = new HashMap<ActiveDescriptor<?>, HandleAndService>();
     private final HashSet<ActiveDescriptor<?>> creating = new HashSet<ActiveDescriptor<?>>();
@@ -225,13 +232,15 @@ public class ImmediateHelper implements DynamicConfigurationListener, Runnable,
             return;
         }
         
+        Executor localExecutor = getExecutor();
+        
         synchronized (queueLock) {
             outstandingJob = true;
             
             if (!threadAvailable) {
                 threadAvailable = true;
                 
-                DEFAULT_EXECUTOR.execute(this);
+                localExecutor.execute(this);
             }
             else if (waitingForWork) {
                 queueLock.notify();
@@ -319,6 +328,34 @@ public class ImmediateHelper implements DynamicConfigurationListener, Runnable,
         
     }
     
+    /**
+     * The configuration is looked up when the first job is run rather than
+     * injected, as this service can be created while the configuration is
+     * still being committed
+     * 
+     * @return The executor on which to run the job
+     */
+    private Executor getExecutor() {
+        if (executor != null) return executor;
+        
+        ImmediateConfiguration configuration = locator.getService(ImmediateConfiguration.class);
+        
+        if (configuration == null) {
+            executor = DEFAULT_EXECUTOR;
+        }
+        else if (configuration.getExecutor() != null) {
+            executor = configuration.getExecutor();
+        }
+        else if (configuration.isUseVirtualThreads() && (VIRTUAL_EXECUTOR != null)) {
+            executor = VIRTUAL_EXECUTOR;
+        }
+        else {
+            executor = DEFAULT_EXECUTOR;
+        }
+        
+        return executor;
+    }
+    
     private List<ActiveDescriptor<?>> getImmediateServices() {
         List<ActiveDescriptor<?>> inScopeAndInThisLocator = locator.getDescriptors(validationFilter);
         
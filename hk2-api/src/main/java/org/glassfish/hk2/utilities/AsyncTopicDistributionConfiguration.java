@@ -0,0 +1,199 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The configuration of the asynchronous HK2 implementation of
+ * Topic distribution enabled with {@link AsyncTopicDistributionModule}.
+ * Every subscriber has its own bounded queue of messages, which is
+ * drained in batches on the configured executor.  Messages are
+ * always delivered to a single subscriber in the order they were
+ * queued for that subscriber
+ * 
+ * @author jwells
+ *
+ */
+public class AsyncTopicDistributionConfiguration {
+    /** The default capacity of the queue of each subscriber */
+    public final static int DEFAULT_QUEUE_CAPACITY = 1024;
+    
+    /** The default maximum number of messages delivered to a subscriber in one batch */
+    public final static int DEFAULT_BATCH_SIZE = 64;
+    
+    /**
+     * What to do when a message is published and the
+     * queue of one of its subscribers is full
+     * 
+     * @author jwells
+     *
+     */
+    public enum BackpressurePolicy {
+        /**
+         * The publishing thread waits until there is room in the queue
+         * of the subscriber.  If the publishing thread is itself the thread
+         * delivering to that subscriber this behaves as {@link #CALLER_RUNS}
+         */
+        BLOCK,
+        
+        /**
+         * The message is not delivered to the subscriber, and is counted
+         * in {@link AsyncTopicDistributionMetrics#getDroppedCount()}
+         */
+        DROP,
+        
+        /**
+         * The publishing thread delivers every message already in the queue
+         * of the subscriber and then the new message itself
+         */
+        CALLER_RUNS
+    }
+    
+    private Executor executor;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+    
+    /**
+     * Returns the executor on which messages are delivered
+     * 
+     * @return The executor on which messages are delivered, or null
+     * if the distribution service should create (and own) a pool of
+     * daemon threads sized to the number of processors
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+    
+    /**
+     * Sets the executor on which messages are delivered.  An executor
+     * given here is never shut down by the distribution service
+     * 
+     * @param executor The executor to use, or null to have the
+     * distribution service create its own
+     * @return this
+     */
+    public AsyncTopicDistributionConfiguration setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+    
+    /**
+     * Returns the maximum number of messages that can be
+     * waiting for delivery to a single subscriber
+     * 
+     * @return The capacity of the queue of each subscriber
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+    
+    /**
+     * Sets the maximum number of messages that can be
+     * waiting for delivery to a single subscriber
+     * 
+     * @param queueCapacity The capacity of the queue of each
+     * subscriber.  Must be greater than zero
+     * @return this
+     */
+    public AsyncTopicDistributionConfiguration setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0) throw new IllegalArgumentException("Invalid queue capacity " + queueCapacity);
+        
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+    
+    /**
+     * Returns the maximum number of messages delivered to a
+     * subscriber before the delivering thread is given back
+     * to the executor
+     * 
+     * @return The maximum size of a batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+    
+    /**
+     * Sets the maximum number of messages delivered to a
+     * subscriber before the delivering thread is given back
+     * to the executor
+     * 
+     * @param batchSize The maximum size of a batch.  Must
+     * be greater than zero
+     * @return this
+     */
+    public AsyncTopicDistributionConfiguration setBatchSize(int batchSize) {
+        if (batchSize <= 0) throw new IllegalArgumentException("Invalid batch size " + batchSize);
+        
+        this.batchSize = batchSize;
+        return this;
+    }
+    
+    /**
+     * Returns what happens when the queue of a subscriber is full
+     * 
+     * @return The backpressure policy.  Will not return null
+     */
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+    
+    /**
+     * Sets what happens when the queue of a subscriber is full
+     * 
+     * @param backpressurePolicy The backpressure policy.  May not be null
+     * @return this
+     */
+    public AsyncTopicDistributionConfiguration setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+        if (backpressurePolicy == null) throw new IllegalArgumentException();
+        
+        this.backpressurePolicy = backpressurePolicy;
+        return this;
+    }
+    
+    @Override
+    public String toString() {
+        return "AsyncTopicDistributionConfiguration(" + executor + "," + queueCapacity + "," +
+            batchSize + "," + backpressurePolicy + "," + System.identityHashCode(this) + ")";
+    }
+
+}
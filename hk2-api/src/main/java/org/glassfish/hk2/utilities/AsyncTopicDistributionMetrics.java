@@ -0,0 +1,113 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities;
+
+/**
+ * The asynchronous HK2 implementation of Topic distribution enabled
+ * with {@link AsyncTopicDistributionModule} is also available as a
+ * service with this contract, which can be used to monitor the
+ * delivery of messages
+ * 
+ * @author jwells
+ *
+ */
+public interface AsyncTopicDistributionMetrics {
+    /**
+     * Returns the number of messages currently waiting
+     * in the queues of all subscribers
+     * 
+     * @return The total number of messages waiting for delivery
+     */
+    public int getQueueDepth();
+    
+    /**
+     * Returns the number of messages waiting in the
+     * queue of the subscriber with the most messages
+     * waiting
+     * 
+     * @return The depth of the deepest subscriber queue
+     */
+    public int getMaximumQueueDepth();
+    
+    /**
+     * Returns the number of messages that have been
+     * delivered to a subscriber (whether or not the
+     * subscriber threw an exception)
+     * 
+     * @return The number of messages delivered
+     */
+    public long getDeliveredCount();
+    
+    /**
+     * Returns the number of messages that were not delivered
+     * to a subscriber because its queue was full and the
+     * policy is {@link AsyncTopicDistributionConfiguration.BackpressurePolicy#DROP}
+     * or because the publishing thread was interrupted while
+     * waiting for room in the queue
+     * 
+     * @return The number of messages dropped
+     */
+    public long getDroppedCount();
+    
+    /**
+     * Returns the average time between a message being published
+     * and that message having been delivered to a subscriber
+     * 
+     * @return The average delivery latency in nanoseconds, or
+     * zero if no message has been delivered
+     */
+    public long getAverageLatency();
+    
+    /**
+     * Returns the longest time between a message being published
+     * and that message having been delivered to a subscriber
+     * 
+     * @return The maximum delivery latency in nanoseconds, or
+     * zero if no message has been delivered
+     */
+    public long getMaximumLatency();
+    
+    /**
+     * Sets all of the counters and latencies back to zero.  Does
+     * not change the queues
+     */
+    public void reset();
+
+}
@@ -0,0 +1,737 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.hk2.api.ClassAnalyzer;
+import org.glassfish.hk2.api.Descriptor;
+import org.glassfish.hk2.api.DescriptorType;
+import org.glassfish.hk2.api.DescriptorVisibility;
+import org.glassfish.hk2.api.HK2Loader;
+import org.glassfish.hk2.api.PerLookup;
+import org.glassfish.hk2.utilities.general.GeneralUtilities;
+
+/**
+ * A compact binary form of a set of descriptors, as an alternative to the
+ * text form written by {@link DescriptorImpl#writeObject(java.io.PrintWriter)}.
+ * <p>
+ * All strings in the file are interned into a single table that is only decoded
+ * as the strings are needed, the file contains an index from each advertised
+ * contract to the descriptors advertising it, and every descriptor can be
+ * decoded independently of the others.  The descriptors returned from
+ * {@link #getDescriptor(int)} only decode the fields needed to bind them into
+ * a locator (the implementation, contracts, name, ranking, type, visibility,
+ * scope and qualifiers).  The rest of the fields (metadata, the proxy settings
+ * and the class analysis name) are decoded the first time any of them is
+ * asked for, which normally happens when the service is first looked up
+ * <p>
+ * The binary form of the META-INF/hk2-locator/<i>name</i> file is
+ * META-INF/hk2-locator/<i>name</i>{@link #BINARY_SUFFIX}
+ * 
+ * @author jwells
+ *
+ */
+public class BinaryDescriptorFile {
+    /** The suffix added to the name of a text descriptor file to get the name of its binary form */
+    public final static String BINARY_SUFFIX = ".bin";
+    
+    /** The first four bytes of a binary descriptor file, which spell HK2B */
+    private final static int MAGIC = 0x484B3242;
+    private final static int VERSION = 2;
+    
+    private final static int NULL_INDEX = -1;
+    
+    private final static byte NULL_BOOLEAN = 0;
+    private final static byte TRUE_BOOLEAN = 1;
+    private final static byte FALSE_BOOLEAN = 2;
+    
+    private final static byte CLASS_TYPE = 0;
+    private final static byte PROVIDE_METHOD_TYPE = 1;
+    
+    private final static byte NORMAL_VISIBILITY = 0;
+    private final static byte LOCAL_VISIBILITY = 1;
+    
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    
+    private final byte data[];
+    private final ByteBuffer buffer;
+    private final int stringOffsets[];
+    /* Racy but benign, Strings are immutable */
+    private final String strings[];
+    private final int recordOffsets[];
+    private final Map<String, int[]> contractIndex;
+    private final AtomicInteger decodedBodies = new AtomicInteger();
+    
+    private BinaryDescriptorFile(byte data[]) throws IOException {
+        this.data = data;
+        buffer = ByteBuffer.wrap(data).asReadOnlyBuffer();
+        
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("The input is not a binary descriptor file");
+            }
+            
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unknown binary descriptor file version " + version +
+                        ", expected " + VERSION);
+            }
+            
+            int numStrings = buffer.getInt();
+            stringOffsets = new int[numStrings];
+            strings = new String[numStrings];
+            for (int lcv = 0; lcv < numStrings; lcv++) {
+                stringOffsets[lcv] = buffer.position();
+                
+                int length = buffer.getInt();
+                buffer.position(buffer.position() + length);
+            }
+            
+            int numRecords = buffer.getInt();
+            recordOffsets = new int[numRecords];
+            for (int lcv = 0; lcv < numRecords; lcv++) {
+                recordOffsets[lcv] = buffer.getInt();
+            }
+            
+            int numContracts = buffer.getInt();
+            contractIndex = new HashMap<String, int[]>();
+            for (int lcv = 0; lcv < numContracts; lcv++) {
+                String contract = getString(buffer.getInt());
+                
+                int records[] = new int[buffer.getInt()];
+                for (int inner = 0; inner < records.length; inner++) {
+                    records[inner] = buffer.getInt();
+                }
+                
+                contractIndex.put(contract, records);
+            }
+            
+            int recordAreaStart = buffer.position();
+            for (int lcv = 0; lcv < numRecords; lcv++) {
+                recordOffsets[lcv] += recordAreaStart;
+            }
+        }
+        catch (RuntimeException re) {
+            // BufferUnderflowException, IllegalArgumentException and friends
+            throw new IOException("The binary descriptor file is corrupt: " + re.getMessage(), re);
+        }
+    }
+    
+    /**
+     * Returns true if the given stream contains a binary descriptor file.  The
+     * stream must support mark and reset, and will be positioned at the same
+     * place it was upon entry to this method
+     * 
+     * @param is The non-null stream to check.  Must support mark
+     * @return true if the stream appears to contain a binary descriptor file
+     * @throws IOException On an error reading the stream
+     */
+    public static boolean isBinaryDescriptorFile(InputStream is) throws IOException {
+        if (!is.markSupported()) {
+            throw new IllegalArgumentException("The stream " + is + " does not support mark");
+        }
+        
+        is.mark(4);
+        try {
+            int magic = 0;
+            for (int lcv = 0; lcv < 4; lcv++) {
+                int read = is.read();
+                if (read < 0) return false;
+                
+                magic = (magic << 8) | read;
+            }
+            
+            return magic == MAGIC;
+        }
+        finally {
+            is.reset();
+        }
+    }
+    
+    /**
+     * Reads a binary descriptor file.  The stream is read fully but is
+     * not closed
+     * 
+     * @param is The non-null stream to read
+     * @return The binary descriptor file read from the stream
+     * @throws IOException On an error reading the stream or if the stream does
+     * not contain a valid binary descriptor file
+     */
+    public static BinaryDescriptorFile readDescriptorFile(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        
+        byte chunk[] = new byte[8192];
+        int len;
+        while ((len = is.read(chunk)) >= 0) {
+            baos.write(chunk, 0, len);
+        }
+        
+        return new BinaryDescriptorFile(baos.toByteArray());
+    }
+    
+    /**
+     * Writes the given descriptors to the output stream in the binary form.  The
+     * stream is flushed but not closed.  The loader, service id and locator id of
+     * the descriptors are not written, the same as with the text form
+     * 
+     * @param descriptors The non-null list of descriptors to write
+     * @param os The non-null stream to write to
+     * @throws IOException On an error writing to the stream
+     */
+    public static void writeDescriptorFile(List<? extends Descriptor> descriptors, OutputStream os) throws IOException {
+        LinkedHashMap<String, Integer> stringTable = new LinkedHashMap<String, Integer>();
+        LinkedHashMap<String, List<Integer>> contracts = new LinkedHashMap<String, List<Integer>>();
+        int recordOffsets[] = new int[descriptors.size()];
+        
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        
+        int recordNumber = 0;
+        for (Descriptor descriptor : descriptors) {
+            recordOffsets[recordNumber] = records.size();
+            
+            writeRecord(descriptor, records, stringTable);
+            
+            for (String contract : descriptor.getAdvertisedContracts()) {
+                List<Integer> forContract = contracts.get(contract);
+                if (forContract == null) {
+                    forContract = new LinkedList<Integer>();
+                    contracts.put(contract, forContract);
+                }
+                
+                forContract.add(recordNumber);
+            }
+            
+            recordNumber++;
+        }
+        records.flush();
+        
+        // The contracts in the index are all in the string table already
+        DataOutputStream out = new DataOutputStream(os);
+        
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        
+        out.writeInt(stringTable.size());
+        for (String string : stringTable.keySet()) {
+            byte encoded[] = string.getBytes(UTF8);
+            
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+        
+        out.writeInt(recordOffsets.length);
+        for (int recordOffset : recordOffsets) {
+            out.writeInt(recordOffset);
+        }
+        
+        out.writeInt(contracts.size());
+        for (Map.Entry<String, List<Integer>> entry : contracts.entrySet()) {
+            out.writeInt(stringTable.get(entry.getKey()));
+            out.writeInt(entry.getValue().size());
+            for (Integer record : entry.getValue()) {
+                out.writeInt(record);
+            }
+        }
+        
+        recordBytes.writeTo(out);
+        
+        out.flush();
+    }
+    
+    private static void writeRecord(Descriptor descriptor, DataOutputStream out,
+            Map<String, Integer> stringTable) throws IOException {
+        // The header, which is decoded eagerly
+        out.writeInt(intern(descriptor.getImplementation(), stringTable));
+        out.writeInt(intern(descriptor.getName(), stringTable));
+        out.writeInt(descriptor.getRanking());
+        out.writeByte(DescriptorType.PROVIDE_METHOD.equals(descriptor.getDescriptorType()) ?
+                PROVIDE_METHOD_TYPE : CLASS_TYPE);
+        out.writeByte(DescriptorVisibility.LOCAL.equals(descriptor.getDescriptorVisibility()) ?
+                LOCAL_VISIBILITY : NORMAL_VISIBILITY);
+        writeStrings(descriptor.getAdvertisedContracts(), out, stringTable);
+        
+        // Scope and analysis name are normalized the same way the
+        // text form normalizes them
+        String scope = descriptor.getScope();
+        if (scope == null) scope = PerLookup.class.getName();
+        out.writeInt(intern(scope, stringTable));
+        
+        writeStrings(descriptor.getQualifiers(), out, stringTable);
+        
+        // The body, which is decoded lazily
+        Map<String, List<String>> metadata = descriptor.getMetadata();
+        if (metadata == null) metadata = Collections.emptyMap();
+        out.writeInt(metadata.size());
+        for (Map.Entry<String, List<String>> entry : metadata.entrySet()) {
+            out.writeInt(intern(entry.getKey(), stringTable));
+            writeStrings(entry.getValue(), out, stringTable);
+        }
+        
+        out.writeByte(writeBoolean(descriptor.isProxiable()));
+        out.writeByte(writeBoolean(descriptor.isProxyForSameScope()));
+        
+        String analysisName = descriptor.getClassAnalysisName();
+        if (ClassAnalyzer.DEFAULT_IMPLEMENTATION_NAME.equals(analysisName)) analysisName = null;
+        out.writeInt(intern(analysisName, stringTable));
+    }
+    
+    private static void writeStrings(Iterable<String> values, DataOutputStream out,
+            Map<String, Integer> stringTable) throws IOException {
+        if (values == null) {
+            out.writeInt(0);
+            return;
+        }
+        
+        List<Integer> indexes = new LinkedList<Integer>();
+        for (String value : values) {
+            indexes.add(intern(value, stringTable));
+        }
+        
+        out.writeInt(indexes.size());
+        for (Integer index : indexes) {
+            out.writeInt(index);
+        }
+    }
+    
+    private static int intern(String value, Map<String, Integer> stringTable) {
+        if (value == null) return NULL_INDEX;
+        
+        Integer retVal = stringTable.get(value);
+        if (retVal == null) {
+            retVal = stringTable.size();
+            stringTable.put(value, retVal);
+        }
+        
+        return retVal;
+    }
+    
+    private static byte writeBoolean(Boolean value) {
+        if (value == null) return NULL_BOOLEAN;
+        return value.booleanValue() ? TRUE_BOOLEAN : FALSE_BOOLEAN;
+    }
+    
+    private static Boolean readBoolean(byte value) {
+        switch (value) {
+        case TRUE_BOOLEAN:
+            return Boolean.TRUE;
+        case FALSE_BOOLEAN:
+            return Boolean.FALSE;
+        default:
+            return null;
+        }
+    }
+    
+    private String getString(int index) {
+        if (index == NULL_INDEX) return null;
+        
+        String retVal = strings[index];
+        if (retVal != null) return retVal;
+        
+        int offset = stringOffsets[index];
+        int length = buffer.getInt(offset);
+        
+        retVal = new String(data, offset + 4, length, UTF8);
+        strings[index] = retVal;
+        
+        return retVal;
+    }
+    
+    private LinkedHashSet<String> getStrings(int offset) {
+        int size = buffer.getInt(offset);
+        
+        LinkedHashSet<String> retVal = new LinkedHashSet<String>();
+        for (int lcv = 0; lcv < size; lcv++) {
+            retVal.add(getString(buffer.getInt(offset + 4 + (4 * lcv))));
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Returns the number of descriptors in this file
+     * 
+     * @return The number of descriptors in this file
+     */
+    public int getNumberOfDescriptors() {
+        return recordOffsets.length;
+    }
+    
+    /**
+     * Returns the number of descriptors from this file whose fields
+     * beyond those needed to bind them have been decoded
+     * 
+     * @return The number of descriptors from this file that have been
+     * fully decoded
+     */
+    public int getNumberOfDecodedDescriptors() {
+        return decodedBodies.get();
+    }
+    
+    /**
+     * Returns all the contracts advertised by the descriptors in this file
+     * 
+     * @return A non-null but possibly empty set of the contracts advertised
+     * by the descriptors in this file
+     */
+    public Set<String> getContracts() {
+        return Collections.unmodifiableSet(contractIndex.keySet());
+    }
+    
+    /**
+     * Returns the descriptor at the given index.  Only the fields needed in order to
+     * bind the descriptor are decoded by this method
+     * 
+     * @param index The index of the descriptor, from 0 to getNumberOfDescriptors() - 1
+     * @return The descriptor at the given index.  The descriptor is not a
+     * {@link DescriptorImpl}, but a {@link DescriptorImpl} can be constructed
+     * from it if modifications are needed
+     */
+    public Descriptor getDescriptor(int index) {
+        return new LazyDescriptor(recordOffsets[index]);
+    }
+    
+    /**
+     * Returns all the descriptors in this file, in the order in which they were written
+     * 
+     * @return A non-null but possibly empty list of all the descriptors in this file
+     */
+    public List<Descriptor> getDescriptors() {
+        List<Descriptor> retVal = new ArrayList<Descriptor>(recordOffsets.length);
+        for (int lcv = 0; lcv < recordOffsets.length; lcv++) {
+            retVal.add(getDescriptor(lcv));
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Returns the descriptors in this file advertising the given contract.  This
+     * uses the index in the file, no other descriptors are decoded
+     * 
+     * @param contract The contract to look for
+     * @return A non-null but possibly empty list of the descriptors in this
+     * file that advertise the given contract, in the order in which they were written
+     */
+    public List<Descriptor> getDescriptors(String contract) {
+        int records[] = contractIndex.get(contract);
+        if (records == null) return Collections.emptyList();
+        
+        List<Descriptor> retVal = new ArrayList<Descriptor>(records.length);
+        for (int record : records) {
+            retVal.add(getDescriptor(record));
+        }
+        
+        return retVal;
+    }
+    
+    private class LazyDescriptor implements Descriptor {
+        private final String implementation;
+        private final String name;
+        private final DescriptorType descriptorType;
+        private final DescriptorVisibility descriptorVisibility;
+        private final Set<String> contracts;
+        private final String scope;
+        private final Set<String> qualifiers;
+        private final int bodyOffset;
+        private volatile int rank;
+        
+        private final LazyMetadata metadata = new LazyMetadata();
+        private volatile DescriptorImpl body;
+        
+        private LazyDescriptor(int offset) {
+            implementation = getString(buffer.getInt(offset));
+            name = getString(buffer.getInt(offset + 4));
+            rank = buffer.getInt(offset + 8);
+            descriptorType = (buffer.get(offset + 12) == PROVIDE_METHOD_TYPE) ?
+                    DescriptorType.PROVIDE_METHOD : DescriptorType.CLASS;
+            descriptorVisibility = (buffer.get(offset + 13) == LOCAL_VISIBILITY) ?
+                    DescriptorVisibility.LOCAL : DescriptorVisibility.NORMAL;
+            
+            offset += 14;
+            contracts = Collections.unmodifiableSet(getStrings(offset));
+            offset += 4 + (4 * contracts.size());
+            
+            scope = getString(buffer.getInt(offset));
+            offset += 4;
+            
+            qualifiers = Collections.unmodifiableSet(getStrings(offset));
+            bodyOffset = offset + 4 + (4 * qualifiers.size());
+        }
+        
+        private DescriptorImpl getBody() {
+            DescriptorImpl retVal = body;
+            if (retVal != null) return retVal;
+            
+            synchronized (this) {
+                if (body != null) return body;
+                
+                body = decodeBody();
+                decodedBodies.incrementAndGet();
+                
+                return body;
+            }
+        }
+        
+        private DescriptorImpl decodeBody() {
+            int offset = bodyOffset;
+            
+            int numMetadata = buffer.getInt(offset);
+            offset += 4;
+            
+            LinkedHashMap<String, List<String>> metadata = new LinkedHashMap<String, List<String>>();
+            for (int lcv = 0; lcv < numMetadata; lcv++) {
+                String key = getString(buffer.getInt(offset));
+                offset += 4;
+                
+                int numValues = buffer.getInt(offset);
+                offset += 4;
+                
+                List<String> values = new ArrayList<String>(numValues);
+                for (int inner = 0; inner < numValues; inner++) {
+                    values.add(getString(buffer.getInt(offset)));
+                    offset += 4;
+                }
+                
+                metadata.put(key, values);
+            }
+            
+            Boolean proxiable = readBoolean(buffer.get(offset));
+            Boolean proxyForSameScope = readBoolean(buffer.get(offset + 1));
+            String analysisName = getString(buffer.getInt(offset + 2));
+            
+            return new DescriptorImpl(contracts, name, scope, implementation,
+                    metadata, qualifiers, descriptorType, descriptorVisibility,
+                    null, rank, proxiable, proxyForSameScope, analysisName,
+                    null, null);
+        }
+
+        @Override
+        public String getImplementation() {
+            return implementation;
+        }
+
+        @Override
+        public Set<String> getAdvertisedContracts() {
+            return contracts;
+        }
+
+        @Override
+        public String getScope() {
+            return scope;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Set<String> getQualifiers() {
+            return qualifiers;
+        }
+
+        @Override
+        public DescriptorType getDescriptorType() {
+            return descriptorType;
+        }
+
+        @Override
+        public DescriptorVisibility getDescriptorVisibility() {
+            return descriptorVisibility;
+        }
+
+        @Override
+        public Map<String, List<String>> getMetadata() {
+            // Checking that the metadata is there does not decode it
+            return metadata;
+        }
+
+        @Override
+        public HK2Loader getLoader() {
+            return null;
+        }
+
+        @Override
+        public int getRanking() {
+            return rank;
+        }
+
+        @Override
+        public synchronized int setRanking(int ranking) {
+            int retVal = rank;
+            rank = ranking;
+            
+            DescriptorImpl decoded = body;
+            if (decoded != null) decoded.setRanking(ranking);
+            
+            return retVal;
+        }
+
+        @Override
+        public Boolean isProxiable() {
+            return getBody().isProxiable();
+        }
+
+        @Override
+        public Boolean isProxyForSameScope() {
+            return getBody().isProxyForSameScope();
+        }
+
+        @Override
+        public String getClassAnalysisName() {
+            return getBody().getClassAnalysisName();
+        }
+
+        @Override
+        public Long getServiceId() {
+            return null;
+        }
+
+        @Override
+        public Long getLocatorId() {
+            return null;
+        }
+        
+        /**
+         * Only hashes the fields decoded eagerly, so that using the
+         * descriptor as a key does not decode the rest of it
+         */
+        @Override
+        public int hashCode() {
+            int retVal = 0;
+            
+            if (implementation != null) {
+                retVal ^= implementation.hashCode();
+            }
+            for (String contract : contracts) {
+                retVal ^= contract.hashCode();
+            }
+            if (name != null) {
+                retVal ^= name.hashCode();
+            }
+            if (scope != null) {
+                retVal ^= scope.hashCode();
+            }
+            for (String qualifier : qualifiers) {
+                retVal ^= qualifier.hashCode();
+            }
+            retVal ^= descriptorType.hashCode();
+            retVal ^= descriptorVisibility.hashCode();
+            
+            return retVal;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof Descriptor)) return false;
+            Descriptor d = (Descriptor) o;
+            
+            // The rest is only decoded if the eagerly decoded fields match
+            if (!GeneralUtilities.safeEquals(implementation, d.getImplementation())) return false;
+            if (!GeneralUtilities.safeEquals(name, d.getName())) return false;
+            if (!GeneralUtilities.safeEquals(scope, d.getScope())) return false;
+            if (!descriptorType.equals(d.getDescriptorType())) return false;
+            if (!descriptorVisibility.equals(d.getDescriptorVisibility())) return false;
+            
+            return getBody().equals(o);
+        }
+        
+        /**
+         * The metadata of the descriptor, which is decoded the
+         * first time it is read
+         */
+        private class LazyMetadata extends AbstractMap<String, List<String>> {
+
+            @Override
+            public Set<Map.Entry<String, List<String>>> entrySet() {
+                return getBody().getMetadata().entrySet();
+            }
+            
+            @Override
+            public List<String> get(Object key) {
+                return getBody().getMetadata().get(key);
+            }
+            
+            @Override
+            public boolean containsKey(Object key) {
+                return getBody().getMetadata().containsKey(key);
+            }
+            
+        }
+        
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer("Descriptor(");
+            
+            DescriptorImpl.pretty(sb, this);
+            
+            sb.append(")");
+            
+            return sb.toString();
+        }
+        
+    }
+    
+    @Override
+    public String toString() {
+        return "BinaryDescriptorFile(" + recordOffsets.length + "," + contractIndex.size() + "," +
+                System.identityHashCode(this) + ")";
+    }
+}
@@ -44,6 +44,7 @@ import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import org.glassfish.hk2.api.DescriptorFileFinder;
@@ -106,17 +107,39 @@ public class ClasspathDescriptorFileFinder implements DescriptorFileFinder {
     /**
      * Simple implementation of the findDescriptorFiles which does a
      * simple getResources on the classloader in order to find the
-     * hk2 descriptor files
+     * hk2 descriptor files.  If the binary form of a descriptor file
+     * (see {@link BinaryDescriptorFile}) is found next to the text
+     * form then the binary form is returned instead
      */
     @Override
     public List<InputStream> findDescriptorFiles() throws IOException {
+        LinkedHashMap<String, URL> binaries = new LinkedHashMap<String, URL>();
+        Enumeration<URL> e = classLoader.getResources(RESOURCE_BASE + name + BinaryDescriptorFile.BINARY_SUFFIX);
+        
+        for (; e.hasMoreElements();) {
+            URL url = e.nextElement();
+            binaries.put(url.toExternalForm(), url);
+        }
+        
         ArrayList<InputStream> returnList = new ArrayList<InputStream>();
-        Enumeration<URL> e = classLoader.getResources(RESOURCE_BASE+name);
+        e = classLoader.getResources(RESOURCE_BASE+name);
 
         for (; e.hasMoreElements();) {
             URL url = e.nextElement();
+            
+            URL binary = binaries.remove(url.toExternalForm() + BinaryDescriptorFile.BINARY_SUFFIX);
+            if (binary != null) {
+                url = binary;
+            }
+            
             returnList.add(url.openStream());
         }
+        
+        // Binary files without a text form next to them
+        for (URL binary : binaries.values()) {
+            returnList.add(binary.openStream());
+        }
+        
         return returnList;
     }
     
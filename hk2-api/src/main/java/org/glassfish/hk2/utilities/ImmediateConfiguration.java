@@ -0,0 +1,107 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The configuration of the {@link org.glassfish.hk2.api.Immediate} scope
+ * enabled with {@link ImmediateScopeModule}.  It controls the thread on
+ * which Immediate services are created and destroyed
+ * 
+ * @author jwells
+ *
+ */
+public class ImmediateConfiguration {
+    private Executor executor;
+    private boolean useVirtualThreads;
+    
+    /**
+     * Returns the executor on which Immediate services are
+     * created and destroyed
+     * 
+     * @return The executor given by the user, or null if the
+     * default executor should be used
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+    
+    /**
+     * Sets the executor on which Immediate services are
+     * created and destroyed.  An executor given here takes
+     * precedence over {@link #setUseVirtualThreads(boolean)}
+     * 
+     * @param executor The executor to use, or null to use
+     * the default executor
+     * @return this
+     */
+    public ImmediateConfiguration setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+    
+    /**
+     * Returns true if the default executor should run its
+     * work on virtual threads
+     * 
+     * @return true if virtual threads should be used when
+     * the JVM supports them
+     */
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+    
+    /**
+     * Sets whether the default executor should run its work
+     * on virtual threads.  If the JVM does not support virtual
+     * threads this setting is ignored and the default executor
+     * of platform threads is used
+     * 
+     * @param useVirtualThreads true if virtual threads should
+     * be used when the JVM supports them
+     * @return this
+     */
+    public ImmediateConfiguration setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+        return this;
+    }
+
+}
@@ -50,12 +50,35 @@ import org.glassfish.hk2.utilities.binding.AbstractBinder;
  *
  */
 public class ImmediateScopeModule extends AbstractBinder {
+    private final ImmediateConfiguration configuration;
+    
+    /**
+     * Enables the Immediate scope with the default configuration
+     */
+    public ImmediateScopeModule() {
+        this.configuration = null;
+    }
+    
+    /**
+     * Enables the Immediate scope with the given configuration
+     * 
+     * @param configuration The configuration to use.  May not be null
+     */
+    public ImmediateScopeModule(ImmediateConfiguration configuration) {
+        if (configuration == null) throw new IllegalArgumentException();
+        
+        this.configuration = configuration;
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.utilities.binding.AbstractBinder#configure()
      */
     @Override
     protected void configure() {
+        if (configuration != null) {
+            bind(configuration).to(ImmediateConfiguration.class);
+        }
+        
         addActiveDescriptor(ImmediateContext.class);
         addActiveDescriptor(ImmediateHelper.class);
     }
@@ -80,13 +80,13 @@ package org.glassfish.hk2.configuration.hub.internal;
 
 import java.io.PrintStream;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.glassfish.hk2.configuration.hub.api.BeanDatabase;
 import org.glassfish.hk2.configuration.hub.api.Instance;
 import org.glassfish.hk2.configuration.hub.api.Type;
+import org.glassfish.hk2.utilities.general.PersistentHashMap;
 import org.glassfish.hk2.utilities.reflection.BeanReflectionHelper;
 
 /**
@@ -95,28 +95,30 @@ import org.glassfish.hk2.utilities.reflection.BeanReflectionHelper;
  */
 public class BeanDatabaseImpl implements BeanDatabase {
     private final long revision;
-    private final HashMap<String, TypeImpl> types = new HashMap<String, TypeImpl>();
+    private final PersistentHashMap<String, TypeImpl> types;
     
     /**
      * Creates a new, fresh database
      */
     /* package */ BeanDatabaseImpl(long revision) {
-        this.revision = revision;
+        this(revision, PersistentHashMap.<String, TypeImpl>empty());
     }
     
-    /* package */ BeanDatabaseImpl(long revision, BeanDatabase beanDatabase) {
-        this(revision);
-        
-        for (Type type : beanDatabase.getAllTypes()) {
-            types.put(type.getName(), new TypeImpl(type, ((WriteableTypeImpl) type).getHelper()));
-        }
+    /**
+     * Creates a database from the given set of types.  The map
+     * is immutable, and so is shared with any writeable copy
+     * made of this database
+     */
+    /* package */ BeanDatabaseImpl(long revision, PersistentHashMap<String, TypeImpl> types) {
+        this.revision = revision;
+        this.types = types;
     }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.configuration.hub.api.BeanDatabase#getAllTypes()
      */
     @Override
-    public synchronized Set<Type> getAllTypes() {
+    public Set<Type> getAllTypes() {
         return Collections.unmodifiableSet(new HashSet<Type>(types.values()));
     }
     
@@ -124,7 +126,7 @@ public class BeanDatabaseImpl implements BeanDatabase {
      * @see org.glassfish.hk2.configuration.hub.api.BeanDatabase#getInstance(java.lang.String, java.lang.Object)
      */
     @Override
-    public synchronized Instance getInstance(String type, String instanceKey) {
+    public Instance getInstance(String type, String instanceKey) {
         Type t = getType(type);
         if (t == null) return null;
         
@@ -135,13 +137,17 @@ public class BeanDatabaseImpl implements BeanDatabase {
      * @see org.glassfish.hk2.configuration.hub.api.BeanDatabase#getType(java.lang.String)
      */
     @Override
-    public synchronized Type getType(String type) {
+    public Type getType(String type) {
         return types.get(type);
     }
     
     /* package */ long getRevision() {
         return revision;
     }
+    
+    /* package */ PersistentHashMap<String, TypeImpl> getTypes() {
+        return types;
+    }
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.configuration.hub.api.BeanDatabase#dumpDatabase()
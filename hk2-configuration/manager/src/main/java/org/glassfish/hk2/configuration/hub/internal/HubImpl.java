@@ -119,7 +119,7 @@ public class HubImpl implements Hub {
                 throw new IllegalStateException("commit was called on a WriteableDatabase but the current database has changed after that copy was made");
             }
             
-            currentDatabase = new BeanDatabaseImpl(revisionCounter.getAndIncrement(), writeableDatabase);
+            currentDatabase = new BeanDatabaseImpl(revisionCounter.getAndIncrement(), writeableDatabase.getCommittedTypes());
             
             for (BeanDatabaseUpdateListener listener : listeners) {
                 try {
@@ -39,11 +39,11 @@
  */
 package org.glassfish.hk2.configuration.hub.internal;
 
-import java.util.Collections;
 import java.util.Map;
 
 import org.glassfish.hk2.configuration.hub.api.Instance;
 import org.glassfish.hk2.configuration.hub.api.Type;
+import org.glassfish.hk2.utilities.general.PersistentHashMap;
 import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
 
 /**
@@ -52,15 +52,15 @@ import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
  */
 public class TypeImpl implements Type {
     private final String name;
-    private final Map<String, Instance> instances;
+    private final PersistentHashMap<String, Instance> instances;
     private final ClassReflectionHelper helper;
     private Object metadata;
     
-    /* package */ TypeImpl(Type baseType, ClassReflectionHelper helper) {
+    /* package */ TypeImpl(WriteableTypeImpl baseType) {
         name = baseType.getName();
-        instances = Collections.unmodifiableMap(baseType.getInstances());
-        this.helper = helper;
-        this.metadata = baseType.getMetadata();
+        instances = baseType.getInstanceMap();
+        helper = baseType.getHelper();
+        metadata = baseType.getMetadata();
     }
 
     /* (non-Javadoc)
@@ -87,11 +87,14 @@ public class TypeImpl implements Type {
         return instances.get(key);
     }
     
+    /* package */ PersistentHashMap<String, Instance> getInstanceMap() {
+        return instances;
+    }
+    
     /* package */ ClassReflectionHelper getHelper() {
         return helper;
     }
     
-    
 
     /* (non-Javadoc)
      * @see org.glassfish.hk2.configuration.hub.api.Type#getMetadata()
@@ -52,6 +52,7 @@ import org.glassfish.hk2.configuration.hub.api.Instance;
 import org.glassfish.hk2.configuration.hub.api.Type;
 import org.glassfish.hk2.configuration.hub.api.WriteableBeanDatabase;
 import org.glassfish.hk2.configuration.hub.api.WriteableType;
+import org.glassfish.hk2.utilities.general.PersistentHashMap;
 
 /**
  * @author jwells
@@ -59,9 +60,22 @@ import org.glassfish.hk2.configuration.hub.api.WriteableType;
  */
 public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
     private final long baseRevision;
-    private final HashMap<String, WriteableTypeImpl> types = new HashMap<String, WriteableTypeImpl>();
     private final HubImpl hub;
     
+    /**
+     * The types of the database this copy was made from.  This map
+     * is immutable and shared with that database, so making a copy
+     * costs nothing.  Types are only copied into {@link #types}
+     * when they are first accessed
+     */
+    private final PersistentHashMap<String, TypeImpl> baseTypes;
+    
+    /** Every type that has been added or accessed in this copy */
+    private final HashMap<String, WriteableTypeImpl> types = new HashMap<String, WriteableTypeImpl>();
+    
+    /** The names of base types that have been removed in this copy */
+    private final HashSet<String> removedTypeNames = new HashSet<String>();
+    
     private final LinkedList<Change> changes = new LinkedList<Change>();
     private final LinkedList<WriteableTypeImpl> removedTypes = new LinkedList<WriteableTypeImpl>();
     private boolean committed = false;
@@ -69,11 +83,29 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
     /* package */ WriteableBeanDatabaseImpl(HubImpl hub, BeanDatabaseImpl currentDatabase) {
         this.hub = hub;
         baseRevision = currentDatabase.getRevision();
+        baseTypes = currentDatabase.getTypes();
+    }
+    
+    /**
+     * Gets the writeable form of the given type, copying it
+     * from the base database if it has not yet been accessed
+     * 
+     * @param typeName The name of the type to find
+     * @return The writeable type, or null if this copy has no such type
+     */
+    private WriteableTypeImpl getTypeInternal(String typeName) {
+        WriteableTypeImpl retVal = types.get(typeName);
+        if (retVal != null) return retVal;
         
-        for (Type type : currentDatabase.getAllTypes()) {
-            types.put(type.getName(), new WriteableTypeImpl(this, (TypeImpl) type));
-        }
+        if (removedTypeNames.contains(typeName)) return null;
         
+        TypeImpl baseType = baseTypes.get(typeName);
+        if (baseType == null) return null;
+        
+        retVal = new WriteableTypeImpl(this, baseType);
+        types.put(typeName, retVal);
+        
+        return retVal;
     }
 
     /* (non-Javadoc)
@@ -81,6 +113,10 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
      */
     @Override
     public synchronized Set<Type> getAllTypes() {
+        for (String typeName : baseTypes.keySet()) {
+            getTypeInternal(typeName);
+        }
+        
         return Collections.unmodifiableSet(new HashSet<Type>(types.values()));
     }
 
@@ -89,7 +125,7 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
      */
     @Override
     public synchronized Type getType(String type) {
-        return types.get(type);
+        return getTypeInternal(type);
     }
     
     /* (non-Javadoc)
@@ -137,9 +173,14 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
         if (typeName == null) throw new IllegalArgumentException();
         checkState();
         
-        WriteableTypeImpl retVal = types.remove(typeName);
+        WriteableTypeImpl retVal = getTypeInternal(typeName);
         if (retVal == null) return null;
         
+        types.remove(typeName);
+        if (baseTypes.containsKey(typeName)) {
+            removedTypeNames.add(typeName);
+        }
+        
         Map<String, Instance> instances = retVal.getInstances();
         for (String key : new HashSet<String>(instances.keySet())) {
             retVal.removeInstance(key);
@@ -163,7 +204,7 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
     @Override
     public synchronized WriteableType getWriteableType(String typeName) {
         checkState();
-        return types.get(typeName);
+        return getTypeInternal(typeName);
     }
 
     /* (non-Javadoc)
@@ -174,7 +215,7 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
         if (typeName == null) throw new IllegalArgumentException();
         checkState();
         
-        WriteableTypeImpl wti = types.get(typeName);
+        WriteableTypeImpl wti = getTypeInternal(typeName);
         if (wti == null) {
             return addType(typeName);
         }
@@ -215,6 +256,27 @@ public class WriteableBeanDatabaseImpl implements WriteableBeanDatabase {
         return baseRevision;
     }
     
+    /**
+     * Creates the set of types for the database that will replace the
+     * base database.  Only the types that were accessed in this copy are
+     * put into the returned map, every other type is shared with the base
+     * 
+     * @return The types of the database to commit
+     */
+    /* package */ synchronized PersistentHashMap<String, TypeImpl> getCommittedTypes() {
+        PersistentHashMap<String, TypeImpl> retVal = baseTypes;
+        
+        for (String removedTypeName : removedTypeNames) {
+            retVal = retVal.minus(removedTypeName);
+        }
+        
+        for (WriteableTypeImpl type : types.values()) {
+            retVal = retVal.plus(type.getName(), new TypeImpl(type));
+        }
+        
+        return retVal;
+    }
+    
     /* package */ synchronized void addChange(Change change) {
         changes.add(change);
     }
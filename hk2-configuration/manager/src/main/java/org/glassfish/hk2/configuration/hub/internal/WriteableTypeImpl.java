@@ -41,13 +41,12 @@ package org.glassfish.hk2.configuration.hub.internal;
 
 import java.beans.PropertyChangeEvent;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 
 import org.glassfish.hk2.configuration.hub.api.Change;
 import org.glassfish.hk2.configuration.hub.api.Instance;
 import org.glassfish.hk2.configuration.hub.api.WriteableType;
+import org.glassfish.hk2.utilities.general.PersistentHashMap;
 import org.glassfish.hk2.utilities.reflection.BeanReflectionHelper;
 import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
 import org.glassfish.hk2.utilities.reflection.internal.ClassReflectionHelperImpl;
@@ -59,7 +58,7 @@ import org.glassfish.hk2.utilities.reflection.internal.ClassReflectionHelperImpl
 public class WriteableTypeImpl implements WriteableType {
     private final WriteableBeanDatabaseImpl parent;
     private final String name;
-    private final HashMap<String, Instance> beanMap = new HashMap<String, Instance>();
+    private PersistentHashMap<String, Instance> beanMap;
     private final ClassReflectionHelper helper;
     private Object metadata;
     
@@ -67,13 +66,14 @@ public class WriteableTypeImpl implements WriteableType {
         this.parent = parent;
         this.name = mother.getName();
         this.metadata = mother.getMetadata();
-        beanMap.putAll(mother.getInstances());
+        beanMap = mother.getInstanceMap();
         helper = mother.getHelper();
     }
     
     /* package */ WriteableTypeImpl(WriteableBeanDatabaseImpl parent, String name) {
         this.parent = parent;
         this.name = name;
+        beanMap = PersistentHashMap.empty();
         helper = new ClassReflectionHelperImpl();
     }
 
@@ -90,7 +90,7 @@ public class WriteableTypeImpl implements WriteableType {
      */
     @Override
     public synchronized Map<String, Instance> getInstances() {
-        return Collections.unmodifiableMap(beanMap);
+        return beanMap;
     }
     
     /* (non-Javadoc)
@@ -125,7 +125,7 @@ public class WriteableTypeImpl implements WriteableType {
                                    null,
                                    null));
         
-        beanMap.put(key, ii);
+        beanMap = beanMap.plus(key, ii);
     }
 
     /* (non-Javadoc)
@@ -135,9 +135,11 @@ public class WriteableTypeImpl implements WriteableType {
     public synchronized Instance removeInstance(String key) {
         if (key == null) throw new IllegalArgumentException();
         
-        Instance removedValue = beanMap.remove(key);
+        Instance removedValue = beanMap.get(key);
         if (removedValue == null) return null;
         
+        beanMap = beanMap.minus(key);
+        
         parent.addChange(new ChangeImpl(Change.ChangeCategory.REMOVE_INSTANCE,
                 this,
                 key,
@@ -167,7 +169,7 @@ public class WriteableTypeImpl implements WriteableType {
             propChanges = BeanReflectionHelper.getChangeEvents(helper, oldInstance.getBean(), newInstance.getBean());
         }
         
-        beanMap.put(key, newInstance);
+        beanMap = beanMap.plus(key, newInstance);
 
         ArrayList<PropertyChangeEvent> propChangesList = new ArrayList<PropertyChangeEvent>(propChanges.length);
         for (PropertyChangeEvent pce : propChanges) {
@@ -184,6 +186,10 @@ public class WriteableTypeImpl implements WriteableType {
         return propChanges;
     }
 
+    /* package */ synchronized PersistentHashMap<String, Instance> getInstanceMap() {
+        return beanMap;
+    }
+
     ClassReflectionHelper getHelper() {
         return helper;
     }
@@ -0,0 +1,252 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.configuration.hub.test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.glassfish.hk2.configuration.hub.api.BeanDatabase;
+import org.glassfish.hk2.configuration.hub.api.Change;
+import org.glassfish.hk2.configuration.hub.api.Hub;
+import org.glassfish.hk2.configuration.hub.api.Instance;
+import org.glassfish.hk2.configuration.hub.api.ManagerUtilities;
+import org.glassfish.hk2.configuration.hub.api.Type;
+import org.glassfish.hk2.configuration.hub.api.WriteableBeanDatabase;
+import org.glassfish.hk2.configuration.hub.api.WriteableType;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.jvnet.hk2.testing.junit.HK2Runner;
+
+/**
+ * Tests for databases with many types and instances, where
+ * copies of the database share most of their structure
+ * 
+ * @author jwells
+ *
+ */
+public class LargeDatabaseTest extends HK2Runner {
+    private final static String LARGE_TYPE = "LargeType";
+    private final static String OTHER_TYPE = "OtherLargeType";
+    private final static String KEY_PREFIX = "key-";
+    private final static String OTHER_PROPERTY_VALUE = "value";
+    
+    private final static int NUM_INSTANCES = 5000;
+    
+    private Hub hub;
+    
+    @Before
+    public void before() {
+        super.before();
+        
+        // This is necessary to make running in an IDE easier
+        ManagerUtilities.enableConfigurationHub(testLocator);
+        
+        this.hub = testLocator.getService(Hub.class);
+    }
+    
+    private void populate(String typeName, int numInstances) {
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        
+        WriteableType wt = wbd.findOrAddWriteableType(typeName);
+        for (int lcv = 0; lcv < numInstances; lcv++) {
+            String key = KEY_PREFIX + lcv;
+            wt.addInstance(key, new GenericJavaBean(key, OTHER_PROPERTY_VALUE));
+        }
+        
+        wbd.commit();
+    }
+    
+    private void removeType(String typeName) {
+        WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+        
+        wbd.removeType(typeName);
+        
+        wbd.commit();
+    }
+    
+    /**
+     * Tests that a database that has been replaced still sees
+     * exactly the instances it had, and that the new database sees
+     * the changes, when the two share most of their instances
+     */
+    @Test
+    public void testOldDatabaseUnchangedByCommit() {
+        populate(LARGE_TYPE, NUM_INSTANCES);
+        populate(OTHER_TYPE, NUM_INSTANCES);
+        
+        try {
+            BeanDatabase original = hub.getCurrentDatabase();
+            Type originalOther = original.getType(OTHER_TYPE);
+            
+            WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+            WriteableType wt = wbd.getWriteableType(LARGE_TYPE);
+            
+            for (int lcv = 0; lcv < NUM_INSTANCES; lcv += 2) {
+                Assert.assertNotNull(wt.removeInstance(KEY_PREFIX + lcv));
+            }
+            wt.addInstance(KEY_PREFIX + NUM_INSTANCES,
+                    new GenericJavaBean(KEY_PREFIX + NUM_INSTANCES, OTHER_PROPERTY_VALUE));
+            
+            GenericBeanDatabaseUpdateListener listener = new GenericBeanDatabaseUpdateListener();
+            hub.addListener(listener);
+            try {
+                wbd.commit();
+                
+                List<Change> changes = listener.getLastSetOfChanges();
+                Assert.assertEquals((NUM_INSTANCES / 2) + 1, changes.size());
+            }
+            finally {
+                hub.removeListener(listener);
+            }
+            
+            BeanDatabase current = hub.getCurrentDatabase();
+            
+            Map<String, Instance> originalInstances = original.getType(LARGE_TYPE).getInstances();
+            Assert.assertEquals(NUM_INSTANCES, originalInstances.size());
+            Assert.assertNull(originalInstances.get(KEY_PREFIX + NUM_INSTANCES));
+            
+            Map<String, Instance> currentInstances = current.getType(LARGE_TYPE).getInstances();
+            Assert.assertEquals((NUM_INSTANCES / 2) + 1, currentInstances.size());
+            Assert.assertNotNull(currentInstances.get(KEY_PREFIX + NUM_INSTANCES));
+            
+            HashSet<String> seen = new HashSet<String>();
+            for (Map.Entry<String, Instance> entry : currentInstances.entrySet()) {
+                int index = Integer.parseInt(entry.getKey().substring(KEY_PREFIX.length()));
+                if (index != NUM_INSTANCES) {
+                    Assert.assertTrue(entry.getKey(), (index % 2) == 1);
+                    
+                    // Instances that were not changed are shared with the original
+                    Assert.assertSame(originalInstances.get(entry.getKey()), entry.getValue());
+                }
+                
+                seen.add(entry.getKey());
+            }
+            Assert.assertEquals(currentInstances.size(), seen.size());
+            
+            for (int lcv = 0; lcv < NUM_INSTANCES; lcv++) {
+                Instance instance = originalInstances.get(KEY_PREFIX + lcv);
+                Assert.assertNotNull(instance);
+                Assert.assertEquals(KEY_PREFIX + lcv, ((GenericJavaBean) instance.getBean()).getName());
+            }
+            
+            // The untouched type is the same in both databases
+            Assert.assertEquals(originalOther.getInstances(), current.getType(OTHER_TYPE).getInstances());
+            Assert.assertEquals(NUM_INSTANCES, current.getType(OTHER_TYPE).getInstances().size());
+        }
+        finally {
+            removeType(LARGE_TYPE);
+            removeType(OTHER_TYPE);
+        }
+    }
+    
+    /**
+     * Tests that a type removed in a copy can be added back in the
+     * same copy, and that the original database still has it
+     */
+    @Test
+    public void testRemoveThenAddTypeInOneCopy() {
+        populate(LARGE_TYPE, 10);
+        
+        try {
+            BeanDatabase original = hub.getCurrentDatabase();
+            
+            WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+            Assert.assertNotNull(wbd.removeType(LARGE_TYPE));
+            Assert.assertNull(wbd.getType(LARGE_TYPE));
+            
+            WriteableType wt = wbd.addType(LARGE_TYPE);
+            wt.addInstance(KEY_PREFIX, new GenericJavaBean(KEY_PREFIX, OTHER_PROPERTY_VALUE));
+            
+            wbd.commit();
+            
+            Assert.assertEquals(10, original.getType(LARGE_TYPE).getInstances().size());
+            
+            Type currentType = hub.getCurrentDatabase().getType(LARGE_TYPE);
+            Assert.assertEquals(1, currentType.getInstances().size());
+            Assert.assertNotNull(currentType.getInstance(KEY_PREFIX));
+        }
+        finally {
+            removeType(LARGE_TYPE);
+        }
+    }
+    
+    /**
+     * Measures how long it takes to make a writeable copy of the database,
+     * change one instance and commit it, as the number of instances in
+     * the database grows
+     */
+    @Test @Ignore
+    public void testCommitLatency() {
+        int size = 0;
+        for (int target = 1000; target <= 1000000; target *= 10) {
+            WriteableBeanDatabase wbd = hub.getWriteableDatabaseCopy();
+            WriteableType wt = wbd.findOrAddWriteableType(LARGE_TYPE);
+            for (; size < target; size++) {
+                String key = KEY_PREFIX + size;
+                wt.addInstance(key, new GenericJavaBean(key, OTHER_PROPERTY_VALUE));
+            }
+            wbd.commit();
+            
+            int iterations = 2000;
+            for (int warm = 0; warm < 2; warm++) {
+                long start = System.nanoTime();
+                for (int lcv = 0; lcv < iterations; lcv++) {
+                    String key = KEY_PREFIX + (lcv % target);
+                    
+                    wbd = hub.getWriteableDatabaseCopy();
+                    wbd.getWriteableType(LARGE_TYPE).modifyInstance(key,
+                            new GenericJavaBean(key, OTHER_PROPERTY_VALUE + lcv));
+                    wbd.commit();
+                }
+                long elapsed = System.nanoTime() - start;
+                
+                if (warm == 1) {
+                    System.out.println("Database with " + target + " instances took " +
+                        ((elapsed / iterations) / 1000) + " microseconds per copy-modify-commit");
+                }
+            }
+        }
+        
+        removeType(LARGE_TYPE);
+    }
+}
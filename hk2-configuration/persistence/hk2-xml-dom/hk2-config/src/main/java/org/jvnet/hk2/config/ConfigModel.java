@@ -80,6 +80,11 @@ public final class ConfigModel {
      */
     final Map<String,AttributeLeaf> attributes = new HashMap<String,AttributeLeaf>();
 
+    /**
+     * The legal attributes by {@link AttributeLeaf#ordinal}
+     */
+    final AttributeLeaf[] attributesByOrdinal;
+
     /**
      * Legal child element names and how they should be handled
      */
@@ -663,6 +668,12 @@ public final class ConfigModel {
 
         public final String dataType;
         
+        /**
+         * The position of this attribute in the model, which is where
+         * a {@link Dom} keeps its value
+         */
+        int ordinal;
+        
         AttributeLeaf(String xmlName, String dataType) {
             super(xmlName);
             this.dataType = dataType;
@@ -859,6 +870,7 @@ public final class ConfigModel {
                     }
                 } else
                     leaf = new AttributeLeafWithDefaultValue(attributeName, dt, dv);
+                leaf.ordinal = attributes.size();
                 attributes.put(attributeName, leaf);
             } else
             if(name.startsWith("<")) {
@@ -884,6 +896,10 @@ public final class ConfigModel {
         this.targetTypeName = targetTypeName;
         this.keyedAs = indexTypeName;
         this.key = key;
+        this.attributesByOrdinal = new AttributeLeaf[attributes.size()];
+        for (AttributeLeaf leaf : attributes.values()) {
+            attributesByOrdinal[leaf.ordinal] = leaf;
+        }
         this.contracts = getMetadataFromDescription(description, ConfigMetadata.TARGET_CONTRACTS);
         this.symbolSpaces = new HashSet<String>(getMetadataFromDescription(description, "symbolSpaces"));
 
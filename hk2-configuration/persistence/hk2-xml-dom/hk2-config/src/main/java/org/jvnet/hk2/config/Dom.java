@@ -288,9 +288,16 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
 
 
     /**
-     * All attributes and their raw values before {@link Translator} processing.
+     * The raw values of the attributes before {@link Translator} processing,
+     * indexed by the ordinal of the attribute in the model.  Null until the
+     * first attribute is set.
      */
-    private Map<String,String> attributes = new HashMap<String, String>();
+    private String[] attributeValues;
+    
+    /**
+     * The raw values of attributes that are not in the model, or null
+     */
+    private Map<String,String> otherAttributes;
     /**
      * List of all child elements, both leaves and nodes.
      *
@@ -298,6 +305,38 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
      * The list is read-only and copy-on-write to support concurrent access.
      */
     private volatile List<Child> children = Collections.emptyList();
+    
+    /**
+     * Incremented after every change to {@link #children}, so that a stale
+     * {@link #childIndex} is never used.
+     */
+    private volatile int childrenVersion;
+    
+    /**
+     * The first child of each name, built when first needed.  Only used
+     * when there are at least {@link #CHILD_INDEX_THRESHOLD} children.
+     */
+    private volatile ChildIndex childIndex;
+    
+    private static final int CHILD_INDEX_THRESHOLD = 8;
+    
+    /**
+     * The indexes used by {@link #resolveReference(String, String)} when
+     * this node is a symbol space root, by type name.  Guarded by
+     * {@link #referenceIndexLock}, and null until the first reference
+     * is resolved from this node
+     */
+    private Map<String, ReferenceIndex> referenceIndexes;
+    private volatile boolean hasReferenceIndexes;
+    
+    /**
+     * True while this node is in the list of children of its parent.  Changes
+     * to nodes that are not yet (or no longer) in the tree must not be
+     * reflected in the reference indexes of their ancestors
+     */
+    private volatile boolean inParent;
+    private final Object referenceIndexLock = new Object();
+    
     private final Location location;
 
     /**
@@ -350,7 +389,12 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
             newChildren.add(child.deepCopy(this));
         }
         setChildren(newChildren);
-        attributes.putAll(source.attributes);
+        if (source.attributeValues != null) {
+            attributeValues = source.attributeValues.clone();
+        }
+        if (source.otherAttributes != null) {
+            otherAttributes = new HashMap<String, String>(source.otherAttributes);
+        }
     }
 
     /**
@@ -407,15 +451,69 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
 
     /*package*/ void fillAttributes(XMLStreamReader in) {
         for( int i=in.getAttributeCount()-1; i>=0; i-- ) {
-            String n = in.getAttributeLocalName(i);
-            if(model.attributes.containsKey(n)) {
-                if(attributes==null)
-                    attributes = new HashMap<String, String>();
-                attributes.put(n,in.getAttributeValue(i));
+            ConfigModel.AttributeLeaf leaf = model.attributes.get(in.getAttributeLocalName(i));
+            if(leaf!=null) {
+                if(attributeValues==null)
+                    attributeValues = new String[model.attributesByOrdinal.length];
+                attributeValues[leaf.ordinal] = in.getAttributeValue(i);
             }
         }
-        if(attributes==null)
-            attributes = Collections.emptyMap();
+    }
+    
+    /**
+     * Sets or (with a null value) removes the raw value of an attribute
+     */
+    private void putRawAttribute(String name, String value) {
+        document.invalidateTranslations();
+        
+        ConfigModel.AttributeLeaf leaf = model.attributes.get(name);
+        if (leaf == null) {
+            if (otherAttributes == null) {
+                if (value == null) return;
+                otherAttributes = new HashMap<String, String>();
+            }
+            
+            if (value == null) {
+                otherAttributes.remove(name);
+            }
+            else {
+                otherAttributes.put(name, value);
+            }
+            return;
+        }
+        
+        String[] values = attributeValues;
+        if (values == null) {
+            if (value == null) return;
+            values = new String[model.attributesByOrdinal.length];
+            attributeValues = values;
+        }
+        
+        values[leaf.ordinal] = value;
+    }
+    
+    /**
+     * Returns the raw values of the attributes that have one on this config
+     * instance, by name
+     */
+    private Map<String, String> getRawAttributes() {
+        Map<String, String> retVal = new HashMap<String, String>();
+        
+        String[] values = attributeValues;
+        if (values != null) {
+            for (int lcv = 0; lcv < values.length; lcv++) {
+                if (values[lcv] != null) {
+                    retVal.put(model.attributesByOrdinal[lcv].xmlName, values[lcv]);
+                }
+            }
+        }
+        
+        Map<String, String> others = otherAttributes;
+        if (others != null) {
+            retVal.putAll(others);
+        }
+        
+        return retVal;
     }
 
     /**
@@ -433,7 +531,7 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
      * @return list of attributes names which have values on this config instance
      */
     public Set<String> getAttributeNames() {
-        return Collections.unmodifiableSet( attributes.keySet() );
+        return Collections.unmodifiableSet( getRawAttributes().keySet() );
     }
 
     /**
@@ -456,7 +554,7 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
      */
     private String t(String s) {
         if(s==null) return null;
-        return document.getTranslator().translate(s);
+        return document.translate(s);
     }
 
     /**
@@ -476,9 +574,16 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
      *      null if the attribute is not found.
      */
     public String rawAttribute(String name) {
-        String value = attributes.get(name);
-        if (value==null && model.attributes.containsKey(name)) {
-                value = model.attributes.get(name).getDefaultValue();
+        ConfigModel.AttributeLeaf leaf = model.attributes.get(name);
+        if (leaf==null) {
+            Map<String, String> others = otherAttributes;
+            return (others==null) ? null : others.get(name);
+        }
+        
+        String[] values = attributeValues;
+        String value = (values==null) ? null : values[leaf.ordinal];
+        if (value==null) {
+            value = leaf.getDefaultValue();
         }
         return value;
     }
@@ -506,10 +611,12 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
      * This would trigger the re-injection of the value.
      */
     public void attribute(String name, String value) {
-        if (value==null) {
-            attributes.remove(name);
-        } else {
-            attributes.put(name,value);
+        String oldKey = keyBeforeChange();
+        
+        putRawAttribute(name,value);
+        keyChanged(oldKey);
+        
+        if (value!=null) {
             // TODO:
             // this re-injection has two problems. First, it forces an instantiation
             // even if that hasn't happened yet. Second, if the component is scoped,
@@ -525,15 +632,184 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
      * @return child element
      */
     public Dom element(String name) {
+        Child child = firstChild(name);
+        if (child == null) return null;
         
+        return ((NodeChild) child).dom;
+    }
+    
+    /**
+     * Returns the first child with the given element name.  Large
+     * lists of children are indexed rather than scanned
+     */
+    private Child firstChild(String name) {
+        int version = childrenVersion; // read before the snapshot, see ChildIndex
         List<Child> children = this.children; // fix the snapshot that we'll work with
-
+        
+        int len = children.size();
+        if (len < CHILD_INDEX_THRESHOLD) {
+            for( int i=0; i<len; i++ ) {
+                Child child = children.get(i);
+                if(child.name.equals(name)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+        
+        ChildIndex index = childIndex;
+        if (index == null || index.version != version) {
+            index = new ChildIndex(version, children);
+            childIndex = index;
+        }
+        
+        return index.firstByName.get(name);
+    }
+    
+    /**
+     * The first child of each name in one version of the list of children
+     */
+    private static final class ChildIndex {
+        private final int version;
+        private final Map<String, Child> firstByName = new HashMap<String, Child>();
+        
+        private ChildIndex(int version, List<Child> children) {
+            this.version = version;
+            
+            int len = children.size();
+            for( int i=0; i<len; i++ ) {
+                Child child = children.get(i);
+                if (!firstByName.containsKey(child.name)) {
+                    firstByName.put(child.name, child);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the node children of this node
+     */
+    /* package */ List<Dom> nodeChildren() {
+        List<Child> children = this.children; // fix the snapshot that we'll work with
+        
+        List<Dom> r = new ArrayList<Dom>();
+        int len = children.size();
+        for( int i=0; i<len; i++ ) {
+            Child child = children.get(i);
+            if (child instanceof NodeChild) {
+                r.add(((NodeChild) child).dom);
+            }
+        }
+        return r;
+    }
+    
+    /**
+     * Must be called after every change to the list of children, with
+     * the nodes that left or joined the list, so that the child index
+     * and the reference indexes of this node and its ancestors are kept
+     * up to date
+     */
+    private void childrenChanged(List<Dom> removedNodes, List<Dom> addedNodes) {
+        childrenVersion++;
+        childIndex = null;
+        document.invalidateTranslations();
+        
+        for (Dom removedNode : removedNodes) {
+            removedNode.inParent = false;
+        }
+        for (Dom addedNode : addedNodes) {
+            addedNode.inParent = true;
+        }
+        
+        if (removedNodes.isEmpty() && addedNodes.isEmpty()) return;
+        if (!isReferenceIndexed()) return;
+        
+        List<Dom> removed = new ArrayList<Dom>();
+        for (Dom removedNode : removedNodes) {
+            collectKeyed(removedNode, removed);
+        }
+        
+        List<String> removedKeys = new ArrayList<String>(removed.size());
+        for (Dom dom : removed) {
+            removedKeys.add(dom.getKey());
+        }
+        
+        List<Dom> added = new ArrayList<Dom>();
+        for (Dom addedNode : addedNodes) {
+            collectKeyed(addedNode, added);
+        }
+        
+        updateReferenceIndexes(removed, removedKeys, added);
+    }
+    
+    private static void collectKeyed(Dom dom, List<Dom> keyed) {
+        if (dom.model.keyedAs != null) {
+            keyed.add(dom);
+        }
+        
+        for (Dom child : dom.nodeChildren()) {
+            collectKeyed(child, keyed);
+        }
+    }
+    
+    private static List<Dom> nodesOf(Collection<Child> children) {
+        List<Dom> r = new ArrayList<Dom>();
         for (Child child : children) {
-            if (child.name.equals(name)) {
-                return ((NodeChild) child).dom;
+            if (child instanceof NodeChild) {
+                r.add(((NodeChild) child).dom);
             }
         }
-        return null;
+        return r;
+    }
+    
+    /**
+     * Returns true if this node or any of the ancestors it is
+     * attached to has a reference index
+     */
+    private boolean isReferenceIndexed() {
+        for (Dom dom = this; dom != null; dom = dom.parent) {
+            if (dom.hasReferenceIndexes) return true;
+            if (!dom.inParent) return false;
+        }
+        return false;
+    }
+    
+    private void updateReferenceIndexes(List<Dom> removed, List<String> removedKeys, List<Dom> added) {
+        for (Dom dom = this; dom != null; dom = dom.parent) {
+            if (dom.hasReferenceIndexes) {
+                synchronized (dom.referenceIndexLock) {
+                    ReferenceIndex.update(dom.referenceIndexes, removed, removedKeys, added);
+                }
+            }
+            
+            if (!dom.inParent) return;
+        }
+    }
+    
+    /**
+     * Returns the key of this node if a change to it might have to be
+     * reflected in a reference index, or null
+     */
+    private String keyBeforeChange() {
+        if (model.keyedAs == null || !isReferenceIndexed()) return null;
+        
+        return getKey();
+    }
+    
+    /**
+     * Must be called after a change to an attribute or leaf element
+     * of this node that may have changed its key
+     * 
+     * @param oldKey The value returned by {@link #keyBeforeChange()} before the change
+     */
+    private void keyChanged(String oldKey) {
+        if (model.keyedAs == null || !isReferenceIndexed()) return;
+        
+        String newKey = getKey();
+        if (newKey == null ? oldKey == null : newKey.equals(oldKey)) return;
+        
+        List<Dom> self = Collections.singletonList(this);
+        updateReferenceIndexes(self, Collections.singletonList(oldKey), self);
     }
 
     /**
@@ -582,6 +858,7 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
         }
         if(reference==null) {
             children.add(0, newChild);
+            childrenChanged(Collections.<Dom>emptyList(), Collections.singletonList(newNode));
             newNode.domDescriptor = addWithAlias(getHabitat(), newNode, newNode.getProxyType(), newNode.getKey());
             return;
         }
@@ -593,6 +870,7 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
                 NodeChild nc = (NodeChild) child;
                 if(nc.dom==reference) {
                     itr.add(newChild);
+                    childrenChanged(Collections.<Dom>emptyList(), Collections.singletonList(newNode));
                     newNode.domDescriptor = addWithAlias(getHabitat(), newNode, newNode.getProxyType(), newNode.getKey());
                     
                     return;
@@ -618,6 +896,7 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
                     newNode.domDescriptor = addWithAlias(getHabitat(), newNode,newNode.getProxyType(), newNode.getKey());
                     
                     itr.set(new NodeChild(name,newNode));
+                    childrenChanged(Collections.singletonList(reference), Collections.singletonList(newNode));
                     return;
                 }
             }
@@ -637,6 +916,7 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
                 NodeChild nc = (NodeChild) child;
                 if(nc.dom==reference) {
                     itr.remove();
+                    childrenChanged(Collections.singletonList(reference), Collections.<Dom>emptyList());
                     reference.release();
                     return;
                 }
@@ -647,11 +927,16 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
     }
 
     public synchronized boolean addLeafElement(String xmlName, String value) {
+        String oldKey = keyBeforeChange();
+        
         if (children.size()==0) {
             children = new ArrayList<Child>();
         }
-        return children.add(new LeafChild(xmlName, value));
+        boolean retVal = children.add(new LeafChild(xmlName, value));
+        childrenChanged(Collections.<Dom>emptyList(), Collections.<Dom>emptyList());
+        keyChanged(oldKey);
         
+        return retVal;
     }
 
     public synchronized boolean removeLeafElement(String xmlName, String element) {
@@ -659,7 +944,13 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
 
         for (Child child : children) {
             if(child.name.equals(xmlName) && ((LeafChild) child).value.equals(element)) {
-                return children.remove(child);
+                String oldKey = keyBeforeChange();
+                
+                boolean retVal = children.remove(child);
+                childrenChanged(Collections.<Dom>emptyList(), Collections.<Dom>emptyList());
+                keyChanged(oldKey);
+                
+                return retVal;
             }
         }
         return false;
@@ -673,7 +964,13 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
         for( int i=0; i<len; i++ ) {
             Child child = children.get(i);
             if(child.name.equals(xmlName) && ((LeafChild) child).value.equals(oldValue)) {
-                return (children.set(i, new LeafChild(xmlName, newValue))!=null);
+                String oldKey = keyBeforeChange();
+                
+                boolean retVal = (children.set(i, new LeafChild(xmlName, newValue))!=null);
+                childrenChanged(Collections.<Dom>emptyList(), Collections.<Dom>emptyList());
+                keyChanged(oldKey);
+                
+                return retVal;
             }
         }
         return false;
@@ -683,17 +980,11 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
      * Picks up one leaf-element value without variable expansion.
      */
     public String rawLeafElement(String name) {
-        List<Child> children = this.children; // fix the snapshot that we'll work with
-
-        int len = children.size();
-        for( int i=0; i<len; i++ ) {
-            Child child = children.get(i);
-            if(child.name.equals(name)) {
-                // error check on model guarantees that this works.
-                return ((LeafChild)child).value;
-            }
-        }
-        return null;
+        Child child = firstChild(name);
+        if (child == null) return null;
+        
+        // error check on model guarantees that this works.
+        return ((LeafChild)child).value;
     }
 
     /**
@@ -759,8 +1050,12 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
         for (int i = 0; i < values.length; i++)
             leaves[i] = new LeafChild(name,values[i]);
 
+        String oldKey = keyBeforeChange();
+        
         stitchList(newChildren,name,Arrays.asList(leaves));
         children = newChildren;
+        childrenChanged(Collections.<Dom>emptyList(), Collections.<Dom>emptyList());
+        keyChanged(oldKey);
 
         // see attribute(String,String) for the issue with this
         getInjector().injectElement(this,name,get());
@@ -808,17 +1103,11 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
      * Picks up one node-element value.
      */
     public Dom nodeElement(String name) {
-        List<Child> children = this.children; // fix the snapshot that we'll work with
-
-        int len = children.size();
-        for( int i=0; i<len; i++ ) {
-            Child child = children.get(i);
-            if(child.name.equals(name)) {
-                // error check on model guarantees that this works.
-                return ((NodeChild)child).dom;
-            }
-        }
-        return null;
+        Child child = firstChild(name);
+        if (child == null) return null;
+        
+        // error check on model guarantees that this works.
+        return ((NodeChild)child).dom;
     }
 
     /**
@@ -835,6 +1124,7 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
 
         List<Child> removed = stitchList(newChildren,name,Arrays.asList(leaves));
         children = newChildren;
+        childrenChanged(nodesOf(removed), Arrays.asList(values));
 
         for (Child c : removed) {
             ((NodeChild) c).dom.release();
@@ -947,11 +1237,33 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
      * and the type name.
      *
      * <p>
-     * TODO: the current algorithm does a full tree scan. Expand the model
-     * so that we can detect deadends that are statically known not to contain
-     * the kind we are looking for, and use that to cut the search space.
+     * When this DOM is a symbol space root for the type name (see
+     * {@link #getSymbolSpaceRoot(String)}) the first call builds an index of
+     * the keyed DOMs of that type below this one, which is kept up to date as
+     * the tree changes.  Otherwise the tree is scanned.
      */
     public Dom resolveReference(String key, String typeName) {
+        if (parent == null || model.symbolSpaces.contains(typeName)) {
+            synchronized (referenceIndexLock) {
+                if (referenceIndexes == null) {
+                    referenceIndexes = new HashMap<String, ReferenceIndex>();
+                    hasReferenceIndexes = true;
+                }
+                
+                ReferenceIndex index = referenceIndexes.get(typeName);
+                if (index == null) {
+                    index = new ReferenceIndex(this, typeName);
+                    referenceIndexes.put(typeName, index);
+                }
+                
+                return index.get(key);
+            }
+        }
+        
+        return scanForReference(key, typeName);
+    }
+    
+    private Dom scanForReference(String key, String typeName) {
         String keyedAs = model.keyedAs;
         if(keyedAs!=null && keyedAs.equals(typeName) && getKey().equals(key))
             return this; // found it
@@ -959,7 +1271,7 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
         for (Child child : children) {
             if (child instanceof NodeChild) {
                 NodeChild n = (NodeChild) child;
-                Dom found = n.dom.resolveReference(key,typeName);
+                Dom found = n.dom.scanForReference(key,typeName);
                 if(found!=null) return found;
             }
         }
@@ -1235,7 +1547,9 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
      * Used by the parser to set a list of children.
      */
     /*package*/ void setChildren(List<Child> children) {
+       List<Child> oldChildren = this.children;
        this.children = children;
+       childrenChanged(nodesOf(oldChildren), nodesOf(children));
     }
 
     /**
@@ -1248,10 +1562,10 @@ public class Dom extends AbstractActiveDescriptor implements InvocationHandler,
     private Map<String, String> attributesToWrite() {
 
         Map<String, String> attributesToWrite = new HashMap<String, String>();
-        Map<String, String> localAttr = new HashMap<String, String>(attributes);
+        Map<String, String> localAttr = getRawAttributes();
         for (Map.Entry<String, String> a : localAttr.entrySet()) {
             ConfigModel.AttributeLeaf am = model.attributes.get(a.getKey());
-            String dv = am.getDefaultValue();
+            String dv = (am==null) ? null : am.getDefaultValue();
             if (dv==null || !dv.equals(a.getValue())) {
                 attributesToWrite.put(a.getKey(), a.getValue());
             }
@@ -51,6 +51,9 @@ import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 import javax.xml.stream.XMLStreamException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a whole DOM tree.
@@ -66,6 +69,21 @@ public class DomDocument<T extends Dom> {
      * {@link Translator} may refer to objects in the configuration file being read.
      */
     private volatile Translator translator = Translator.NOOP;
+    
+    /**
+     * Incremented whenever the translations may have changed, which is
+     * whenever the translator or anything in the tree changes
+     */
+    private final AtomicInteger translationGeneration = new AtomicInteger();
+    
+    /**
+     * The translations of raw values containing '$' for one generation,
+     * or null if translations are not cached
+     */
+    private volatile TranslationCache translationCache;
+    private volatile boolean translationCacheEnabled;
+    private final AtomicLong translationCacheHits = new AtomicLong();
+    private final AtomicLong translationCacheMisses = new AtomicLong();
 
     protected final Map<ActiveDescriptor<? extends ConfigInjector>,ConfigModel> models = new HashMap<ActiveDescriptor<? extends ConfigInjector>, ConfigModel>();
     private final MultiMap<Class, List<ConfigModel>> implementorsOf = new MultiMap<Class, List<ConfigModel>>();
@@ -102,6 +120,108 @@ public class DomDocument<T extends Dom> {
 
     public void setTranslator(Translator translator) {
         this.translator = translator;
+        invalidateTranslations();
+    }
+    
+    /**
+     * Turns the caching of translated values on or off.  When on, the
+     * translation of each raw value is remembered until the translator
+     * or any attribute or element of this document changes (which
+     * includes every committed {@link Transaction}), so the
+     * {@link Translator} must only depend on those.  A translator that
+     * depends on anything else, such as system properties, must call
+     * {@link #invalidateTranslations()} when that changes.  The cache is
+     * off by default
+     * 
+     * @param enabled true if translated values should be cached
+     */
+    public void setTranslationCacheEnabled(boolean enabled) {
+        translationCacheEnabled = enabled;
+        if (!enabled) {
+            translationCache = null;
+        }
+    }
+    
+    /**
+     * Tells whether translated values are cached
+     * 
+     * @return true if translated values are cached
+     */
+    public boolean isTranslationCacheEnabled() {
+        return translationCacheEnabled;
+    }
+    
+    /**
+     * Discards all cached translations, for use when something
+     * the {@link Translator} depends on outside of this
+     * document has changed
+     */
+    public void invalidateTranslations() {
+        translationGeneration.incrementAndGet();
+    }
+    
+    /**
+     * The number of translations that were found in the cache
+     * 
+     * @return The number of translation cache hits
+     */
+    public long getTranslationCacheHits() {
+        return translationCacheHits.get();
+    }
+    
+    /**
+     * The number of translations that were not found in the cache
+     * and had to be done by the {@link Translator}
+     * 
+     * @return The number of translation cache misses
+     */
+    public long getTranslationCacheMisses() {
+        return translationCacheMisses.get();
+    }
+    
+    /**
+     * Translates a raw value with the {@link Translator} of this document,
+     * using the cache if it is enabled
+     */
+    /* package */ String translate(String raw) {
+        // Read the generation before the translator, so that a change made
+        // from here on, including a new translator, discards the result
+        int generation = translationGeneration.get();
+        Translator t = translator;
+        if (!translationCacheEnabled || t == Translator.NOOP || raw.indexOf('$') < 0) {
+            return t.translate(raw);
+        }
+        
+        TranslationCache cache = translationCache;
+        if (cache == null || cache.generation != generation || cache.translator != t) {
+            cache = new TranslationCache(generation, t);
+            translationCache = cache;
+        }
+        
+        String retVal = cache.values.get(raw);
+        if (retVal != null) {
+            translationCacheHits.incrementAndGet();
+            return retVal;
+        }
+        
+        translationCacheMisses.incrementAndGet();
+        retVal = t.translate(raw);
+        if (retVal != null) {
+            cache.values.put(raw, retVal);
+        }
+        
+        return retVal;
+    }
+    
+    private static final class TranslationCache {
+        private final int generation;
+        private final Translator translator;
+        private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<String, String>();
+        
+        private TranslationCache(int generation, Translator translator) {
+            this.generation = generation;
+            this.translator = translator;
+        }
     }
 
     /**
@@ -0,0 +1,184 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.config;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The index of the keyed {@link Dom} nodes of one type found below
+ * a symbol space root, as searched for by {@link Dom#resolveReference(String, String)}.
+ * When more than one node has the same key the first one in document
+ * order wins, as it does with a scan of the tree.
+ * <p>
+ * The index is kept up to date as nodes are added and removed.  When an
+ * update cannot be applied without knowing the document order of the nodes
+ * (which only happens when keys are duplicated) the update returns false,
+ * and the index must be thrown away and built again.
+ * <p>
+ * This class is not thread safe, the owning {@link Dom} must lock around it
+ * 
+ * @author jwells
+ */
+/* package */ class ReferenceIndex {
+    private final String typeName;
+    private final Map<String, Dom> byKey = new HashMap<String, Dom>();
+    
+    /** Keys owned by more than one node */
+    private final HashSet<String> duplicated = new HashSet<String>();
+    
+    /**
+     * Builds the index with one scan of the tree below root
+     * 
+     * @param root The root of the tree to index, which is itself indexed
+     * @param typeName The keyedAs type name of the indexed nodes
+     */
+    /* package */ ReferenceIndex(Dom root, String typeName) {
+        this.typeName = typeName;
+        
+        index(root);
+    }
+    
+    private void index(Dom dom) {
+        if (typeName.equals(dom.model.keyedAs)) {
+            String key = dom.getKey();
+            if (key != null) {
+                if (byKey.containsKey(key)) {
+                    duplicated.add(key);
+                }
+                else {
+                    byKey.put(key, dom);
+                }
+            }
+        }
+        
+        for (Dom child : dom.nodeChildren()) {
+            index(child);
+        }
+    }
+    
+    /**
+     * Gets the node with the given key
+     * 
+     * @param key The key to look for
+     * @return The first node in document order with the key, or null if there is none
+     */
+    /* package */ Dom get(String key) {
+        return byKey.get(key);
+    }
+    
+    /**
+     * Records that a node has been added below the root
+     * 
+     * @param key The key of the node, may be null
+     * @param dom A node of the indexed type
+     * @return false if the index can no longer be used and must be rebuilt
+     */
+    /* package */ boolean added(String key, Dom dom) {
+        if (key == null) return true;
+        
+        Dom existing = byKey.get(key);
+        if (existing == null) {
+            byKey.put(key, dom);
+            return true;
+        }
+        
+        // Which of the two comes first in the document is not known
+        return (existing == dom);
+    }
+    
+    /**
+     * Records that a node has been removed from below the root
+     * 
+     * @param key The key the node had, may be null
+     * @param dom A node of the indexed type
+     * @return false if the index can no longer be used and must be rebuilt
+     */
+    /* package */ boolean removed(String key, Dom dom) {
+        if (key == null) return true;
+        
+        // Another node with this key may now be the first one in the document
+        if (duplicated.contains(key)) return false;
+        
+        if (byKey.get(key) == dom) {
+            byKey.remove(key);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Applies a change below the root to every index of a node
+     * 
+     * @param indexes The indexes of the node by type name, which are
+     * removed when they can no longer be used
+     * @param removed Keyed nodes that have been removed
+     * @param removedKeys The keys the removed nodes had, in the same order
+     * @param added Keyed nodes that have been added
+     */
+    /* package */ static void update(Map<String, ReferenceIndex> indexes,
+            List<Dom> removed, List<String> removedKeys, List<Dom> added) {
+        for (Map.Entry<String, ReferenceIndex> entry : new HashMap<String, ReferenceIndex>(indexes).entrySet()) {
+            String indexedType = entry.getKey();
+            ReferenceIndex index = entry.getValue();
+            
+            boolean usable = true;
+            for (int lcv = 0; usable && (lcv < removed.size()); lcv++) {
+                Dom dom = removed.get(lcv);
+                if (!indexedType.equals(dom.model.keyedAs)) continue;
+                
+                usable = index.removed(removedKeys.get(lcv), dom);
+            }
+            
+            for (int lcv = 0; usable && (lcv < added.size()); lcv++) {
+                Dom dom = added.get(lcv);
+                if (!indexedType.equals(dom.model.keyedAs)) continue;
+                
+                usable = index.added(dom.getKey(), dom);
+            }
+            
+            if (!usable) {
+                indexes.remove(indexedType);
+            }
+        }
+    }
+}
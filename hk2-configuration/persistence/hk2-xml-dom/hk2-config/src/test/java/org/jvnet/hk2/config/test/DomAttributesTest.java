@@ -0,0 +1,345 @@
+package org.jvnet.hk2.config.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.beans.PropertyVetoException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.jvnet.hk2.config.ConfigBean;
+import org.jvnet.hk2.config.ConfigBeanProxy;
+import org.jvnet.hk2.config.ConfigParser;
+import org.jvnet.hk2.config.ConfigSupport;
+import org.jvnet.hk2.config.Dom;
+import org.jvnet.hk2.config.DomDocument;
+import org.jvnet.hk2.config.SingleConfigCode;
+import org.jvnet.hk2.config.TransactionFailure;
+
+/**
+ * Tests the storage of attribute values in the config DOM, both for
+ * attributes of the model and for attributes the model does not know
+ *
+ * @author jwells
+ */
+public class DomAttributesTest {
+    private final static String TEST_NAME = "DomAttributes";
+    private final static Random RANDOM = new Random();
+
+    private final static String MAX_POOL_SIZE = "max-pool-size";
+    private final static String NAME = "name";
+    private final static String OTHER = "other";
+    private final static String CONFIG = "generic-config";
+
+    private final static String CONTAINER_XML =
+            "<generic-container>" +
+            "<generic-config name=\"test1\">" +
+            "<generic-config name=\"test\">" +
+            "<generic-config name=\"test\"></generic-config>" +
+            "</generic-config>" +
+            "</generic-config>" +
+            "<generic-config name=\"test2\"></generic-config>" +
+            "<web-container-availability></web-container-availability>" +
+            "</generic-container>";
+
+    private final static int LARGE_SIZE = 100000;
+    private final static int ROUNDS = 3;
+
+    private ServiceLocator habitat;
+    private DomDocument document;
+
+    @Before
+    public void before() throws Exception {
+        habitat = createLocator();
+
+        ConfigParser parser = new ConfigParser(habitat);
+        URL url = DomAttributesTest.class.getResource("/domain.xml");
+
+        document = parser.parse(url, new SimpleDocument(habitat));
+    }
+
+    @After
+    public void after() {
+        ServiceLocatorFactory.getInstance().destroy(habitat);
+        habitat = null;
+    }
+
+    private static ServiceLocator createLocator() {
+        ServiceLocator retVal = ServiceLocatorFactory.getInstance().create(TEST_NAME + RANDOM.nextInt());
+        DynamicConfigurationService dcs = retVal.getService(DynamicConfigurationService.class);
+        DynamicConfiguration config = dcs.createDynamicConfiguration();
+        new ConfigModule(retVal).configure(config);
+
+        config.commit();
+
+        return retVal;
+    }
+
+    private Dom getContainer() {
+        return Dom.unwrap(habitat.getService(SimpleConnector.class).getExtensions().get(0));
+    }
+
+    private static Set<String> names(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    private static String write(Dom dom) throws XMLStreamException {
+        StringWriter sw = new StringWriter();
+        XMLStreamWriter w = XMLOutputFactory.newInstance().createXMLStreamWriter(sw);
+        dom.writeTo(null, w);
+        w.close();
+
+        return sw.toString();
+    }
+
+    /**
+     * Attributes of the model fall back to their default value, both before
+     * any value is set and once the value is removed again
+     */
+    @Test
+    public void testModelAttributeDefaults() {
+        Dom container = getContainer();
+
+        assertEquals("32", container.rawAttribute(MAX_POOL_SIZE));
+        assertTrue(container.getAttributeNames().isEmpty());
+
+        container.attribute(MAX_POOL_SIZE, "64");
+        assertEquals("64", container.rawAttribute(MAX_POOL_SIZE));
+        assertEquals(names(MAX_POOL_SIZE), container.getAttributeNames());
+
+        container.attribute(MAX_POOL_SIZE, null);
+        assertEquals("32", container.rawAttribute(MAX_POOL_SIZE));
+        assertTrue(container.getAttributeNames().isEmpty());
+
+        // Removing a value that was never set leaves the node unchanged
+        container.attribute("int-value", null);
+        assertEquals("1234", container.rawAttribute("int-value"));
+        assertTrue(container.getAttributeNames().isEmpty());
+    }
+
+    /**
+     * Attributes the model does not know are kept apart from the model
+     * ones and can be removed with a null value
+     */
+    @Test
+    public void testAttributesNotInModel() {
+        Dom container = getContainer();
+
+        // Removing an unknown attribute before any was set is a no-op
+        container.attribute(OTHER, null);
+        assertNull(container.rawAttribute(OTHER));
+        assertTrue(container.getAttributeNames().isEmpty());
+
+        container.attribute(OTHER, "value");
+        container.attribute(MAX_POOL_SIZE, "64");
+        assertEquals("value", container.rawAttribute(OTHER));
+        assertEquals("value", container.attribute(OTHER));
+        assertEquals("64", container.rawAttribute(MAX_POOL_SIZE));
+        assertEquals(names(OTHER, MAX_POOL_SIZE), container.getAttributeNames());
+
+        container.attribute(OTHER, "changed");
+        assertEquals("changed", container.rawAttribute(OTHER));
+
+        container.attribute(OTHER, null);
+        assertNull(container.rawAttribute(OTHER));
+        assertEquals("64", container.rawAttribute(MAX_POOL_SIZE));
+        assertEquals(names(MAX_POOL_SIZE), container.getAttributeNames());
+    }
+
+    /**
+     * The names returned are those at the time of the call, and
+     * cannot be modified by the caller
+     */
+    @Test
+    public void testAttributeNamesAreASnapshot() {
+        Dom container = getContainer();
+        container.attribute(MAX_POOL_SIZE, "64");
+
+        Set<String> before = container.getAttributeNames();
+
+        container.attribute(OTHER, "value");
+        container.attribute(MAX_POOL_SIZE, null);
+
+        assertEquals(names(MAX_POOL_SIZE), before);
+        assertEquals(names(OTHER), container.getAttributeNames());
+
+        try {
+            before.add(OTHER);
+            throw new AssertionError("Names of the attributes must not be modifiable");
+        }
+        catch (UnsupportedOperationException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * The copy constructor copies the attributes of the node and its
+     * children, and later changes on either side are not seen by the other
+     */
+    @Test
+    public void testCopiesAreIndependent() {
+        Dom container = getContainer();
+        container.attribute(MAX_POOL_SIZE, "64");
+        container.attribute(OTHER, "value");
+
+        Dom copy = new ConfigBean(container, container.parent());
+
+        assertEquals("64", copy.rawAttribute(MAX_POOL_SIZE));
+        assertEquals("value", copy.rawAttribute(OTHER));
+        assertEquals(names(MAX_POOL_SIZE, OTHER), copy.getAttributeNames());
+        assertEquals("test1", copy.nodeElements(CONFIG).get(0).rawAttribute(NAME));
+        assertNotSame(container.nodeElements(CONFIG).get(0), copy.nodeElements(CONFIG).get(0));
+
+        copy.attribute(MAX_POOL_SIZE, "128");
+        copy.attribute(OTHER, null);
+        copy.nodeElements(CONFIG).get(1).attribute(OTHER, "copied");
+
+        assertEquals("64", container.rawAttribute(MAX_POOL_SIZE));
+        assertEquals("value", container.rawAttribute(OTHER));
+        assertNull(container.nodeElements(CONFIG).get(1).rawAttribute(OTHER));
+
+        container.attribute(OTHER, "original");
+        assertNull(copy.rawAttribute(OTHER));
+        assertEquals("128", copy.rawAttribute(MAX_POOL_SIZE));
+        assertEquals("copied", copy.nodeElements(CONFIG).get(1).rawAttribute(OTHER));
+
+        // A copy of a node without any values
+        Dom test2 = container.nodeElements(CONFIG).get(1);
+        test2.attribute(NAME, null);
+        Dom emptyCopy = new ConfigBean(test2, container);
+        assertTrue(emptyCopy.getAttributeNames().isEmpty());
+        assertNull(emptyCopy.rawAttribute(NAME));
+    }
+
+    /**
+     * Copies made with deepCopy inside a transaction carry the attributes
+     * of the original
+     */
+    @Test
+    public void testDeepCopyInTransaction() throws TransactionFailure {
+        GenericContainer container = habitat.getService(SimpleConnector.class).getExtensions().get(0);
+        final GenericConfig test1 = container.getExtensions().get(0);
+        Dom.unwrap(test1).attribute(OTHER, "value");
+
+        ConfigSupport.apply(new SingleConfigCode<GenericContainer>() {
+            @Override
+            public Object run(GenericContainer container)
+                    throws PropertyVetoException, TransactionFailure {
+                GenericConfig copy = (GenericConfig) test1.deepCopy(container);
+                copy.setName("test3");
+                container.getExtensions().add(copy);
+                return copy;
+            }
+        }, container);
+
+        Dom copy = Dom.unwrap(container.getExtensions().get(2));
+        assertEquals("test3", copy.rawAttribute(NAME));
+        assertEquals("value", copy.rawAttribute(OTHER));
+        assertEquals("test", copy.nodeElements(CONFIG).get(0).rawAttribute(NAME));
+
+        Dom original = Dom.unwrap(container.getExtensions().get(0));
+        assertEquals("test1", original.rawAttribute(NAME));
+        assertEquals("value", original.rawAttribute(OTHER));
+    }
+
+    /**
+     * Values equal to the default of the model are not written out, all
+     * other values are
+     */
+    @Test
+    public void testWriteTo() throws XMLStreamException {
+        Dom container = getContainer();
+        assertEquals(CONTAINER_XML, write(container));
+
+        container.attribute(MAX_POOL_SIZE, "32");
+        assertEquals(CONTAINER_XML, write(container));
+
+        container.attribute(MAX_POOL_SIZE, "64");
+        assertEquals(CONTAINER_XML.replace("<generic-container>",
+                "<generic-container max-pool-size=\"64\">"), write(container));
+
+        container.attribute(MAX_POOL_SIZE, null);
+        Dom test2 = container.nodeElements(CONFIG).get(1);
+        test2.attribute(OTHER, "value");
+        assertEquals(CONTAINER_XML.replace("<generic-config name=\"test2\">",
+                "<generic-config other=\"value\" name=\"test2\">"), write(container));
+
+        test2.attribute(OTHER, null);
+        assertEquals(CONTAINER_XML, write(container));
+    }
+
+    private static String createLargeDocument() {
+        StringBuilder sb = new StringBuilder("<simple-connector port=\"8181\"><generic-container max-pool-size=\"64\">");
+        for (int lcv = 0; lcv < LARGE_SIZE; lcv++) {
+            sb.append("<generic-config name=\"config").append(lcv).append("\"/>");
+        }
+        sb.append("</generic-container></simple-connector>");
+
+        return sb.toString();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int lcv = 0; lcv < 3; lcv++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Reports how long it takes to parse a document with a large number of
+     * keyed elements, and how much heap the parsed document keeps
+     */
+    @Test @Ignore
+    public void testParseLargeDocument() throws XMLStreamException {
+        String xml = createLargeDocument();
+        XMLInputFactory xif = XMLInputFactory.newInstance();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = usedHeap();
+
+            ServiceLocator locator = createLocator();
+            try {
+                XMLStreamReader in = xif.createXMLStreamReader(new StringReader(xml));
+
+                long start = System.currentTimeMillis();
+                DomDocument large = new SimpleDocument(locator);
+                new ConfigParser(locator).parse(in, large);
+                long elapsed = System.currentTimeMillis() - start;
+
+                long retained = usedHeap() - before;
+
+                ConfigBeanProxy connector = locator.getService(SimpleConnector.class);
+                assertFalse(connector == null);
+                System.out.println("Parsed " + LARGE_SIZE + " elements in " + elapsed +
+                        "ms, retaining " + (retained / (1024 * 1024)) + "MB of heap");
+            }
+            finally {
+                ServiceLocatorFactory.getInstance().destroy(locator);
+            }
+        }
+    }
+}
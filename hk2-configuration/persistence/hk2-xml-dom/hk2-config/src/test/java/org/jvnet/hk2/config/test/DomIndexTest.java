@@ -0,0 +1,156 @@
+package org.jvnet.hk2.config.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.beans.PropertyVetoException;
+import java.net.URL;
+import java.util.List;
+import java.util.Random;
+
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.jvnet.hk2.config.ConfigParser;
+import org.jvnet.hk2.config.ConfigSupport;
+import org.jvnet.hk2.config.Dom;
+import org.jvnet.hk2.config.DomDocument;
+import org.jvnet.hk2.config.SingleConfigCode;
+import org.jvnet.hk2.config.TransactionFailure;
+
+/**
+ * Tests that reference resolution and element lookup see the
+ * changes made to the tree after the first lookup
+ *
+ * @author jwells
+ */
+public class DomIndexTest {
+    private final static String TEST_NAME = "DomIndex";
+    private final static Random RANDOM = new Random();
+
+    private ServiceLocator habitat;
+    private DomDocument document;
+
+    @Before
+    public void before() throws Exception {
+        String testName = TEST_NAME + RANDOM.nextInt();
+
+        habitat = ServiceLocatorFactory.getInstance().create(testName);
+        DynamicConfigurationService dcs = habitat.getService(DynamicConfigurationService.class);
+        DynamicConfiguration config = dcs.createDynamicConfiguration();
+        new ConfigModule(habitat).configure(config);
+
+        config.commit();
+
+        ConfigParser parser = new ConfigParser(habitat);
+        URL url = DomIndexTest.class.getResource("/domain.xml");
+
+        document = parser.parse(url, new SimpleDocument(habitat));
+    }
+
+    @After
+    public void after() {
+        ServiceLocatorFactory.getInstance().destroy(habitat);
+        habitat = null;
+    }
+
+    private GenericContainer getContainer() {
+        return habitat.getService(SimpleConnector.class).getExtensions().get(0);
+    }
+
+    private static String keyedAs(GenericContainer container) {
+        return Dom.unwrap(container.getExtensions().get(0)).model.keyedAs;
+    }
+
+    /**
+     * Resolves references before and after elements are added, renamed and removed
+     */
+    @Test
+    public void testResolveReferenceFollowsChanges() throws TransactionFailure {
+        GenericContainer container = getContainer();
+        String typeName = keyedAs(container);
+        Dom root = document.getRoot();
+
+        List<GenericConfig> configs = container.getExtensions();
+        assertSame(Dom.unwrap(configs.get(0)), root.resolveReference("test1", typeName));
+        assertSame(Dom.unwrap(configs.get(1)), root.resolveReference("test2", typeName));
+
+        // The outer of the two nested configs named test comes first
+        Dom outer = Dom.unwrap(configs.get(0).getGenericConfig());
+        assertSame(outer, root.resolveReference("test", typeName));
+        assertNull(root.resolveReference("test3", typeName));
+
+        ConfigSupport.apply(new SingleConfigCode<GenericContainer>() {
+            @Override
+            public Object run(GenericContainer container)
+                    throws PropertyVetoException, TransactionFailure {
+                GenericConfig child = container.createChild(GenericConfig.class);
+                child.setName("test3");
+                container.getExtensions().add(child);
+                return child;
+            }
+        }, container);
+
+        configs = container.getExtensions();
+        assertEquals(3, configs.size());
+        Dom test3 = Dom.unwrap(configs.get(2));
+        assertSame(test3, root.resolveReference("test3", typeName));
+
+        ConfigSupport.apply(new SingleConfigCode<GenericConfig>() {
+            @Override
+            public Object run(GenericConfig config)
+                    throws PropertyVetoException, TransactionFailure {
+                config.setName("test4");
+                return config;
+            }
+        }, configs.get(2));
+
+        assertNull(root.resolveReference("test3", typeName));
+        assertSame(test3, root.resolveReference("test4", typeName));
+
+        ConfigSupport.apply(new SingleConfigCode<GenericContainer>() {
+            @Override
+            public Object run(GenericContainer container)
+                    throws PropertyVetoException, TransactionFailure {
+                List<GenericConfig> extensions = container.getExtensions();
+                return extensions.remove(extensions.get(0));
+            }
+        }, container);
+
+        assertNull(root.resolveReference("test1", typeName));
+        assertNull(root.resolveReference("test", typeName));
+        assertSame(Dom.unwrap(container.getExtensions().get(0)), root.resolveReference("test2", typeName));
+        assertSame(test3, root.resolveReference("test4", typeName));
+    }
+
+    /**
+     * Looks up leaf elements of a node with enough children to be indexed
+     */
+    @Test
+    public void testElementLookupFollowsChanges() {
+        Dom dom = Dom.unwrap(getContainer().getExtensions().get(1));
+
+        for (int lcv = 0; lcv < 20; lcv++) {
+            dom.addLeafElement("leaf" + lcv, "value" + lcv);
+        }
+        dom.addLeafElement("leaf5", "second");
+
+        assertEquals("value5", dom.rawLeafElement("leaf5"));
+        assertEquals("value19", dom.rawLeafElement("leaf19"));
+        assertNull(dom.rawLeafElement("leaf20"));
+
+        dom.changeLeafElement("leaf5", "value5", "changed");
+        assertEquals("changed", dom.rawLeafElement("leaf5"));
+
+        dom.removeLeafElement("leaf5", "changed");
+        assertEquals("second", dom.rawLeafElement("leaf5"));
+
+        dom.addLeafElement("leaf20", "value20");
+        assertEquals("value20", dom.rawLeafElement("leaf20"));
+    }
+}
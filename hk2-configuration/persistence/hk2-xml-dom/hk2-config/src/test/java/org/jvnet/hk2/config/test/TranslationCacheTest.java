@@ -0,0 +1,227 @@
+package org.jvnet.hk2.config.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.beans.PropertyVetoException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.jvnet.hk2.config.ConfigParser;
+import org.jvnet.hk2.config.ConfigSupport;
+import org.jvnet.hk2.config.Dom;
+import org.jvnet.hk2.config.DomDocument;
+import org.jvnet.hk2.config.SingleConfigCode;
+import org.jvnet.hk2.config.TransactionFailure;
+import org.jvnet.hk2.config.VariableResolver;
+
+/**
+ * Tests the caching of translated values in the config DOM
+ *
+ * @author jwells
+ */
+public class TranslationCacheTest {
+    private final static String TEST_NAME = "TranslationCache";
+    private final static Random RANDOM = new Random();
+    private final static int REPLACEMENTS = 2000;
+
+    private ServiceLocator habitat;
+    private DomDocument document;
+    private CountingResolver resolver;
+
+    @Before
+    public void before() throws Exception {
+        String testName = TEST_NAME + RANDOM.nextInt();
+
+        habitat = ServiceLocatorFactory.getInstance().create(testName);
+        DynamicConfigurationService dcs = habitat.getService(DynamicConfigurationService.class);
+        DynamicConfiguration config = dcs.createDynamicConfiguration();
+        new ConfigModule(habitat).configure(config);
+
+        config.commit();
+
+        ConfigParser parser = new ConfigParser(habitat);
+        URL url = TranslationCacheTest.class.getResource("/domain.xml");
+
+        document = parser.parse(url, new SimpleDocument(habitat));
+
+        resolver = new CountingResolver();
+        resolver.variables.put("suffix", "one");
+        document.setTranslator(resolver);
+    }
+
+    @After
+    public void after() {
+        ServiceLocatorFactory.getInstance().destroy(habitat);
+        habitat = null;
+    }
+
+    private GenericConfig getConfig() {
+        return habitat.getService(SimpleConnector.class).getExtensions().get(0).getExtensions().get(1);
+    }
+
+    private static void setName(GenericConfig config, final String name) throws TransactionFailure {
+        ConfigSupport.apply(new SingleConfigCode<GenericConfig>() {
+            @Override
+            public Object run(GenericConfig config)
+                    throws PropertyVetoException, TransactionFailure {
+                config.setName(name);
+                return config;
+            }
+        }, config);
+    }
+
+    /**
+     * Translated values are only computed once until something changes
+     */
+    @Test
+    public void testTranslationsAreCached() throws TransactionFailure {
+        GenericConfig config = getConfig();
+        setName(config, "name-${suffix}");
+
+        document.setTranslationCacheEnabled(true);
+        Dom dom = Dom.unwrap(config);
+
+        for (int lcv = 0; lcv < 10; lcv++) {
+            assertEquals("name-one", dom.attribute("name"));
+        }
+
+        assertEquals(1, resolver.calls);
+        assertEquals(1, document.getTranslationCacheMisses());
+        assertEquals(9, document.getTranslationCacheHits());
+
+        // Values without variables are never cached
+        assertEquals("test1", Dom.unwrap(habitat.getService(SimpleConnector.class).getExtensions().get(0).getExtensions().get(0)).attribute("name"));
+        assertEquals(1, document.getTranslationCacheMisses());
+    }
+
+    /**
+     * Committed changes and explicit invalidation discard cached values
+     */
+    @Test
+    public void testChangesInvalidateTranslations() throws TransactionFailure {
+        GenericConfig config = getConfig();
+        setName(config, "name-${suffix}");
+
+        document.setTranslationCacheEnabled(true);
+        Dom dom = Dom.unwrap(config);
+
+        assertEquals("name-one", dom.attribute("name"));
+        assertEquals("name-one", dom.attribute("name"));
+        assertEquals(1, resolver.calls);
+
+        // A change of the variable outside of the document is only seen once invalidated
+        resolver.variables.put("suffix", "two");
+        assertEquals("name-one", dom.attribute("name"));
+
+        document.invalidateTranslations();
+        assertEquals("name-two", dom.attribute("name"));
+        assertEquals(2, resolver.calls);
+
+        // Any committed change discards the cached values
+        setName(getConfig(), "other-${suffix}");
+        resolver.variables.put("suffix", "three");
+        assertEquals("other-three", dom.attribute("name"));
+        assertEquals(3, resolver.calls);
+
+        // Without the cache every read is translated
+        document.setTranslationCacheEnabled(false);
+        assertEquals("other-three", dom.attribute("name"));
+        assertEquals("other-three", dom.attribute("name"));
+        assertEquals(5, resolver.calls);
+    }
+
+    /**
+     * Replacing the translator discards the values cached with the old one
+     */
+    @Test
+    public void testNewTranslatorIsUsed() throws TransactionFailure {
+        GenericConfig config = getConfig();
+        setName(config, "name-${suffix}");
+
+        document.setTranslationCacheEnabled(true);
+        Dom dom = Dom.unwrap(config);
+
+        assertEquals("name-one", dom.attribute("name"));
+        assertEquals("name-one", dom.attribute("name"));
+
+        CountingResolver other = new CountingResolver();
+        other.variables.put("suffix", "two");
+        document.setTranslator(other);
+
+        assertEquals("name-two", dom.attribute("name"));
+        assertEquals("name-two", dom.attribute("name"));
+        assertEquals(1, resolver.calls);
+        assertEquals(1, other.calls);
+    }
+
+    /**
+     * A translator replaced while another thread is translating is
+     * used by every read made after it was set
+     */
+    @Test
+    public void testTranslatorReplacedWhileTranslating() throws Exception {
+        GenericConfig config = getConfig();
+        setName(config, "name-${suffix}");
+
+        document.setTranslationCacheEnabled(true);
+        final Dom dom = Dom.unwrap(config);
+
+        CountingResolver other = new CountingResolver();
+        other.variables.put("suffix", "two");
+
+        for (int lcv = 0; lcv < REPLACEMENTS; lcv++) {
+            final AtomicBoolean done = new AtomicBoolean();
+            final CountDownLatch reading = new CountDownLatch(1);
+
+            Thread reader = new Thread() {
+                @Override
+                public void run() {
+                    while (!done.get()) {
+                        dom.attribute("name");
+                        reading.countDown();
+                    }
+                }
+            };
+            reader.start();
+            reading.await();
+
+            boolean useOther = (lcv % 2) == 0;
+            document.setTranslator(useOther ? other : resolver);
+
+            done.set(true);
+            reader.join();
+
+            assertEquals(useOther ? "name-two" : "name-one", dom.attribute("name"));
+        }
+    }
+
+    private static class CountingResolver extends VariableResolver {
+        private final Map<String, String> variables = new HashMap<String, String>();
+        private int calls;
+
+        @Override
+        public String translate(String str) {
+            if (str.indexOf('$') >= 0) {
+                calls++;
+            }
+
+            return super.translate(str);
+        }
+
+        @Override
+        protected String getVariableValue(String varName) {
+            return variables.get(varName);
+        }
+    }
+}
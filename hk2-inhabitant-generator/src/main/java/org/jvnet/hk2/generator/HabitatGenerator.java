@@ -73,6 +73,10 @@ public class HabitatGenerator {
     public final static String DIRECTORY_ARG = "--directory";
     /** This option gives the name of directory in the target location where the file should be placed */
     public final static String NO_DATE_ARG = "--noDate";
+    /** This option will also write the binary form of the file (locatorName.bin) next to the text form */
+    public final static String BINARY_ARG = "--binary";
+    /** This option gives the file in which the analysis of every class is kept so that later runs only analyze changed classes */
+    public final static String INCREMENTAL_ARG = "--incremental";
     
     private final String directoryOrFileToGenerateFor;
     private final String outjarName;
@@ -82,6 +86,8 @@ public class HabitatGenerator {
     private final boolean noSwap;
     private final String outputDirectory;
     private final boolean includeDate;
+    private final boolean writeBinary;
+    private final String cacheFile;
     
     private HabitatGenerator(String directoryOrFileToGenerateFor,
             String outjarName,
@@ -90,7 +96,9 @@ public class HabitatGenerator {
             String searchPath,
             boolean noSwap,
             String outputDirectory,
-            boolean includeDate) {
+            boolean includeDate,
+            boolean writeBinary,
+            String cacheFile) {
         this.directoryOrFileToGenerateFor = directoryOrFileToGenerateFor;
         this.outjarName = outjarName;
         this.locatorName = locatorName;
@@ -99,6 +107,8 @@ public class HabitatGenerator {
         this.noSwap = noSwap;
         this.outputDirectory = outputDirectory;
         this.includeDate = includeDate;
+        this.writeBinary = writeBinary;
+        this.cacheFile = cacheFile;
     }
     
     private void printThrowable(Throwable th) {
@@ -116,7 +126,7 @@ public class HabitatGenerator {
     private int go() {
         GeneratorRunner runner = new GeneratorRunner(directoryOrFileToGenerateFor,
                 outjarName, locatorName, verbose, searchPath, noSwap, outputDirectory,
-                includeDate);
+                includeDate, writeBinary, cacheFile);
         
         try {
             runner.go();
@@ -153,6 +163,8 @@ public class HabitatGenerator {
           "\t[--searchPath path-separator-delimited-classpath]\n" +
           "\t[--outjar jarFile]\n" +
           "\t[--locator locatorName]\n" +
+          "\t[--binary]\n" +
+          "\t[--incremental cacheFile]\n" +
           "\t[--verbose]");
     }
     
@@ -165,7 +177,7 @@ public class HabitatGenerator {
      * A utility to generate inhabitants files.  By default the first element of the classpath will be analyzed and
      * an inhabitants file will be put into the JAR or directory.  The arguments are as follows:
      * <p>
-     * HabitatGenerator [--file jarFileOrDirectory] [--searchPath path-separator-delimited-classpath] [--outjar jarfile] [--locator locatorName] [--directory targetDirectory] [--verbose]
+     * HabitatGenerator [--file jarFileOrDirectory] [--searchPath path-separator-delimited-classpath] [--outjar jarfile] [--locator locatorName] [--directory targetDirectory] [--binary] [--incremental cacheFile] [--verbose]
      * </p>
      * If the input file is a directory then the output file will go into META-INF/locatorName in the
      * original directory
@@ -177,6 +189,14 @@ public class HabitatGenerator {
      * name of the output jar file that should be written.  This defaults to the input jar file
      * itself if not specified.  If specified and the jarFileOrDirectory parameter is a directory
      * then this parameter is ignored
+     * <p>
+     * --binary will also write the binary form of the inhabitants file (META-INF/locatorName.bin),
+     * which is used in preference to the text form when the inhabitants are read.  If not specified
+     * any binary form left over from a previous run is removed
+     * <p>
+     * --incremental keeps the analysis of every class in the given cache file.  On later runs
+     * only the classes that changed, or that depend on a contract, qualifier or superclass
+     * that changed, are analyzed again, and they are analyzed in parallel
      * 
      * @param argv The set of command line arguments
      * @return 0 on success, non-zero on failure
@@ -190,6 +210,8 @@ public class HabitatGenerator {
         boolean userNoSwap = false;
         String outputDirectory = null;
         boolean defaultIncludeDate = true;
+        boolean defaultWriteBinary = false;
+        String cacheFile = null;
         
         for (int lcv = 0; lcv < argv.length; lcv++) {
             if (VERBOSE_ARG.equals(argv[lcv])) {
@@ -237,6 +259,18 @@ public class HabitatGenerator {
             else if (NO_DATE_ARG.equals(argv[lcv])) {
                 defaultIncludeDate = false;
             }
+            else if (BINARY_ARG.equals(argv[lcv])) {
+                defaultWriteBinary = true;
+            }
+            else if (INCREMENTAL_ARG.equals(argv[lcv])) {
+                lcv++;
+                if (lcv >= argv.length) {
+                    usage();
+                    return 5;
+                }
+                
+                cacheFile = argv[lcv];
+            }
             else if (DIRECTORY_ARG.equals(argv[lcv])) {
                 lcv++;
                 if (lcv >= argv.length) {
@@ -281,7 +315,7 @@ public class HabitatGenerator {
         
         HabitatGenerator hg = new HabitatGenerator(defaultFileToHandle, outjarFile,
                 defaultLocatorName, defaultVerbose, searchPath, userNoSwap,
-                outputDirectory, defaultIncludeDate);
+                outputDirectory, defaultIncludeDate, defaultWriteBinary, cacheFile);
         
         return hg.go();
     }
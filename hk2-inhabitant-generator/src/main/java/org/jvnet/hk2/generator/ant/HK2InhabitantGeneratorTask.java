@@ -60,6 +60,8 @@ public class HK2InhabitantGeneratorTask extends Task {
     private boolean noswap = false;
     private Path classpath = null;
     private boolean includeDate = true;
+    private boolean binary = false;
+    private File cacheFile = null;
     
     public void setTargetDirectory(File targetDirectory) {
         this.targetDirectory = targetDirectory;
@@ -85,6 +87,14 @@ public class HK2InhabitantGeneratorTask extends Task {
         this.includeDate = includeDate;
     }
     
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+    
+    public void setCacheFile(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+    
     public void addClasspath(Path classpath) {
         this.classpath = classpath;
     }
@@ -110,6 +120,15 @@ public class HK2InhabitantGeneratorTask extends Task {
             args.add(HabitatGenerator.NO_DATE_ARG);
         }
         
+        if (binary) {
+            args.add(HabitatGenerator.BINARY_ARG);
+        }
+        
+        if (cacheFile != null) {
+            args.add(HabitatGenerator.INCREMENTAL_ARG);
+            args.add(cacheFile.getAbsolutePath());
+        }
+        
         if (locator != null) {
             args.add(HabitatGenerator.HK2_LOCATOR);
             args.add(locator);
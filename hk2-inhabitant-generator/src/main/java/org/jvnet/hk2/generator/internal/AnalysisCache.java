@@ -0,0 +1,464 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.generator.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.hk2.api.Descriptor;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
+import org.glassfish.hk2.utilities.DescriptorImpl;
+
+/**
+ * Keeps the analysis of every class between runs of the generator.  The
+ * analysis of a class is keyed by the SHA-1 hash of its class file and is
+ * only reused if none of the classes that were consulted while analyzing
+ * it (its supertypes, its annotations and so on) have changed either.
+ * <p>
+ * The stamp (the size and modification time) of every class file is kept
+ * as well, so that class files whose stamp did not change need not be read
+ * and hashed at all
+ * 
+ * @author jwells
+ *
+ */
+/* package */ class AnalysisCache {
+    private final static int MAGIC = 0x484b3247;  // HK2G
+    private final static int VERSION = 1;
+    private final static byte NO_DESCRIPTORS[] = new byte[0];
+    
+    private final File cacheFile;
+    private final String options;
+    private final boolean verbose;
+    
+    /* The entries read from the cache file, keyed by class file name */
+    private final Map<String, Entry> previous;
+    
+    /* The entries of this run, which replace the previous ones when saved */
+    private final ConcurrentHashMap<String, Entry> current = new ConcurrentHashMap<String, Entry>();
+    
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private volatile boolean changed;
+    
+    private AnalysisCache(File cacheFile, String options, boolean verbose, Map<String, Entry> previous) {
+        this.cacheFile = cacheFile;
+        this.options = options;
+        this.verbose = verbose;
+        this.previous = previous;
+    }
+    
+    /**
+     * Reads the cache file.  A missing or unreadable cache file, or one written
+     * with other options, gives an empty cache
+     * 
+     * @param cacheFile The file the cache is kept in
+     * @param options The options the analysis depends on
+     * @param verbose true if this should print information about the cache
+     * @return The cache, never null
+     */
+    /* package */ static AnalysisCache load(File cacheFile, String options, boolean verbose) {
+        Map<String, Entry> previous = Collections.emptyMap();
+        
+        if (cacheFile.isFile()) {
+            try {
+                previous = read(cacheFile, options);
+                if (previous == null) {
+                    if (verbose) {
+                        System.out.println("Ignoring cache file " + cacheFile.getAbsolutePath() +
+                                " which was written with other options");
+                    }
+                    
+                    previous = Collections.emptyMap();
+                }
+            }
+            catch (IOException ioe) {
+                if (verbose) {
+                    System.out.println("Ignoring unreadable cache file " + cacheFile.getAbsolutePath() +
+                            ": " + ioe.getMessage());
+                }
+                
+                previous = Collections.emptyMap();
+            }
+        }
+        
+        return new AnalysisCache(cacheFile, options, verbose, previous);
+    }
+    
+    private static Map<String, Entry> read(File cacheFile, String options) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+        try {
+            if (dis.readInt() != MAGIC) throw new IOException("Not a cache file");
+            if (dis.readInt() != VERSION || !options.equals(dis.readUTF())) return null;
+            
+            int size = dis.readInt();
+            HashMap<String, Entry> retVal = new HashMap<String, Entry>();
+            for (int lcv = 0; lcv < size; lcv++) {
+                String classFileName = dis.readUTF();
+                
+                retVal.put(classFileName, Entry.read(dis));
+            }
+            
+            return retVal;
+        }
+        finally {
+            dis.close();
+        }
+    }
+    
+    /**
+     * Computes the hash by which the analysis of a class file is kept
+     * 
+     * @param classBytes The contents of the class file
+     * @return The SHA-1 hash of the class file
+     */
+    /* package */ static byte[] hash(byte classBytes[]) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(classBytes);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    /**
+     * Returns the analysis of the class from a previous run if neither the class
+     * nor any of the classes it depends on have changed since.  The class file
+     * is compared either by its stamp alone, so that it need not be read, or
+     * by its hash
+     * 
+     * @param classFileName The name of the class file relative to searchHere
+     * @param stamp The stamp of the class file, may be null if it has none
+     * @param hash The hash of the class file, or null to only compare the stamp
+     * @param utilities Used to find the current version of the classes depended upon
+     * @param searchHere The file or jar the class file is in
+     * @return The analysis of the class, or null if the class must be analyzed
+     * (or, if no hash was given, if the class file must be read)
+     * @throws IOException If the cached descriptors could not be read
+     */
+    /* package */ Analysis get(String classFileName, String stamp, byte hash[],
+            Utilities utilities, File searchHere) throws IOException {
+        Entry entry = previous.get(classFileName);
+        
+        boolean unchanged;
+        if (entry == null) {
+            unchanged = false;
+        }
+        else if (hash == null) {
+            unchanged = stamp != null && stamp.equals(entry.stamp);
+        }
+        else {
+            unchanged = Arrays.equals(entry.hash, hash);
+        }
+        
+        if (!unchanged || !entry.isValid(utilities, searchHere)) {
+            if (hash != null) {
+                misses.incrementAndGet();
+            }
+            
+            return null;
+        }
+        
+        hits.incrementAndGet();
+        
+        if (stamp == null || !stamp.equals(entry.stamp)) {
+            // Touched but not changed, keep the new stamp so it need not be hashed next time
+            entry = new Entry(stamp, entry);
+            changed = true;
+        }
+        
+        current.put(classFileName, entry);
+        
+        return entry.getAnalysis();
+    }
+    
+    /**
+     * Keeps the analysis of the class for the next run
+     * 
+     * @param classFileName The name of the class file relative to searchHere
+     * @param stamp The stamp of the class file, may be null if it has none
+     * @param hash The hash of the class file
+     * @param dependencies The names of the classes that were consulted while analyzing the class
+     * @param analysis The analysis of the class
+     * @param utilities Used to find the classes depended upon
+     * @param searchHere The file or jar the class file is in
+     */
+    /* package */ void put(String classFileName, String stamp, byte hash[], Set<String> dependencies,
+            Analysis analysis, Utilities utilities, File searchHere) {
+        // Sorted so that the same dependencies are always written in the same order
+        TreeSet<String> sorted = new TreeSet<String>(dependencies);
+        
+        String names[] = new String[sorted.size()];
+        String fingerprints[] = new String[sorted.size()];
+        
+        int lcv = 0;
+        for (String dependency : sorted) {
+            String fingerprint = utilities.getFingerprint(searchHere, dependency);
+            if (fingerprint == null) {
+                // Cannot tell later whether it has changed
+                return;
+            }
+            
+            names[lcv] = dependency;
+            fingerprints[lcv] = fingerprint;
+            lcv++;
+        }
+        
+        changed = true;
+        current.put(classFileName, new Entry(stamp, hash, names, fingerprints, analysis));
+    }
+    
+    /**
+     * Writes the analysis of all the classes seen in this run to the cache file,
+     * dropping the classes that no longer exist
+     * 
+     * @throws IOException if the cache file could not be written
+     */
+    /* package */ void save() throws IOException {
+        if (!changed && current.size() == previous.size() && cacheFile.exists()) {
+            // Every class was reused and none were removed, so the file is still up to date
+            if (verbose) {
+                System.out.println("Reused the analysis of all " + current.size() + " classes from cache file " +
+                        cacheFile.getAbsolutePath());
+            }
+            
+            return;
+        }
+        
+        File parent = cacheFile.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent.getAbsolutePath());
+        }
+        
+        File writeMeFile = File.createTempFile(cacheFile.getName(), ".tmp", parent);
+        
+        // Sorted so that the same analysis always gives the same cache file
+        TreeSet<String> classFileNames = new TreeSet<String>(current.keySet());
+        
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(writeMeFile)));
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeUTF(options);
+            
+            dos.writeInt(classFileNames.size());
+            for (String classFileName : classFileNames) {
+                dos.writeUTF(classFileName);
+                
+                current.get(classFileName).write(dos);
+            }
+        }
+        finally {
+            dos.close();
+        }
+        
+        if (cacheFile.exists() && !cacheFile.delete()) {
+            writeMeFile.delete();
+            throw new IOException("Could not delete existing cache file " + cacheFile.getAbsolutePath());
+        }
+        
+        if (!writeMeFile.renameTo(cacheFile)) {
+            throw new IOException("Could not move cache file " + writeMeFile.getAbsolutePath() +
+                    " to " + cacheFile.getAbsolutePath());
+        }
+        
+        if (verbose) {
+            System.out.println("Wrote the analysis of " + classFileNames.size() + " classes to cache file " +
+                    cacheFile.getAbsolutePath() + " (" + hits.get() + " reused, " + misses.get() + " analyzed)");
+        }
+    }
+    
+    /**
+     * @return The number of classes whose analysis was reused
+     */
+    /* package */ int getHits() {
+        return hits.get();
+    }
+    
+    /**
+     * @return The number of classes that had to be analyzed
+     */
+    /* package */ int getMisses() {
+        return misses.get();
+    }
+    
+    /**
+     * The result of analyzing one class file
+     */
+    /* package */ static class Analysis {
+        private final List<DescriptorImpl> descriptors;
+        
+        /* package */ Analysis(List<DescriptorImpl> descriptors) {
+            this.descriptors = descriptors;
+        }
+        
+        /**
+         * @return The descriptors of the services in the class
+         */
+        /* package */ List<DescriptorImpl> getDescriptors() {
+            return descriptors;
+        }
+    }
+    
+    private static class Entry {
+        private final String stamp;
+        private final byte hash[];
+        private final String dependencies[];
+        private final String fingerprints[];
+        private final byte descriptors[];  // In the binary form of the inhabitants file
+        
+        private Entry(String stamp, byte hash[], String dependencies[], String fingerprints[],
+                byte descriptors[]) {
+            this.stamp = stamp;
+            this.hash = hash;
+            this.dependencies = dependencies;
+            this.fingerprints = fingerprints;
+            this.descriptors = descriptors;
+        }
+        
+        private Entry(String stamp, byte hash[], String dependencies[], String fingerprints[], Analysis analysis) {
+            this(stamp, hash, dependencies, fingerprints, writeDescriptors(analysis.getDescriptors()));
+        }
+        
+        private Entry(String stamp, Entry entry) {
+            this(stamp, entry.hash, entry.dependencies, entry.fingerprints, entry.descriptors);
+        }
+        
+        private static byte[] writeDescriptors(List<DescriptorImpl> descriptors) {
+            // Most classes are not services
+            if (descriptors.isEmpty()) return NO_DESCRIPTORS;
+            
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try {
+                BinaryDescriptorFile.writeDescriptorFile(descriptors, baos);
+            }
+            catch (IOException ioe) {
+                // Cannot happen writing to memory
+                throw new AssertionError(ioe);
+            }
+            
+            return baos.toByteArray();
+        }
+        
+        private boolean isValid(Utilities utilities, File searchHere) {
+            for (int lcv = 0; lcv < dependencies.length; lcv++) {
+                if (!fingerprints[lcv].equals(utilities.getFingerprint(searchHere, dependencies[lcv]))) {
+                    return false;
+                }
+            }
+            
+            return true;
+        }
+        
+        private Analysis getAnalysis() throws IOException {
+            List<DescriptorImpl> retVal = new LinkedList<DescriptorImpl>();
+            
+            if (descriptors.length > 0) {
+                BinaryDescriptorFile file = BinaryDescriptorFile.readDescriptorFile(
+                        new ByteArrayInputStream(descriptors));
+                
+                for (Descriptor descriptor : file.getDescriptors()) {
+                    retVal.add(new DescriptorImpl(descriptor));
+                }
+            }
+            
+            return new Analysis(retVal);
+        }
+        
+        private void write(DataOutputStream dos) throws IOException {
+            dos.writeBoolean(stamp != null);
+            if (stamp != null) {
+                dos.writeUTF(stamp);
+            }
+            
+            dos.writeShort(hash.length);
+            dos.write(hash);
+            
+            dos.writeInt(dependencies.length);
+            for (int lcv = 0; lcv < dependencies.length; lcv++) {
+                dos.writeUTF(dependencies[lcv]);
+                dos.writeUTF(fingerprints[lcv]);
+            }
+            
+            dos.writeInt(descriptors.length);
+            dos.write(descriptors);
+        }
+        
+        private static Entry read(DataInputStream dis) throws IOException {
+            String stamp = dis.readBoolean() ? dis.readUTF() : null;
+            
+            byte hash[] = new byte[dis.readUnsignedShort()];
+            dis.readFully(hash);
+            
+            int size = dis.readInt();
+            String dependencies[] = new String[size];
+            String fingerprints[] = new String[size];
+            for (int lcv = 0; lcv < size; lcv++) {
+                dependencies[lcv] = dis.readUTF();
+                fingerprints[lcv] = dis.readUTF();
+            }
+            
+            byte descriptors[] = new byte[dis.readInt()];
+            dis.readFully(descriptors);
+            
+            return new Entry(stamp, hash, dependencies, fingerprints, descriptors);
+        }
+    }
+}
@@ -39,6 +39,7 @@
  */
 package org.jvnet.hk2.generator.internal;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
@@ -46,14 +47,21 @@ import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.glassfish.hk2.external.org.objectweb.asm.ClassReader;
 
@@ -75,6 +83,8 @@ public class GeneratorRunner {
     private final boolean noSwap;
     private final String outputDirectory;  // Not used in the JAR case
     private final boolean includeDate;
+    private final boolean writeBinary;
+    private final String cacheFile;
 
     /**
      * This initializes the GeneratorRunner with the values needed to run
@@ -97,6 +107,64 @@ public class GeneratorRunner {
             boolean noSwap,
             String outputDirectory,
             boolean includeDate) {
+        this(fileOrDirectory, outjarName, locatorName, verbose, searchPath, noSwap,
+                outputDirectory, includeDate, false);
+    }
+    
+    /**
+     * This initializes the GeneratorRunner with the values needed to run
+     * 
+     * @param fileOrDirectory The fileOrDirectory to inspect for services
+     * @param outjarName The name of the jar file to create (can be the fileOrDirectory)
+     * @param locatorName The name of the locator these files should be put into
+     * @param verbose true if this should print information about progress
+     * @param searchPath The path-separator delimited list of files or directories to search for
+     *   contracts and qualifiers and various other annotations
+     * @param noSwap true if this run should NOT swap files (faster but riskier)
+     * @param outputDirectory The directory where the file should go
+     * @param includeDate Whether or not the output file should include a date
+     * @param writeBinary Whether or not the binary form of the file should also be written
+     */
+    public GeneratorRunner(String fileOrDirectory,
+            String outjarName,
+            String locatorName,
+            boolean verbose,
+            String searchPath,
+            boolean noSwap,
+            String outputDirectory,
+            boolean includeDate,
+            boolean writeBinary) {
+        this(fileOrDirectory, outjarName, locatorName, verbose, searchPath, noSwap,
+                outputDirectory, includeDate, writeBinary, null);
+    }
+    
+    /**
+     * This initializes the GeneratorRunner with the values needed to run
+     * 
+     * @param fileOrDirectory The fileOrDirectory to inspect for services
+     * @param outjarName The name of the jar file to create (can be the fileOrDirectory)
+     * @param locatorName The name of the locator these files should be put into
+     * @param verbose true if this should print information about progress
+     * @param searchPath The path-separator delimited list of files or directories to search for
+     *   contracts and qualifiers and various other annotations
+     * @param noSwap true if this run should NOT swap files (faster but riskier)
+     * @param outputDirectory The directory where the file should go
+     * @param includeDate Whether or not the output file should include a date
+     * @param writeBinary Whether or not the binary form of the file should also be written
+     * @param cacheFile The file in which the analysis of every class is kept between runs,
+     * so that only the classes that changed are analyzed again (in parallel).  If null
+     * every class is analyzed on every run
+     */
+    public GeneratorRunner(String fileOrDirectory,
+            String outjarName,
+            String locatorName,
+            boolean verbose,
+            String searchPath,
+            boolean noSwap,
+            String outputDirectory,
+            boolean includeDate,
+            boolean writeBinary,
+            String cacheFile) {
         this.fileOrDirectory = fileOrDirectory;
         this.outjarName = outjarName;
         this.locatorName = locatorName;
@@ -105,10 +173,13 @@ public class GeneratorRunner {
         this.outputDirectory = outputDirectory;
         utilities = new Utilities(verbose, searchPath);
         this.includeDate = includeDate;
+        this.writeBinary = writeBinary;
+        this.cacheFile = cacheFile;
         
         if (verbose) {
             System.out.println("HabitatGenerator: inputFile=" + fileOrDirectory + " outjarName=" + outjarName +
-                    " locatorName=" + locatorName + " noSwap=" + noSwap + " outputDirectory=" + outputDirectory);
+                    " locatorName=" + locatorName + " noSwap=" + noSwap + " outputDirectory=" + outputDirectory +
+                    " writeBinary=" + writeBinary + " cacheFile=" + cacheFile);
         }
     }
     
@@ -126,22 +197,50 @@ public class GeneratorRunner {
             throw new AssertionError("Could not find file: " + toInspect.getAbsolutePath());
         }
         
+        AnalysisCache cache = null;
+        if (cacheFile != null) {
+            cache = AnalysisCache.load(new File(cacheFile), getCacheOptions(), verbose);
+        }
+        
         List<DescriptorImpl> allDescriptors;
+        try {
+            if (toInspect.isDirectory()) {
+                List<ClassFile> classFiles = new ArrayList<ClassFile>();
+                findAllClassesFromDirectory(toInspect, toInspect, classFiles);
+                
+                allDescriptors = findAllServices(toInspect, classFiles, cache);
+            }
+            else {
+                allDescriptors = findAllServicesFromJar(toInspect, cache);
+            }
+        }
+        finally {
+            // The jar files must not be open while the jar is being replaced
+            utilities.close();
+        }
+        
+        if (cache != null) {
+            cache.save();
+        }
+        
         if (toInspect.isDirectory()) {
-            allDescriptors = findAllServicesFromDirectory(toInspect, toInspect);
             if (allDescriptors.isEmpty()) return;
             writeToDirectory(allDescriptors);
         }
         else {
-            allDescriptors = findAllServicesFromJar(toInspect);
             writeToJar(toInspect, allDescriptors);
         }
         
     }
     
-    private List<DescriptorImpl> findAllServicesFromDirectory(File directory, File parent) throws IOException {
-        TreeSet<DescriptorImpl> retVal = new TreeSet<DescriptorImpl>(new DescriptorComparitor());
+    private String getCacheOptions() {
+        Package generatorPackage = GeneratorRunner.class.getPackage();
+        String version = (generatorPackage == null) ? null : generatorPackage.getImplementationVersion();
         
+        return "version=" + version;
+    }
+    
+    private void findAllClassesFromDirectory(File directory, File parent, List<ClassFile> addToMe) {
         File subDirectories[] = directory.listFiles(new FileFilter() {
 
             @Override
@@ -152,7 +251,7 @@ public class GeneratorRunner {
         });
         
         for (File subDirectory : subDirectories) {
-            retVal.addAll(findAllServicesFromDirectory(subDirectory, parent));
+            findAllClassesFromDirectory(subDirectory, parent, addToMe);
         }
         
         // Now get all the class files from this directory itself
@@ -164,30 +263,31 @@ public class GeneratorRunner {
             }
         });
         
-        for (File candidate : candidates) {
-            FileInputStream fis = null;
-            try {
-                fis = new FileInputStream(candidate);
+        for (final File candidate : candidates) {
+            addToMe.add(new ClassFile(getRelativeName(parent, candidate)) {
+
+                @Override
+                protected InputStream open() throws IOException {
+                    return new FileInputStream(candidate);
+                }
                 
-                List<DescriptorImpl> dis = createDescriptorIfService(fis, parent);
-                retVal.addAll(dis);
-            }
-            finally {
-                if (fis != null) {
-                    try {
-                        fis.close();
-                    }
-                    catch (IOException ioe) {
-                        // ignore
-                    }
+                @Override
+                protected String getStamp() {
+                    return candidate.length() + ":" + candidate.lastModified();
                 }
-            }
+                
+            });
         }
-        
-        return new LinkedList<DescriptorImpl>(retVal);
     }
 
 
+    private static String getRelativeName(File parent, File candidate) {
+        String parentPath = parent.getAbsolutePath();
+        String candidatePath = candidate.getAbsolutePath();
+        
+        return candidatePath.substring(parentPath.length() + 1).replace(File.separatorChar, '/');
+    }
+    
     private void writeToDirectory(List<DescriptorImpl> allDescriptors) throws IOException {
         Map<String, List<DescriptorImpl>> targetHabitatMap = new HashMap<String, List<DescriptorImpl>>();
         targetHabitatMap.put(locatorName, new ArrayList<DescriptorImpl>());
@@ -263,6 +363,18 @@ public class GeneratorRunner {
                             " to " + outputFile.getAbsolutePath());
                 }
             }
+            
+            File binaryFile = new File(inhabitantsDir, targetHabitatName + BinaryDescriptorFile.BINARY_SUFFIX);
+            if (writeBinary) {
+                writeBinaryInhabitantsFile(descriptors, binaryFile, inhabitantsDir);
+            }
+            else if (binaryFile.exists()) {
+                // A stale binary file would be preferred over the new text file
+                if (!binaryFile.delete()) {
+                    throw new IOException("Could not delete existing binary inhabitant file " +
+                            binaryFile.getAbsolutePath());
+                }
+            }
 
         }
     }
@@ -290,7 +402,8 @@ public class GeneratorRunner {
             while (zentry != null) {
                 String entryName = zentry.getName();
             
-                if (entryName.equals(META_INF + "/" + INHABITANTS + "/" + locatorName)) {
+                if (entryName.equals(META_INF + "/" + INHABITANTS + "/" + locatorName) ||
+                        entryName.equals(META_INF + "/" + INHABITANTS + "/" + locatorName + BinaryDescriptorFile.BINARY_SUFFIX)) {
                     // Don't write out the old one
                     zentry = zis.getNextEntry();
                     continue;
@@ -319,6 +432,13 @@ public class GeneratorRunner {
                 finally {
                     desc_os.close();
                 }
+                
+                if (writeBinary) {
+                    zos.putNextEntry(new ZipEntry(META_INF + "/" + INHABITANTS + "/" + locatorName +
+                            BinaryDescriptorFile.BINARY_SUFFIX));
+                    
+                    BinaryDescriptorFile.writeDescriptorFile(descriptors, zos);
+                }
             }
         }
         finally {
@@ -382,54 +502,248 @@ public class GeneratorRunner {
         return outFile;
     }
     
-    private List<DescriptorImpl> findAllServicesFromJar(File jar) throws IOException {
-        TreeSet<DescriptorImpl> retVal = new TreeSet<DescriptorImpl>(new DescriptorComparitor());
-        
-        JarFile jarFile = new JarFile(jar);
+    private void writeBinaryInhabitantsFile(List<DescriptorImpl> descriptors, File outputFile, File outDir) throws IOException {
+        File writeMeFile;
+        if (noSwap) {
+            if (outputFile.exists() && !outputFile.delete()) {
+                throw new IOException("Could not delete existing binary inhabitant file " +
+                        outputFile.getAbsolutePath() + " in the noSwap case");
+            }
+            
+            writeMeFile = outputFile;
+        }
+        else {
+            writeMeFile = File.createTempFile(locatorName, ".tmp", outDir);
+        }
         
+        FileOutputStream fos = new FileOutputStream(writeMeFile);
         try {
-            Enumeration<JarEntry> entries = jarFile.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                
-                String entryName = entry.getName();
-                if (!entryName.endsWith(DOT_CLASS)) continue;
+            BinaryDescriptorFile.writeDescriptorFile(descriptors, fos);
+        }
+        finally {
+            fos.close();
+        }
+        
+        if (verbose) {
+            System.out.println("Wrote " + descriptors.size() + " entries to binary inhabitant file " +
+                    writeMeFile.getAbsolutePath());
+        }
+        
+        if (writeMeFile == outputFile) return;
+        
+        if (outputFile.exists() && !outputFile.delete()) {
+            throw new IOException("Could not delete existing binary inhabitant file " + outputFile.getAbsolutePath());
+        }
+        
+        if (!writeMeFile.renameTo(outputFile)) {
+            throw new IOException("Could not move generated binary inhabitant file " + writeMeFile.getAbsolutePath() +
+                    " to " + outputFile.getAbsolutePath());
+        }
+    }
+    
+    private List<DescriptorImpl> findAllServicesFromJar(File jar, AnalysisCache cache) throws IOException {
+        // Shared with the search for contracts and qualifiers in this jar
+        final JarFile jarFile = utilities.getJarFile(jar);
+        
+        List<ClassFile> classFiles = new ArrayList<ClassFile>();
+        
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            final JarEntry entry = entries.nextElement();
+            
+            String entryName = entry.getName();
+            if (!entryName.endsWith(DOT_CLASS)) continue;
+            
+            classFiles.add(new ClassFile(entryName) {
+
+                @Override
+                protected InputStream open() throws IOException {
+                    return jarFile.getInputStream(entry);
+                }
                 
-                InputStream is = null;
-                try {
-                    is = jarFile.getInputStream(entry);
+                @Override
+                protected String getStamp() {
+                    if (entry.getCrc() < 0) return null;
                     
-                    List<DescriptorImpl> dis = createDescriptorIfService(is, jar);
-                    retVal.addAll(dis);
-                }
-                finally {
-                    if (is != null) {
-                        try {
-                            is.close();
-                        }
-                        catch (IOException ioe) {
-                            // ignore
-                        }
-                    }
+                    return entry.getSize() + ":" + Long.toHexString(entry.getCrc());
                 }
                 
+            });
+        }
+        
+        return findAllServices(jar, classFiles, cache);
+    }
+    
+    private List<DescriptorImpl> findAllServices(File searchHere, List<ClassFile> classFiles, AnalysisCache cache) throws IOException {
+        List<AnalysisCache.Analysis> analyses;
+        if (cache == null) {
+            analyses = new ArrayList<AnalysisCache.Analysis>(classFiles.size());
+            for (ClassFile classFile : classFiles) {
+                analyses.add(createDescriptorIfService(classFile.read(), searchHere));
             }
         }
-        finally {
-            jarFile.close();
+        else {
+            analyses = analyzeInParallel(searchHere, classFiles, cache);
+        }
+        
+        TreeSet<DescriptorImpl> retVal = new TreeSet<DescriptorImpl>(new DescriptorComparitor());
+        for (AnalysisCache.Analysis analysis : analyses) {
+            retVal.addAll(analysis.getDescriptors());
         }
         
         return new LinkedList<DescriptorImpl>(retVal);
     }
     
-    private List<DescriptorImpl> createDescriptorIfService(InputStream is, File searchHere) throws IOException {
-        ClassReader reader = new ClassReader(is);
+    /**
+     * Analyzes the classes that changed since the last run on as many threads as
+     * there are processors.  The results are in the order of the class files so
+     * that the output does not depend on the order in which the threads finish
+     */
+    private List<AnalysisCache.Analysis> analyzeInParallel(final File searchHere, List<ClassFile> classFiles,
+            final AnalysisCache cache) throws IOException {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), classFiles.size());
+        
+        List<AnalysisCache.Analysis> retVal = new ArrayList<AnalysisCache.Analysis>(classFiles.size());
+        if (threads <= 1) {
+            for (ClassFile classFile : classFiles) {
+                retVal.add(analyze(searchHere, classFile, cache));
+            }
+            
+            return retVal;
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<AnalysisCache.Analysis>> futures = new ArrayList<Future<AnalysisCache.Analysis>>(classFiles.size());
+            for (final ClassFile classFile : classFiles) {
+                futures.add(executor.submit(new Callable<AnalysisCache.Analysis>() {
+
+                    @Override
+                    public AnalysisCache.Analysis call() throws IOException {
+                        return analyze(searchHere, classFile, cache);
+                    }
+                    
+                }));
+            }
+            
+            for (Future<AnalysisCache.Analysis> future : futures) {
+                retVal.add(getResult(future));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        
+        return retVal;
+    }
+    
+    private static AnalysisCache.Analysis getResult(Future<AnalysisCache.Analysis> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException ie) {
+            throw new InterruptedIOException("Interrupted while analyzing classes");
+        }
+        catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            
+            throw new IOException(cause);
+        }
+    }
+    
+    private AnalysisCache.Analysis analyze(File searchHere, ClassFile classFile, AnalysisCache cache) throws IOException {
+        String classFileName = classFile.getName();
+        String stamp = classFile.getStamp();
+        
+        AnalysisCache.Analysis retVal = cache.get(classFileName, stamp, null, utilities, searchHere);
+        if (retVal != null) return retVal;
+        
+        byte classBytes[] = classFile.read();
+        
+        // searchHere is searched first, so this is the class file found for this name
+        String className = classFileName.substring(0, classFileName.length() - DOT_CLASS.length()).replace('/', '.');
+        utilities.setFingerprint(className, classBytes);
+        
+        byte hash[] = AnalysisCache.hash(classBytes);
+        
+        retVal = cache.get(classFileName, stamp, hash, utilities, searchHere);
+        if (retVal != null) return retVal;
+        
+        Set<String> dependencies;
+        utilities.startRecording();
+        try {
+            retVal = createDescriptorIfService(classBytes, searchHere);
+        }
+        finally {
+            dependencies = utilities.stopRecording();
+        }
+        
+        cache.put(classFileName, stamp, hash, dependencies, retVal, utilities, searchHere);
+        
+        return retVal;
+    }
+    
+    private AnalysisCache.Analysis createDescriptorIfService(byte classBytes[], File searchHere) {
+        ClassReader reader = new ClassReader(classBytes);
         
         ClassVisitorImpl cvi = new ClassVisitorImpl(utilities, verbose, searchHere);
         
         reader.accept(cvi, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
         
-        return cvi.getGeneratedDescriptor();
+        return new AnalysisCache.Analysis(cvi.getGeneratedDescriptor());
+    }
+    
+    /**
+     * A class file in the directory or jar being inspected
+     */
+    private static abstract class ClassFile {
+        private final String name;
+        
+        private ClassFile(String name) {
+            this.name = name;
+        }
+        
+        /**
+         * @return The name of the class file relative to the directory or jar
+         */
+        private String getName() {
+            return name;
+        }
+        
+        protected abstract InputStream open() throws IOException;
+        
+        /**
+         * @return Something that changes whenever the class file changes, such as its
+         * size and modification time, or null if there is no such thing
+         */
+        protected abstract String getStamp();
+        
+        private byte[] read() throws IOException {
+            InputStream is = open();
+            try {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                
+                byte buffer[] = new byte[4096];
+                int len;
+                while ((len = is.read(buffer)) > 0) {
+                    baos.write(buffer, 0, len);
+                }
+                
+                return baos.toByteArray();
+            }
+            finally {
+                try {
+                    is.close();
+                }
+                catch (IOException ioe) {
+                    // ignore
+                }
+            }
+        }
     }
     
     /**
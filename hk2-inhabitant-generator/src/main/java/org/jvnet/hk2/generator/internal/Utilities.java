@@ -58,6 +58,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.jar.JarFile;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 
 import javax.inject.Named;
@@ -92,16 +93,29 @@ public class Utilities {
     
     private final static String METADATA_DESC = "Lorg/glassfish/hk2/api/Metadata;";
     
-    private final Map<String, Boolean> ISA_CONTRACT = new HashMap<String, Boolean>();
-    private final Map<String, Boolean> ISA_SCOPE = new HashMap<String, Boolean>();
-    private final Map<String, Boolean> ISA_QUALIFIER = new HashMap<String, Boolean>();
-    private final Map<String, String> FOUND_SUPERCLASS = new HashMap<String, String>();  // Terminal is null
-    private final Map<String, Set<String>> FOUND_INTERFACES = new HashMap<String, Set<String>>();
-    private final Map<String, GenerateMethodAnnotationData> FOUND_GENERATORS = new HashMap<String, GenerateMethodAnnotationData>();
+    /* package */ final static String NOT_FOUND = "-";
+    
+    // The caches are synchronized since classes may be analyzed in parallel.  Two threads
+    // may both parse the same class, but they will both come up with the same answer
+    private final Map<String, Boolean> ISA_CONTRACT = Collections.synchronizedMap(new HashMap<String, Boolean>());
+    private final Map<String, Boolean> ISA_SCOPE = Collections.synchronizedMap(new HashMap<String, Boolean>());
+    private final Map<String, Boolean> ISA_QUALIFIER = Collections.synchronizedMap(new HashMap<String, Boolean>());
+    private final Map<String, String> FOUND_SUPERCLASS = Collections.synchronizedMap(new HashMap<String, String>());  // Terminal is null
+    private final Map<String, Set<String>> FOUND_INTERFACES = Collections.synchronizedMap(new HashMap<String, Set<String>>());
+    private final Map<String, GenerateMethodAnnotationData> FOUND_GENERATORS = Collections.synchronizedMap(new HashMap<String, GenerateMethodAnnotationData>());
     
     // Map from scope or qualifier name to method name to metadata key value
     private final Map<String, Map<String, String>> METADATA =
-            new HashMap<String, Map<String, String>>();
+            Collections.synchronizedMap(new HashMap<String, Map<String, String>>());
+    
+    // Map from dot-delimited class name to the fingerprint of the class file found for it
+    private final Map<String, String> FINGERPRINTS = Collections.synchronizedMap(new HashMap<String, String>());
+    
+    // The jar files of the search path are opened once and kept open until close
+    private final Map<File, JarFile> OPEN_JARS = new HashMap<File, JarFile>();
+    
+    // The names of the classes whose analysis was used, while recording
+    private final ThreadLocal<Set<String>> dependencies = new ThreadLocal<Set<String>>();
     
     private final boolean verbose;
     private final String searchPath;
@@ -109,6 +123,7 @@ public class Utilities {
     private final static String CONFIGURED_CONTRACT = "org.jvnet.hk2.config.Configured";
     
     private final static List<KnownClassData> KNOWN_DATA = new LinkedList<KnownClassData>();
+    private final static Set<String> KNOWN_NAMES = new HashSet<String>();
     
     static {
         Set<String> empty = Collections.emptySet();
@@ -283,7 +298,10 @@ public class Utilities {
                 null,  // superclass
                 empty  // interfaces
                 ));
-                
+        
+        for (KnownClassData kcd : KNOWN_DATA) {
+            KNOWN_NAMES.add(kcd.getClazz());
+        }
     }
     
     /* package */ Utilities(boolean verbose, String searchPath) {
@@ -342,7 +360,7 @@ public class Utilities {
             }
         }
         else {
-            JarFile jar = new JarFile(searchHere);
+            JarFile jar = getJarFile(searchHere);
             
             String entryName = dotDelimitedName.replace('.', '/') + DOT_CLASS;
             ZipEntry entry = jar.getEntry(entryName);
@@ -378,6 +396,174 @@ public class Utilities {
         return null;
     }
     
+    /**
+     * Returns the jar file, opening it if this is the first use of it.  The
+     * jar file stays open until {@link #close()} is called
+     * 
+     * @param jar The jar file to open
+     * @return The open jar file
+     * @throws IOException if the jar file could not be opened
+     */
+    /* package */ JarFile getJarFile(File jar) throws IOException {
+        synchronized (OPEN_JARS) {
+            JarFile retVal = OPEN_JARS.get(jar);
+            if (retVal == null) {
+                retVal = new JarFile(jar);
+                OPEN_JARS.put(jar, retVal);
+            }
+            
+            return retVal;
+        }
+    }
+    
+    /**
+     * Closes all the jar files that were opened while searching
+     */
+    /* package */ void close() {
+        synchronized (OPEN_JARS) {
+            for (JarFile jar : OPEN_JARS.values()) {
+                try {
+                    jar.close();
+                }
+                catch (IOException ioe) {
+                    // ignore
+                }
+            }
+            
+            OPEN_JARS.clear();
+        }
+    }
+    
+    /**
+     * Starts recording the names of all the classes whose analysis is used
+     * by this thread, until {@link #stopRecording()} is called
+     */
+    /* package */ void startRecording() {
+        dependencies.set(new HashSet<String>());
+    }
+    
+    /**
+     * Stops recording the classes used by this thread
+     * 
+     * @return The names of the classes whose analysis was used since
+     * {@link #startRecording()} was called
+     */
+    /* package */ Set<String> stopRecording() {
+        Set<String> retVal = dependencies.get();
+        dependencies.remove();
+        
+        if (retVal == null) return Collections.emptySet();
+        return retVal;
+    }
+    
+    private void recordDependency(String dotDelimitedName) {
+        Set<String> recording = dependencies.get();
+        if (recording == null || KNOWN_NAMES.contains(dotDelimitedName)) return;
+        
+        recording.add(dotDelimitedName);
+    }
+    
+    /**
+     * Returns a fingerprint of the class file that would be used to analyze the
+     * given class.  The fingerprint is the CRC-32 and length of the class file,
+     * which for classes in jar files can be taken from the jar directory without
+     * reading the class itself
+     * 
+     * @param searchHere The file or jar to look in first
+     * @param dotDelimitedName The fully qualified class name to look for
+     * @return The fingerprint of the class file, {@link #NOT_FOUND} if the class
+     * could not be found or null if the class file could not be read
+     */
+    /* package */ String getFingerprint(File searchHere, String dotDelimitedName) {
+        String retVal = FINGERPRINTS.get(dotDelimitedName);
+        if (retVal != null) return retVal;
+        
+        try {
+            retVal = findFingerprint(searchHere, dotDelimitedName, true);
+        }
+        catch (IOException ioe) {
+            return null;
+        }
+        
+        FINGERPRINTS.put(dotDelimitedName, retVal);
+        return retVal;
+    }
+    
+    /**
+     * Sets the fingerprint of a class file in searchHere which has already been read
+     * 
+     * @param dotDelimitedName The fully qualified class name
+     * @param classBytes The bytes of the class file found in searchHere
+     */
+    /* package */ void setFingerprint(String dotDelimitedName, byte classBytes[]) {
+        CRC32 crc = new CRC32();
+        crc.update(classBytes);
+        
+        FINGERPRINTS.put(dotDelimitedName, getFingerprint(crc.getValue(), classBytes.length));
+    }
+    
+    private static String getFingerprint(long crc, long length) {
+        return Long.toHexString(crc) + ":" + length;
+    }
+    
+    private String findFingerprint(File searchHere, String dotDelimitedName, boolean searchClassPath) throws IOException {
+        // Must find the same class file as findClass
+        if (searchHere.isDirectory()) {
+            String properPathName = dotDelimitedName.replace('.', File.separatorChar) + DOT_CLASS;
+            
+            File fullFile = new File(searchHere, properPathName);
+            
+            if (fullFile.exists()) {
+                CRC32 crc = new CRC32();
+                byte buffer[] = new byte[4096];
+                long length = 0;
+                
+                FileInputStream fis = new FileInputStream(fullFile);
+                try {
+                    int read;
+                    while ((read = fis.read(buffer)) > 0) {
+                        crc.update(buffer, 0, read);
+                        length += read;
+                    }
+                }
+                finally {
+                    fis.close();
+                }
+                
+                return getFingerprint(crc.getValue(), length);
+            }
+        }
+        else {
+            JarFile jar = getJarFile(searchHere);
+            
+            ZipEntry entry = jar.getEntry(dotDelimitedName.replace('.', '/') + DOT_CLASS);
+            if (entry != null) {
+                if (entry.getCrc() < 0 || entry.getSize() < 0) {
+                    throw new IOException("No CRC for " + entry.getName() + " in " + searchHere.getAbsolutePath());
+                }
+                
+                return getFingerprint(entry.getCrc(), entry.getSize());
+            }
+        }
+        
+        if (!searchClassPath) return null;
+        
+        String classpath = searchPath;
+        if (classpath == null) return NOT_FOUND;
+        
+        StringTokenizer st = new StringTokenizer(classpath, File.pathSeparator);
+        while (st.hasMoreTokens()) {
+            File nextSearchGuy = new File(st.nextToken());
+            
+            String retVal = findFingerprint(nextSearchGuy, dotDelimitedName, false);
+            if (retVal != null) {
+                return retVal;
+            }
+        }
+        
+        return NOT_FOUND;
+    }
+    
     private void nullCaches(String dotDelimitedName) {
         ISA_CONTRACT.put(dotDelimitedName, false);
         ISA_SCOPE.put(dotDelimitedName, false);
@@ -394,6 +580,8 @@ public class Utilities {
      * @return true if this can determine that this is a contract
      */
     private boolean isClassAContract(File searchHere, String dotDelimitedName) {
+        recordDependency(dotDelimitedName);
+        
         if (ISA_CONTRACT.containsKey(dotDelimitedName)) {
             return ISA_CONTRACT.get(dotDelimitedName);
         }
@@ -441,6 +629,8 @@ public class Utilities {
      *   an interface or extends java.lang.Object)
      */
     private String getSuperclass(File searchHere, String dotDelimitedName) {
+        recordDependency(dotDelimitedName);
+        
         if (FOUND_SUPERCLASS.containsKey(dotDelimitedName)) {
             return FOUND_SUPERCLASS.get(dotDelimitedName);
         }
@@ -487,6 +677,8 @@ public class Utilities {
      * @return true if this class is a scope
      */
     public boolean isClassAScope(File searchHere, String dotDelimitedName) {
+        recordDependency(dotDelimitedName);
+        
         if (ISA_SCOPE.containsKey(dotDelimitedName)) {
             return ISA_SCOPE.get(dotDelimitedName);
         }
@@ -534,6 +726,8 @@ public class Utilities {
      * @return true if this class is a qualifier
      */
     public boolean isClassAQualifier(File searchHere, String dotDelimitedName) {
+        recordDependency(dotDelimitedName);
+        
         if (ISA_QUALIFIER.containsKey(dotDelimitedName)) {
             return ISA_QUALIFIER.get(dotDelimitedName);
         }
@@ -581,6 +775,8 @@ public class Utilities {
      * @return true if this class is a qualifier
      */
     public GenerateMethodAnnotationData isClassAGenerator(File searchHere, String dotDelimitedName) {
+        recordDependency(dotDelimitedName);
+        
         if (FOUND_GENERATORS.containsKey(dotDelimitedName)) {
             return FOUND_GENERATORS.get(dotDelimitedName);
         }
@@ -645,6 +841,7 @@ public class Utilities {
         
         while (dotDelimitedName != null) {
             // getAssociatedSuperclassContracts is guaranteed to fill in the INTERFACES cache
+            recordDependency(dotDelimitedName);
             Set<String> allInterfaces = FOUND_INTERFACES.get(dotDelimitedName);
             if (allInterfaces == null) {
                 dotDelimitedName = getSuperclass(searchHere, dotDelimitedName);
@@ -667,6 +864,7 @@ public class Utilities {
     }
     
     private void addSubInterface(File searchHere, String dotDelimitedInterface, LinkedHashSet<String> retVal) {
+        recordDependency(dotDelimitedInterface);
         Set<String> subInterfaces = FOUND_INTERFACES.get(dotDelimitedInterface);
         if (subInterfaces == null) return;
         
@@ -778,13 +976,14 @@ public class Utilities {
         }
         
         public void visitEnd() {
-            ISA_CONTRACT.put(cacheKey, isContract);
-            ISA_SCOPE.put(cacheKey, isScope);
-            ISA_QUALIFIER.put(cacheKey, isQualifier);
-            
+            // The metadata must be in place before another thread can find out this is a scope or qualifier
             if ((isScope || isQualifier) && !methodNameToMetadataKey.isEmpty()) {
                 METADATA.put(cacheKey, methodNameToMetadataKey);
             }
+            
+            ISA_CONTRACT.put(cacheKey, isContract);
+            ISA_SCOPE.put(cacheKey, isScope);
+            ISA_QUALIFIER.put(cacheKey, isQualifier);
         }
         
         private boolean isALookedForThing() {
@@ -1062,6 +1261,7 @@ public class Utilities {
     }
     
     public String getMetadataKey(String scopeOrQualifier, String methodName) {
+        recordDependency(scopeOrQualifier);
         Map<String, String> methodToKey = METADATA.get(scopeOrQualifier);
         if (methodToKey == null) return null;
         
@@ -61,6 +61,9 @@ public abstract class AbstractInhabitantsGeneratorMojo extends AbstractMojo {
     private final static String WEB_INF = "WEB-INF";
     private final static String CLASSES = "classes";
     
+    private final static String CACHE_PREFIX = "hk2-inhabitants-";
+    private final static String CACHE_SUFFIX = ".cache";
+    
     /**
      * @parameter expression="${project.build.directory}"
      */
@@ -83,6 +86,16 @@ public abstract class AbstractInhabitantsGeneratorMojo extends AbstractMojo {
      */
     private boolean includeDate = true;
     
+    /**
+     * @parameter
+     */
+    private boolean binary;
+    
+    /**
+     * @parameter
+     */
+    private boolean incremental;
+    
     /**
      * @parameter
      */
@@ -160,6 +173,18 @@ public abstract class AbstractInhabitantsGeneratorMojo extends AbstractMojo {
             arguments.add(HabitatGenerator.NO_DATE_ARG);
         }
         
+        if (binary) {
+            arguments.add(HabitatGenerator.BINARY_ARG);
+        }
+        
+        if (incremental) {
+            // One cache per output directory, since the main and test classes are generated separately
+            File cacheFile = new File(targetDirectory, CACHE_PREFIX + getOutputDirectory().getName() + CACHE_SUFFIX);
+            
+            arguments.add(HabitatGenerator.INCREMENTAL_ARG);
+            arguments.add(cacheFile.getAbsolutePath());
+        }
+        
         if (isWar()) {
             // For WAR files, the hk2-locator files goes under WEB-INF/classes/hk2-locator, not META-INF/hk2-locator
             
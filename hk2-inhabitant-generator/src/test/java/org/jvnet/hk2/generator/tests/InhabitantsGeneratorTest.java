@@ -43,9 +43,11 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -61,7 +63,9 @@ import junit.framework.Assert;
 import org.glassfish.hk2.api.DescriptorType;
 import org.glassfish.hk2.api.DescriptorVisibility;
 import org.glassfish.hk2.api.Factory;
+import org.glassfish.hk2.api.Descriptor;
 import org.glassfish.hk2.api.PerLookup;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.junit.Before;
 import org.junit.Test;
@@ -79,8 +83,14 @@ public class InhabitantsGeneratorTest {
     private final static String VERBOSE_ARGUMENT = "--verbose";
     private final static String NOSWAP_ARGUMENT = "--noswap";
     private final static String LOCATOR_ARGUMENT = "--locator";
+    private final static String BINARY_ARGUMENT = "--binary";
+    private final static String SEARCHPATH_ARGUMENT = "--searchPath";
+    private final static String NO_DATE_ARGUMENT = "--noDate";
+    private final static String INCREMENTAL_ARGUMENT = "--incremental";
     private final static String CLASS_DIRECTORY = "gendir";
     private final static String NEGATIVE_CLASS_DIRECTORY = "negative";
+    private final static String INCREMENTAL_CLASS_DIRECTORY = "incremental";
+    private final static String INCREMENTAL_CACHE_FILE = "incremental.cache";
     private final static String JAR_FILE = "gendir.jar";
     private final static File OUTJAR_FILE = new File("outgendir.jar");
     
@@ -609,6 +619,21 @@ public class InhabitantsGeneratorTest {
         return retVal;
     }
     
+    private Set<DescriptorImpl> getAllDescriptorsFromBinaryInputStream(InputStream is) throws IOException {
+        Set<DescriptorImpl> retVal = new HashSet<DescriptorImpl>();
+        
+        try {
+            for (Descriptor d : BinaryDescriptorFile.readDescriptorFile(is).getDescriptors()) {
+                retVal.add(new DescriptorImpl(d));
+            }
+        }
+        finally {
+            is.close();
+        }
+        
+        return retVal;
+    }
+    
     private void checkDescriptors(Set<DescriptorImpl> dis) {
         for (DescriptorImpl di : dis) {
             Assert.assertTrue("Did not find " + di + " in the expected descriptors <<<" +
@@ -701,6 +726,54 @@ public class InhabitantsGeneratorTest {
         }
     }
     
+    /**
+     * Tests generating the binary form of the file into a directory
+     * @throws IOException 
+     */
+    @Test
+    public void testBinaryDirectoryGeneration() throws IOException {
+        String argv[] = new String[3];
+        
+        argv[0] = FILE_ARGUMENT;
+        argv[1] = gendirDirectory.getAbsolutePath();
+        argv[2] = BINARY_ARGUMENT;
+        
+        File defaultOutput = new File(inhabitantsDirectory, DEFAULT);
+        File binaryOutput = new File(inhabitantsDirectory, DEFAULT + BinaryDescriptorFile.BINARY_SUFFIX);
+        if (defaultOutput.exists()) {
+            // Start with a clean plate
+            Assert.assertTrue(defaultOutput.delete());
+        }
+        if (binaryOutput.exists()) {
+            Assert.assertTrue(binaryOutput.delete());
+        }
+        
+        try {
+            int result = HabitatGenerator.embeddedMain(argv);
+            Assert.assertEquals("Got error code: " + result, 0, result);
+            
+            Assert.assertTrue("did not generate " + defaultOutput.getAbsolutePath(),
+                    defaultOutput.exists());
+            Assert.assertTrue("did not generate " + binaryOutput.getAbsolutePath(),
+                    binaryOutput.exists());
+            
+            checkDescriptors(getAllDescriptorsFromBinaryInputStream(
+                    new FileInputStream(binaryOutput)));
+            
+            // Running again without binary must remove the stale binary file
+            result = HabitatGenerator.embeddedMain(new String[] { argv[0], argv[1] });
+            Assert.assertEquals("Got error code: " + result, 0, result);
+            
+            Assert.assertFalse("did not remove " + binaryOutput.getAbsolutePath(),
+                    binaryOutput.exists());
+        }
+        finally {
+            // The test should be clean
+            defaultOutput.delete();
+            binaryOutput.delete();
+        }
+    }
+    
     /**
      * Tests generating into a jar file
      * @throws IOException On failure
@@ -751,6 +824,116 @@ public class InhabitantsGeneratorTest {
         }
     }
     
+    private static void copyClasses(File from, File to) throws IOException {
+        for (File file : from.listFiles()) {
+            File target = new File(to, file.getName());
+            
+            if (file.isDirectory()) {
+                copyClasses(file, target);
+            }
+            else if (file.getName().endsWith(".class")) {
+                target.getParentFile().mkdirs();
+                
+                FileOutputStream fos = new FileOutputStream(target);
+                try {
+                    fos.write(readFile(file));
+                }
+                finally {
+                    fos.close();
+                }
+            }
+        }
+    }
+    
+    private static void deleteAll(File file) {
+        if (file.isDirectory()) {
+            for (File child : file.listFiles()) {
+                deleteAll(child);
+            }
+        }
+        
+        file.delete();
+    }
+    
+    private static byte[] readFile(File file) throws IOException {
+        byte retVal[] = new byte[(int) file.length()];
+        
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < retVal.length) {
+                int read = fis.read(retVal, offset, retVal.length - offset);
+                if (read < 0) throw new IOException("Unexpected end of " + file.getAbsolutePath());
+                
+                offset += read;
+            }
+        }
+        finally {
+            fis.close();
+        }
+        
+        return retVal;
+    }
+    
+    /**
+     * Tests that generating incrementally gives the same output as generating
+     * everything, also after a contract of a superclass of a service was removed
+     * 
+     * @throws IOException On failure
+     */
+    @Test
+    public void testIncrementalDirectoryGeneration() throws IOException {
+        File copyDirectory = new File(gendirDirectory.getParentFile(), INCREMENTAL_CLASS_DIRECTORY);
+        File cacheFile = new File(gendirDirectory.getParentFile(), INCREMENTAL_CACHE_FILE);
+        
+        // Start with a clean plate
+        deleteAll(copyDirectory);
+        cacheFile.delete();
+        
+        copyClasses(gendirDirectory, copyDirectory);
+        
+        File output = new File(new File(new File(copyDirectory, META_INF_NAME), INHABITANTS), DEFAULT);
+        
+        // Only search the copy, so that the removed contract is not found elsewhere
+        String all[] = new String[] { FILE_ARGUMENT, copyDirectory.getAbsolutePath(),
+                SEARCHPATH_ARGUMENT, copyDirectory.getAbsolutePath(), NO_DATE_ARGUMENT };
+        String incremental[] = new String[] { FILE_ARGUMENT, copyDirectory.getAbsolutePath(),
+                SEARCHPATH_ARGUMENT, copyDirectory.getAbsolutePath(), NO_DATE_ARGUMENT,
+                INCREMENTAL_ARGUMENT, cacheFile.getAbsolutePath() };
+        
+        try {
+            Assert.assertEquals(0, HabitatGenerator.embeddedMain(incremental));
+            Assert.assertTrue(cacheFile.exists());
+            
+            byte firstOutput[] = readFile(output);
+            byte firstCache[] = readFile(cacheFile);
+            
+            // Nothing changed, everything comes from the cache
+            Assert.assertEquals(0, HabitatGenerator.embeddedMain(incremental));
+            Assert.assertTrue(Arrays.equals(firstOutput, readFile(output)));
+            Assert.assertTrue(Arrays.equals(firstCache, readFile(cacheFile)));
+            
+            Assert.assertEquals(0, HabitatGenerator.embeddedMain(all));
+            Assert.assertTrue(Arrays.equals(firstOutput, readFile(output)));
+            
+            // ComplexFactory produces ComplexImpl, whose superclass implements ComplexC
+            File complexC = new File(copyDirectory, ComplexC.class.getName().replace('.', File.separatorChar) + ".class");
+            Assert.assertTrue(complexC.delete());
+            
+            Assert.assertEquals(0, HabitatGenerator.embeddedMain(incremental));
+            byte incrementalOutput[] = readFile(output);
+            Assert.assertFalse(Arrays.equals(firstOutput, incrementalOutput));
+            
+            Assert.assertEquals(0, HabitatGenerator.embeddedMain(all));
+            Assert.assertTrue(Arrays.equals(incrementalOutput, readFile(output)));
+        }
+        finally {
+            // The test should be clean
+            deleteAll(copyDirectory);
+            cacheFile.delete();
+        }
+    }
+    
     /**
      * Tests that a service with two scopes will cause a failure
      * 
@@ -167,6 +167,17 @@ public class CacheKey {
         return removalName.equals(name);
     }
     
+    /**
+     * Returns the name of the contract that this key
+     * would be removed by
+     * 
+     * @return The raw class name of the lookup type, or
+     * null if the lookup type has no raw class
+     */
+    public String getRemovalName() {
+        return removalName;
+    }
+    
     public String toString() {
         return "CacheKey(" + Pretty.type(lookupType) + "," + name + "," +
             ((qualifiers == null) ? 0 : qualifiers.length) + "," +
@@ -43,6 +43,8 @@ import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -80,6 +82,7 @@ public class ClazzCreator<T> implements Creator<T> {
 
     private ResolutionInfo myConstructor;
     private List<SystemInjecteeImpl> allInjectees;
+    private int numberOfSlots;
 
     private Method postConstructMethod;
     private Method preDestroyMethod;
@@ -140,7 +143,7 @@ public class ClazzCreator<T> implements Creator<T> {
 
         baseAllInjectees.addAll(injectees);
 
-        myConstructor = new ResolutionInfo(element, injectees);
+        myConstructor = newResolutionInfo(element, injectees);
 
         Set<Method> initMethods = Utilities.getInitMethods(implClass, analyzer, collector);
         for (Method initMethod : initMethods) {
@@ -151,7 +154,7 @@ public class ClazzCreator<T> implements Creator<T> {
 
             baseAllInjectees.addAll(injectees);
 
-            myInitializers.add(new ResolutionInfo(element, injectees));
+            myInitializers.add(newResolutionInfo(element, injectees));
         }
 
         Set<Field> fields = Utilities.getInitFields(implClass, analyzer, collector);
@@ -163,7 +166,7 @@ public class ClazzCreator<T> implements Creator<T> {
 
             baseAllInjectees.addAll(injectees);
 
-            myFields.add(new ResolutionInfo(element, injectees));
+            myFields.add(newResolutionInfo(element, injectees));
         }
 
         postConstructMethod = Utilities.getPostConstruct(implClass, analyzer, collector);
@@ -176,6 +179,17 @@ public class ClazzCreator<T> implements Creator<T> {
         
     }
 
+    /**
+     * Each injectee gets its own slot in the array its dependencies are
+     * resolved into, so that no map needs to be built per creation
+     */
+    private ResolutionInfo newResolutionInfo(AnnotatedElement baseElement, List<SystemInjecteeImpl> injectees) {
+        ResolutionInfo retVal = new ResolutionInfo(baseElement, injectees, numberOfSlots);
+        numberOfSlots += retVal.injectees.length;
+        
+        return retVal;
+    }
+
     /* package */ void initialize(
             ActiveDescriptor<?> selfDescriptor,
             Collector collector) {
@@ -199,50 +213,42 @@ public class ClazzCreator<T> implements Creator<T> {
         }
     }
 
-    private void resolve(Map<SystemInjecteeImpl, Object> addToMe,
-                         InjectionResolver<?> resolver,
-                         SystemInjecteeImpl injectee,
+    private void resolve(Object addToMe[],
+                         ResolutionInfo resolutionInfo,
                          ServiceHandle<?> root,
                          Collector errorCollection) {
-        if (injectee.isSelf()) {
-            addToMe.put(injectee, selfDescriptor);
-            return;
-        }
-
-        Object addIn = null;
-        try {
-            addIn = resolver.resolve(injectee, root);
-        } catch (Throwable th) {
-            errorCollection.addThrowable(th);
-        }
+        SystemInjecteeImpl injectees[] = resolutionInfo.injectees;
+        
+        for (int lcv = 0; lcv < injectees.length; lcv++) {
+            SystemInjecteeImpl injectee = injectees[lcv];
+            InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
+            
+            if (injectee.isSelf()) {
+                addToMe[resolutionInfo.firstSlot + lcv] = selfDescriptor;
+                continue;
+            }
 
-        if (addIn != null) {
-            addToMe.put(injectee, addIn);
+            try {
+                addToMe[resolutionInfo.firstSlot + lcv] = resolver.resolve(injectee, root);
+            } catch (Throwable th) {
+                errorCollection.addThrowable(th);
+            }
         }
     }
 
-    private Map<SystemInjecteeImpl, Object> resolveAllDependencies(final ServiceHandle<?> root) throws MultiException, IllegalStateException {
+    private Object[] resolveAllDependencies(final ServiceHandle<?> root) throws MultiException, IllegalStateException {
         Collector errorCollector = new Collector();
 
-        final Map<SystemInjecteeImpl, Object> retVal = new LinkedHashMap<SystemInjecteeImpl, Object>();
+        final Object retVal[] = new Object[numberOfSlots];
 
-        for (SystemInjecteeImpl injectee : myConstructor.injectees) {
-            InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
-            resolve(retVal, resolver, injectee, root, errorCollector);
-        }
+        resolve(retVal, myConstructor, root, errorCollector);
 
         for (ResolutionInfo fieldRI : myFields) {
-            for (SystemInjecteeImpl injectee : fieldRI.injectees) {
-                InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
-                resolve(retVal, resolver, injectee, root, errorCollector);
-            }
+            resolve(retVal, fieldRI, root, errorCollector);
         }
 
         for (ResolutionInfo methodRI : myInitializers) {
-            for (SystemInjecteeImpl injectee : methodRI.injectees) {
-                InjectionResolver<?> resolver = locator.getInjectionResolverForInjectee(injectee);
-                resolve(retVal, resolver, injectee, root, errorCollector);
-            }
+            resolve(retVal, methodRI, root, errorCollector);
         }
 
         if (errorCollector.hasErrors()) {
@@ -254,16 +260,59 @@ public class ClazzCreator<T> implements Creator<T> {
 
         return retVal;
     }
+    
+    private static void addKnownInjectees(Map<Injectee, Object> addToMe, ResolutionInfo resolutionInfo, Object resolved[]) {
+        SystemInjecteeImpl injectees[] = resolutionInfo.injectees;
+        
+        for (int lcv = 0; lcv < injectees.length; lcv++) {
+            Object value = resolved[resolutionInfo.firstSlot + lcv];
+            if (value == null) continue;
+            
+            addToMe.put(injectees[lcv], value);
+        }
+    }
+    
+    /**
+     * Only built when there are instance lifecycle listeners to give it to
+     * 
+     * @param resolved The resolved dependencies
+     * @return The resolved dependencies keyed by injectee, in resolution order
+     */
+    private Map<Injectee, Object> getKnownInjectees(Object resolved[]) {
+        Map<Injectee, Object> retVal = new LinkedHashMap<Injectee, Object>();
+        
+        addKnownInjectees(retVal, myConstructor, resolved);
 
-    private Object createMe(Map<SystemInjecteeImpl, Object> resolved) throws Throwable {
-        final Constructor<?> c = (Constructor<?>) myConstructor.baseElement;
-        List<SystemInjecteeImpl> injectees = myConstructor.injectees;
+        for (ResolutionInfo fieldRI : myFields) {
+            addKnownInjectees(retVal, fieldRI, resolved);
+        }
 
-        final Object args[] = new Object[injectees.size()];
-        for (Injectee injectee : injectees) {
-            args[injectee.getPosition()] = resolved.get(injectee);
+        for (ResolutionInfo methodRI : myInitializers) {
+            addKnownInjectees(retVal, methodRI, resolved);
+        }
+        
+        return retVal;
+    }
+    
+    private static Object[] getArguments(ResolutionInfo resolutionInfo, Object resolved[]) {
+        Object retVal[] = new Object[resolutionInfo.injectees.length];
+        
+        for (int lcv = 0; lcv < retVal.length; lcv++) {
+            retVal[resolutionInfo.positions[lcv]] = resolved[resolutionInfo.firstSlot + lcv];
         }
         
+        return retVal;
+    }
+
+    /**
+     * Called with the context class loader already taken care of, so none of
+     * the reflective calls made here need to save and restore it
+     */
+    private Object createMe(Object resolved[]) throws Throwable {
+        final Constructor<?> c = (Constructor<?>) myConstructor.baseElement;
+
+        final Object args[] = getArguments(myConstructor, resolved);
+        
         Utilities.Interceptors interceptors = Utilities.getAllInterceptors(locator, selfDescriptor, implClass, c);
         final Map<Method, List<MethodInterceptor>> methodInterceptors = interceptors.getMethodInterceptors();
         List<ConstructorInterceptor> constructorInterceptors = interceptors.getConstructorInterceptors();
@@ -271,54 +320,49 @@ public class ClazzCreator<T> implements Creator<T> {
         if ((methodInterceptors == null || methodInterceptors.isEmpty()) &&
             ((constructorInterceptors == null) || constructorInterceptors.isEmpty())) {
             // No need for any kind of interception
-            return ReflectionHelper.makeMe(c, args, locator.getNeutralContextClassLoader()); 
+            return ReflectionHelper.makeMe(c, args, false); 
         }
         
         if (!Utilities.proxiesAvailable()) {
             throw new IllegalStateException("A service " + selfDescriptor + " needs either method or constructor interception, but proxies are not available");
         }
         
-        final boolean neutral = locator.getNeutralContextClassLoader();
-        
         if (methodInterceptors == null || methodInterceptors.isEmpty()) {
             // No method interceptors means no need for proxy at all
-            return ConstructorInterceptorHandler.construct(c, args, neutral, constructorInterceptors);
+            return ConstructorInterceptorHandler.construct(c, args, false, constructorInterceptors);
         }
         
         return ConstructorInterceptorHandler.construct(c,
                 args,
-                neutral,
+                false,
                 constructorInterceptors,
-                new ConstructorActionImpl<T>(this, methodInterceptors));
+                new ConstructorActionImpl<T>(this, interceptors.getMethodInterceptorChains()));
     }
 
-    private void fieldMe(Map<SystemInjecteeImpl, Object> resolved, T t) throws Throwable {
+    private void fieldMe(Object resolved[], T t) throws Throwable {
         for (ResolutionInfo ri : myFields) {
             Field field = (Field) ri.baseElement;
-            List<SystemInjecteeImpl> injectees = ri.injectees;  // Should be only one injectee, itself!
-
-            Injectee fieldInjectee = null;
-            for (Injectee candidate : injectees) {
-                fieldInjectee = candidate;
-            }
-
-            Object putMeIn = resolved.get(fieldInjectee);
+            
+            // Should be only one injectee, itself!
+            Object putMeIn = resolved[ri.firstSlot + ri.injectees.length - 1];
 
             ReflectionHelper.setField(field, t, putMeIn);
         }
     }
 
-    private void methodMe(Map<SystemInjecteeImpl, Object> resolved, T t) throws Throwable {
+    /**
+     * If neutral is true the context class loader is put back to the
+     * given one after each initializer method
+     */
+    private void methodMe(Object resolved[], T t, boolean neutral, ClassLoader ccl) throws Throwable {
         for (ResolutionInfo ri : myInitializers) {
             Method m = (Method) ri.baseElement;
-            List<SystemInjecteeImpl> injectees = ri.injectees;
 
-            Object args[] = new Object[injectees.size()];
-            for (Injectee injectee : injectees) {
-                args[injectee.getPosition()] = resolved.get(injectee);
+            ReflectionHelper.invoke(t, m, getArguments(ri, resolved), false);
+            
+            if (neutral) {
+                restoreContextClassLoader(ccl);
             }
-
-            ReflectionHelper.invoke(t, m, args, locator.getNeutralContextClassLoader());
         }
     }
 
@@ -332,7 +376,32 @@ public class ClazzCreator<T> implements Creator<T> {
 
         if (postConstructMethod == null) return;
 
-        ReflectionHelper.invoke(t, postConstructMethod, new Object[0], locator.getNeutralContextClassLoader());
+        ReflectionHelper.invoke(t, postConstructMethod, new Object[0], false);
+    }
+
+    private static ClassLoader getCurrentContextClassLoader() {
+        return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
+            @Override
+            public ClassLoader run() {
+                return Thread.currentThread().getContextClassLoader();
+            }
+        });
+    }
+    
+    /**
+     * Sets the context class loader back to the given one, if it was changed
+     */
+    private static void restoreContextClassLoader(final ClassLoader ccl) {
+        AccessController.doPrivileged(new PrivilegedAction<Object>() {
+            @Override
+            public Object run() {
+                Thread current = Thread.currentThread();
+                if (current.getContextClassLoader() != ccl) {
+                    current.setContextClassLoader(ccl);
+                }
+                return null;
+            }
+        });
     }
 
     private void preDestroyMe(T t) throws Throwable {
@@ -357,28 +426,47 @@ public class ClazzCreator<T> implements Creator<T> {
         String failureLocation = "resolve";
         try {
 
-            final Map<SystemInjecteeImpl, Object> allResolved = resolveAllDependencies(root);
-
-            if (eventThrower != null) {
+            final Object allResolved[] = resolveAllDependencies(root);
+            
+            Map<Injectee, Object> knownInjectees = null;
+            if ((eventThrower != null) && eventThrower.hasInstanceListeners()) {
+                knownInjectees = getKnownInjectees(allResolved);
+                
                 eventThrower.invokeInstanceListeners(new InstanceLifecycleEventImpl(InstanceLifecycleEventType.PRE_PRODUCTION,
-                    null, ReflectionHelper.<Map<Injectee,Object>>cast(allResolved), eventThrower));
+                    null, knownInjectees, eventThrower));
             }
 
-            failureLocation = "create";
-            T retVal = (T) createMe(allResolved);
-
-            failureLocation = "field inject";
-            fieldMe(allResolved, retVal);
-
-            failureLocation = "method inject";
-            methodMe(allResolved, retVal);
-
-            failureLocation = "post construct";
-            postConstructMe(retVal);
+            // The context class loader is saved once, and put back after each
+            // call into the service only if the service changed it
+            boolean neutral = locator.getNeutralContextClassLoader();
+            ClassLoader currentCCL = (neutral) ? getCurrentContextClassLoader() : null;
+            
+            T retVal;
+            try {
+                failureLocation = "create";
+                retVal = (T) createMe(allResolved);
+                if (neutral) {
+                    restoreContextClassLoader(currentCCL);
+                }
+
+                failureLocation = "field inject";
+                fieldMe(allResolved, retVal);
+
+                failureLocation = "method inject";
+                methodMe(allResolved, retVal, neutral, currentCCL);
+
+                failureLocation = "post construct";
+                postConstructMe(retVal);
+            }
+            finally {
+                if (neutral) {
+                    restoreContextClassLoader(currentCCL);
+                }
+            }
 
-            if (eventThrower != null) {
+            if (knownInjectees != null) {
                 eventThrower.invokeInstanceListeners(new InstanceLifecycleEventImpl(InstanceLifecycleEventType.POST_PRODUCTION,
-                    retVal, ReflectionHelper.<Map<Injectee, Object>>cast(allResolved), eventThrower));
+                    retVal, knownInjectees, eventThrower));
             }
 
             return retVal;
@@ -437,11 +525,19 @@ public class ClazzCreator<T> implements Creator<T> {
 
     private static class ResolutionInfo {
         private final AnnotatedElement baseElement;
-        private final List<SystemInjecteeImpl> injectees = new LinkedList<SystemInjecteeImpl>();
+        private final SystemInjecteeImpl injectees[];
+        private final int positions[];  // The parameter position of each injectee
+        private final int firstSlot;  // The slot of the first injectee in the resolved array
 
-        private ResolutionInfo(AnnotatedElement baseElement, List<SystemInjecteeImpl> injectees) {
+        private ResolutionInfo(AnnotatedElement baseElement, List<SystemInjecteeImpl> injectees, int firstSlot) {
             this.baseElement = baseElement;
-            this.injectees.addAll(injectees);
+            this.injectees = injectees.toArray(new SystemInjecteeImpl[injectees.size()]);
+            this.firstSlot = firstSlot;
+            
+            positions = new int[this.injectees.length];
+            for (int lcv = 0; lcv < positions.length; lcv++) {
+                positions[lcv] = this.injectees[lcv].getPosition();
+            }
         }
     }
 }
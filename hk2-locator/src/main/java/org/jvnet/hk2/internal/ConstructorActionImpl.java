@@ -47,10 +47,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.security.AccessController;
 import java.security.PrivilegedExceptionAction;
-import java.util.List;
-import java.util.Map;
 
-import org.aopalliance.intercept.MethodInterceptor;
 import org.glassfish.hk2.api.AOPProxyCtl;
 import org.glassfish.hk2.utilities.reflection.Logger;
 
@@ -80,14 +77,14 @@ final class ConstructorActionImpl<T> implements ConstructorAction {
     /**
      * 
      */
-    private final Map<Method, List<MethodInterceptor>> methodInterceptors;
+    private final MethodInterceptorChains methodInterceptors;
 
     /**
      * @param methodInterceptors
      * @param clazzCreator TODO
      */
     ConstructorActionImpl(
-            ClazzCreator<T> clazzCreator, Map<Method, List<MethodInterceptor>> methodInterceptors) {
+            ClazzCreator<T> clazzCreator, MethodInterceptorChains methodInterceptors) {
         this.clazzCreator = clazzCreator;
         this.methodInterceptors = methodInterceptors;
     }
@@ -0,0 +1,420 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.glassfish.hk2.api.Filter;
+import org.glassfish.hk2.api.IndexedFilter;
+import org.glassfish.hk2.api.ValidationService;
+import org.glassfish.hk2.utilities.general.PersistentHashMap;
+
+/**
+ * An immutable snapshot of the descriptors of a {@link ServiceLocatorImpl}.
+ * A new snapshot is built by the locator whenever a configuration is
+ * committed and is then published through a single volatile reference,
+ * which allows lookups to read the index without taking any lock.
+ * <p>
+ * Every collection in the snapshot is kept in the order given by the
+ * {@link DescriptorComparator}.  The descriptors are kept in persistent
+ * trees and maps (see {@link DescriptorTree} and {@link PersistentHashMap}),
+ * so building a new snapshot only copies the paths to the descriptors,
+ * contracts and names modified by the commit, and costs
+ * O(log n) for each of them rather than O(n).  Everything else is shared
+ * with the previous snapshot.
+ * <p>
+ * The generations of contracts that no longer have any descriptors are
+ * dropped once they outnumber the contracts that do.  The highest dropped
+ * generation is then reported for every contract that has no generation
+ * of its own, which can only make cached lookups look older than they are
+ * 
+ * @author jwells
+ *
+ */
+public class DescriptorIndex {
+    /**
+     * Contract generations are never pruned below this many entries
+     */
+    private final static int MINIMUM_GENERATIONS_TO_PRUNE = 64;
+    
+    /* package */ final static DescriptorIndex EMPTY_INDEX = new DescriptorIndex(0L,
+            DescriptorTree.EMPTY,
+            PersistentHashMap.<String, DescriptorTree>empty(),
+            PersistentHashMap.<String, DescriptorTree>empty(),
+            PersistentHashMap.<String, Long>empty(),
+            0L,
+            Collections.<ValidationService>emptyList());
+    
+    private final long generation;
+    private final DescriptorTree allDescriptors;
+    private final PersistentHashMap<String, DescriptorTree> descriptorsByAdvertisedContract;
+    private final PersistentHashMap<String, DescriptorTree> descriptorsByName;
+    private final PersistentHashMap<String, Long> contractGenerations;
+    private final long prunedGeneration;
+    private final List<ValidationService> validators;
+    
+    private DescriptorIndex(long generation,
+            DescriptorTree allDescriptors,
+            PersistentHashMap<String, DescriptorTree> descriptorsByAdvertisedContract,
+            PersistentHashMap<String, DescriptorTree> descriptorsByName,
+            PersistentHashMap<String, Long> contractGenerations,
+            long prunedGeneration,
+            List<ValidationService> validators) {
+        this.generation = generation;
+        this.allDescriptors = allDescriptors;
+        this.descriptorsByAdvertisedContract = descriptorsByAdvertisedContract;
+        this.descriptorsByName = descriptorsByName;
+        this.contractGenerations = contractGenerations;
+        this.prunedGeneration = prunedGeneration;
+        this.validators = validators;
+    }
+    
+    /**
+     * The generation of this snapshot.  Every snapshot built from
+     * this one will have a higher generation
+     * 
+     * @return The generation of this snapshot
+     */
+    public long getGeneration() {
+        return generation;
+    }
+    
+    /**
+     * Returns the generation of the last snapshot in which the given
+     * contract (or qualifier or scope) was added, removed or invalidated
+     * 
+     * @param contract The contract to look for.  May be null
+     * @return The generation in which this contract was last modified,
+     * or zero if it has never been modified
+     */
+    public long getContractGeneration(String contract) {
+        if (contract == null) return 0L;
+        
+        Long retVal = contractGenerations.get(contract);
+        if (retVal == null) return prunedGeneration;
+        
+        return retVal.longValue();
+    }
+    
+    /**
+     * Returns the number of contracts whose generation is being kept
+     * 
+     * @return The number of contracts with a generation in this snapshot
+     */
+    /* package */ int getNumberOfContractGenerations() {
+        return contractGenerations.size();
+    }
+    
+    /**
+     * Returns all of the descriptors in this index, sorted
+     * 
+     * @return A non-null, unmodifiable and sorted collection of descriptors
+     */
+    public Collection<SystemDescriptor<?>> getAllDescriptors() {
+        return allDescriptors;
+    }
+    
+    /**
+     * Returns the validation services known at the time this
+     * snapshot was taken
+     * 
+     * @return A non-null, unmodifiable list of validation services
+     */
+    public List<ValidationService> getValidators() {
+        return validators;
+    }
+    
+    /**
+     * Gets the sorted descriptors that could possibly match the
+     * given filter, using the contract and name indexes if the filter
+     * is an {@link IndexedFilter}.  The filter itself is NOT applied
+     * 
+     * @param filter The non-null filter to get the candidates of
+     * @return A non-null sorted collection of candidates
+     */
+    public Collection<SystemDescriptor<?>> getCandidates(Filter filter) {
+        if (!(filter instanceof IndexedFilter)) return allDescriptors;
+        
+        IndexedFilter df = (IndexedFilter) filter;
+        
+        if (df.getName() != null) {
+            DescriptorTree scopedByName = descriptorsByName.get(df.getName());
+            if (scopedByName == null) return Collections.emptyList();
+            
+            if (df.getAdvertisedContract() == null) return scopedByName;
+            
+            LinkedList<SystemDescriptor<?>> retVal = new LinkedList<SystemDescriptor<?>>();
+            for (SystemDescriptor<?> candidate : scopedByName) {
+                if (candidate.getAdvertisedContracts().contains(df.getAdvertisedContract())) {
+                    retVal.add(candidate);
+                }
+            }
+            
+            return retVal;
+        }
+        
+        if (df.getAdvertisedContract() != null) {
+            DescriptorTree retVal = descriptorsByAdvertisedContract.get(df.getAdvertisedContract());
+            if (retVal == null) return Collections.emptyList();
+            
+            return retVal;
+        }
+        
+        return allDescriptors;
+    }
+    
+    /**
+     * Builds a new snapshot from this one by removing and adding the given descriptors
+     * 
+     * @param removed The descriptors that were removed from the locator
+     * @param added The descriptors that were added to the locator
+     * @param affectedContracts The contracts whose cached lookups must be considered
+     * stale in the new snapshot
+     * @param newValidators The validation services of the locator after the commit
+     * @return A new snapshot with the modifications applied
+     */
+    public DescriptorIndex commit(List<SystemDescriptor<?>> removed,
+            List<SystemDescriptor<?>> added,
+            Collection<String> affectedContracts,
+            Collection<ValidationService> newValidators) {
+        long newGeneration = generation + 1;
+        
+        DescriptorTree newAll = allDescriptors;
+        PersistentHashMap<String, DescriptorTree> newByContract = descriptorsByAdvertisedContract;
+        PersistentHashMap<String, DescriptorTree> newByName = descriptorsByName;
+        
+        for (SystemDescriptor<?> sd : removed) {
+            newAll = newAll.minus(sd);
+            
+            for (String contract : new HashSet<String>(ServiceLocatorImpl.getAllContracts(sd))) {
+                newByContract = remove(newByContract, contract, sd);
+            }
+            
+            if (sd.getName() != null) {
+                newByName = remove(newByName, sd.getName(), sd);
+            }
+        }
+        
+        for (SystemDescriptor<?> sd : added) {
+            newAll = newAll.plus(sd);
+            
+            for (String contract : new HashSet<String>(ServiceLocatorImpl.getAllContracts(sd))) {
+                newByContract = add(newByContract, contract, sd);
+            }
+            
+            if (sd.getName() != null) {
+                newByName = add(newByName, sd.getName(), sd);
+            }
+        }
+        
+        return stamp(newGeneration,
+                newAll,
+                newByContract,
+                newByName,
+                affectedContracts,
+                Collections.unmodifiableList(new ArrayList<ValidationService>(newValidators)));
+    }
+    
+    /**
+     * Builds a new snapshot in which the given contracts are considered
+     * modified, without changing any of the descriptors.  Used once the
+     * locator has re-upped its caches after a commit, so that lookups that
+     * started on an older snapshot see their results as stale.  Modifications
+     * made in a parent locator are found with the hierarchy stamps instead
+     * 
+     * @param affectedContracts The contracts that have been modified
+     * @return A new snapshot with a higher generation
+     */
+    public DescriptorIndex invalidate(Collection<String> affectedContracts) {
+        return stamp(generation + 1,
+                allDescriptors,
+                descriptorsByAdvertisedContract,
+                descriptorsByName,
+                affectedContracts,
+                validators);
+    }
+    
+    /**
+     * Builds a new snapshot in which the given descriptor has been moved to
+     * the position given by its current ranking.  The descriptor is no longer
+     * where its new ranking would put it, so it is found with a linear search
+     * of each collection it is in
+     * 
+     * @param changed The descriptor whose ranking has been modified
+     * @return A new snapshot with the descriptor properly sorted
+     */
+    public DescriptorIndex reSort(SystemDescriptor<?> changed) {
+        PersistentHashMap<String, DescriptorTree> newByContract = descriptorsByAdvertisedContract;
+        for (String contract : new HashSet<String>(ServiceLocatorImpl.getAllContracts(changed))) {
+            DescriptorTree current = newByContract.get(contract);
+            if (current == null) continue;
+            
+            newByContract = newByContract.plus(contract, reInsert(current, changed));
+        }
+        
+        PersistentHashMap<String, DescriptorTree> newByName = descriptorsByName;
+        if (changed.getName() != null) {
+            DescriptorTree current = newByName.get(changed.getName());
+            if (current != null) {
+                newByName = newByName.plus(changed.getName(), reInsert(current, changed));
+            }
+        }
+        
+        return new DescriptorIndex(generation + 1,
+                reInsert(allDescriptors, changed),
+                newByContract,
+                newByName,
+                contractGenerations,
+                prunedGeneration,
+                validators);
+    }
+    
+    /**
+     * Builds a complete snapshot from the given descriptors
+     * 
+     * @param all All of the descriptors of the locator
+     * @param allValidators All of the validation services of the locator
+     * @return A new snapshot with a higher generation than this one, in which
+     * all known contracts are considered modified
+     */
+    public DescriptorIndex rebuild(Collection<SystemDescriptor<?>> all,
+            Collection<ValidationService> allValidators) {
+        DescriptorIndex fresh = new DescriptorIndex(generation,
+                DescriptorTree.EMPTY,
+                PersistentHashMap.<String, DescriptorTree>empty(),
+                PersistentHashMap.<String, DescriptorTree>empty(),
+                contractGenerations,
+                prunedGeneration,
+                validators);
+        
+        HashSet<String> allContracts = new HashSet<String>(contractGenerations.keySet());
+        for (SystemDescriptor<?> sd : all) {
+            allContracts.addAll(ServiceLocatorImpl.getAllContracts(sd));
+        }
+        
+        return fresh.commit(Collections.<SystemDescriptor<?>>emptyList(),
+                new ArrayList<SystemDescriptor<?>>(all),
+                allContracts,
+                allValidators);
+    }
+    
+    private static PersistentHashMap<String, DescriptorTree> add(PersistentHashMap<String, DescriptorTree> map,
+            String key,
+            SystemDescriptor<?> sd) {
+        DescriptorTree current = map.get(key);
+        if (current == null) current = DescriptorTree.EMPTY;
+        
+        return map.plus(key, current.plus(sd));
+    }
+    
+    private static PersistentHashMap<String, DescriptorTree> remove(PersistentHashMap<String, DescriptorTree> map,
+            String key,
+            SystemDescriptor<?> sd) {
+        DescriptorTree current = map.get(key);
+        if (current == null) return map;
+        
+        DescriptorTree replacement = current.minus(sd);
+        if (replacement.isEmpty()) return map.minus(key);
+        
+        return map.plus(key, replacement);
+    }
+    
+    private static DescriptorTree reInsert(DescriptorTree current, SystemDescriptor<?> changed) {
+        DescriptorTree without = current.minus(changed);
+        if (without == current) return current;
+        
+        return without.plus(changed);
+    }
+    
+    /**
+     * Builds the new snapshot with the given contracts stamped with the new
+     * generation, dropping the generations of contracts that have no descriptors
+     * once they outnumber the contracts that do
+     */
+    private DescriptorIndex stamp(long newGeneration,
+            DescriptorTree newAll,
+            PersistentHashMap<String, DescriptorTree> newByContract,
+            PersistentHashMap<String, DescriptorTree> newByName,
+            Collection<String> affectedContracts,
+            List<ValidationService> newValidators) {
+        PersistentHashMap<String, Long> newGenerations = contractGenerations;
+        long newPrunedGeneration = prunedGeneration;
+        
+        if (affectedContracts != null && !affectedContracts.isEmpty()) {
+            Long stamp = Long.valueOf(newGeneration);
+            for (String contract : affectedContracts) {
+                newGenerations = newGenerations.plus(contract, stamp);
+            }
+        }
+        
+        if (newGenerations.size() > MINIMUM_GENERATIONS_TO_PRUNE &&
+                newGenerations.size() > 2 * newByContract.size()) {
+            PersistentHashMap<String, Long> pruned = newGenerations;
+            for (Map.Entry<String, Long> entry : newGenerations.entrySet()) {
+                if (newByContract.containsKey(entry.getKey())) continue;
+                
+                pruned = pruned.minus(entry.getKey());
+                newPrunedGeneration = Math.max(newPrunedGeneration, entry.getValue().longValue());
+            }
+            
+            newGenerations = pruned;
+        }
+        
+        return new DescriptorIndex(newGeneration,
+                newAll,
+                newByContract,
+                newByName,
+                newGenerations,
+                newPrunedGeneration,
+                newValidators);
+    }
+    
+    @Override
+    public String toString() {
+        return "DescriptorIndex(" + generation + "," + allDescriptors.size() + "," +
+            System.identityHashCode(this) + ")";
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable collection of descriptors, kept in the order given by the
+ * {@link DescriptorComparator} in a balanced (AVL) tree.  {@link #plus(SystemDescriptor)}
+ * and {@link #minus(SystemDescriptor)} return a new tree that shares every node
+ * with this one except those on the path to the changed descriptor, so an update
+ * costs O(log n) regardless of the size of the tree.
+ * <p>
+ * Descriptors are found by comparison and then by identity.  A descriptor whose
+ * ranking was changed after it was added may no longer be where the comparator
+ * says it should be, in which case {@link #minus(SystemDescriptor)} falls back to
+ * a linear search
+ * 
+ * @author jwells
+ *
+ */
+final class DescriptorTree extends AbstractCollection<SystemDescriptor<?>> {
+    /* package */ final static DescriptorTree EMPTY = new DescriptorTree(null);
+    
+    private final Node root;
+    
+    private DescriptorTree(Node root) {
+        this.root = root;
+    }
+    
+    /**
+     * Returns a tree with the given descriptor added in sorted order.
+     * This tree is not modified
+     * 
+     * @param sd The non-null descriptor to add
+     * @return A tree with the descriptor, which may be this tree if
+     * the descriptor was already present
+     */
+    /* package */ DescriptorTree plus(SystemDescriptor<?> sd) {
+        Node newRoot = insert(root, sd);
+        if (newRoot == root) return this;
+        
+        return new DescriptorTree(newRoot);
+    }
+    
+    /**
+     * Returns a tree without the given descriptor.  This tree is not modified
+     * 
+     * @param sd The descriptor to remove
+     * @return A tree without the descriptor, which may be this tree if
+     * the descriptor was not present
+     */
+    /* package */ DescriptorTree minus(SystemDescriptor<?> sd) {
+        Node newRoot = remove(root, sd);
+        if (newRoot != root) return (newRoot == null) ? EMPTY : new DescriptorTree(newRoot);
+        
+        // Not where the comparator says, look everywhere
+        ArrayList<SystemDescriptor<?>> others = new ArrayList<SystemDescriptor<?>>(size());
+        boolean found = false;
+        for (SystemDescriptor<?> candidate : this) {
+            if (candidate == sd) {
+                found = true;
+            }
+            else {
+                others.add(candidate);
+            }
+        }
+        
+        if (!found) return this;
+        
+        return new DescriptorTree(build(others, 0, others.size()));
+    }
+    
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#isEmpty()
+     */
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#size()
+     */
+    @Override
+    public int size() {
+        return (root == null) ? 0 : root.size;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#iterator()
+     */
+    @Override
+    public Iterator<SystemDescriptor<?>> iterator() {
+        return new TreeIterator(root);
+    }
+    
+    private static int compare(SystemDescriptor<?> a, SystemDescriptor<?> b) {
+        return ServiceLocatorImpl.DESCRIPTOR_COMPARATOR.compare(a, b);
+    }
+    
+    private static int height(Node node) {
+        return (node == null) ? 0 : node.height;
+    }
+    
+    private static Node insert(Node node, SystemDescriptor<?> sd) {
+        if (node == null) return new Node(sd, null, null);
+        
+        int result = compare(sd, node.value);
+        if (result < 0) {
+            Node newLeft = insert(node.left, sd);
+            if (newLeft == node.left) return node;
+            
+            return balance(node.value, newLeft, node.right);
+        }
+        if (result > 0) {
+            Node newRight = insert(node.right, sd);
+            if (newRight == node.right) return node;
+            
+            return balance(node.value, node.left, newRight);
+        }
+        
+        if (node.value == sd) return node;
+        return new Node(sd, node.left, node.right);
+    }
+    
+    /**
+     * Returns the given node if the descriptor was not found
+     */
+    private static Node remove(Node node, SystemDescriptor<?> sd) {
+        if (node == null) return null;
+        
+        int result = compare(sd, node.value);
+        if (result < 0) {
+            Node newLeft = remove(node.left, sd);
+            if (newLeft == node.left) return node;
+            
+            return balance(node.value, newLeft, node.right);
+        }
+        if (result > 0) {
+            Node newRight = remove(node.right, sd);
+            if (newRight == node.right) return node;
+            
+            return balance(node.value, node.left, newRight);
+        }
+        
+        if (node.value != sd) return node;
+        
+        if (node.left == null) return node.right;
+        if (node.right == null) return node.left;
+        
+        Node successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        
+        return balance(successor.value, node.left, removeFirst(node.right));
+    }
+    
+    private static Node removeFirst(Node node) {
+        if (node.left == null) return node.right;
+        
+        return balance(node.value, removeFirst(node.left), node.right);
+    }
+    
+    private static Node balance(SystemDescriptor<?> value, Node left, Node right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        
+        if (leftHeight > rightHeight + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node(left.value, left.left, new Node(value, left.right, right));
+            }
+            
+            Node pivot = left.right;
+            return new Node(pivot.value,
+                    new Node(left.value, left.left, pivot.left),
+                    new Node(value, pivot.right, right));
+        }
+        
+        if (rightHeight > leftHeight + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node(right.value, new Node(value, left, right.left), right.right);
+            }
+            
+            Node pivot = right.left;
+            return new Node(pivot.value,
+                    new Node(value, left, pivot.left),
+                    new Node(right.value, pivot.right, right.right));
+        }
+        
+        return new Node(value, left, right);
+    }
+    
+    private static Node build(ArrayList<SystemDescriptor<?>> sorted, int from, int to) {
+        if (from >= to) return null;
+        
+        int middle = (from + to) >>> 1;
+        return new Node(sorted.get(middle),
+                build(sorted, from, middle),
+                build(sorted, middle + 1, to));
+    }
+    
+    private final static class Node {
+        private final SystemDescriptor<?> value;
+        private final Node left;
+        private final Node right;
+        private final int height;
+        private final int size;
+        
+        private Node(SystemDescriptor<?> value, Node left, Node right) {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = ((left == null) ? 0 : left.size) + ((right == null) ? 0 : right.size) + 1;
+        }
+    }
+    
+    /**
+     * Walks the tree in order with an explicit stack of the
+     * nodes whose left side has been visited
+     */
+    private final static class TreeIterator implements Iterator<SystemDescriptor<?>> {
+        private final Node stack[];
+        private int depth;
+        
+        private TreeIterator(Node root) {
+            stack = new Node[height(root)];
+            
+            pushLeft(root);
+        }
+        
+        private void pushLeft(Node node) {
+            while (node != null) {
+                stack[depth++] = node;
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        public SystemDescriptor<?> next() {
+            if (depth <= 0) throw new NoSuchElementException();
+            
+            Node node = stack[--depth];
+            stack[depth] = null;
+            
+            pushLeft(node.right);
+            
+            return node.value;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        
+    }
+
+}
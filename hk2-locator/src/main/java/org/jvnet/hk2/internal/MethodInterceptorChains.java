@@ -0,0 +1,122 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2013 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.jvnet.hk2.internal;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.aopalliance.intercept.MethodInterceptor;
+
+/**
+ * The interceptors of each method of a service, compiled once per descriptor
+ * into the arrays run by the {@link MethodInterceptorHandler}.
+ * <p>
+ * The proxy hands the handler the same {@link Method} object on every call
+ * of a given method, so once a method has been looked up by equality its
+ * chain is remembered by identity, and later calls only pay for an identity
+ * lookup.  Methods without interceptors are remembered as well
+ * 
+ * @author jwells
+ *
+ */
+public final class MethodInterceptorChains {
+    private final static MethodInterceptor[] NO_INTERCEPTORS = new MethodInterceptor[0];
+    
+    private final HashMap<Method, MethodInterceptor[]> byMethod;
+    private final Object lock = new Object();
+    
+    /** Copy on write, only ever read without the lock */
+    private volatile IdentityHashMap<Method, MethodInterceptor[]> resolved =
+            new IdentityHashMap<Method, MethodInterceptor[]>();
+    
+    /**
+     * Turns the interceptors found for each method into the chains used
+     * by the handler.  Methods without interceptors are left out
+     * 
+     * @param interceptorLists The interceptors found for each method, may be null
+     */
+    /* package */ MethodInterceptorChains(Map<Method, List<MethodInterceptor>> interceptorLists) {
+        byMethod = new HashMap<Method, MethodInterceptor[]>();
+        if (interceptorLists == null) return;
+        
+        for (Map.Entry<Method, List<MethodInterceptor>> entry : interceptorLists.entrySet()) {
+            List<MethodInterceptor> interceptors = entry.getValue();
+            if (interceptors == null || interceptors.isEmpty()) continue;
+            
+            byMethod.put(entry.getKey(), interceptors.toArray(new MethodInterceptor[interceptors.size()]));
+        }
+    }
+    
+    /**
+     * Gets the chain of interceptors to run for the given method
+     * 
+     * @param method The method as given to the proxy handler
+     * @return The interceptors to run, or null if the method is not intercepted
+     */
+    /* package */ MethodInterceptor[] getChain(Method method) {
+        MethodInterceptor[] retVal = resolved.get(method);
+        if (retVal == null) {
+            retVal = resolve(method);
+        }
+        
+        return (retVal == NO_INTERCEPTORS) ? null : retVal;
+    }
+    
+    private MethodInterceptor[] resolve(Method method) {
+        synchronized (lock) {
+            MethodInterceptor[] retVal = resolved.get(method);
+            if (retVal != null) return retVal;
+            
+            retVal = byMethod.get(method);
+            if (retVal == null) retVal = NO_INTERCEPTORS;
+            
+            IdentityHashMap<Method, MethodInterceptor[]> copy =
+                    new IdentityHashMap<Method, MethodInterceptor[]>(resolved);
+            copy.put(method, retVal);
+            resolved = copy;
+            
+            return retVal;
+        }
+    }
+
+}
@@ -41,11 +41,7 @@ package org.jvnet.hk2.internal;
 
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.RandomAccess;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
@@ -57,21 +53,27 @@ import org.glassfish.hk2.utilities.reflection.ReflectionHelper;
 import javassist.util.proxy.MethodHandler;
 
 /**
- * This is the handler that runs the aopalliance method interception
+ * This is the handler that runs the aopalliance method interception.
+ * <p>
+ * The interceptors of each method are compiled once per descriptor
+ * into an array (see {@link MethodInterceptorChains}).  Each step of a call
+ * gets its own small invocation that remembers its position in that array,
+ * so an interceptor may keep its invocation and call proceed on it later,
+ * more than once, or from another thread
  * 
  * @author jwells
  *
  */
 public class MethodInterceptorHandler implements MethodHandler {
     private final ServiceLocatorImpl locator;
-    private final Map<Method, List<MethodInterceptor>> interceptorLists;
+    private final MethodInterceptorChains interceptorChains;
     private final ActiveDescriptor<?> underlyingDescriptor;
     
     /* package */ MethodInterceptorHandler(ServiceLocatorImpl locator,
             ActiveDescriptor<?> underlyingDescriptor,
-            Map<Method, List<MethodInterceptor>> interceptorLists) {
+            MethodInterceptorChains interceptorChains) {
         this.locator = locator;
-        this.interceptorLists = interceptorLists;
+        this.interceptorChains = interceptorChains;
         this.underlyingDescriptor = underlyingDescriptor;
     }
 
@@ -85,80 +87,79 @@ public class MethodInterceptorHandler implements MethodHandler {
             return underlyingDescriptor;
         }
         
-        List<MethodInterceptor> interceptors = interceptorLists.get(thisMethod);
-        if (interceptors == null || interceptors.isEmpty()) {
+        MethodInterceptor interceptors[] = interceptorChains.getChain(thisMethod);
+        if (interceptors == null) {
             return ReflectionHelper.invoke(self, proceed, args, locator.getNeutralContextClassLoader());
         }
         
-        if (!(interceptors instanceof RandomAccess)) {
-            // Make sure we are indexable
-            interceptors = new ArrayList<MethodInterceptor>(interceptors);
-        }
-        
-        MethodInterceptor nextInterceptor = interceptors.get(0);
-        
-        return nextInterceptor.invoke(new MethodInvocationImpl(args,
-                thisMethod, self, interceptors, 0, proceed, null));
+        return interceptors[0].invoke(new MethodInvocationImpl(new Call(args,
+                thisMethod, self, interceptors, proceed), 0));
     }
     
-    private class MethodInvocationImpl implements MethodInvocation, HK2Invocation {
+    /**
+     * The parts of an intercepted call that are the same for every step
+     */
+    private static class Call {
         private final Object[] arguments;  // Live!
         private final Method method;
         private final Object myself;
-        private final List<MethodInterceptor> interceptors;
-        private final int index;
+        private final MethodInterceptor[] interceptors;
         private final Method proceed;
         private HashMap<String, Object> userData;
         
-        private MethodInvocationImpl(Object[] arguments,
+        private Call(Object[] arguments,
                 Method method,
                 Object myself,
-                List<MethodInterceptor> interceptors,
-                int index,
-                Method proceed,
-                HashMap<String, Object> userData) {
+                MethodInterceptor[] interceptors,
+                Method proceed) {
             this.arguments = arguments;
             this.method = method;
             this.myself = myself;
             this.interceptors = interceptors;
-            this.index = index;
             this.proceed = proceed;
-            this.userData = userData;
+        }
+    }
+    
+    private class MethodInvocationImpl implements MethodInvocation, HK2Invocation {
+        private final Call call;
+        private final int index;
+        
+        private MethodInvocationImpl(Call call, int index) {
+            this.call = call;
+            this.index = index;
         }
 
         @Override
         public Object[] getArguments() {
-            return arguments;
+            return call.arguments;
         }
 
         @Override
         public AccessibleObject getStaticPart() {
-            return method;
+            return call.method;
         }
 
         @Override
         public Object getThis() {
-            return myself;
+            return call.myself;
         }
 
         @Override
         public Method getMethod() {
-            return method;
+            return call.method;
         }
         
         @Override
         public Object proceed() throws Throwable {
             int newIndex = index + 1;
-            if (newIndex >= interceptors.size()) {
+            if (newIndex >= call.interceptors.length) {
                 // Call the actual method
-                return ReflectionHelper.invoke(myself, proceed, arguments, locator.getNeutralContextClassLoader());
+                return ReflectionHelper.invoke(call.myself, call.proceed, call.arguments,
+                        locator.getNeutralContextClassLoader());
             }
             
             // Invoke the next interceptor
-            MethodInterceptor nextInterceptor = interceptors.get(newIndex);
-            
-            return nextInterceptor.invoke(new MethodInvocationImpl(arguments,
-                    method, myself, interceptors, newIndex, proceed, userData));
+            return call.interceptors[newIndex].invoke(new MethodInvocationImpl(call, newIndex));
         }
 
         /* (non-Javadoc)
@@ -168,13 +169,15 @@ public class MethodInterceptorHandler implements MethodHandler {
         public void setUserData(String key, Object data) {
             if (key == null) throw new IllegalArgumentException();
             
-            if (userData == null) userData = new HashMap<String, Object>();
+            synchronized (call) {
+                if (call.userData == null) call.userData = new HashMap<String, Object>();
             
-            if (data == null) {
-                userData.remove(key);
-            }
-            else {
-                userData.put(key, data);
+                if (data == null) {
+                    call.userData.remove(key);
+                }
+                else {
+                    call.userData.put(key, data);
+                }
             }
         }
 
@@ -185,8 +188,10 @@ public class MethodInterceptorHandler implements MethodHandler {
         public Object getUserData(String key) {
             if (key == null) throw new IllegalArgumentException();
             
-            if (userData == null) return null;
-            return userData.get(key);
+            synchronized (call) {
+                if (call.userData == null) return null;
+                return call.userData.get(key);
+            }
         }
         
     }
@@ -58,19 +58,36 @@ public class MethodInterceptorImpl implements MethodHandler {
     private final ServiceLocatorImpl locator;
     private final ActiveDescriptor<?> descriptor;
     private final ServiceHandle<?> root;
+    private volatile ResolvedContext resolved;
     
     /* package */ MethodInterceptorImpl(ServiceLocatorImpl sli, ActiveDescriptor<?> descriptor, ServiceHandle<?> root) {
         this.locator = sli;
         this.descriptor = descriptor;
         this.root = root;
     }
+    
+    /**
+     * The context is resolved once and then kept until the contexts
+     * of the locator may have changed
+     */
+    private Context<?> getContext() {
+        long generation = locator.getContextGeneration();
+        
+        ResolvedContext current = resolved;
+        if (current != null && current.generation == generation) return current.context;
+        
+        Context<?> context = locator.resolveContext(descriptor.getScopeAnnotation());
+        resolved = new ResolvedContext(context, generation);
+        
+        return context;
+    }
 
     @Override
     public Object invoke(Object target, Method method, Method proceed, Object[] params) throws Throwable {
         Context<?> context;
         Object service;
 
-        context = locator.resolveContext(descriptor.getScopeAnnotation());
+        context = getContext();
         service = context.findOrCreate(descriptor, root);
 
         if (service == null) {
@@ -87,4 +104,14 @@ public class MethodInterceptorImpl implements MethodHandler {
         return ReflectionHelper.invoke(service, method, params, locator.getNeutralContextClassLoader());
 
     }
+    
+    private static class ResolvedContext {
+        private final Context<?> context;
+        private final long generation;
+        
+        private ResolvedContext(Context<?> context, long generation) {
+            this.context = context;
+            this.generation = generation;
+        }
+    }
 }
@@ -39,14 +39,26 @@
  */
 package org.jvnet.hk2.internal;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.Descriptor;
 import org.glassfish.hk2.api.DescriptorFileFinder;
 import org.glassfish.hk2.api.DynamicConfiguration;
 import org.glassfish.hk2.api.DynamicConfigurationService;
@@ -54,23 +66,109 @@ import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.Populator;
 import org.glassfish.hk2.api.PopulatorPostProcessor;
 import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.ClasspathDescriptorFileFinder;
 import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.glassfish.hk2.utilities.general.GeneralUtilities;
+import org.glassfish.hk2.utilities.reflection.ClassReflectionHelper;
 
 /**
  * Implementation of the Populator for DynamicConfigurationService
+ * <p>
+ * By default the descriptor files are read serially.  If the parallelism
+ * (see {@link #setParallelism(int)}) is greater than one the descriptor
+ * files are parsed concurrently, and if pre-analysis (see
+ * {@link #setPreAnalyze(boolean)}) is also on the implementation classes
+ * are loaded and analyzed concurrently prior to the commit.  The
+ * defaults for both come from the {@link #PARALLELISM_PROPERTY} and
+ * {@link #PRE_ANALYZE_PROPERTY} system properties.  Post processors and binding are always done serially
+ * in the order of the descriptor files, so the resulting descriptors
+ * and their service ids are the same in either mode
+ * <p>
+ * Descriptor files may be in the text form or in the binary form of
+ * {@link BinaryDescriptorFile}.  When no post processors are given the
+ * descriptors from binary files are bound without decoding the fields
+ * that are not needed until the service is looked up
  * 
  * @author jwells
  */
 public class PopulatorImpl implements Populator {
+    /**
+     * The number of threads to use when parsing descriptor files.  A
+     * value of one or less (the default) means the files are parsed
+     * on the calling thread
+     */
+    public final static String PARALLELISM_PROPERTY = "org.jvnet.hk2.properties.populator.parallelism";
+    
+    /**
+     * If true (and parallelism is greater than one) the implementation
+     * classes of the populated descriptors are loaded and analyzed
+     * concurrently prior to the commit
+     */
+    public final static String PRE_ANALYZE_PROPERTY = "org.jvnet.hk2.properties.populator.preAnalyze";
+    
+    private final static String THREAD_NAME_PREFIX = "hk2-populator-";
+    private final static AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private final static long THREAD_KEEP_ALIVE_SECONDS = 10L;
+    
     private final ServiceLocator serviceLocator;
     private final DynamicConfigurationService dcs;
     
+    private volatile int parallelism = getDefaultParallelism();
+    private volatile boolean preAnalyze = getDefaultPreAnalyze();
+    
+    private final Object executorLock = new Object();
+    private ThreadPoolExecutor executor;
+    
     /* package */ PopulatorImpl(ServiceLocator serviceLocator,
             DynamicConfigurationService dcs) {
         this.serviceLocator = serviceLocator;
         this.dcs = dcs;
     }
+    
+    /**
+     * Returns the number of threads used to parse descriptor files
+     * 
+     * @return The number of threads used to parse descriptor files.  One or
+     * less means the files are parsed on the calling thread
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    /**
+     * Sets the number of threads used to parse descriptor files.  The
+     * default is taken from the {@link #PARALLELISM_PROPERTY} system property
+     * 
+     * @param parallelism The number of threads used to parse descriptor files.
+     * One or less means the files are parsed on the calling thread
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+    
+    /**
+     * Tells whether or not the implementation classes of the populated
+     * descriptors are analyzed concurrently prior to the commit
+     * 
+     * @return true if the implementation classes are analyzed prior to the commit
+     */
+    public boolean isPreAnalyze() {
+        return preAnalyze;
+    }
+    
+    /**
+     * Sets whether or not the implementation classes of the populated
+     * descriptors are analyzed concurrently prior to the commit.  This has
+     * no effect unless the parallelism is greater than one.  The default is
+     * taken from the {@link #PRE_ANALYZE_PROPERTY} system property
+     * 
+     * @param preAnalyze true if the implementation classes should be analyzed
+     * prior to the commit
+     */
+    public void setPreAnalyze(boolean preAnalyze) {
+        this.preAnalyze = preAnalyze;
+    }
 
     @Override
     public List<ActiveDescriptor<?>> populate(DescriptorFileFinder fileFinder,
@@ -99,43 +197,46 @@ public class PopulatorImpl implements Populator {
 
         DynamicConfiguration config = dcs.createDynamicConfiguration();
 
-        for (InputStream is : descriptorFileInputStreams) {
-
-            BufferedReader br = new BufferedReader(new InputStreamReader(is));
+        int threads = parallelism;
+        if (threads <= 1) {
+            for (InputStream is : descriptorFileInputStreams) {
+                List<Descriptor> parsed = readDescriptors(is);
 
+                bindAll(parsed, config, postProcessors, collector, descriptors);
+            }
+        }
+        else {
+            ExecutorService executor = getExecutor(threads);
+            
+            List<Future<List<Descriptor>>> parsedFiles =
+                    new ArrayList<Future<List<Descriptor>>>(descriptorFileInputStreams.size());
+            int bound = 0;
             try {
-                boolean readOne = false;
-
-                do {
-                    DescriptorImpl descriptorImpl = new DescriptorImpl();
-
-                    readOne = descriptorImpl.readObject(br);
-
-                    if (readOne) {
-                            
-                        for (PopulatorPostProcessor pp : postProcessors) {
-                            try {
-                                descriptorImpl = pp.process(serviceLocator, descriptorImpl);
-                            }
-                            catch (Throwable th) {
-                                collector.addThrowable(th);
-                                descriptorImpl = null;
-                            }
-
-                            if (descriptorImpl == null) {
-                                break;
-                            }
-                        }
-                            
-                        if (descriptorImpl != null) {
-                            descriptors.add(config.bind(descriptorImpl, false));
+                for (final InputStream is : descriptorFileInputStreams) {
+                    parsedFiles.add(executor.submit(new Callable<List<Descriptor>>() {
+
+                        @Override
+                        public List<Descriptor> call() throws Exception {
+                            return readDescriptors(is);
                         }
 
-                    }
-                } while (readOne);
+                    }));
+                }
+
+                // Binding is done in file order so that service ids are stable
+                for (Future<List<Descriptor>> parsedFile : parsedFiles) {
+                    bindAll(getResult(parsedFile), config, postProcessors, collector, descriptors);
+                    bound++;
+                }
+            }
+            finally {
+                if (bound < descriptorFileInputStreams.size()) {
+                    closeUnread(descriptorFileInputStreams, parsedFiles, bound);
+                }
+            }
 
-            } finally {
-                br.close();
+            if (preAnalyze && (serviceLocator instanceof ServiceLocatorImpl)) {
+                preAnalyze(executor, descriptors, (ServiceLocatorImpl) serviceLocator);
             }
         }
         
@@ -147,6 +248,222 @@ public class PopulatorImpl implements Populator {
         return descriptors;
     }
 
+    private static List<Descriptor> readDescriptors(InputStream is) throws IOException {
+        BufferedInputStream bis = new BufferedInputStream(is);
+        
+        List<Descriptor> retVal = new LinkedList<Descriptor>();
+        
+        try {
+            if (BinaryDescriptorFile.isBinaryDescriptorFile(bis)) {
+                // Only the fields needed to bind are decoded here
+                return BinaryDescriptorFile.readDescriptorFile(bis).getDescriptors();
+            }
+            
+            BufferedReader br = new BufferedReader(new InputStreamReader(bis));
+            
+            boolean readOne = false;
+            
+            do {
+                DescriptorImpl descriptorImpl = new DescriptorImpl();
+                
+                readOne = descriptorImpl.readObject(br);
+                
+                if (readOne) {
+                    retVal.add(descriptorImpl);
+                }
+            } while (readOne);
+            
+        } finally {
+            bis.close();
+        }
+        
+        return retVal;
+    }
+    
+    private void bindAll(List<Descriptor> parsed,
+            DynamicConfiguration config,
+            PopulatorPostProcessor postProcessors[],
+            Collector collector,
+            List<ActiveDescriptor<?>> descriptors) {
+        for (Descriptor descriptor : parsed) {
+            if (postProcessors.length == 0) {
+                descriptors.add(config.bind(descriptor, false));
+                continue;
+            }
+            
+            // Post processors work on (and may modify) a DescriptorImpl
+            DescriptorImpl descriptorImpl = (descriptor instanceof DescriptorImpl) ?
+                    (DescriptorImpl) descriptor : new DescriptorImpl(descriptor);
+            
+            for (PopulatorPostProcessor pp : postProcessors) {
+                try {
+                    descriptorImpl = pp.process(serviceLocator, descriptorImpl);
+                }
+                catch (Throwable th) {
+                    collector.addThrowable(th);
+                    descriptorImpl = null;
+                }
+                
+                if (descriptorImpl == null) {
+                    break;
+                }
+            }
+            
+            if (descriptorImpl != null) {
+                descriptors.add(config.bind(descriptorImpl, false));
+            }
+        }
+    }
+    
+    /**
+     * Returns the executor used to parse descriptor files with the given
+     * number of threads.  The executor is kept between calls to populate,
+     * its threads go away when they have been idle for a while
+     */
+    private ExecutorService getExecutor(int threads) {
+        synchronized (executorLock) {
+            if (executor != null && executor.getMaximumPoolSize() == threads) {
+                return executor;
+            }
+            
+            if (executor != null) {
+                // Work already given to the old executor is still done
+                executor.shutdown();
+            }
+            
+            executor = new ThreadPoolExecutor(threads, threads,
+                    THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new PopulatorThreadFactory());
+            executor.allowCoreThreadTimeOut(true);
+            
+            return executor;
+        }
+    }
+    
+    /**
+     * Closes the streams of the descriptor files that were never read because
+     * an earlier file failed.  Streams whose parsing has already started are
+     * closed by the parse itself
+     */
+    private static void closeUnread(List<InputStream> streams,
+            List<Future<List<Descriptor>>> parsedFiles,
+            int firstUnbound) {
+        for (int lcv = firstUnbound; lcv < streams.size(); lcv++) {
+            if (lcv < parsedFiles.size() && !parsedFiles.get(lcv).cancel(false)) continue;
+            
+            try {
+                streams.get(lcv).close();
+            }
+            catch (IOException ioe) {
+                // Ignored, the original failure is the one reported
+            }
+        }
+    }
+    
+    private static List<Descriptor> getResult(Future<List<Descriptor>> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new MultiException(ie);
+        }
+        catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            
+            throw new MultiException(cause);
+        }
+    }
+    
+    /**
+     * Loads the implementation classes of the bound descriptors and fills in
+     * the reflection caches of the locator, so that the reification of these
+     * descriptors on first lookup does not have to do so.  Any failure here is
+     * ignored, it will be reported (properly) when the descriptor is reified
+     */
+    private static void preAnalyze(ExecutorService executor,
+            List<ActiveDescriptor<?>> descriptors,
+            final ServiceLocatorImpl locator) {
+        List<Future<?>> analyzed = new ArrayList<Future<?>>(descriptors.size());
+        for (final ActiveDescriptor<?> descriptor : descriptors) {
+            if (descriptor.isReified() || descriptor.getImplementation() == null) continue;
+            
+            analyzed.add(executor.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    preAnalyze(descriptor, locator);
+                }
+                
+            }));
+        }
+        
+        for (Future<?> future : analyzed) {
+            try {
+                future.get();
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException ee) {
+                // Ignored, reification will report it
+            }
+        }
+    }
+    
+    private static void preAnalyze(ActiveDescriptor<?> descriptor, ServiceLocatorImpl locator) {
+        Collector ignored = new Collector();
+        
+        Class<?> implClass = Utilities.loadClass(descriptor.getImplementation(), descriptor, ignored);
+        if (implClass == null) return;
+        
+        ClassReflectionHelper helper = locator.getClassReflectionHelper();
+        
+        Utilities.findProducerConstructor(implClass, locator, ignored);
+        helper.getAllFields(implClass);
+        helper.getAllMethods(implClass);
+        Utilities.findPostConstruct(implClass, locator, ignored);
+        Utilities.findPreDestroy(implClass, locator, ignored);
+    }
+    
+    private static int getDefaultParallelism() {
+        String value = GeneralUtilities.getSystemProperty(PARALLELISM_PROPERTY, "1");
+        
+        try {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException nfe) {
+            return 1;
+        }
+    }
+    
+    private static boolean getDefaultPreAnalyze() {
+        return Boolean.parseBoolean(GeneralUtilities.getSystemProperty(PRE_ANALYZE_PROPERTY, "false"));
+    }
+    
+    private static class PopulatorThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread retVal = new Thread(r, THREAD_NAME_PREFIX + THREAD_COUNT.incrementAndGet());
+            retVal.setDaemon(true);
+            
+            return retVal;
+        }
+        
+    }
+
     /* (non-Javadoc)
      * @see org.glassfish.hk2.api.Populator#populate()
      */
@@ -39,10 +39,15 @@
  */
 package org.jvnet.hk2.internal;
 
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.Arrays;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.MultiException;
@@ -61,91 +66,101 @@ import javassist.util.proxy.ProxyObject;
  */
 public class ProxyUtilities {
     private final static Object proxyCreationLock = new Object();
-    private final static WeakHashMap<WeakDelegatingCacheEntry, Object> delegatingLoaderSet =
-            new WeakHashMap<WeakDelegatingCacheEntry, Object>();
+    private final static WeakHashMap<ClassLoader, WeakReference<WeakDelegatingCacheEntry>> delegatingLoaderSet =
+            new WeakHashMap<ClassLoader, WeakReference<WeakDelegatingCacheEntry>>();
     
-    private static <T> T secureCreate(final Class<?> superclass,
-            final Class<?>[] interfaces,
-            final MethodHandler callback,
-            boolean useJDKProxy) {
-
-        /* construct the classloader where the generated proxy will be created --
-         * this classloader must have visibility into the javaassist classloader as well as
-         * the superclass' classloader
-         */
-        ClassLoader myLoader;
+    private static WeakDelegatingCacheEntry getCacheEntry(ClassLoader superclassLoader) {
         synchronized (delegatingLoaderSet) {
-            
-            WeakDelegatingCacheEntry key = new WeakDelegatingCacheEntry(superclass.getClassLoader());
-            WeakDelegatingCacheEntry found = null;
-            for (WeakDelegatingCacheEntry entry : delegatingLoaderSet.keySet()) {
-                if (key.equals(entry)) {
-                    found = entry;
-                    break;
-                }
-            }
+            WeakReference<WeakDelegatingCacheEntry> ref = delegatingLoaderSet.get(superclassLoader);
+            WeakDelegatingCacheEntry found = (ref == null) ? null : ref.get();
             
             if (found == null) {
-                found = key;
+                found = new WeakDelegatingCacheEntry(superclassLoader);
                 
-                delegatingLoaderSet.put(found, null);
+                delegatingLoaderSet.put(superclassLoader, new WeakReference<WeakDelegatingCacheEntry>(found));
             }
             
-            myLoader = found.getDelegator();
+            // Created under the lock so there is only one delegator per entry
+            found.getDelegator();
+            
+            return found;
         }
-        final ClassLoader delegatingLoader = myLoader;
+    }
+    
+    private static <T> T secureCreate(final Class<?> superclass,
+            final Class<?>[] interfaces,
+            final MethodHandler callback,
+            final boolean useJDKProxy) {
 
-        if (useJDKProxy) {
-            return AccessController.doPrivileged(new PrivilegedAction<T>() {
+        /* construct the classloader where the generated proxy will be created --
+         * this classloader must have visibility into the javaassist classloader as well as
+         * the superclass' classloader
+         */
+        final WeakDelegatingCacheEntry entry = getCacheEntry(superclass.getClassLoader());
+        final ClassLoader delegatingLoader = entry.getDelegator();
+        
+        // Proxy classes are only generated the first time they are needed
+        ProxyClassKey key = new ProxyClassKey(superclass, interfaces, useJDKProxy);
+        Class<?> cachedClass = entry.proxyClasses.get(key);
+        if (cachedClass == null) {
+            Class<?> created = AccessController.doPrivileged(new PrivilegedAction<Class<?>>() {
 
-                @SuppressWarnings("unchecked")
                 @Override
-                public T run() {
-                    return (T) Proxy.newProxyInstance(delegatingLoader, interfaces,
-                            new MethodInterceptorInvocationHandler(callback));
+                public Class<?> run() {
+                    if (useJDKProxy) {
+                        return Proxy.getProxyClass(delegatingLoader, interfaces);
+                    }
+                    
+                    synchronized (proxyCreationLock) {
+                        ProxyFactory.ClassLoaderProvider originalProvider = ProxyFactory.classLoaderProvider;
+                        ProxyFactory.classLoaderProvider = new ProxyFactory.ClassLoaderProvider() {
+
+                            @Override
+                            public ClassLoader get(ProxyFactory arg0) {
+                                return delegatingLoader;
+                            }
+                        };
+
+                        try {
+                            ProxyFactory proxyFactory = new ProxyFactory();
+                            proxyFactory.setInterfaces(interfaces);
+                            proxyFactory.setSuperclass(superclass);
+
+                            return proxyFactory.createClass();
+                        }
+                        finally {
+                            ProxyFactory.classLoaderProvider = originalProvider;
+
+                        }
+                    }
                 }
 
             });
-
+            
+            cachedClass = entry.proxyClasses.putIfAbsent(key, created);
+            if (cachedClass == null) cachedClass = created;
         }
-
+        final Class<?> proxyClass = cachedClass;
 
         return AccessController.doPrivileged(new PrivilegedAction<T>() {
 
             @SuppressWarnings("unchecked")
             @Override
             public T run() {
-                synchronized (proxyCreationLock) {
-                    ProxyFactory.ClassLoaderProvider originalProvider = ProxyFactory.classLoaderProvider;
-                    ProxyFactory.classLoaderProvider = new ProxyFactory.ClassLoaderProvider() {
-                        
-                        @Override
-                        public ClassLoader get(ProxyFactory arg0) {
-                            return delegatingLoader;
-                        }
-                    };
-                    
-                    try {
-                        ProxyFactory proxyFactory = new ProxyFactory();
-                        proxyFactory.setInterfaces(interfaces);
-                        proxyFactory.setSuperclass(superclass);
-
-                        Class<?> proxyClass = proxyFactory.createClass();
+                try {
+                    if (useJDKProxy) {
+                        Constructor<?> c = proxyClass.getConstructor(InvocationHandler.class);
 
-                        try {
-                            T proxy = (T) proxyClass.newInstance();
+                        return (T) c.newInstance(new MethodInterceptorInvocationHandler(callback));
+                    }
+                    
+                    T proxy = (T) proxyClass.newInstance();
 
-                            ((ProxyObject) proxy).setHandler(callback);
+                    ((ProxyObject) proxy).setHandler(callback);
 
-                            return proxy;
-                        } catch (Exception e1) {
-                            throw new RuntimeException(e1);
-                        }
-                    }
-                    finally {
-                        ProxyFactory.classLoaderProvider = originalProvider;
-                        
-                    }
+                    return proxy;
+                } catch (Exception e1) {
+                    throw new RuntimeException(e1);
                 }
             }
 
@@ -202,13 +217,11 @@ public class ProxyUtilities {
     }
     
     /**
-     * The point of this class is to reside in a WeakHashMap as the
-     * key and thus only have weak references to the classloaders
-     * pointed to by this object.  It also reduces the number of
-     * classloaders that are created by calculating the DelegatingClassLoader
-     * only once, though the performance benefit of that is probably
-     * out-weighed by the fact that we have to linearly go through
-     * the WeakHashMap keys to get back the original key object
+     * The point of this class is to be found by the classloader of the
+     * proxied classes while only having weak references to the classloaders
+     * pointed to by this object.  It reduces the number of classloaders
+     * that are created by calculating the DelegatingClassLoader only once,
+     * and keeps the proxy classes already generated into that loader
      * 
      * @author jwells
      *
@@ -216,12 +229,14 @@ public class ProxyUtilities {
     private static class WeakDelegatingCacheEntry {
         private final ClassLoader key;
         private DelegatingClassLoader loader;
+        private final ConcurrentHashMap<ProxyClassKey, Class<?>> proxyClasses =
+                new ConcurrentHashMap<ProxyClassKey, Class<?>>();
         
         private WeakDelegatingCacheEntry(ClassLoader key) {
             this.key = key;
         }
         
-        private DelegatingClassLoader getDelegator() {
+        private synchronized DelegatingClassLoader getDelegator() {
             if (loader != null) return loader;
             
             final Object backPointer = this;
@@ -244,20 +259,40 @@ public class ProxyUtilities {
             return loader;
             
         }
+    }
+    
+    /**
+     * The classes and interfaces a proxy class was generated for
+     */
+    private static class ProxyClassKey {
+        private final Class<?> superclass;
+        private final Class<?>[] interfaces;
+        private final boolean useJDKProxy;
+        private final int hash;
+        
+        private ProxyClassKey(Class<?> superclass, Class<?>[] interfaces, boolean useJDKProxy) {
+            this.superclass = superclass;
+            this.interfaces = interfaces.clone();
+            this.useJDKProxy = useJDKProxy;
+            
+            hash = superclass.hashCode() ^ Arrays.hashCode(this.interfaces) ^ (useJDKProxy ? 1 : 0);
+        }
         
         @Override
         public int hashCode() {
-            return key.hashCode();
+            return hash;
         }
         
         @Override
         public boolean equals(Object o) {
             if (o == null) return false;
-            if (!(o instanceof WeakDelegatingCacheEntry)) return false;
+            if (!(o instanceof ProxyClassKey)) return false;
             
-            WeakDelegatingCacheEntry other = (WeakDelegatingCacheEntry) o;
+            ProxyClassKey other = (ProxyClassKey) o;
             
-            return key.equals(other.key);
+            return superclass.equals(other.superclass) &&
+                    (useJDKProxy == other.useJDKProxy) &&
+                    Arrays.equals(interfaces, other.interfaces);
         }
     }
 
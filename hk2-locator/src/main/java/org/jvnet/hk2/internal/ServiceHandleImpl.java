@@ -41,7 +41,7 @@ package org.jvnet.hk2.internal;
 
 import java.util.LinkedList;
 import java.util.List;
-
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Context;
@@ -64,7 +64,8 @@ public class ServiceHandleImpl<T> implements ServiceHandle<T> {
     private ActiveDescriptor<T> root;
     private final ServiceLocatorImpl locator;
     private final Injectee injectee;
-    private final Object lock = new Object();
+    /** Not a monitor so that virtual threads creating services do not pin their carrier thread */
+    private final ReentrantLock lock = new ReentrantLock();
     
     private boolean serviceDestroyed = false;
     private boolean serviceSet = false;
@@ -95,7 +96,8 @@ public class ServiceHandleImpl<T> implements ServiceHandle<T> {
             }
         }
         
-        synchronized (lock) {
+        lock.lock();
+        try {
             if (serviceDestroyed) throw new IllegalStateException("Service has been disposed");
             
             if (serviceSet) return service;
@@ -108,6 +110,9 @@ public class ServiceHandleImpl<T> implements ServiceHandle<T> {
         
             return service;
         }
+        finally {
+            lock.unlock();
+        }
         
     }
 
@@ -147,7 +152,8 @@ public class ServiceHandleImpl<T> implements ServiceHandle<T> {
         
         if (!root.isReified()) return;
         
-        synchronized (lock) {
+        lock.lock();
+        try {
             serviceActive = isActive();
             
             if (serviceDestroyed) return;
@@ -155,6 +161,9 @@ public class ServiceHandleImpl<T> implements ServiceHandle<T> {
             
             localServiceSet = serviceSet;
         }
+        finally {
+            lock.unlock();
+        }
         
         if (root.getScopeAnnotation().equals(PerLookup.class)) {
             if (localServiceSet) {
@@ -183,17 +192,25 @@ public class ServiceHandleImpl<T> implements ServiceHandle<T> {
     
     @Override
     public void setServiceData(Object serviceData) {
-        synchronized (lock) {
+        lock.lock();
+        try {
             this.serviceData = serviceData;
         }
+        finally {
+            lock.unlock();
+        }
         
     }
 
     @Override
     public Object getServiceData() {
-        synchronized (lock) {
+        lock.lock();
+        try {
             return serviceData;
         }
+        finally {
+            lock.unlock();
+        }
     }
     
     /**
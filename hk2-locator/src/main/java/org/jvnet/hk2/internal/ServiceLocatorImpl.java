@@ -51,6 +51,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -59,7 +60,6 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
-import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -103,7 +103,7 @@ import org.glassfish.hk2.api.Validator;
 import org.glassfish.hk2.api.messaging.Topic;
 import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.InjecteeImpl;
-import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheKeyIndexer;
 import org.glassfish.hk2.utilities.cache.HybridCacheEntry;
 import org.glassfish.hk2.utilities.cache.LRUHybridCache;
 import org.glassfish.hk2.utilities.general.GeneralUtilities;
@@ -143,7 +143,17 @@ public class ServiceLocatorImpl implements ServiceLocator {
         }
     }
 
+    private final static String SNAPSHOT_INDEX_PROPERTY = "org.jvnet.hk2.properties.lookup.snapshotIndex";
+    private final static boolean SNAPSHOT_INDEX = Boolean.parseBoolean(
+            GeneralUtilities.getSystemProperty(SNAPSHOT_INDEX_PROPERTY, "false"));
+
+    private final static String NEGATIVE_JIT_CACHE_PROPERTY = "org.jvnet.hk2.properties.jit.negativeCache";
+    private final static boolean NEGATIVE_JIT_CACHE = Boolean.parseBoolean(
+            GeneralUtilities.getSystemProperty(NEGATIVE_JIT_CACHE_PROPERTY, "false"));
+
     private final static int CACHE_SIZE = 20000;
+    /** Stamps configuration changes so they can be ordered across a locator hierarchy */
+    private final static AtomicLong HIERARCHY_STAMPS = new AtomicLong();
     private final static Object sLock = new Object();
     private static long currentLocatorId = 0L;
 
@@ -165,6 +175,22 @@ public class ServiceLocatorImpl implements ServiceLocator {
             new HashMap<String, IndexedListData>();
     private final HashMap<String, IndexedListData> descriptorsByName =
             new HashMap<String, IndexedListData>();
+    private final Object indexLock = new Object();
+    private volatile boolean useSnapshotIndex = SNAPSHOT_INDEX;
+    private volatile DescriptorIndex descriptorIndex = DescriptorIndex.EMPTY_INDEX;
+    private volatile int lastCommitCacheReleases = 0;
+    private final AtomicLong totalCacheReleases = new AtomicLong();
+    /** The stamp of the last configuration change of each contract in this locator */
+    private final ConcurrentHashMap<String, Long> contractStamps = new ConcurrentHashMap<String, Long>();
+    /** The stamp of the last configuration change in this locator */
+    private volatile long lastCommitStamp = 0L;
+    private volatile boolean useNegativeJITCache = NEGATIVE_JIT_CACHE;
+    private final ConcurrentHashMap<CacheKey, Boolean> negativeJITCache =
+            new ConcurrentHashMap<CacheKey, Boolean>();
+    private long negativeJITGeneration = 0L;  // Guarded by negativeJITCache
+    private long negativeJITParentStamp = 0L;  // Guarded by negativeJITCache
+    private final AtomicLong negativeJITCacheHits = new AtomicLong();
+    private final AtomicLong negativeJITCacheMisses = new AtomicLong();
     private final Context<Singleton> singletonContext = new SingletonContext(this);
     private final Context<PerLookup> perLookupContext = new PerLookupContext();
     private final LinkedHashSet<ValidationService> allValidators =
@@ -177,6 +203,8 @@ public class ServiceLocatorImpl implements ServiceLocator {
     private volatile boolean hasInterceptionServices = false;
     private final LinkedList<InterceptionService> interceptionServices =
             new LinkedList<InterceptionService>();
+    /** Stamped whenever the interception services of this locator change */
+    private volatile long interceptionStamp = 0L;
 
     private final Cache<Class<? extends Annotation>, Context<?>> contextCache = new Cache<Class<? extends Annotation>, Context<?>>(new Computable<Class<? extends Annotation>, Context<?>>() {
 
@@ -185,8 +213,8 @@ public class ServiceLocatorImpl implements ServiceLocator {
             return _resolveContext(a);
         }
     });
-    private final Map<ServiceLocatorImpl, ServiceLocatorImpl> children =
-            new WeakHashMap<ServiceLocatorImpl, ServiceLocatorImpl>(); // Must be Weak for throw away children
+    /** Bumped whenever the contextCache is cleared */
+    private final AtomicLong contextGeneration = new AtomicLong();
 
     private final Object classAnalyzerLock = new Object();
     private final HashMap<String, ClassAnalyzer> classAnalyzers =
@@ -222,9 +250,6 @@ public class ServiceLocatorImpl implements ServiceLocator {
     public ServiceLocatorImpl(String name, ServiceLocatorImpl parent) {
         locatorName = name;
         this.parent = parent;
-        if (parent != null) {
-            parent.addChild(this);
-        }
 
         id = getAndIncrementLocatorId();
 
@@ -259,81 +284,142 @@ public class ServiceLocatorImpl implements ServiceLocator {
         if (filter == null) throw new IllegalArgumentException("filter is null");
 
         LinkedList<SystemDescriptor<?>> retVal;
-        rLock.lock();
-        try {
-            Collection<SystemDescriptor<?>> sortMeOut;
-            if (filter instanceof IndexedFilter) {
-                IndexedFilter df = (IndexedFilter) filter;
+        if (useSnapshotIndex) {
+            // No lock necessary, the index is immutable
+            retVal = filterCandidates(descriptorIndex.getCandidates(filter),
+                    filter, onBehalfOf, doValidation, getLocals);
+        }
+        else {
+            rLock.lock();
+            try {
+                retVal = filterCandidates(getCandidates(filter),
+                        filter, onBehalfOf, doValidation, getLocals);
+            } finally {
+                rLock.unlock();
+            }
+        }
 
-                if (df.getName() != null) {
-                    Collection<SystemDescriptor<?>> scopedByName;
+        // Must be done outside of lock, or there can be a deadlock between child and parent
+        if (getParents && parent != null) {
+            List<SystemDescriptor<?>> fromParents = parent.getDescriptors(filter, onBehalfOf, getParents, doValidation, false);
+            
+            // Children usually have few descriptors of their own, so
+            // most of the time the parent's list is all there is
+            if (retVal.isEmpty()) return fromParents;
+            if (fromParents.isEmpty()) return retVal;
+            
+            return merge(retVal, fromParents);
+        }
 
-                    String name = df.getName();
+        return retVal;
+    }
+    
+    /**
+     * Merges two lists of descriptors that are each already sorted
+     *
+     * @param first A non-empty list sorted with the DESCRIPTOR_COMPARATOR
+     * @param second A non-empty list sorted with the DESCRIPTOR_COMPARATOR
+     * @return A new list with the descriptors of both lists in order
+     */
+    private static LinkedList<SystemDescriptor<?>> merge(List<SystemDescriptor<?>> first,
+            List<SystemDescriptor<?>> second) {
+        LinkedList<SystemDescriptor<?>> retVal = new LinkedList<SystemDescriptor<?>>();
+        
+        Iterator<SystemDescriptor<?>> firstIterator = first.iterator();
+        Iterator<SystemDescriptor<?>> secondIterator = second.iterator();
+        SystemDescriptor<?> firstNext = firstIterator.next();
+        SystemDescriptor<?> secondNext = secondIterator.next();
+        
+        while (firstNext != null && secondNext != null) {
+            if (DESCRIPTOR_COMPARATOR.compare(firstNext, secondNext) <= 0) {
+                retVal.add(firstNext);
+                firstNext = firstIterator.hasNext() ? firstIterator.next() : null;
+            }
+            else {
+                retVal.add(secondNext);
+                secondNext = secondIterator.hasNext() ? secondIterator.next() : null;
+            }
+        }
+        
+        if (firstNext != null) {
+            retVal.add(firstNext);
+            while (firstIterator.hasNext()) retVal.add(firstIterator.next());
+        }
+        if (secondNext != null) {
+            retVal.add(secondNext);
+            while (secondIterator.hasNext()) retVal.add(secondIterator.next());
+        }
+        
+        return retVal;
+    }
 
-                    IndexedListData ild = descriptorsByName.get(name);
-                    scopedByName = (ild == null) ? null : ild.getSortedList();
-                    if (scopedByName == null) {
-                        scopedByName = Collections.emptyList();
-                    }
+    /**
+     * Must be called under lock
+     *
+     * @param filter The filter to get the candidates for
+     * @return The sorted set of descriptors that may match the filter
+     */
+    private Collection<SystemDescriptor<?>> getCandidates(Filter filter) {
+        if (!(filter instanceof IndexedFilter)) return allDescriptors.getSortedList();
 
-                    if (df.getAdvertisedContract() != null) {
-                        sortMeOut = new LinkedList<SystemDescriptor<?>>();
+        IndexedFilter df = (IndexedFilter) filter;
 
-                        for (SystemDescriptor<?> candidate : scopedByName) {
-                            if (candidate.getAdvertisedContracts().contains(df.getAdvertisedContract())) {
-                                sortMeOut.add(candidate);
-                            }
-                        }
-                    }
-                    else {
-                        sortMeOut = scopedByName;
-                    }
-                }
-                else if (df.getAdvertisedContract() != null) {
-                    String advertisedContract = df.getAdvertisedContract();
+        if (df.getName() != null) {
+            Collection<SystemDescriptor<?>> scopedByName;
 
-                    IndexedListData ild = descriptorsByAdvertisedContract.get(advertisedContract);
-                    sortMeOut = (ild == null) ? null : ild.getSortedList();
-                    if (sortMeOut == null) {
-                        sortMeOut = Collections.emptyList();
+            String name = df.getName();
 
-                    }
-                }
-                else {
-                    sortMeOut = allDescriptors.getSortedList();
-                }
-            }
-            else {
-                sortMeOut = allDescriptors.getSortedList();
+            IndexedListData ild = descriptorsByName.get(name);
+            scopedByName = (ild == null) ? null : ild.getSortedList();
+            if (scopedByName == null) {
+                scopedByName = Collections.emptyList();
             }
 
-            retVal = new LinkedList<SystemDescriptor<?>>();
+            if (df.getAdvertisedContract() == null) return scopedByName;
 
-            for (SystemDescriptor<?> candidate : sortMeOut) {
-                if (!getLocals && DescriptorVisibility.LOCAL.equals(candidate.getDescriptorVisibility())) {
-                    continue;
+            Collection<SystemDescriptor<?>> sortMeOut = new LinkedList<SystemDescriptor<?>>();
+
+            for (SystemDescriptor<?> candidate : scopedByName) {
+                if (candidate.getAdvertisedContracts().contains(df.getAdvertisedContract())) {
+                    sortMeOut.add(candidate);
                 }
+            }
 
-                if (doValidation && !validate(candidate, onBehalfOf, filter)) continue;
+            return sortMeOut;
+        }
 
-                if (filter.matches(candidate)) {
-                    retVal.add(candidate);
-                }
+        if (df.getAdvertisedContract() != null) {
+            String advertisedContract = df.getAdvertisedContract();
+
+            IndexedListData ild = descriptorsByAdvertisedContract.get(advertisedContract);
+            Collection<SystemDescriptor<?>> sortMeOut = (ild == null) ? null : ild.getSortedList();
+            if (sortMeOut == null) {
+                sortMeOut = Collections.emptyList();
             }
-        } finally {
-            rLock.unlock();
+
+            return sortMeOut;
         }
 
-        // Must be done outside of lock, or there can be a deadlock between child and parent
-        if (getParents && parent != null) {
-            TreeSet<SystemDescriptor<?>> sorter = new TreeSet<SystemDescriptor<?>>(DESCRIPTOR_COMPARATOR);
+        return allDescriptors.getSortedList();
+    }
 
-            sorter.addAll(retVal);
-            sorter.addAll(parent.getDescriptors(filter, onBehalfOf, getParents, doValidation, false));
+    private LinkedList<SystemDescriptor<?>> filterCandidates(Collection<SystemDescriptor<?>> sortMeOut,
+            Filter filter,
+            Injectee onBehalfOf,
+            boolean doValidation,
+            boolean getLocals) {
+        LinkedList<SystemDescriptor<?>> retVal = new LinkedList<SystemDescriptor<?>>();
 
-            retVal.clear();
+        for (SystemDescriptor<?> candidate : sortMeOut) {
+            if (!getLocals && DescriptorVisibility.LOCAL.equals(candidate.getDescriptorVisibility())) {
+                continue;
+            }
 
-            retVal.addAll(sorter);
+            if (doValidation && !validate(candidate, onBehalfOf, filter)) continue;
+
+            if (filter.matches(candidate)) {
+                retVal.add(candidate);
+            }
         }
 
         return retVal;
@@ -429,7 +515,83 @@ public class ServiceLocatorImpl implements ServiceLocator {
         return reifyDescriptor(descriptor, null);
     }
 
+    private CacheKey getNegativeJITKey(Injectee injectee) {
+        if (!useNegativeJITCache || injectee.getUnqualified() != null) return null;
+        
+        Set<Annotation> qualifiersAsSet = injectee.getRequiredQualifiers();
+        
+        return new CacheKey(injectee.getRequiredType(), null,
+                qualifiersAsSet.toArray(new Annotation[qualifiersAsSet.size()]));
+    }
+    
+    /**
+     * Must be called with the negativeJITCache lock held.  Forgets the
+     * negative results if any parent has changed since they were found
+     */
+    private void checkParentsForNegativeJIT() {
+        if (parent == null) return;
+        
+        long parentStamp = parent.getHierarchyStamp();
+        if (parentStamp == negativeJITParentStamp) return;
+        
+        negativeJITParentStamp = parentStamp;
+        negativeJITGeneration++;
+        negativeJITCache.clear();
+    }
+    
+    private boolean isNegativeJITResult(CacheKey key) {
+        if (parent != null) {
+            synchronized (negativeJITCache) {
+                checkParentsForNegativeJIT();
+            }
+        }
+        
+        return negativeJITCache.containsKey(key);
+    }
+    
+    private long getNegativeJITGeneration() {
+        synchronized (negativeJITCache) {
+            checkParentsForNegativeJIT();
+            
+            return negativeJITGeneration;
+        }
+    }
+    
+    private void addNegativeJITResult(CacheKey key, long generation) {
+        synchronized (negativeJITCache) {
+            checkParentsForNegativeJIT();
+            
+            // A configuration change during the resolution may have made it stale
+            if (generation != negativeJITGeneration) return;
+            
+            if (negativeJITCache.size() >= CACHE_SIZE) {
+                negativeJITCache.clear();
+            }
+            
+            negativeJITCache.put(key, Boolean.TRUE);
+        }
+    }
+    
+    private void clearNegativeJITCache() {
+        synchronized (negativeJITCache) {
+            negativeJITGeneration++;
+            negativeJITCache.clear();
+        }
+    }
+
     private ActiveDescriptor<?> secondChanceResolve(Injectee injectee) {
+        CacheKey negativeKey = getNegativeJITKey(injectee);
+        long negativeGeneration = 0L;
+        if (negativeKey != null) {
+            if (isNegativeJITResult(negativeKey)) {
+                negativeJITCacheHits.incrementAndGet();
+                return null;
+            }
+            
+            negativeJITCacheMisses.incrementAndGet();
+            negativeGeneration = getNegativeJITGeneration();
+        }
+        
         // OK, lets do the second chance protocol
         Collector collector = new Collector();
 
@@ -444,7 +606,9 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 if ((injectee.getInjecteeClass() != null) && (
                         injectee.getInjecteeClass().getName().equals(
                         handle.getActiveDescriptor().getImplementation()))) {
-                    // Do not self second-chance
+                    // Do not self second-chance, and do not remember
+                    // a result that not every resolver was asked about
+                    negativeKey = null;
                     continue;
                 }
 
@@ -455,6 +619,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 catch (MultiException me) {
                     // We just ignore this for now, it may be resolvable later
                     Logger.getLogger().debug(handle.toString(), "secondChanceResolver", me);
+                    negativeKey = null;
                     continue;
                 }
 
@@ -474,12 +639,17 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 collector.throwIfErrors();
             }
 
-            if (!modified) {
-                return null;
+            ActiveDescriptor<?> retVal = null;
+            if (modified) {
+                // Try again
+                retVal = internalGetInjecteeDescriptor(injectee, false);
             }
-
-            // Try again
-            return internalGetInjecteeDescriptor(injectee, false);
+            
+            if (retVal == null && negativeKey != null) {
+                addNegativeJITResult(negativeKey, negativeGeneration);
+            }
+            
+            return retVal;
         }
         finally {
             for (ServiceHandle<JustInTimeInjectionResolver> jitResolver : jitResolvers) {
@@ -795,10 +965,6 @@ public class ServiceLocatorImpl implements ServiceLocator {
         wLock.lock();
         try {
             if (state.equals(ServiceLocatorState.SHUTDOWN)) return;
-
-            if (parent != null) {
-                parent.removeChild(this);
-            }
         }
         finally {
             wLock.unlock();
@@ -840,6 +1006,9 @@ public class ServiceLocatorImpl implements ServiceLocator {
             allDescriptors.clear();
             descriptorsByAdvertisedContract.clear();
             descriptorsByName.clear();
+            synchronized (indexLock) {
+                descriptorIndex = DescriptorIndex.EMPTY_INDEX;
+            }
             allResolvers.clear();
             injecteeToResolverCache.clear();
             allValidators.clear();
@@ -848,10 +1017,8 @@ public class ServiceLocatorImpl implements ServiceLocator {
             igashCache.clear();
             classReflectionHelper.dispose();
             contextCache.clear();
-            
-            synchronized (children) {
-                children.clear();
-            }
+            contextGeneration.incrementAndGet();
+
 
             Logger.getLogger().debug("Shutdown ServiceLocator " + this);
         } finally {
@@ -1040,21 +1207,116 @@ public class ServiceLocatorImpl implements ServiceLocator {
         }
     }
 
+    /**
+     * Indexes the cache keys by the contract that would cause them to be released
+     */
+    private final static CacheKeyIndexer<IgdCacheKey> IGD_CACHE_KEY_INDEXER = new CacheKeyIndexer<IgdCacheKey>() {
+        @Override
+        public String getIndexName(IgdCacheKey key) {
+            return key.cacheKey.getRemovalName();
+        }
+    };
+
     private class IgdValue {
         final NarrowResults results;
         final ImmediateResults immediate;
+        final long generation;
+        final long hierarchyStamp;
         final AtomicInteger freshnessKeeper = new AtomicInteger(1);
 
-        public IgdValue(NarrowResults results, ImmediateResults immediate) {
+        public IgdValue(NarrowResults results, ImmediateResults immediate, long generation, long hierarchyStamp) {
             this.results = results;
             this.immediate = immediate;
+            this.generation = generation;
+            this.hierarchyStamp = hierarchyStamp;
         }
     }
 
+    /**
+     * Gets the entry for the given key from the given cache.  When the snapshot
+     * index is in use lookups do not hold the read lock, so an entry computed
+     * from an index that has since been modified in the contract of the key
+     * may have been put into the cache after the cache was cleaned.  Such
+     * entries are removed and computed again
+     *
+     * @param cache The cache to get the entry from
+     * @param key The key to look up
+     * @return A non-null entry that is not stale
+     */
+    private HybridCacheEntry<IgdValue> getFreshEntry(LRUHybridCache<IgdCacheKey, IgdValue> cache, IgdCacheKey key) {
+        while (true) {
+            HybridCacheEntry<IgdValue> entry = cache.compute(key);
+            
+            if (parent != null &&
+                    parent.getHierarchyStamp(key.cacheKey.getRemovalName()) > entry.getValue().hierarchyStamp) {
+                // Modified in a parent since this entry was computed
+                entry.removeFromCache();
+                totalCacheReleases.incrementAndGet();
+                continue;
+            }
+            
+            if (!useSnapshotIndex) return entry;
+
+            long contractGeneration = descriptorIndex.getContractGeneration(key.cacheKey.getRemovalName());
+            if (contractGeneration <= entry.getValue().generation) return entry;
+
+            entry.removeFromCache();
+        }
+    }
+    
+    /**
+     * Returns the stamp of the last configuration change of the given
+     * contract in this locator or any of its parents.  Children compare
+     * this with the stamp their cache entries were computed at rather
+     * than being told about every change made in their parents
+     *
+     * @param contract The contract that may have been changed
+     * @return The stamp of the last change to the contract in this hierarchy
+     */
+    /* package */ long getHierarchyStamp(String contract) {
+        Long stamp = (contract == null) ? null : contractStamps.get(contract);
+        long retVal = (stamp == null) ? 0L : stamp.longValue();
+        
+        if (parent == null) return retVal;
+        
+        return Math.max(retVal, parent.getHierarchyStamp(contract));
+    }
+    
+    /**
+     * Returns the stamp of the last configuration change of any contract
+     * in this locator or any of its parents
+     *
+     * @return The stamp of the last change in this hierarchy
+     */
+    /* package */ long getHierarchyStamp() {
+        if (parent == null) return lastCommitStamp;
+        
+        return Math.max(lastCommitStamp, parent.getHierarchyStamp());
+    }
+
+    /**
+     * Acquires the read lock for a lookup, unless the snapshot index is
+     * in use, in which case lookups need not lock at all
+     *
+     * @return true if the read lock was acquired
+     */
+    private boolean lockForLookup() {
+        if (useSnapshotIndex) return false;
+
+        rLock.lock();
+        return true;
+    }
+
+    private void unlockAfterLookup(boolean locked) {
+        if (locked) rLock.unlock();
+    }
+
     final LRUHybridCache<IgdCacheKey, IgdValue> igdCache =
             new LRUHybridCache<IgdCacheKey, IgdValue>(CACHE_SIZE, new Computable<IgdCacheKey, HybridCacheEntry<IgdValue>>() {
         @Override
         public HybridCacheEntry<IgdValue> compute(final IgdCacheKey key) {
+            final long generation = descriptorIndex.getGeneration();
+            final long hierarchyStamp = HIERARCHY_STAMPS.get();
 
             final List<SystemDescriptor<?>> candidates = getDescriptors(key.filter, key.onBehalfOf, true, false, true);
             final ImmediateResults immediate = narrow(ServiceLocatorImpl.this,
@@ -1069,13 +1331,13 @@ public class ServiceLocatorImpl implements ServiceLocator {
                     key.qualifiers);
             final NarrowResults results = immediate.getTimelessResults();
             if (!results.getErrors().isEmpty()) {
-                Utilities.handleErrors(results, new LinkedList<ErrorService>(errorHandlers));
-                return igdCache.createCacheEntry(key, new IgdValue(results, immediate), true);
+                Utilities.handleErrors(results, getErrorHandlers());
+                return igdCache.createCacheEntry(key, new IgdValue(results, immediate, generation, hierarchyStamp), true);
             }
             
-            return igdCache.createCacheEntry(key, new IgdValue(results, immediate), false);
+            return igdCache.createCacheEntry(key, new IgdValue(results, immediate, generation, hierarchyStamp), false);
         }
-    });
+    }, IGD_CACHE_KEY_INDEXER);
 
 
     @SuppressWarnings("unchecked")
@@ -1103,7 +1365,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
         if (!useCache) {
             final Filter filter = new UnqualifiedIndexedFilter(rawClass.getName(), name, unqualified);
-            rLock.lock();
+            final boolean locked = lockForLookup();
             try {
                 List<SystemDescriptor<?>> candidates = getDescriptors(filter, onBehalfOf, true, false, true);
                 immediate = narrow(this,
@@ -1118,12 +1380,12 @@ public class ServiceLocatorImpl implements ServiceLocator {
                         qualifiers);
                 results = immediate.getTimelessResults();
                 if (!results.getErrors().isEmpty()) {
-                    currentErrorHandlers = new LinkedList<ErrorService>(errorHandlers);
+                    currentErrorHandlers = getErrorHandlers();
                     // was outside of the lock:
                     Utilities.handleErrors(results, currentErrorHandlers);
                 }
             } finally {
-                rLock.unlock();
+                unlockAfterLookup(locked);
             }
 
             // Must do validation here in order to allow for caching
@@ -1139,9 +1401,9 @@ public class ServiceLocatorImpl implements ServiceLocator {
         final Filter filter = BuilderHelper.createNameAndContractFilter(rawClass.getName(), name);
         final IgdCacheKey igdCacheKey = new IgdCacheKey(cacheKey, name, onBehalfOf, contractOrImpl, rawClass, qualifiers, filter);
 
-        rLock.lock();
+        final boolean locked = lockForLookup();
         try {
-            final HybridCacheEntry<IgdValue> entry = igdCache.compute(igdCacheKey);
+            final HybridCacheEntry<IgdValue> entry = getFreshEntry(igdCache, igdCacheKey);
             final IgdValue value = entry.getValue();
             final boolean freshOne = value.freshnessKeeper.compareAndSet(1, 2);
             if (!freshOne) {
@@ -1162,10 +1424,10 @@ public class ServiceLocatorImpl implements ServiceLocator {
             }
 
             if (!results.getErrors().isEmpty()) {
-                currentErrorHandlers = new LinkedList<ErrorService>(errorHandlers);
+                currentErrorHandlers = getErrorHandlers();
             }
         } finally {
-            rLock.unlock();
+            unlockAfterLookup(locked);
         }
 
         if (currentErrorHandlers != null) {
@@ -1252,6 +1514,8 @@ public class ServiceLocatorImpl implements ServiceLocator {
             new LRUHybridCache<IgdCacheKey, IgdValue>(CACHE_SIZE, new Computable<IgdCacheKey, HybridCacheEntry<IgdValue>>() {
         @Override
         public HybridCacheEntry<IgdValue> compute(final IgdCacheKey key) {
+            final long generation = descriptorIndex.getGeneration();
+            final long hierarchyStamp = HIERARCHY_STAMPS.get();
 
             List<SystemDescriptor<?>> candidates = getDescriptors(key.filter, null, true, false, true);
             ImmediateResults immediate = narrow(ServiceLocatorImpl.this,
@@ -1266,13 +1530,13 @@ public class ServiceLocatorImpl implements ServiceLocator {
                     key.qualifiers);
             NarrowResults results = immediate.getTimelessResults();
             if (!results.getErrors().isEmpty()) {
-                Utilities.handleErrors(results, new LinkedList<ErrorService>(errorHandlers));
-                return igashCache.createCacheEntry(key, new IgdValue(results, immediate), true);
+                Utilities.handleErrors(results, getErrorHandlers());
+                return igashCache.createCacheEntry(key, new IgdValue(results, immediate, generation, hierarchyStamp), true);
             }
             
-            return igashCache.createCacheEntry(key, new IgdValue(results, immediate), false);
+            return igashCache.createCacheEntry(key, new IgdValue(results, immediate, generation, hierarchyStamp), false);
         }
-    });
+    }, IGD_CACHE_KEY_INDEXER);
 
     private List<?> internalGetAllServiceHandles(
             Type contractOrImpl,
@@ -1299,7 +1563,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
         if (!useCache) {
             final Filter filter = new UnqualifiedIndexedFilter(name, null, unqualified);
-            rLock.lock();
+            final boolean locked = lockForLookup();
             try {
               List<SystemDescriptor<?>> candidates = getDescriptors(filter, null, true, false, true);
               immediate = narrow(this,
@@ -1314,10 +1578,10 @@ public class ServiceLocatorImpl implements ServiceLocator {
                       qualifiers);
               results = immediate.getTimelessResults();
             if (!results.getErrors().isEmpty()) {
-                currentErrorHandlers = new LinkedList<ErrorService>(errorHandlers);
+                currentErrorHandlers = getErrorHandlers();
             }
             } finally {
-                rLock.unlock();
+                unlockAfterLookup(locked);
             }
         } else { // USE CACHE!
 
@@ -1325,9 +1589,9 @@ public class ServiceLocatorImpl implements ServiceLocator {
             final Filter filter = BuilderHelper.createContractFilter(name);
             final IgdCacheKey igdCacheKey = new IgdCacheKey(cacheKey, name, null, contractOrImpl, rawClass, qualifiers, filter);
 
-            rLock.lock();
+            final boolean locked = lockForLookup();
             try {
-                final HybridCacheEntry<IgdValue> entry = igashCache.compute(igdCacheKey);
+                final HybridCacheEntry<IgdValue> entry = getFreshEntry(igashCache, igdCacheKey);
                 final IgdValue value = entry.getValue();
                 final boolean freshOne = value.freshnessKeeper.compareAndSet(1, 2);
                 if (!freshOne) {
@@ -1348,10 +1612,10 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 }
 
                 if (!results.getErrors().isEmpty()) {
-                    currentErrorHandlers = new LinkedList<ErrorService>(errorHandlers);
+                    currentErrorHandlers = getErrorHandlers();
                 }
             } finally {
-                rLock.unlock();
+                unlockAfterLookup(locked);
             }
         }
 
@@ -1417,7 +1681,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 searchCriteria);
         results = immediate.getTimelessResults();
         if (!results.getErrors().isEmpty()) {
-            currentErrorHandlers = new LinkedList<ErrorService>(errorHandlers);
+            currentErrorHandlers = getErrorHandlers();
         }
 
         if (currentErrorHandlers != null) {
@@ -1465,6 +1729,19 @@ public class ServiceLocatorImpl implements ServiceLocator {
         });
     }
     
+    /**
+     * Interceptors cached for a descriptor are only valid for the
+     * generation they were computed in.  Any commit to this locator
+     * or to one of its parents starts a new generation, since an
+     * interception service may hand out interceptors that are services
+     * of any contract
+     *
+     * @return The current interception generation of this locator
+     */
+    /* package */ long getInterceptionGeneration() {
+        return Math.max(interceptionStamp, getHierarchyStamp());
+    }
+
     /* package */ List<InterceptionService> getInterceptionServices() {
         if (!hasInterceptionServices) return null;
         
@@ -1621,7 +1898,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
                 addOrRemoveOfInterceptionService);
     }
 
-    private static List<String> getAllContracts(ActiveDescriptor<?> desc) {
+    /* package */ static List<String> getAllContracts(ActiveDescriptor<?> desc) {
         LinkedList<String> allContracts = new LinkedList<String>(desc.getAdvertisedContracts());
         allContracts.addAll(desc.getQualifiers());
         String scope = (desc.getScope() == null) ? PerLookup.class.getName() : desc.getScope() ;
@@ -1790,6 +2067,7 @@ public class ServiceLocatorImpl implements ServiceLocator {
         interceptionServices.addAll(allInterceptionServices);
         
         hasInterceptionServices = !interceptionServices.isEmpty();
+        interceptionStamp = HIERARCHY_STAMPS.incrementAndGet();
     }
 
     private void reupErrorHandlers() {
@@ -1835,21 +2113,34 @@ public class ServiceLocatorImpl implements ServiceLocator {
     }
 
     private void reupCache(HashSet<String> affectedContracts) {
-        // This lock must be acquired as reupCache is called on children
         wLock.lock();
         try {
+            if (useSnapshotIndex) {
+                // Lookups in progress that read the old index will now see their results as stale
+                synchronized (indexLock) {
+                    descriptorIndex = descriptorIndex.invalidate(affectedContracts);
+                }
+            }
+
+            int released = 0;
             for (String affectedContract : affectedContracts) {
-                final String fAffectedContract = affectedContract;
-                final CacheKeyFilter<IgdCacheKey> cacheKeyFilter = new CacheKeyFilter<IgdCacheKey>() {
-                    @Override
-                    public boolean matches(IgdCacheKey key) {
-                        return key.cacheKey.matchesRemovalName(fAffectedContract);
-                    }
-                };
+                released += igdCache.releaseIndexed(affectedContract);
+                released += igashCache.releaseIndexed(affectedContract);
+            }
+
+            lastCommitCacheReleases = released;
+            totalCacheReleases.addAndGet(released);
+            clearNegativeJITCache();
 
-                igdCache.releaseMatching(cacheKeyFilter);
-                igashCache.releaseMatching(cacheKeyFilter);
+            // Children find out about this change from the stamps.  The interceptors
+            // handed out by the interception services may depend on any service,
+            // such as newly added MethodInterceptors, so they use the stamps too
+            long stamp = HIERARCHY_STAMPS.incrementAndGet();
+            Long boxedStamp = Long.valueOf(stamp);
+            for (String affectedContract : affectedContracts) {
+                contractStamps.put(affectedContract, boxedStamp);
             }
+            lastCommitStamp = stamp;
         } finally {
             wLock.unlock();
         }
@@ -1898,21 +2189,9 @@ public class ServiceLocatorImpl implements ServiceLocator {
         }
 
         contextCache.clear();
+        contextGeneration.incrementAndGet();
     }
 
-    private void getAllChildren(LinkedList<ServiceLocatorImpl> allMyChildren) {
-        LinkedList<ServiceLocatorImpl> addMe;
-        synchronized (children) {
-            addMe = new LinkedList<ServiceLocatorImpl>(children.keySet());
-        }
-
-        allMyChildren.addAll(addMe);
-
-        for (ServiceLocatorImpl sli : addMe) {
-            sli.getAllChildren(allMyChildren);
-        }
-    }
-    
     private void callAllConfigurationListeners(List<ServiceHandle<?>> allListeners) {
         if (allListeners == null) return;
         
@@ -1943,6 +2222,15 @@ public class ServiceLocatorImpl implements ServiceLocator {
 
             List<SystemDescriptor<?>> thingsAdded = addConfigurationInternal(dci);
 
+            if (useSnapshotIndex) {
+                synchronized (indexLock) {
+                    descriptorIndex = descriptorIndex.commit(checkData.getUnbinds(),
+                            thingsAdded,
+                            checkData.getAffectedContracts(),
+                            allValidators);
+                }
+            }
+
             reup(thingsAdded,
                     checkData.getInstanceLifecycleModificationsMade(),
                     checkData.getInjectionResolverModificationMade(),
@@ -1981,14 +2269,139 @@ public class ServiceLocatorImpl implements ServiceLocator {
             }
         }
 
-        LinkedList<ServiceLocatorImpl> allMyChildren = new LinkedList<ServiceLocatorImpl>();
-        getAllChildren(allMyChildren);
+        callAllConfigurationListeners(allConfigurationListeners);
+    }
+
+    /**
+     * Called by a SystemDescriptor of this locator when its ranking has changed
+     *
+     * @param descriptor The descriptor whose ranking has changed
+     */
+    /* package */ void rankingChanged(SystemDescriptor<?> descriptor) {
+        if (!useSnapshotIndex) return;
+
+        synchronized (indexLock) {
+            descriptorIndex = descriptorIndex.reSort(descriptor);
+        }
+    }
+
+    /**
+     * Returns true if lookups in this locator use the immutable
+     * snapshot index rather than taking the read lock
+     *
+     * @return true if the snapshot index is in use
+     */
+    public boolean isSnapshotIndexEnabled() {
+        return useSnapshotIndex;
+    }
+
+    /**
+     * Sets whether or not lookups in this locator should use an immutable
+     * snapshot of the descriptors that is published whenever a configuration
+     * is committed.  Lookups using the snapshot index never lock, at the
+     * expense of copying the modified parts of the index on every commit.
+     * The default is taken from the org.jvnet.hk2.properties.lookup.snapshotIndex
+     * system property
+     *
+     * @param enabled true if the snapshot index should be used
+     */
+    public void setSnapshotIndexEnabled(boolean enabled) {
+        wLock.lock();
+        try {
+            if (enabled == useSnapshotIndex) return;
 
-        for (ServiceLocatorImpl sli : allMyChildren) {
-            sli.reupCache(checkData.getAffectedContracts());
+            if (enabled) {
+                synchronized (indexLock) {
+                    descriptorIndex = descriptorIndex.rebuild(allDescriptors.getSortedList(), allValidators);
+                }
+            }
+
+            useSnapshotIndex = enabled;
+        }
+        finally {
+            wLock.unlock();
         }
+    }
+
+    /**
+     * Returns the number of contracts whose last modification is
+     * remembered by the snapshot index
+     *
+     * @return The number of contract generations in the current snapshot index
+     */
+    public int getNumberOfContractGenerations() {
+        return descriptorIndex.getNumberOfContractGenerations();
+    }
+
+    /**
+     * Returns the number of lookup cache entries that were released
+     * by the last configuration change that affected this locator
+     *
+     * @return The number of entries released by the last configuration change
+     */
+    public int getLastCommitCacheReleases() {
+        return lastCommitCacheReleases;
+    }
+
+    /**
+     * Returns the total number of lookup cache entries that have been
+     * released by configuration changes that affected this locator
+     *
+     * @return The number of entries released by all configuration changes
+     */
+    public long getTotalCacheReleases() {
+        return totalCacheReleases.get();
+    }
+
+    /**
+     * Returns true if injection points that no just in time resolver
+     * could satisfy are remembered until the next configuration change
+     *
+     * @return true if the negative just in time resolution cache is in use
+     */
+    public boolean isNegativeJITCacheEnabled() {
+        return useNegativeJITCache;
+    }
+
+    /**
+     * Sets whether or not injection points that no {@link JustInTimeInjectionResolver}
+     * could satisfy should be remembered, by required type and qualifiers,
+     * until the next configuration change.  While remembered the just in time
+     * resolvers are not asked about them again.  This should only be enabled when
+     * the just in time resolvers give the same answer for the same required type
+     * and qualifiers until the configuration changes.  The default is taken from
+     * the org.jvnet.hk2.properties.jit.negativeCache system property
+     *
+     * @param enabled true if the negative just in time resolution cache should be used
+     */
+    public void setNegativeJITCacheEnabled(boolean enabled) {
+        useNegativeJITCache = enabled;
         
-        callAllConfigurationListeners(allConfigurationListeners);
+        if (!enabled) {
+            clearNegativeJITCache();
+        }
+    }
+
+    /**
+     * Returns the number of times the just in time resolvers were not
+     * asked about an injection point because it was known they could
+     * not satisfy it
+     *
+     * @return The number of hits in the negative just in time resolution cache
+     */
+    public long getNegativeJITCacheHits() {
+        return negativeJITCacheHits.get();
+    }
+
+    /**
+     * Returns the number of times the just in time resolvers were asked
+     * about an injection point while the negative just in time resolution
+     * cache was enabled
+     *
+     * @return The number of misses in the negative just in time resolution cache
+     */
+    public long getNegativeJITCacheMisses() {
+        return negativeJITCacheMisses.get();
     }
 
     /* package */ boolean isInjectAnnotation(Annotation annotation) {
@@ -2036,6 +2449,16 @@ public class ServiceLocatorImpl implements ServiceLocator {
         return retVal;
     }
 
+    /**
+     * A context returned by {@link #resolveContext(Class)} may be kept
+     * and used for as long as this generation does not change
+     *
+     * @return The current context generation of this locator
+     */
+    /* package */ long getContextGeneration() {
+        return contextGeneration.get();
+    }
+
     /* package */ Context<?> resolveContext(Class<? extends Annotation> scope) throws IllegalStateException {
         if (scope.equals(Singleton.class)) return singletonContext;
         if (scope.equals(PerLookup.class)) return perLookupContext;
@@ -2184,31 +2607,27 @@ public class ServiceLocatorImpl implements ServiceLocator {
 //        }
     }
 
-    private void addChild(ServiceLocatorImpl child) {
-        synchronized (children) {
-            children.put(child, null);
-        }
-    }
-
-    private void removeChild(ServiceLocatorImpl child) {
-        synchronized (children) {
-            children.remove(child);
-        }
-    }
-
     private void checkState() {
         if (ServiceLocatorState.SHUTDOWN.equals(state)) throw new IllegalStateException(this + " has been shut down");
     }
 
-    private LinkedHashSet<ValidationService> getAllValidators() {
+    private Collection<ValidationService> getAllValidators() {
+        Collection<ValidationService> myValidators;
+        if (useSnapshotIndex) {
+            myValidators = descriptorIndex.getValidators();
+        }
+        else {
+            myValidators = allValidators;
+        }
+
         if (parent == null) {
-            return allValidators;
+            return myValidators;
         }
 
         LinkedHashSet<ValidationService> retVal = new LinkedHashSet<ValidationService>();
 
         retVal.addAll(parent.getAllValidators());
-        retVal.addAll(allValidators);
+        retVal.addAll(myValidators);
 
         return retVal;
     }
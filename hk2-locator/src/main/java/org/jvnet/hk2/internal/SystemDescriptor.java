@@ -118,6 +118,10 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
 
     private int singletonGeneration = Integer.MAX_VALUE;
 
+    private final Object interceptorsLock = new Object();
+    private Utilities.Interceptors cachedInterceptors;
+    private long interceptorsGeneration = -1L;
+
     /* package */ @SuppressWarnings("unchecked")
     SystemDescriptor(Descriptor baseDescriptor, boolean requiresDeepCopy, ServiceLocatorImpl locator, Long serviceId) {
         if (requiresDeepCopy) {
@@ -266,6 +270,10 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
         for (IndexedListData myList : myLists) {
             myList.unSort();
         }
+        
+        if (!myLists.isEmpty()) {
+            sdLocator.rankingChanged(this);
+        }
 
         return retVal;
     }
@@ -438,6 +446,10 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
         this.factoryServiceId = factoryServiceId;
     }
 
+    /* package */ boolean hasInstanceListeners() {
+        return !instanceListeners.isEmpty();
+    }
+
     /* package */ void invokeInstanceListeners(InstanceLifecycleEvent event) {
         for (InstanceLifecycleListener listener : instanceListeners) {
             listener.lifecycleEvent(event);
@@ -927,6 +939,28 @@ public class SystemDescriptor<T> implements ActiveDescriptor<T>, Closeable {
     /* package */ void setSingletonGeneration(int gen) {
         singletonGeneration = gen;
     }
+
+    /**
+     * Returns the interceptors previously computed for this descriptor
+     *
+     * @param generation The current interception generation of the locator
+     * @return The cached interceptors, or null if none were computed in
+     * the given generation
+     */
+    /* package */ Utilities.Interceptors getCachedInterceptors(long generation) {
+        synchronized (interceptorsLock) {
+            if (interceptorsGeneration != generation) return null;
+
+            return cachedInterceptors;
+        }
+    }
+
+    /* package */ void setCachedInterceptors(Utilities.Interceptors interceptors, long generation) {
+        synchronized (interceptorsLock) {
+            cachedInterceptors = interceptors;
+            interceptorsGeneration = generation;
+        }
+    }
     
     @Override
     public int hashCode() {
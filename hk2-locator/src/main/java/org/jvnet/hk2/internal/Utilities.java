@@ -58,6 +58,7 @@ import java.lang.reflect.WildcardType;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -2309,6 +2310,11 @@ public class Utilities {
             return null;
         }
 
+        @Override
+        public MethodInterceptorChains getMethodInterceptorChains() {
+            return null;
+        }
+
         @Override
         public List<ConstructorInterceptor> getConstructorInterceptors() {
             return null;
@@ -2332,6 +2338,17 @@ public class Utilities {
             if (NOT_INTERCEPTED.contains(contract)) return EMTPY_INTERCEPTORS;
         }
         
+        // Read before the services are consulted, so that a change made while
+        // computing leaves the cached value stale rather than wrong
+        final long generation = impl.getInterceptionGeneration();
+        SystemDescriptor<?> cacheIn = null;
+        if (descriptor instanceof SystemDescriptor) {
+            cacheIn = (SystemDescriptor<?>) descriptor;
+            
+            Interceptors cached = cacheIn.getCachedInterceptors(generation);
+            if (cached != null) return cached;
+        }
+        
         final LinkedHashMap<Method, List<MethodInterceptor>> retVal =
                 new LinkedHashMap<Method, List<MethodInterceptor>>();
         final ArrayList<ConstructorInterceptor> cRetVal = new ArrayList<ConstructorInterceptor>();
@@ -2377,19 +2394,61 @@ public class Utilities {
             }
         }
         
-        return new Interceptors() {
+        final MethodInterceptorChains chains = new MethodInterceptorChains(retVal);
+        Interceptors computed = new Interceptors() {
 
             @Override
             public Map<Method, List<MethodInterceptor>> getMethodInterceptors() {
                 return retVal;
             }
 
+            @Override
+            public MethodInterceptorChains getMethodInterceptorChains() {
+                return chains;
+            }
+
             @Override
             public List<ConstructorInterceptor> getConstructorInterceptors() {
                 return cRetVal;
             }
             
         };
+        
+        if (cacheIn != null && areShareable(retVal.values(), cRetVal)) {
+            cacheIn.setCachedInterceptors(computed, generation);
+        }
+        
+        return computed;
+    }
+    
+    /**
+     * Cached interceptors are shared by every instance of the intercepted service,
+     * so they may only be cached if every one of them is known to be in a scope
+     * other than PerLookup.  Interceptors without a scope annotation may have been
+     * created for this one instance, and so are not shared either
+     */
+    private static boolean areShareable(Collection<List<MethodInterceptor>> methodInterceptors,
+            List<ConstructorInterceptor> constructorInterceptors) {
+        for (List<MethodInterceptor> interceptors : methodInterceptors) {
+            for (MethodInterceptor interceptor : interceptors) {
+                if (!isShareable(interceptor)) return false;
+            }
+        }
+        
+        for (ConstructorInterceptor interceptor : constructorInterceptors) {
+            if (!isShareable(interceptor)) return false;
+        }
+        
+        return true;
+    }
+    
+    private static boolean isShareable(Object interceptor) {
+        if (interceptor == null) return false;
+        
+        // Classes without a scope annotation come back as PerLookup
+        ScopeInfo scopeInfo = getScopeInfo(interceptor.getClass(), null, new Collector());
+        
+        return !PerLookup.class.equals(scopeInfo.getAnnoType());
     }
     
     /**
@@ -2470,6 +2529,13 @@ public class Utilities {
          */
         public Map<Method, List<MethodInterceptor>> getMethodInterceptors();
         
+        /**
+         * Gets the method interceptors as the chains run by the
+         * {@link MethodInterceptorHandler}
+         * @return The possibly null chains of method interceptors
+         */
+        public MethodInterceptorChains getMethodInterceptorChains();
+        
         /**
          * Gets the constructor interceptors
          * @return The possibly null set of constructor interceptors
@@ -0,0 +1,188 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.cacherelease;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.jvnet.hk2.internal.ServiceLocatorImpl;
+
+/**
+ * Tests that configuration changes only release the
+ * cache entries of the contracts they modify
+ * 
+ * @author jwells
+ *
+ */
+public class CacheReleaseTest {
+    
+    /**
+     * Adding a service of one contract must not release the
+     * cached lookups of another contract
+     */
+    @Test
+    public void testOnlyAffectedContractsAreReleased() {
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorImpl impl = (ServiceLocatorImpl) locator;
+        
+        ServiceLocatorUtilities.addClasses(locator, FirstService.class);
+        
+        Assert.assertNotNull(locator.getService(FirstContract.class));
+        Assert.assertEquals(1, locator.getAllServices(FirstContract.class).size());
+        Assert.assertNull(locator.getService(SecondContract.class));
+        
+        ServiceLocatorUtilities.addClasses(locator, SecondService.class);
+        
+        // Only the SecondContract lookup was cached
+        Assert.assertEquals(1, impl.getLastCommitCacheReleases());
+        long total = impl.getTotalCacheReleases();
+        
+        Assert.assertNotNull(locator.getService(SecondContract.class));
+        
+        ServiceLocatorUtilities.addOneDescriptor(locator, BuilderHelper.link(FirstService.class).
+                to(FirstContract.class).named("alternate").build());
+        
+        // The getService and getAllServices lookups of FirstContract
+        Assert.assertEquals(2, impl.getLastCommitCacheReleases());
+        Assert.assertEquals(total + 2, impl.getTotalCacheReleases());
+        
+        Assert.assertEquals(2, locator.getAllServices(FirstContract.class).size());
+        Assert.assertNotNull(locator.getService(SecondContract.class));
+    }
+    
+    /**
+     * Ensures that children release the cache entries of contracts
+     * modified in their parents the next time they are looked up
+     */
+    @Test
+    public void testChildReleasesParentModifications() {
+        ServiceLocator parent = LocatorHelper.create();
+        ServiceLocator child = LocatorHelper.create(parent);
+        ServiceLocatorImpl childImpl = (ServiceLocatorImpl) child;
+        
+        Assert.assertNull(child.getService(FirstContract.class));
+        Assert.assertNull(child.getService(SecondContract.class));
+        long total = childImpl.getTotalCacheReleases();
+        
+        ServiceLocatorUtilities.addClasses(parent, FirstService.class);
+        
+        // The parent commit does not touch the child
+        Assert.assertEquals(total, childImpl.getTotalCacheReleases());
+        
+        Assert.assertNotNull(child.getService(FirstContract.class));
+        Assert.assertEquals(total + 1, childImpl.getTotalCacheReleases());
+        
+        // Only the contract modified in the parent was released
+        Assert.assertNull(child.getService(SecondContract.class));
+        Assert.assertEquals(total + 1, childImpl.getTotalCacheReleases());
+    }
+    
+    /**
+     * Ensures that modifications of a grandparent are seen
+     * by lookups cached in a grandchild
+     */
+    @Test
+    public void testGrandchildReleasesGrandparentModifications() {
+        ServiceLocator grandparent = LocatorHelper.create();
+        ServiceLocator parent = LocatorHelper.create(grandparent);
+        ServiceLocator child = LocatorHelper.create(parent);
+        
+        Assert.assertNull(child.getService(FirstContract.class));
+        Assert.assertEquals(0, child.getAllServices(SecondContract.class).size());
+        
+        ServiceLocatorUtilities.addClasses(grandparent, FirstService.class);
+        ServiceLocatorUtilities.addClasses(parent, SecondService.class);
+        
+        Assert.assertNotNull(child.getService(FirstContract.class));
+        Assert.assertEquals(1, child.getAllServices(SecondContract.class).size());
+        
+        ServiceLocatorUtilities.addClasses(child, SecondService.class);
+        
+        // The services of the child and of its parent are both seen
+        Assert.assertEquals(2, child.getAllServices(SecondContract.class).size());
+        Assert.assertEquals(1, parent.getAllServices(SecondContract.class).size());
+    }
+    
+    private final static int ITERATIONS = 100000;
+    private final static int LOOKUPS = 10;
+    
+    /**
+     * Measures the cost of creating a child locator at the bottom of
+     * hierarchies of increasing depth, looking services up in it and
+     * destroying it.  Not run as part of the build
+     */
+    @Test @Ignore
+    public void testChildLocatorPerformance() {
+        ServiceLocatorFactory factory = ServiceLocatorFactory.getInstance();
+        
+        for (int depth = 1; depth <= 4; depth++) {
+            ServiceLocator bottom = LocatorHelper.create();
+            ServiceLocatorUtilities.addClasses(bottom, FirstService.class, SecondService.class);
+            
+            for (int lcv = 1; lcv < depth; lcv++) {
+                bottom = LocatorHelper.create(bottom);
+            }
+            
+            for (int pass = 0; pass < 3; pass++) {
+                long elapsed = System.nanoTime();
+                for (int lcv = 0; lcv < ITERATIONS; lcv++) {
+                    ServiceLocator child = LocatorHelper.create(bottom);
+                    
+                    for (int lookup = 0; lookup < LOOKUPS; lookup++) {
+                        Assert.assertNotNull(child.getService(FirstContract.class));
+                        Assert.assertEquals(1, child.getAllServices(SecondContract.class).size());
+                    }
+                    
+                    factory.destroy(child);
+                }
+                elapsed = System.nanoTime() - elapsed;
+                
+                System.out.println("Depth " + depth + ": created, used and destroyed a child in " +
+                    (elapsed / ITERATIONS) + " nanoseconds");
+            }
+        }
+    }
+
+}
@@ -41,21 +41,34 @@ package org.glassfish.hk2.tests.locator.dynamicpopulate;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
+import javax.inject.Singleton;
+
 import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.Descriptor;
 import org.glassfish.hk2.api.DescriptorFileFinder;
+import org.glassfish.hk2.api.DynamicConfiguration;
 import org.glassfish.hk2.api.DynamicConfigurationService;
 import org.glassfish.hk2.api.MultiException;
 import org.glassfish.hk2.api.Populator;
 import org.glassfish.hk2.api.PopulatorPostProcessor;
 import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.ServiceLocatorFactory;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BinaryDescriptorFile;
 import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ClasspathDescriptorFileFinder;
 import org.glassfish.hk2.utilities.DescriptorImpl;
 import org.glassfish.hk2.utilities.DuplicatePostProcessor;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
@@ -68,6 +81,7 @@ import org.junit.Test;
  */
 public class DynamicPopulateTest {
     private final static String TEST_NAME = "DynamicPopulateTest";
+    private final static String BUILD_DIR_PROPERTY = "build.dir";
     private final static ServiceLocator locator = LocatorHelper.create(TEST_NAME, null);
     
     private final static String DUMMY_IMPL = "com.acme.dummy.Dummy";
@@ -79,6 +93,12 @@ public class DynamicPopulateTest {
     private final static String DUMMY_IMPL_7 = "com.acme.dummy.Dummy7";
     private final static String DUMMY_IMPL_8 = "com.acme.dummy.Dummy8";
     private final static String DUMMY_IMPL_9 = "com.acme.dummy.Dummy9";
+    private final static String DUMMY_IMPL_10 = "com.acme.dummy.Dummy10";
+    private final static String DUMMY_IMPL_11 = "com.acme.dummy.Dummy11";
+    private final static String DUMMY_IMPL_12 = "com.acme.dummy.Dummy12";
+    private final static String DUMMY_IMPL_13 = "com.acme.dummy.Dummy13";
+    private final static String DUMMY_IMPL_14 = "com.acme.dummy.Dummy14";
+    private final static String DUMMY_QUALIFIER = "com.acme.dummy.DummyQualifier";
     
     private final static String KEY = "key";
     private final static String VALUE = "value";
@@ -455,6 +475,186 @@ public class DynamicPopulateTest {
         Assert.assertEquals(1, lucky9list.size());
     }
     
+    private static byte[] writeBinary(DescriptorImpl... dis) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        
+        BinaryDescriptorFile.writeDescriptorFile(Arrays.asList(dis), baos);
+        
+        return baos.toByteArray();
+    }
+    
+    /**
+     * Tests populating from the binary form of the descriptor file
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testBinaryPopulation() throws IOException {
+        DescriptorImpl di = new DescriptorImpl();
+        di.setImplementation(DUMMY_IMPL_10);
+        di.addAdvertisedContract(DUMMY_IMPL_10);
+        di.setName(VALUE);
+        di.setRanking(10);
+        di.addQualifier(DUMMY_QUALIFIER);
+        di.addMetadata(KEY, VALUE);
+        di.addMetadata(KEY, VALUE2);
+        di.setProxiable(Boolean.FALSE);
+        
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        Assert.assertNotNull(dcs);
+        
+        Populator populator = dcs.getPopulator();
+        
+        ByteArrayInputStream bais = new ByteArrayInputStream(writeBinary(di));
+        List<ActiveDescriptor<?>> added = populator.populate(new MyDescriptorFinder(bais));
+        Assert.assertEquals(1, added.size());
+        
+        ActiveDescriptor<?> ad = locator.getBestDescriptor(BuilderHelper.createContractFilter(DUMMY_IMPL_10));
+        Assert.assertNotNull(ad);
+        
+        Assert.assertEquals(DUMMY_IMPL_10, ad.getImplementation());
+        Assert.assertEquals(VALUE, ad.getName());
+        Assert.assertEquals(10, ad.getRanking());
+        Assert.assertTrue(ad.getQualifiers().contains(DUMMY_QUALIFIER));
+        Assert.assertEquals(Arrays.asList(VALUE, VALUE2), ad.getMetadata().get(KEY));
+        Assert.assertEquals(Boolean.FALSE, ad.isProxiable());
+        Assert.assertNull(ad.isProxyForSameScope());
+        
+        // Same as going through the text form
+        Assert.assertEquals(di, new DescriptorImpl(ad));
+    }
+    
+    /**
+     * Tests that post processors are given a modifiable descriptor
+     * when reading the binary form
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testBinaryPopulationWithPostProcessor() throws IOException {
+        DescriptorImpl di = new DescriptorImpl();
+        di.setImplementation(DUMMY_IMPL_11);
+        di.addAdvertisedContract(DUMMY_IMPL_11);
+        
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        Assert.assertNotNull(dcs);
+        
+        Populator populator = dcs.getPopulator();
+        
+        ByteArrayInputStream bais = new ByteArrayInputStream(writeBinary(di));
+        populator.populate(new MyDescriptorFinder(bais), new MetadataPostProcessor(locator));
+        
+        ActiveDescriptor<?> ad = locator.getBestDescriptor(BuilderHelper.createContractFilter(DUMMY_IMPL_11));
+        Assert.assertNotNull(ad);
+        
+        Assert.assertEquals(Collections.singletonList(VALUE), ad.getMetadata().get(KEY));
+    }
+    
+    /**
+     * Tests that binding and committing the descriptors of a binary file
+     * and looking them up by contract does not decode their bodies
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testBinaryBodiesDecodedOnlyWhenNeeded() throws IOException {
+        DescriptorImpl first = new DescriptorImpl();
+        first.setImplementation(DUMMY_IMPL_13);
+        first.addAdvertisedContract(DUMMY_IMPL_13);
+        first.setScope(Singleton.class.getName());
+        first.addQualifier(DUMMY_QUALIFIER);
+        first.addMetadata(KEY, VALUE);
+        
+        DescriptorImpl second = new DescriptorImpl();
+        second.setImplementation(DUMMY_IMPL_14);
+        second.addAdvertisedContract(DUMMY_IMPL_14);
+        second.setName(VALUE);
+        second.addMetadata(KEY, VALUE2);
+        
+        BinaryDescriptorFile file = BinaryDescriptorFile.readDescriptorFile(
+                new ByteArrayInputStream(writeBinary(first, second)));
+        
+        ServiceLocator binaryLocator = LocatorHelper.create();
+        DynamicConfiguration config = binaryLocator.getService(DynamicConfigurationService.class).
+                createDynamicConfiguration();
+        
+        // The same way the populator binds them when there are no post processors
+        for (Descriptor descriptor : file.getDescriptors()) {
+            config.bind(descriptor, false);
+        }
+        config.commit();
+        
+        Assert.assertEquals(0, file.getNumberOfDecodedDescriptors());
+        
+        ActiveDescriptor<?> ad = binaryLocator.getBestDescriptor(BuilderHelper.createContractFilter(DUMMY_IMPL_13));
+        Assert.assertNotNull(ad);
+        Assert.assertEquals(Singleton.class.getName(), ad.getScope());
+        Assert.assertTrue(ad.getQualifiers().contains(DUMMY_QUALIFIER));
+        
+        Assert.assertEquals(0, file.getNumberOfDecodedDescriptors());
+        
+        Assert.assertEquals(Collections.singletonList(VALUE), ad.getMetadata().get(KEY));
+        Assert.assertEquals(1, file.getNumberOfDecodedDescriptors());
+        
+        ServiceLocatorFactory.getInstance().destroy(binaryLocator);
+    }
+    
+    /**
+     * Tests that the classpath finder prefers the binary form of
+     * a descriptor file when both forms are present
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testClasspathFinderPrefersBinary() throws IOException {
+        DescriptorImpl textDescriptor = new DescriptorImpl();
+        textDescriptor.setImplementation(DUMMY_IMPL_12);
+        textDescriptor.addAdvertisedContract(DUMMY_IMPL_12);
+        
+        DescriptorImpl binaryDescriptor = new DescriptorImpl(textDescriptor);
+        binaryDescriptor.setName(VALUE);
+        
+        // The build directory is writable when running under the security manager
+        String buildDir = System.getProperty(BUILD_DIR_PROPERTY);
+        File root = (buildDir != null) ? new File(buildDir, TEST_NAME + ".dir") :
+            File.createTempFile(TEST_NAME, ".dir");
+        root.delete();
+        File locatorDir = new File(root, DescriptorFileFinder.RESOURCE_BASE);
+        locatorDir.mkdirs();
+        Assert.assertTrue(locatorDir.isDirectory());
+        
+        File textFile = new File(locatorDir, TEST_NAME);
+        File binaryFile = new File(locatorDir, TEST_NAME + BinaryDescriptorFile.BINARY_SUFFIX);
+        
+        try {
+            PrintWriter pw = new PrintWriter(new FileOutputStream(textFile));
+            textDescriptor.writeObject(pw);
+            pw.close();
+            
+            FileOutputStream fos = new FileOutputStream(binaryFile);
+            fos.write(writeBinary(binaryDescriptor));
+            fos.close();
+            
+            ClassLoader loader = new URLClassLoader(new URL[] { root.toURI().toURL() }, null);
+            
+            DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+            Assert.assertNotNull(dcs);
+            
+            List<ActiveDescriptor<?>> added = dcs.getPopulator().populate(
+                    new ClasspathDescriptorFileFinder(loader, TEST_NAME));
+            Assert.assertEquals(1, added.size());
+            
+            Assert.assertEquals(VALUE, added.get(0).getName());
+        }
+        finally {
+            textFile.delete();
+            binaryFile.delete();
+            locatorDir.delete();
+            locatorDir.getParentFile().delete();
+            root.delete();
+        }
+    }
+    
     private static class MyDescriptorFinder implements DescriptorFileFinder {
         private final ByteArrayInputStream bais;
         
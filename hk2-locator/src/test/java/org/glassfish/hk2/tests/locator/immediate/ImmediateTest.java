@@ -40,6 +40,8 @@
 package org.glassfish.hk2.tests.locator.immediate;
 
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Singleton;
 
@@ -51,6 +53,7 @@ import org.glassfish.hk2.api.Immediate;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
 import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ImmediateConfiguration;
 import org.glassfish.hk2.utilities.ImmediateScopeModule;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Assert;
@@ -328,6 +331,79 @@ public class ImmediateTest {
         Assert.assertEquals(1, WaitableImmediateService.getNumCreations());
     }
     
+    /**
+     * Tests that an immediate service is started and stopped on the
+     * executor given to the ImmediateScopeModule
+     * 
+     * @throws InterruptedException 
+     */
+    @Test
+    public void testImmediateBinderWithExecutor() throws InterruptedException {
+        WaitableImmediateService.clear();
+        
+        CountingExecutor executor = new CountingExecutor();
+        
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.bind(locator, new ImmediateScopeModule(
+                new ImmediateConfiguration().setExecutor(executor)));
+        
+        List<ActiveDescriptor<?>> ims = ServiceLocatorUtilities.addClasses(locator, WaitableImmediateService.class);
+        
+        int numCreations = WaitableImmediateService.waitForCreationsGreaterThanZero(5 * 1000);
+        Assert.assertEquals(1, numCreations);
+        Assert.assertTrue(executor.getCount() > 0);
+        
+        ServiceLocatorUtilities.removeOneDescriptor(locator, ims.get(0));
+        
+        int numDeletions = WaitableImmediateService.waitForDeletionsGreaterThanZero(5 * 1000);
+        Assert.assertEquals(1, numDeletions);
+    }
+    
+    /**
+     * Tests that an immediate service is started and stopped when
+     * virtual threads are asked for, whether or not the JVM
+     * supports them
+     * 
+     * @throws InterruptedException 
+     */
+    @Test
+    public void testImmediateBinderWithVirtualThreads() throws InterruptedException {
+        WaitableImmediateService.clear();
+        
+        ServiceLocator locator = LocatorHelper.create();
+        ServiceLocatorUtilities.bind(locator, new ImmediateScopeModule(
+                new ImmediateConfiguration().setUseVirtualThreads(true)));
+        
+        List<ActiveDescriptor<?>> ims = ServiceLocatorUtilities.addClasses(locator, WaitableImmediateService.class);
+        
+        int numCreations = WaitableImmediateService.waitForCreationsGreaterThanZero(5 * 1000);
+        Assert.assertEquals(1, numCreations);
+        Assert.assertEquals(0, WaitableImmediateService.getNumDeletions());
+        
+        ServiceLocatorUtilities.removeOneDescriptor(locator, ims.get(0));
+        
+        int numDeletions = WaitableImmediateService.waitForDeletionsGreaterThanZero(5 * 1000);
+        Assert.assertEquals(1, numDeletions);
+        Assert.assertEquals(1, WaitableImmediateService.getNumCreations());
+    }
+    
+    private static class CountingExecutor implements Executor {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void execute(Runnable command) {
+            count.incrementAndGet();
+            
+            Thread t = new Thread(command);
+            t.setDaemon(true);
+            t.start();
+        }
+        
+        private int getCount() {
+            return count.get();
+        }
+    }
+    
     private final static Object sLock = new Object();
     private static long immediateTid = -1;
     
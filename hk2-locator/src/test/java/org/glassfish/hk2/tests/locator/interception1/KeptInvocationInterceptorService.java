@@ -0,0 +1,145 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2013 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.interception1;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Singleton;
+
+import org.aopalliance.intercept.ConstructorInterceptor;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.glassfish.hk2.api.Filter;
+import org.glassfish.hk2.api.InterceptionService;
+import org.glassfish.hk2.utilities.BuilderHelper;
+
+/**
+ * Intercepts {@link CountingService#callMe()} with an interceptor that
+ * keeps its invocation, followed by one that proceeds on that kept
+ * invocation from another thread the first time it is called
+ * 
+ * @author jwells
+ *
+ */
+@Singleton
+public class KeptInvocationInterceptorService implements InterceptionService {
+    private MethodInvocation kept;
+    private int innerCalls;
+    
+    @Override
+    public Filter getDescriptorFilter() {
+        return BuilderHelper.createContractFilter(CountingService.class.getName());
+    }
+
+    @Override
+    public List<MethodInterceptor> getMethodInterceptors(Method method) {
+        if (!method.getName().equals("callMe")) return null;
+        
+        List<MethodInterceptor> retVal = new ArrayList<MethodInterceptor>();
+        
+        retVal.add(new MethodInterceptor() {
+
+            @Override
+            public Object invoke(MethodInvocation invocation) throws Throwable {
+                synchronized (KeptInvocationInterceptorService.this) {
+                    kept = invocation;
+                }
+                
+                return invocation.proceed();
+            }
+            
+        });
+        
+        retVal.add(new MethodInterceptor() {
+
+            @Override
+            public Object invoke(MethodInvocation invocation) throws Throwable {
+                final MethodInvocation outer;
+                boolean first;
+                synchronized (KeptInvocationInterceptorService.this) {
+                    first = (innerCalls++ == 0);
+                    outer = kept;
+                }
+                
+                if (first) {
+                    final Throwable errors[] = new Throwable[1];
+                    Thread other = new Thread() {
+                        @Override
+                        public void run() {
+                            try {
+                                outer.proceed();
+                            }
+                            catch (Throwable th) {
+                                errors[0] = th;
+                            }
+                        }
+                    };
+                    
+                    other.start();
+                    other.join();
+                    
+                    if (errors[0] != null) throw errors[0];
+                }
+                
+                return invocation.proceed();
+            }
+            
+        });
+        
+        return retVal;
+    }
+
+    @Override
+    public List<ConstructorInterceptor> getConstructorInterceptors(
+            Constructor<?> constructor) {
+        return null;
+    }
+    
+    /**
+     * @return The number of times the second interceptor was called
+     */
+    public synchronized int getInnerCalls() {
+        return innerCalls;
+    }
+
+}
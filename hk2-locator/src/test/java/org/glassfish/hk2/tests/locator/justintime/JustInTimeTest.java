@@ -50,6 +50,7 @@ import org.glassfish.hk2.utilities.BuilderHelper;
 import org.glassfish.hk2.utilities.InjecteeImpl;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 import org.junit.Test;
+import org.jvnet.hk2.internal.ServiceLocatorImpl;
 
 /**
  * @author jwells
@@ -193,4 +194,46 @@ public class JustInTimeTest {
         return locator;
     }
 
+    /**
+     * Tests that injection points no JIT resolver can satisfy are only
+     * resolved once until the configuration changes
+     */
+    @Test
+    public void testNegativeJITCache() {
+        ServiceLocator locator = ServiceLocatorFactory.getInstance().create(null);
+        ServiceLocatorImpl impl = (ServiceLocatorImpl) locator;
+        
+        ServiceLocatorUtilities.addClasses(locator,
+                OptionalInjectionService.class,
+                CountingJITResolver.class);
+        CountingJITResolver resolver = locator.getService(CountingJITResolver.class);
+        
+        // Without the cache every creation asks the resolvers
+        Assert.assertTrue(locator.getService(OptionalInjectionService.class).isEmpty());
+        Assert.assertTrue(locator.getService(OptionalInjectionService.class).isEmpty());
+        Assert.assertEquals(2, resolver.getNeverBoundCalls());
+        
+        impl.setNegativeJITCacheEnabled(true);
+        Assert.assertTrue(impl.isNegativeJITCacheEnabled());
+        
+        for (int lcv = 0; lcv < 10; lcv++) {
+            Assert.assertTrue(locator.getService(OptionalInjectionService.class).isEmpty());
+        }
+        
+        Assert.assertEquals(3, resolver.getNeverBoundCalls());
+        Assert.assertEquals(1, impl.getNegativeJITCacheMisses());
+        Assert.assertEquals(9, impl.getNegativeJITCacheHits());
+        
+        // Any configuration change forgets the negative results
+        ServiceLocatorUtilities.addClasses(locator, SimpleService4.class);
+        
+        Assert.assertTrue(locator.getService(OptionalInjectionService.class).isEmpty());
+        Assert.assertTrue(locator.getService(OptionalInjectionService.class).isEmpty());
+        Assert.assertEquals(4, resolver.getNeverBoundCalls());
+        Assert.assertEquals(2, impl.getNegativeJITCacheMisses());
+        Assert.assertEquals(10, impl.getNegativeJITCacheHits());
+        
+        ServiceLocatorFactory.getInstance().destroy(locator);
+    }
+
 }
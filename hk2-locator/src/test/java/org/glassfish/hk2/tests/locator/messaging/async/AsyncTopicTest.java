@@ -0,0 +1,240 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.messaging.async;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.api.messaging.TopicDistributionService;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.AsyncTopicDistributionConfiguration;
+import org.glassfish.hk2.utilities.AsyncTopicDistributionConfiguration.BackpressurePolicy;
+import org.glassfish.hk2.utilities.AsyncTopicDistributionMetrics;
+import org.glassfish.hk2.utilities.AsyncTopicDistributionModule;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the asynchronous topic distribution service
+ * 
+ * @author jwells
+ *
+ */
+public class AsyncTopicTest {
+    private final static int NUM_EVENTS = 500;
+    private final static long TIMEOUT = 20L * 1000L;
+    
+    private static ServiceLocator createLocator(AsyncTopicDistributionConfiguration configuration) {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        ServiceLocatorUtilities.bind(locator, new AsyncTopicDistributionModule(configuration));
+        ServiceLocatorUtilities.addClasses(locator, OrderedPublisher.class, OrderedSubscriber.class);
+        
+        return locator;
+    }
+    
+    private static void publish(OrderedPublisher publisher, int from, int to) {
+        for (int lcv = from; lcv < to; lcv++) {
+            publisher.publish(lcv);
+        }
+    }
+    
+    /**
+     * The subscriber sees a message slightly before the delivery
+     * of that message is counted
+     */
+    private static void waitForDelivered(AsyncTopicDistributionMetrics metrics, long count) throws InterruptedException {
+        long elapsedTime = System.currentTimeMillis() + TIMEOUT;
+        
+        while (metrics.getDeliveredCount() < count) {
+            if (System.currentTimeMillis() > elapsedTime) break;
+            
+            Thread.sleep(5L);
+        }
+    }
+    
+    private static void assertOrders(OrderedSubscriber subscriber, Integer... expected) {
+        Assert.assertEquals(Arrays.asList(expected), subscriber.getOrders());
+    }
+    
+    /**
+     * Tests that the events are delivered in order on some
+     * other thread, and that the metrics are kept
+     * 
+     * @throws InterruptedException 
+     */
+    @Test
+    public void testDeliveredInOrderOnAnotherThread() throws InterruptedException {
+        ServiceLocator locator = createLocator(new AsyncTopicDistributionConfiguration().setBatchSize(7));
+        
+        OrderedSubscriber subscriber = locator.getService(OrderedSubscriber.class);
+        OrderedPublisher publisher = locator.getService(OrderedPublisher.class);
+        
+        publish(publisher, 0, NUM_EVENTS);
+        
+        Assert.assertTrue(subscriber.waitFor(NUM_EVENTS, TIMEOUT));
+        
+        List<Integer> orders = subscriber.getOrders();
+        Assert.assertEquals(NUM_EVENTS, orders.size());
+        for (int lcv = 0; lcv < NUM_EVENTS; lcv++) {
+            Assert.assertEquals(lcv, orders.get(lcv).intValue());
+        }
+        
+        for (Thread thread : subscriber.getThreads()) {
+            Assert.assertNotSame(Thread.currentThread(), thread);
+        }
+        
+        AsyncTopicDistributionMetrics metrics = locator.getService(AsyncTopicDistributionMetrics.class);
+        Assert.assertSame(metrics, locator.getService(TopicDistributionService.class));
+        
+        waitForDelivered(metrics, NUM_EVENTS);
+        
+        Assert.assertEquals(NUM_EVENTS, metrics.getDeliveredCount());
+        Assert.assertEquals(0L, metrics.getDroppedCount());
+        Assert.assertEquals(0, metrics.getQueueDepth());
+        Assert.assertTrue(metrics.getMaximumLatency() >= metrics.getAverageLatency());
+        Assert.assertTrue(metrics.getMaximumLatency() > 0L);
+        
+        metrics.reset();
+        Assert.assertEquals(0L, metrics.getDeliveredCount());
+        Assert.assertEquals(0L, metrics.getMaximumLatency());
+    }
+    
+    /**
+     * Tests that the queue of a subscriber is drained
+     * at most one batch at a time
+     */
+    @Test
+    public void testDrainedInBatches() {
+        QueuedExecutor executor = new QueuedExecutor();
+        ServiceLocator locator = createLocator(new AsyncTopicDistributionConfiguration().
+                setExecutor(executor).
+                setBatchSize(3));
+        
+        OrderedSubscriber subscriber = locator.getService(OrderedSubscriber.class);
+        OrderedPublisher publisher = locator.getService(OrderedPublisher.class);
+        AsyncTopicDistributionMetrics metrics = locator.getService(AsyncTopicDistributionMetrics.class);
+        
+        publish(publisher, 0, 7);
+        
+        // Only one drain is ever scheduled for a subscriber
+        Assert.assertEquals(1, executor.getNumberOfTasks());
+        Assert.assertEquals(7, metrics.getQueueDepth());
+        Assert.assertEquals(7, metrics.getMaximumQueueDepth());
+        assertOrders(subscriber);
+        
+        Assert.assertTrue(executor.runOne());
+        assertOrders(subscriber, 0, 1, 2);
+        Assert.assertEquals(4, metrics.getQueueDepth());
+        
+        Assert.assertTrue(executor.runOne());
+        assertOrders(subscriber, 0, 1, 2, 3, 4, 5);
+        
+        Assert.assertTrue(executor.runOne());
+        assertOrders(subscriber, 0, 1, 2, 3, 4, 5, 6);
+        
+        Assert.assertFalse(executor.runOne());
+        Assert.assertEquals(0, metrics.getQueueDepth());
+    }
+    
+    /**
+     * Tests that messages to a full queue are dropped
+     * and counted with the DROP policy
+     */
+    @Test
+    public void testDropPolicy() {
+        QueuedExecutor executor = new QueuedExecutor();
+        ServiceLocator locator = createLocator(new AsyncTopicDistributionConfiguration().
+                setExecutor(executor).
+                setQueueCapacity(2).
+                setBackpressurePolicy(BackpressurePolicy.DROP));
+        
+        OrderedSubscriber subscriber = locator.getService(OrderedSubscriber.class);
+        OrderedPublisher publisher = locator.getService(OrderedPublisher.class);
+        AsyncTopicDistributionMetrics metrics = locator.getService(AsyncTopicDistributionMetrics.class);
+        
+        publish(publisher, 0, 5);
+        
+        Assert.assertEquals(2, metrics.getQueueDepth());
+        Assert.assertEquals(3L, metrics.getDroppedCount());
+        
+        while (executor.runOne()) {}
+        
+        assertOrders(subscriber, 0, 1);
+        Assert.assertEquals(2L, metrics.getDeliveredCount());
+    }
+    
+    /**
+     * Tests that with the CALLER_RUNS policy the publisher
+     * delivers what is in the full queue before its own
+     * message, keeping the order
+     */
+    @Test
+    public void testCallerRunsPolicy() {
+        QueuedExecutor executor = new QueuedExecutor();
+        ServiceLocator locator = createLocator(new AsyncTopicDistributionConfiguration().
+                setExecutor(executor).
+                setQueueCapacity(2).
+                setBackpressurePolicy(BackpressurePolicy.CALLER_RUNS));
+        
+        OrderedSubscriber subscriber = locator.getService(OrderedSubscriber.class);
+        OrderedPublisher publisher = locator.getService(OrderedPublisher.class);
+        AsyncTopicDistributionMetrics metrics = locator.getService(AsyncTopicDistributionMetrics.class);
+        
+        publish(publisher, 0, 2);
+        assertOrders(subscriber);
+        
+        publisher.publish(2);
+        assertOrders(subscriber, 0, 1, 2);
+        for (Thread thread : subscriber.getThreads()) {
+            Assert.assertSame(Thread.currentThread(), thread);
+        }
+        
+        publisher.publish(3);
+        while (executor.runOne()) {}
+        
+        assertOrders(subscriber, 0, 1, 2, 3);
+        Assert.assertEquals(0L, metrics.getDroppedCount());
+        Assert.assertEquals(4L, metrics.getDeliveredCount());
+    }
+
+}
@@ -0,0 +1,271 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.messaging.index;
+
+/**
+ * A set of unrelated event types used for measuring distribution
+ * 
+ * @author jwells
+ *
+ */
+public class ManyEvents {
+    /** The number of event types in this class, not counting the unsubscribed one */
+    public final static int NUMBER_OF_EVENT_TYPES = 200;
+    
+    public static class Event0 {}
+    public static class Event1 {}
+    public static class Event2 {}
+    public static class Event3 {}
+    public static class Event4 {}
+    public static class Event5 {}
+    public static class Event6 {}
+    public static class Event7 {}
+    public static class Event8 {}
+    public static class Event9 {}
+    public static class Event10 {}
+    public static class Event11 {}
+    public static class Event12 {}
+    public static class Event13 {}
+    public static class Event14 {}
+    public static class Event15 {}
+    public static class Event16 {}
+    public static class Event17 {}
+    public static class Event18 {}
+    public static class Event19 {}
+    public static class Event20 {}
+    public static class Event21 {}
+    public static class Event22 {}
+    public static class Event23 {}
+    public static class Event24 {}
+    public static class Event25 {}
+    public static class Event26 {}
+    public static class Event27 {}
+    public static class Event28 {}
+    public static class Event29 {}
+    public static class Event30 {}
+    public static class Event31 {}
+    public static class Event32 {}
+    public static class Event33 {}
+    public static class Event34 {}
+    public static class Event35 {}
+    public static class Event36 {}
+    public static class Event37 {}
+    public static class Event38 {}
+    public static class Event39 {}
+    public static class Event40 {}
+    public static class Event41 {}
+    public static class Event42 {}
+    public static class Event43 {}
+    public static class Event44 {}
+    public static class Event45 {}
+    public static class Event46 {}
+    public static class Event47 {}
+    public static class Event48 {}
+    public static class Event49 {}
+    public static class Event50 {}
+    public static class Event51 {}
+    public static class Event52 {}
+    public static class Event53 {}
+    public static class Event54 {}
+    public static class Event55 {}
+    public static class Event56 {}
+    public static class Event57 {}
+    public static class Event58 {}
+    public static class Event59 {}
+    public static class Event60 {}
+    public static class Event61 {}
+    public static class Event62 {}
+    public static class Event63 {}
+    public static class Event64 {}
+    public static class Event65 {}
+    public static class Event66 {}
+    public static class Event67 {}
+    public static class Event68 {}
+    public static class Event69 {}
+    public static class Event70 {}
+    public static class Event71 {}
+    public static class Event72 {}
+    public static class Event73 {}
+    public static class Event74 {}
+    public static class Event75 {}
+    public static class Event76 {}
+    public static class Event77 {}
+    public static class Event78 {}
+    public static class Event79 {}
+    public static class Event80 {}
+    public static class Event81 {}
+    public static class Event82 {}
+    public static class Event83 {}
+    public static class Event84 {}
+    public static class Event85 {}
+    public static class Event86 {}
+    public static class Event87 {}
+    public static class Event88 {}
+    public static class Event89 {}
+    public static class Event90 {}
+    public static class Event91 {}
+    public static class Event92 {}
+    public static class Event93 {}
+    public static class Event94 {}
+    public static class Event95 {}
+    public static class Event96 {}
+    public static class Event97 {}
+    public static class Event98 {}
+    public static class Event99 {}
+    public static class Event100 {}
+    public static class Event101 {}
+    public static class Event102 {}
+    public static class Event103 {}
+    public static class Event104 {}
+    public static class Event105 {}
+    public static class Event106 {}
+    public static class Event107 {}
+    public static class Event108 {}
+    public static class Event109 {}
+    public static class Event110 {}
+    public static class Event111 {}
+    public static class Event112 {}
+    public static class Event113 {}
+    public static class Event114 {}
+    public static class Event115 {}
+    public static class Event116 {}
+    public static class Event117 {}
+    public static class Event118 {}
+    public static class Event119 {}
+    public static class Event120 {}
+    public static class Event121 {}
+    public static class Event122 {}
+    public static class Event123 {}
+    public static class Event124 {}
+    public static class Event125 {}
+    public static class Event126 {}
+    public static class Event127 {}
+    public static class Event128 {}
+    public static class Event129 {}
+    public static class Event130 {}
+    public static class Event131 {}
+    public static class Event132 {}
+    public static class Event133 {}
+    public static class Event134 {}
+    public static class Event135 {}
+    public static class Event136 {}
+    public static class Event137 {}
+    public static class Event138 {}
+    public static class Event139 {}
+    public static class Event140 {}
+    public static class Event141 {}
+    public static class Event142 {}
+    public static class Event143 {}
+    public static class Event144 {}
+    public static class Event145 {}
+    public static class Event146 {}
+    public static class Event147 {}
+    public static class Event148 {}
+    public static class Event149 {}
+    public static class Event150 {}
+    public static class Event151 {}
+    public static class Event152 {}
+    public static class Event153 {}
+    public static class Event154 {}
+    public static class Event155 {}
+    public static class Event156 {}
+    public static class Event157 {}
+    public static class Event158 {}
+    public static class Event159 {}
+    public static class Event160 {}
+    public static class Event161 {}
+    public static class Event162 {}
+    public static class Event163 {}
+    public static class Event164 {}
+    public static class Event165 {}
+    public static class Event166 {}
+    public static class Event167 {}
+    public static class Event168 {}
+    public static class Event169 {}
+    public static class Event170 {}
+    public static class Event171 {}
+    public static class Event172 {}
+    public static class Event173 {}
+    public static class Event174 {}
+    public static class Event175 {}
+    public static class Event176 {}
+    public static class Event177 {}
+    public static class Event178 {}
+    public static class Event179 {}
+    public static class Event180 {}
+    public static class Event181 {}
+    public static class Event182 {}
+    public static class Event183 {}
+    public static class Event184 {}
+    public static class Event185 {}
+    public static class Event186 {}
+    public static class Event187 {}
+    public static class Event188 {}
+    public static class Event189 {}
+    public static class Event190 {}
+    public static class Event191 {}
+    public static class Event192 {}
+    public static class Event193 {}
+    public static class Event194 {}
+    public static class Event195 {}
+    public static class Event196 {}
+    public static class Event197 {}
+    public static class Event198 {}
+    public static class Event199 {}
+    
+    /** No one subscribes to this one */
+    public static class UnsubscribedEvent {}
+    
+    /**
+     * Returns the event class with the given index
+     * 
+     * @param index A number from 0 to NUMBER_OF_EVENT_TYPES - 1
+     * @return The event class with that index
+     */
+    public static Class<?> getEventClass(int index) {
+        try {
+            return Class.forName(ManyEvents.class.getName() + "$Event" + index);
+        }
+        catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.messaging.index;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.hk2.api.PerLookup;
+import org.glassfish.hk2.api.messaging.SubscribeTo;
+
+/**
+ * Subscribes to every one of the event types in {@link ManyEvents}
+ * 
+ * @author jwells
+ *
+ */
+@PerLookup
+public class ManyTypesSubscriber {
+    private final static AtomicInteger DELIVERED = new AtomicInteger();
+    
+    public static int getAndClearDelivered() {
+        return DELIVERED.getAndSet(0);
+    }
+    
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event0 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event1 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event2 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event3 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event4 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event5 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event6 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event7 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event8 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event9 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event10 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event11 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event12 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event13 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event14 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event15 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event16 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event17 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event18 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event19 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event20 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event21 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event22 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event23 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event24 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event25 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event26 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event27 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event28 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event29 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event30 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event31 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event32 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event33 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event34 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event35 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event36 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event37 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event38 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event39 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event40 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event41 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event42 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event43 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event44 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event45 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event46 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event47 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event48 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event49 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event50 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event51 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event52 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event53 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event54 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event55 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event56 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event57 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event58 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event59 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event60 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event61 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event62 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event63 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event64 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event65 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event66 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event67 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event68 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event69 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event70 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event71 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event72 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event73 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event74 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event75 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event76 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event77 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event78 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event79 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event80 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event81 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event82 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event83 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event84 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event85 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event86 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event87 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event88 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event89 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event90 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event91 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event92 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event93 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event94 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event95 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event96 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event97 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event98 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event99 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event100 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event101 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event102 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event103 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event104 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event105 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event106 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event107 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event108 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event109 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event110 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event111 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event112 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event113 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event114 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event115 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event116 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event117 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event118 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event119 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event120 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event121 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event122 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event123 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event124 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event125 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event126 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event127 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event128 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event129 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event130 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event131 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event132 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event133 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event134 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event135 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event136 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event137 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event138 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event139 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event140 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event141 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event142 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event143 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event144 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event145 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event146 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event147 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event148 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event149 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event150 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event151 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event152 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event153 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event154 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event155 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event156 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event157 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event158 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event159 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event160 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event161 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event162 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event163 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event164 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event165 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event166 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event167 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event168 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event169 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event170 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event171 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event172 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event173 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event174 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event175 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event176 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event177 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event178 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event179 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event180 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event181 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event182 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event183 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event184 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event185 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event186 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event187 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event188 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event189 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event190 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event191 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event192 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event193 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event194 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event195 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event196 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event197 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event198 event) { DELIVERED.incrementAndGet(); }
+    /* package */ void subscribe(@SubscribeTo ManyEvents.Event199 event) { DELIVERED.incrementAndGet(); }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.messaging.index;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.PerLookup;
+import org.glassfish.hk2.api.ServiceHandle;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Tests for the subscriber index of the default topic distribution service
+ * 
+ * @author jwells
+ *
+ */
+public class SubscriberIndexTest {
+    private final static int BENCHMARK_DESCRIPTORS = 50;
+    private final static int BENCHMARK_INSTANCES_PER_DESCRIPTOR = 200;
+    private final static int BENCHMARK_PUBLISHES = 2000;
+    
+    private static ServiceLocator createLocator() {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        ServiceLocatorUtilities.enableTopicDistribution(locator);
+        ServiceLocatorUtilities.addClasses(locator, IndexPublisher.class);
+        
+        return locator;
+    }
+    
+    /**
+     * Tests that subscribers added after an event type has already been
+     * published to get subsequent events of that type, including
+     * events of a sub-type of the subscribed type
+     */
+    @Test
+    public void testLateSubscriberGetsSubTypeEvents() {
+        ServiceLocator locator = createLocator();
+        IndexPublisher publisher = locator.getService(IndexPublisher.class);
+        
+        // Nobody is listening yet
+        publisher.publish(SubEvent.class, new SubEvent(1));
+        
+        ServiceLocatorUtilities.addClasses(locator, BaseSubscriber.class);
+        BaseSubscriber subscriber = locator.getService(BaseSubscriber.class);
+        
+        publisher.publish(SubEvent.class, new SubEvent(2));
+        publisher.publish(BaseEvent.class, new BaseEvent(4));
+        
+        Assert.assertEquals(6, subscriber.getTotal());
+    }
+    
+    /**
+     * Tests that a subscriber whose last instance was destroyed
+     * gets events again once a new instance is created
+     */
+    @Test
+    public void testDestroyedSubscriberIsReindexed() {
+        ServiceLocator locator = createLocator();
+        IndexPublisher publisher = locator.getService(IndexPublisher.class);
+        
+        ServiceLocatorUtilities.addClasses(locator, BaseSubscriber.class);
+        
+        ServiceHandle<BaseSubscriber> handle = locator.getServiceHandle(BaseSubscriber.class);
+        BaseSubscriber first = handle.getService();
+        
+        publisher.publish(BaseEvent.class, new BaseEvent(1));
+        Assert.assertEquals(1, first.getTotal());
+        
+        handle.destroy();
+        
+        publisher.publish(BaseEvent.class, new BaseEvent(2));
+        Assert.assertEquals(1, first.getTotal());
+        
+        BaseSubscriber second = locator.getService(BaseSubscriber.class);
+        
+        publisher.publish(SubEvent.class, new SubEvent(4));
+        Assert.assertEquals(1, first.getTotal());
+        Assert.assertEquals(4, second.getTotal());
+    }
+    
+    /**
+     * Measures publishing with 10000 subscriber instances across 200 event types,
+     * both to a subscribed event type and to an event type with no subscribers
+     */
+    @Test @Ignore
+    public void testDistributionPerformance() throws Exception {
+        ServiceLocator locator = createLocator();
+        IndexPublisher publisher = locator.getService(IndexPublisher.class);
+        
+        List<Object> subscribers = new LinkedList<Object>();
+        for (int lcv = 0; lcv < BENCHMARK_DESCRIPTORS; lcv++) {
+            ActiveDescriptor<?> descriptor = ServiceLocatorUtilities.addOneDescriptor(locator,
+                    BuilderHelper.link(ManyTypesSubscriber.class).named(Integer.toString(lcv)).
+                    in(PerLookup.class.getName()).build());
+            
+            for (int inner = 0; inner < BENCHMARK_INSTANCES_PER_DESCRIPTOR; inner++) {
+                // Keep them strongly referenced for the duration of the test
+                subscribers.add(locator.getServiceHandle(descriptor).getService());
+            }
+        }
+        
+        int numSubscribers = subscribers.size();
+        
+        // Warm up
+        for (int lcv = 0; lcv < ManyEvents.NUMBER_OF_EVENT_TYPES; lcv++) {
+            Class<?> eventClass = ManyEvents.getEventClass(lcv);
+            publisher.publish(eventClass, eventClass.newInstance());
+        }
+        Assert.assertEquals(ManyEvents.NUMBER_OF_EVENT_TYPES * numSubscribers,
+                ManyTypesSubscriber.getAndClearDelivered());
+        
+        long startTime = System.currentTimeMillis();
+        for (int lcv = 0; lcv < BENCHMARK_PUBLISHES; lcv++) {
+            publisher.publish(ManyEvents.UnsubscribedEvent.class, new ManyEvents.UnsubscribedEvent());
+        }
+        long unsubscribedTime = System.currentTimeMillis() - startTime;
+        
+        startTime = System.currentTimeMillis();
+        for (int lcv = 0; lcv < BENCHMARK_PUBLISHES; lcv++) {
+            Class<?> eventClass = ManyEvents.getEventClass(lcv % ManyEvents.NUMBER_OF_EVENT_TYPES);
+            publisher.publish(eventClass, eventClass.newInstance());
+        }
+        long subscribedTime = System.currentTimeMillis() - startTime;
+        
+        Assert.assertEquals(BENCHMARK_PUBLISHES * numSubscribers, ManyTypesSubscriber.getAndClearDelivered());
+        
+        System.out.println("With " + numSubscribers + " subscriber instances across " +
+                ManyEvents.NUMBER_OF_EVENT_TYPES + " event types " + BENCHMARK_PUBLISHES +
+                " publishes took " + unsubscribedTime + " milliseconds with no subscribers and " +
+                subscribedTime + " milliseconds to all subscribers");
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.neutralccl;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Tests that creating a service leaves the context class loader
+ * alone unless the locator has been told otherwise
+ * 
+ * @author jwells
+ *
+ */
+public class NeutralCCLTest {
+    private final static int BENCHMARK_CREATIONS = 2000000;
+    
+    /**
+     * The constructor, initializer and post construct all change
+     * the CCL, but after creation it must be what it was before
+     */
+    @Test
+    public void testCreationIsCCLNeutral() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(CCLChangingService.class);
+        
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        
+        CCLChangingService service = locator.getService(CCLChangingService.class);
+        Assert.assertTrue(service.isFullyInitialized());
+        
+        Assert.assertSame(original, Thread.currentThread().getContextClassLoader());
+        
+        // The changes made by one step are not seen by the next
+        Assert.assertSame(original, service.getInitializerCCL());
+        Assert.assertSame(original, service.getPostConstructCCL());
+    }
+    
+    /**
+     * When the locator is not CCL neutral the change made
+     * by the service is left in place
+     */
+    @Test
+    public void testCreationIsNotCCLNeutralWhenTurnedOff() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(CCLChangingService.class);
+        locator.setNeutralContextClassLoader(false);
+        
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        try {
+            CCLChangingService service = locator.getService(CCLChangingService.class);
+            Assert.assertTrue(service.isFullyInitialized());
+        
+            Assert.assertNotSame(original, Thread.currentThread().getContextClassLoader());
+            
+            // Each step sees the change made by the one before
+            Assert.assertNotSame(original, service.getInitializerCCL());
+            Assert.assertNotSame(service.getInitializerCCL(), service.getPostConstructCCL());
+            Assert.assertNotSame(original, service.getPostConstructCCL());
+        }
+        finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+    
+    /**
+     * Measures the creation of a per lookup service with
+     * constructor, field and method injection
+     */
+    @Test @Ignore
+    public void benchmarkPerLookupCreation() {
+        ServiceLocator locator = LocatorHelper.getServiceLocator(PerLookupService.class);
+        
+        // Warm up
+        for (int lcv = 0; lcv < BENCHMARK_CREATIONS / 10; lcv++) {
+            locator.getService(PerLookupService.class);
+        }
+        
+        long elapsedTime = System.currentTimeMillis();
+        for (int lcv = 0; lcv < BENCHMARK_CREATIONS; lcv++) {
+            Assert.assertTrue(locator.getService(PerLookupService.class).isFullyInitialized());
+        }
+        elapsedTime = System.currentTimeMillis() - elapsedTime;
+        
+        System.out.println("Created " + BENCHMARK_CREATIONS + " per lookup services in " + elapsedTime + " milliseconds");
+    }
+
+}
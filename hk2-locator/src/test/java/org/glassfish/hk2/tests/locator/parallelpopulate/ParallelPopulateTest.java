@@ -0,0 +1,387 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.parallelpopulate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.DescriptorFileFinder;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.DescriptorImpl;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.jvnet.hk2.internal.PopulatorImpl;
+
+/**
+ * Tests for the parallel mode of the populator
+ * 
+ * @author jwells
+ *
+ */
+public class ParallelPopulateTest {
+    private final static String DUMMY_PREFIX = "com.acme.populated.Dummy";
+    private final static String DUMMY_CONTRACT = "com.acme.populated.DummyContract";
+    
+    private final static String BENCHMARK_CLASSES[] = {
+        java.util.ArrayList.class.getName(),
+        java.util.HashMap.class.getName(),
+        java.util.LinkedList.class.getName(),
+        java.util.TreeMap.class.getName(),
+        java.util.concurrent.ConcurrentHashMap.class.getName(),
+        java.lang.StringBuilder.class.getName(),
+        java.util.HashSet.class.getName(),
+        java.util.TreeSet.class.getName()
+    };
+    
+    private final static int BENCHMARK_FILES = 50;
+    private final static int BENCHMARK_DESCRIPTORS_PER_FILE = 100;
+    private final static int BENCHMARK_ITERATIONS = 20;
+    
+    private static ServiceLocator createParallel(int parallelism, boolean preAnalyze) {
+        ServiceLocator locator = LocatorHelper.create();
+        
+        PopulatorImpl populator = (PopulatorImpl) locator.getService(DynamicConfigurationService.class).getPopulator();
+        populator.setParallelism(parallelism);
+        populator.setPreAnalyze(preAnalyze);
+        
+        return locator;
+    }
+    
+    private static byte[] writeFile(List<DescriptorImpl> descriptors) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(baos);
+        
+        for (DescriptorImpl di : descriptors) {
+            di.writeObject(pw);
+        }
+        
+        pw.close();
+        
+        return baos.toByteArray();
+    }
+    
+    private static List<byte[]> createDummyFiles(int numFiles, int perFile, String implementations[]) throws IOException {
+        List<byte[]> retVal = new ArrayList<byte[]>(numFiles);
+        
+        int count = 0;
+        for (int lcv = 0; lcv < numFiles; lcv++) {
+            List<DescriptorImpl> descriptors = new ArrayList<DescriptorImpl>(perFile);
+            
+            for (int inner = 0; inner < perFile; inner++) {
+                DescriptorImpl di = new DescriptorImpl();
+                if (implementations == null) {
+                    di.setImplementation(DUMMY_PREFIX + count);
+                }
+                else {
+                    di.setImplementation(implementations[count % implementations.length]);
+                }
+                di.addAdvertisedContract(DUMMY_CONTRACT);
+                di.setName(Integer.toString(count));
+                
+                descriptors.add(di);
+                count++;
+            }
+            
+            retVal.add(writeFile(descriptors));
+        }
+        
+        return retVal;
+    }
+    
+    private static List<ActiveDescriptor<?>> populate(ServiceLocator locator, List<byte[]> files) throws IOException {
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        
+        return dcs.getPopulator().populate(new ByteArrayDescriptorFinder(files));
+    }
+    
+    /**
+     * Tests that the parallel populator binds the descriptors in the
+     * same order as they appear in the descriptor files
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testParallelPopulateKeepsFileOrder() throws IOException {
+        List<byte[]> files = createDummyFiles(20, 50, null);
+        
+        ServiceLocator locator = createParallel(4, true);
+        
+        List<ActiveDescriptor<?>> added = populate(locator, files);
+        Assert.assertEquals(1000, added.size());
+        
+        long lastServiceId = -1L;
+        for (int lcv = 0; lcv < added.size(); lcv++) {
+            ActiveDescriptor<?> descriptor = added.get(lcv);
+            
+            Assert.assertEquals(DUMMY_PREFIX + lcv, descriptor.getImplementation());
+            Assert.assertTrue(descriptor.getServiceId() > lastServiceId);
+            lastServiceId = descriptor.getServiceId();
+        }
+        
+        List<ActiveDescriptor<?>> found = locator.getDescriptors(BuilderHelper.createContractFilter(DUMMY_CONTRACT));
+        Assert.assertEquals(1000, found.size());
+        Assert.assertEquals(DUMMY_PREFIX + 0, found.get(0).getImplementation());
+    }
+    
+    /**
+     * Tests that services populated with pre-analysis work properly
+     * 
+     * @throws IOException
+     */
+    @Test
+    public void testParallelPopulateWithPreAnalysis() throws IOException {
+        List<byte[]> files = new ArrayList<byte[]>();
+        
+        DescriptorImpl a = BuilderHelper.link(PopulatedServiceA.class).
+                to(PopulatedContract.class).
+                in(javax.inject.Singleton.class.getName()).build();
+        DescriptorImpl b = BuilderHelper.link(PopulatedServiceB.class).
+                to(PopulatedContract.class).
+                in(javax.inject.Singleton.class.getName()).build();
+        
+        files.add(writeFile(java.util.Collections.singletonList(a)));
+        files.add(writeFile(java.util.Collections.singletonList(b)));
+        
+        ServiceLocator locator = createParallel(2, true);
+        populate(locator, files);
+        
+        List<PopulatedContract> all = locator.getAllServices(PopulatedContract.class);
+        Assert.assertEquals(2, all.size());
+        
+        Assert.assertTrue(all.get(0) instanceof PopulatedServiceA);
+        Assert.assertTrue(all.get(1) instanceof PopulatedServiceB);
+        
+        for (PopulatedContract pc : all) {
+            Assert.assertTrue(pc.isInitialized());
+        }
+    }
+    
+    /**
+     * Tests that a failure reading one of the files is reported
+     * 
+     * @throws IOException
+     */
+    @Test(expected=IOException.class)
+    public void testParallelPopulateReportsReadFailure() throws IOException {
+        final List<byte[]> files = createDummyFiles(4, 10, null);
+        
+        ServiceLocator locator = createParallel(4, false);
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        
+        dcs.getPopulator().populate(new DescriptorFileFinder() {
+
+            @Override
+            public List<InputStream> findDescriptorFiles() throws IOException {
+                List<InputStream> retVal = new ArrayList<InputStream>();
+                for (byte[] file : files) {
+                    retVal.add(new ByteArrayInputStream(file));
+                }
+                
+                retVal.add(new InputStream() {
+
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("Expected exception from test");
+                    }
+                    
+                });
+                
+                return retVal;
+            }
+            
+        });
+    }
+    
+    /**
+     * Tests that the streams of all the files are closed when
+     * one of the files fails, including those never read
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testParallelPopulateClosesAllStreamsOnFailure() throws Exception {
+        final List<byte[]> files = createDummyFiles(50, 10, null);
+        final List<ClosingStream> streams = new ArrayList<ClosingStream>();
+        
+        ServiceLocator locator = createParallel(2, false);
+        DynamicConfigurationService dcs = locator.getService(DynamicConfigurationService.class);
+        
+        try {
+            dcs.getPopulator().populate(new DescriptorFileFinder() {
+
+                @Override
+                public List<InputStream> findDescriptorFiles() throws IOException {
+                    List<InputStream> retVal = new ArrayList<InputStream>();
+                    
+                    retVal.add(new InputStream() {
+
+                        @Override
+                        public int read() throws IOException {
+                            throw new IOException("Expected exception from test");
+                        }
+                        
+                    });
+                    
+                    for (byte[] file : files) {
+                        ClosingStream stream = new ClosingStream(file);
+                        
+                        streams.add(stream);
+                        retVal.add(stream);
+                    }
+                    
+                    return retVal;
+                }
+                
+            });
+            
+            Assert.fail("Should have failed reading the first file");
+        }
+        catch (IOException expected) {
+            // Expected
+        }
+        
+        // Files whose parsing had already started close their own streams
+        long deadline = System.currentTimeMillis() + 20000L;
+        for (ClosingStream stream : streams) {
+            while (!stream.closed && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            
+            Assert.assertTrue(stream.closed);
+        }
+        
+        // The populator is still usable afterwards
+        Assert.assertEquals(10, populate(locator, createDummyFiles(1, 10, null)).size());
+    }
+    
+    /**
+     * Compares the time taken to populate 5000 synthetic descriptors
+     * serially and in parallel, and then to look all of them up
+     * 
+     * @throws IOException
+     */
+    @Test @Ignore
+    public void testPopulatePerformance() throws IOException, MultiException {
+        List<byte[]> files = createDummyFiles(BENCHMARK_FILES, BENCHMARK_DESCRIPTORS_PER_FILE, BENCHMARK_CLASSES);
+        int numDescriptors = BENCHMARK_FILES * BENCHMARK_DESCRIPTORS_PER_FILE;
+        
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        
+        // Warm up
+        runBenchmark(files, 1, false, BENCHMARK_ITERATIONS);
+        runBenchmark(files, parallelism, true, BENCHMARK_ITERATIONS);
+        
+        long serial = runBenchmark(files, 1, false, BENCHMARK_ITERATIONS);
+        long parallel = runBenchmark(files, parallelism, false, BENCHMARK_ITERATIONS);
+        long preAnalyzed = runBenchmark(files, parallelism, true, BENCHMARK_ITERATIONS);
+        
+        System.out.println("Populating and reifying " + numDescriptors + " descriptors " + BENCHMARK_ITERATIONS +
+                " times took " + serial + " milliseconds serially, " + parallel + " milliseconds with " +
+                parallelism + " threads and " + preAnalyzed + " milliseconds with " + parallelism +
+                " threads and pre-analysis");
+    }
+    
+    private static long runBenchmark(List<byte[]> files, int parallelism, boolean preAnalyze, int iterations) throws IOException {
+        long elapsed = 0L;
+        for (int lcv = 0; lcv < iterations; lcv++) {
+            ServiceLocator locator = createParallel(parallelism, preAnalyze);
+            
+            long startTime = System.currentTimeMillis();
+            
+            populate(locator, files);
+            
+            for (ActiveDescriptor<?> descriptor : locator.getDescriptors(BuilderHelper.createContractFilter(DUMMY_CONTRACT))) {
+                locator.reifyDescriptor(descriptor);
+            }
+            
+            elapsed += System.currentTimeMillis() - startTime;
+            
+            locator.shutdown();
+        }
+        
+        return elapsed;
+    }
+    
+    private static class ClosingStream extends ByteArrayInputStream {
+        private volatile boolean closed;
+        
+        private ClosingStream(byte[] buf) {
+            super(buf);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+        
+    }
+    
+    private static class ByteArrayDescriptorFinder implements DescriptorFileFinder {
+        private final List<byte[]> files;
+        
+        private ByteArrayDescriptorFinder(List<byte[]> files) {
+            this.files = files;
+        }
+
+        @Override
+        public List<InputStream> findDescriptorFiles() throws IOException {
+            List<InputStream> retVal = new ArrayList<InputStream>(files.size());
+            for (byte[] file : files) {
+                retVal.add(new ByteArrayInputStream(file));
+            }
+            
+            return retVal;
+        }
+        
+    }
+
+}
@@ -44,6 +44,7 @@ import junit.framework.Assert;
 import org.glassfish.hk2.api.ProxyCtl;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.junit.Ignore;
 import org.junit.Test;
 
 /**
@@ -124,4 +125,34 @@ public class ProxiableTest {
     	// If this doesn't bomb, this test works
     	sh.check();
     }
+    
+    private final static int BENCHMARK_CALLS = 5000000;
+    
+    /**
+     * Measures how many calls per second can be made through a proxy.
+     * This test takes a while and the results depend on the machine,
+     * so the results are printed out
+     */
+    @Test @Ignore
+    public void testProxiedCallPerformance() {
+        Season season = locator.getAllServices(Season.class).get(0);
+        Assert.assertTrue(season instanceof ProxyCtl);
+        
+        int expected = season.getName().length();
+        
+        for (int round = 0; round < 3; round++) {
+            long elapsed = System.currentTimeMillis();
+            
+            int length = 0;
+            for (int lcv = 0; lcv < BENCHMARK_CALLS; lcv++) {
+                length += season.getName().length();
+            }
+            Assert.assertEquals(BENCHMARK_CALLS * expected, length);
+            
+            elapsed = System.currentTimeMillis() - elapsed;
+            
+            System.out.println(BENCHMARK_CALLS + " proxied calls took " + elapsed + " milliseconds (" +
+                ((BENCHMARK_CALLS * 1000L) / Math.max(elapsed, 1L)) + " calls per second)");
+        }
+    }
 }
@@ -0,0 +1,242 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.tests.locator.snapshotindex;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.tests.locator.utilities.LocatorHelper;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.jvnet.hk2.internal.ServiceLocatorImpl;
+
+/**
+ * Tests for the lock-free snapshot descriptor index
+ * 
+ * @author jwells
+ *
+ */
+public class SnapshotIndexTest {
+    private final static int NUM_THREADS = 16;
+    private final static int LOOKUPS_PER_THREAD = 500000;
+    
+    private static ServiceLocator createLocator(boolean snapshotIndex) {
+        ServiceLocator locator = LocatorHelper.create();
+        ((ServiceLocatorImpl) locator).setSnapshotIndexEnabled(snapshotIndex);
+        
+        return locator;
+    }
+    
+    /**
+     * Ensures lookups with the snapshot index have the same order as the normal index
+     */
+    @Test
+    public void testSnapshotIndexKeepsRankingOrder() {
+        ServiceLocator locator = createLocator(true);
+        Assert.assertTrue(((ServiceLocatorImpl) locator).isSnapshotIndexEnabled());
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleServiceA.class, SimpleServiceB.class);
+        
+        List<SimpleContract> all = locator.getAllServices(SimpleContract.class);
+        Assert.assertEquals(2, all.size());
+        Assert.assertTrue(all.get(0) instanceof SimpleServiceA);
+        Assert.assertTrue(all.get(1) instanceof SimpleServiceB);
+        
+        ActiveDescriptor<?> cDescriptor = ServiceLocatorUtilities.addOneDescriptor(locator,
+                BuilderHelper.link(SimpleServiceC.class).to(SimpleContract.class).in(
+                        javax.inject.Singleton.class.getName()).ofRank(10).build());
+        
+        all = locator.getAllServices(SimpleContract.class);
+        Assert.assertEquals(3, all.size());
+        Assert.assertTrue(all.get(0) instanceof SimpleServiceC);
+        Assert.assertTrue(locator.getService(SimpleContract.class) instanceof SimpleServiceC);
+        
+        // Changing the ranking must re-sort the published index
+        cDescriptor.setRanking(-10);
+        
+        Assert.assertTrue(locator.getDescriptors(BuilderHelper.createContractFilter(
+                SimpleContract.class.getName())).get(2).getImplementation().equals(SimpleServiceC.class.getName()));
+        
+        ServiceLocatorUtilities.removeOneDescriptor(locator, cDescriptor);
+        
+        all = locator.getAllServices(SimpleContract.class);
+        Assert.assertEquals(2, all.size());
+        Assert.assertTrue(all.get(0) instanceof SimpleServiceA);
+    }
+    
+    /**
+     * Ensures that switching the index on after services have been added works
+     */
+    @Test
+    public void testEnableSnapshotIndexAfterAdding() {
+        ServiceLocator locator = createLocator(false);
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleServiceA.class, SimpleServiceB.class);
+        Assert.assertTrue(locator.getService(SimpleContract.class) instanceof SimpleServiceA);
+        
+        ((ServiceLocatorImpl) locator).setSnapshotIndexEnabled(true);
+        
+        Assert.assertTrue(locator.getService(SimpleContract.class) instanceof SimpleServiceA);
+        Assert.assertEquals(2, locator.getAllServices(SimpleContract.class).size());
+        
+        ServiceLocatorUtilities.addClasses(locator, SimpleServiceC.class);
+        Assert.assertEquals(3, locator.getAllServices(SimpleContract.class).size());
+    }
+    
+    /**
+     * Ensures that a child locator sees the modifications of its parent
+     */
+    @Test
+    public void testChildSeesParentModifications() {
+        ServiceLocator parent = createLocator(true);
+        ServiceLocator child = LocatorHelper.create(parent);
+        ((ServiceLocatorImpl) child).setSnapshotIndexEnabled(true);
+        
+        Assert.assertNull(child.getService(SimpleContract.class));
+        
+        ServiceLocatorUtilities.addClasses(parent, SimpleServiceA.class);
+        
+        Assert.assertTrue(child.getService(SimpleContract.class) instanceof SimpleServiceA);
+    }
+    
+    /**
+     * Ensures that adding and removing services with ever new contracts does not
+     * grow the snapshot index forever, and that removed contracts are still gone
+     * from lookups once their generations have been dropped
+     */
+    @Test
+    public void testRemovedContractsAreForgotten() {
+        ServiceLocator locator = createLocator(true);
+        ServiceLocatorImpl impl = (ServiceLocatorImpl) locator;
+        
+        for (int lcv = 0; lcv < 1000; lcv++) {
+            String contract = SimpleContract.class.getName() + lcv;
+            
+            ActiveDescriptor<?> added = ServiceLocatorUtilities.addOneDescriptor(locator,
+                    BuilderHelper.link(SimpleServiceA.class.getName()).to(contract).build());
+            Assert.assertEquals(1, locator.getAllServiceHandles(
+                    BuilderHelper.createContractFilter(contract)).size());
+            
+            ServiceLocatorUtilities.removeOneDescriptor(locator, added);
+            Assert.assertEquals(0, locator.getAllServiceHandles(
+                    BuilderHelper.createContractFilter(contract)).size());
+        }
+        
+        Assert.assertTrue("" + impl.getNumberOfContractGenerations(),
+                impl.getNumberOfContractGenerations() < 200);
+        
+        // The contracts that are still there are unaffected
+        ServiceLocatorUtilities.addClasses(locator, SimpleServiceA.class, SimpleServiceB.class);
+        Assert.assertTrue(locator.getService(SimpleContract.class) instanceof SimpleServiceA);
+        Assert.assertEquals(2, locator.getAllServices(SimpleContract.class).size());
+    }
+    
+    private static long contendedReads(final ServiceLocator locator) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(NUM_THREADS);
+        final AtomicLong misses = new AtomicLong();
+        
+        for (int lcv = 0; lcv < NUM_THREADS; lcv++) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        
+                        for (int lcv2 = 0; lcv2 < LOOKUPS_PER_THREAD; lcv2++) {
+                            if (locator.getService(SimpleContract.class) == null) {
+                                misses.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch (InterruptedException ie) {
+                        // Just finish
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            };
+            
+            t.start();
+        }
+        
+        long elapsed = System.currentTimeMillis();
+        start.countDown();
+        done.await();
+        elapsed = System.currentTimeMillis() - elapsed;
+        
+        Assert.assertEquals(0L, misses.get());
+        
+        return elapsed;
+    }
+    
+    /**
+     * This is a benchmark of lookups done concurrently from many threads,
+     * with and without the snapshot index.  It is ignored since it takes
+     * a long time and the results depend on the number of cores, so
+     * the results are printed out
+     */
+    @Test @Ignore
+    public void testContendedReadPerformance() throws InterruptedException {
+        ServiceLocator locked = createLocator(false);
+        ServiceLocatorUtilities.addClasses(locked, SimpleServiceA.class, SimpleServiceB.class, SimpleServiceC.class);
+        
+        ServiceLocator snapshot = createLocator(true);
+        ServiceLocatorUtilities.addClasses(snapshot, SimpleServiceA.class, SimpleServiceB.class, SimpleServiceC.class);
+        
+        // Warm up both
+        contendedReads(locked);
+        contendedReads(snapshot);
+        
+        long lockedElapsedTime = contendedReads(locked);
+        long snapshotElapsedTime = contendedReads(snapshot);
+        
+        System.out.println(NUM_THREADS + " threads doing " + LOOKUPS_PER_THREAD + " lookups each on " +
+            Runtime.getRuntime().availableProcessors() + " processors.  Read lock time: " + lockedElapsedTime +
+            " snapshot index time: " + snapshotElapsedTime);
+    }
+
+}
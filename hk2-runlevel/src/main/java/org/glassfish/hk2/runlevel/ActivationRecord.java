@@ -0,0 +1,149 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel;
+
+import java.util.List;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+
+/**
+ * Information about the activation of one run level service
+ * (or of a service of another scope created on behalf of a
+ * run level service) as recorded by the {@link RunLevelProfiler}.
+ * All times are in nanoseconds, and start and end times are relative
+ * to the time the profiler was enabled or last cleared
+ * 
+ * @author jwells
+ *
+ */
+public interface ActivationRecord {
+    /**
+     * The descriptor of the service that was activated
+     * 
+     * @return The non-null descriptor of the service
+     */
+    public ActiveDescriptor<?> getActiveDescriptor();
+    
+    /**
+     * The run level of the service that was activated
+     * 
+     * @return The run level of the service
+     */
+    public int getRunLevel();
+    
+    /**
+     * The name of the thread on which the service was activated
+     * 
+     * @return The non-null name of the thread
+     */
+    public String getThreadName();
+    
+    /**
+     * The id of the thread on which the service was activated
+     * 
+     * @return The id of the thread
+     */
+    public long getThreadId();
+    
+    /**
+     * The time at which the creation of the service started
+     * 
+     * @return The start time, in nanoseconds
+     */
+    public long getStartTime();
+    
+    /**
+     * The time at which the creation of the service finished
+     * 
+     * @return The end time, in nanoseconds
+     */
+    public long getEndTime();
+    
+    /**
+     * The total time it took to create the service, including the
+     * time taken to create the services it depends on
+     * 
+     * @return The end time minus the start time, in nanoseconds
+     */
+    public long getDuration();
+    
+    /**
+     * The time it took to create the service not counting the
+     * time taken by the activations in {@link #getChildren()} nor
+     * the time spent blocked
+     * 
+     * @return The exclusive time of this activation, in nanoseconds
+     */
+    public long getSelfTime();
+    
+    /**
+     * The time this activation spent waiting for other threads to
+     * finish creating services it needed
+     * 
+     * @return The blocked time, in nanoseconds
+     */
+    public long getBlockedTime();
+    
+    /**
+     * The activation during which this service was created
+     * 
+     * @return The activation that needed this service, or null
+     * if this service was started directly by the {@link RunLevelController}
+     */
+    public ActivationRecord getParent();
+    
+    /**
+     * The activations of the services that were created on the
+     * same thread in order to create this service, in the order
+     * in which they were started
+     * 
+     * @return A non-null and possibly empty list of nested activations
+     */
+    public List<ActivationRecord> getChildren();
+    
+    /**
+     * Tells whether or not the service was created
+     * 
+     * @return true if the service was created, false if its
+     * creation failed
+     */
+    public boolean isSuccessful();
+
+}
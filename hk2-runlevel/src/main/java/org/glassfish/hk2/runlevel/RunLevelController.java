@@ -154,6 +154,7 @@ public interface RunLevelController {
      * this controller.  The values can be:<OL>
      * <LI>FULLY_THREADED: Use maximumUseableThreads to complete any task</LI>
      * <LI>USE_NO_THREADS: Never create a thread, use the callers thread always</LI>
+     * <LI>VIRTUAL_THREADS: As FULLY_THREADED, but on virtual threads if the JVM supports them</LI>
      * </OL>
      * 
      * @param policy The policy that should be used by this controller
@@ -189,7 +190,9 @@ public interface RunLevelController {
      * @return The currently installed executor.  Will
      * not return null (the default executor implementation
      * will be returned if the user has not supplied an
-     * executor)
+     * executor, which runs tasks on virtual threads if the
+     * threading policy is VIRTUAL_THREADS and the JVM
+     * supports virtual threads)
      */
     public Executor getExecutor();
     
@@ -220,6 +223,28 @@ public interface RunLevelController {
      */
     public void setCancelTimeoutMilliseconds(long cancelTimeout);
     
+    /**
+     * Sets the scheduling policy that will be used by this
+     * controller when bringing up the services of a level.
+     * The values can be:<OL>
+     * <LI>SORTED: Start services in the order given by the {@link Sorter}s</LI>
+     * <LI>DEPENDENCY_GRAPH: Start services after the services of the same
+     * level that they depend on, running independent services in parallel</LI>
+     * </OL>
+     * 
+     * @param policy The non-null scheduling policy that should be used
+     * by this controller
+     */
+    public void setSchedulingPolicy(SchedulingPolicy policy);
+    
+    /**
+     * Returns the scheduling policy currently being used by
+     * this controller
+     * 
+     * @return The scheduling policy currently in use with this controller
+     */
+    public SchedulingPolicy getSchedulingPolicy();
+    
     /**
      * These are the policies for how the RunLevelController
      * will use threads
@@ -243,6 +268,49 @@ public interface RunLevelController {
          * and only one extra thread will be used per non-hung
          * proceedTo
          */
-        USE_NO_THREADS
+        USE_NO_THREADS,
+        
+        /**
+         * The RunLevelController will use threads as with
+         * FULLY_THREADED.  However, if no executor has been set
+         * with {@link RunLevelController#setExecutor(Executor)}
+         * every task will run on its own virtual thread when
+         * the JVM supports virtual threads.  When the JVM does
+         * not support virtual threads this policy behaves exactly
+         * like FULLY_THREADED
+         */
+        VIRTUAL_THREADS
+    }
+    
+    /**
+     * These are the policies for the order in which the
+     * RunLevelController will start the services of a level
+     * 
+     * @author jwells
+     *
+     */
+    public enum SchedulingPolicy {
+        /**
+         * The services of a level are started in the order
+         * given by the {@link Sorter}s.  A service that needs
+         * another service of the same level that is being
+         * started on another thread is put aside and tried
+         * again later
+         */
+        SORTED,
+        
+        /**
+         * The injection points of the services of a level are
+         * used to build a dependency graph, and a service is only
+         * started once all of the services of the same level it
+         * depends on have been started.  Services that do not depend
+         * on each other are started in parallel (as allowed by
+         * the threading policy and MaximumUseableThreads value).
+         * The order given by the {@link Sorter}s is used to choose
+         * between services that are ready at the same time.  Services
+         * that are part of a dependency cycle are started one at
+         * a time once no other service can be started
+         */
+        DEPENDENCY_GRAPH
     }
 }
@@ -0,0 +1,118 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.List;
+
+import org.jvnet.hk2.annotations.Contract;
+
+/**
+ * Records the activation of every service created by the
+ * {@link RunLevelContext}, so that the time taken by
+ * {@link RunLevelController#proceedTo(int)} can be broken down by
+ * service.  The profiler is not enabled by default, it is enabled with
+ * {@link RunLevelServiceUtilities#enableRunLevelProfiler(org.glassfish.hk2.api.ServiceLocator)}
+ * and it starts recording with the next proceedTo
+ * 
+ * @author jwells
+ *
+ */
+@Contract
+public interface RunLevelProfiler {
+    /**
+     * Returns all the activations recorded since the profiler
+     * was enabled or last cleared
+     * 
+     * @return A non-null and possibly empty list of activations,
+     * ordered by start time
+     */
+    public List<ActivationRecord> getActivations();
+    
+    /**
+     * Returns the activations that took the most time, not
+     * counting the time taken to create their dependencies or
+     * the time spent waiting for other threads
+     * 
+     * @param maximum The largest number of activations to return
+     * @return A non-null and possibly empty list of at most maximum
+     * activations, ordered from the largest self time down
+     */
+    public List<ActivationRecord> getSlowestActivations(int maximum);
+    
+    /**
+     * Writes a human readable summary of the slowest activations
+     * 
+     * @param maximum The largest number of activations to write
+     * @param output The non-null stream to write the summary to
+     */
+    public void dumpSlowestActivations(int maximum, PrintStream output);
+    
+    /**
+     * Writes all the recorded activations in the Chrome trace event
+     * JSON format, which can be loaded into chrome://tracing and
+     * similar viewers.  Each thread gets its own track, and nested
+     * activations are shown inside the activation that needed them
+     * 
+     * @param writer The non-null writer to write the trace to.  The
+     * writer is not closed
+     * @throws IOException if the trace could not be written
+     */
+    public void writeChromeTrace(Writer writer) throws IOException;
+    
+    /**
+     * Writes all the recorded activations in the Chrome trace event
+     * JSON format to the given file, as per {@link #writeChromeTrace(Writer)}
+     * 
+     * @param file The non-null file to write (UTF-8) the trace to
+     * @throws IOException if the trace could not be written
+     */
+    public void writeChromeTrace(File file) throws IOException;
+    
+    /**
+     * Removes all recorded activations and resets the
+     * time from which start and end times are measured
+     */
+    public void clear();
+
+}
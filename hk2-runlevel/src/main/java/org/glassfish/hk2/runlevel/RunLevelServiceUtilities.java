@@ -45,6 +45,7 @@ import org.glassfish.hk2.api.AnnotationLiteral;
 import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.runlevel.internal.AsyncRunLevelContext;
 import org.glassfish.hk2.runlevel.internal.RunLevelControllerImpl;
+import org.glassfish.hk2.runlevel.internal.RunLevelProfilerImpl;
 import org.glassfish.hk2.utilities.ServiceLocatorUtilities;
 
 /**
@@ -76,6 +77,28 @@ public class RunLevelServiceUtilities {
                 RunLevelControllerImpl.class);
     }
     
+    /**
+     * Enables the {@link RunLevelProfiler} in the given {@link ServiceLocator}.
+     * If a {@link RunLevelProfiler} is already registered then this
+     * method returns it.  The profiler starts recording activations
+     * at the next {@link RunLevelController#proceedTo(int)}
+     * <p>
+     * Unlike the rest of the RunLevelService the profiler is not marked with
+     * {@link Service}, so it must always be enabled explicitly
+     * 
+     * @param locator the non-null service locator to add
+     * the profiler to
+     * @return The profiler that will record activations
+     */
+    public static RunLevelProfiler enableRunLevelProfiler(ServiceLocator locator) {
+        RunLevelProfiler retVal = locator.getService(RunLevelProfiler.class);
+        if (retVal != null) return retVal;
+        
+        ServiceLocatorUtilities.addClasses(locator, RunLevelProfilerImpl.class);
+        
+        return locator.getService(RunLevelProfiler.class);
+    }
+    
     /**
      * Returns a {@link RunLevel} scope annotation with the
      * given value and RUNLEVEL_MODE_VALIDATING as the mode
@@ -0,0 +1,206 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel.internal;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.runlevel.ActivationRecord;
+
+/**
+ * An activation recorded by the {@link RunLevelProfilerImpl}.
+ * The mutable fields are only written by the thread doing
+ * the activation, and the record is only published to other threads
+ * once the activation has finished
+ * 
+ * @author jwells
+ *
+ */
+class ActivationRecordImpl implements ActivationRecord {
+    private final ActiveDescriptor<?> descriptor;
+    private final int runLevel;
+    private final String threadName;
+    private final long threadId;
+    private final long startTime;
+    private final ActivationRecordImpl parent;
+    private final List<ActivationRecord> children = new LinkedList<ActivationRecord>();
+    
+    private long endTime;
+    private long blockedTime;
+    private boolean successful;
+    
+    /* package */ ActivationRecordImpl(ActiveDescriptor<?> descriptor,
+            int runLevel,
+            Thread thread,
+            long startTime,
+            long blockedTime,
+            ActivationRecordImpl parent) {
+        this.descriptor = descriptor;
+        this.runLevel = runLevel;
+        this.threadName = thread.getName();
+        this.threadId = thread.getId();
+        this.startTime = startTime;
+        this.blockedTime = blockedTime;
+        this.parent = parent;
+        
+        if (parent != null) {
+            parent.children.add(this);
+        }
+    }
+    
+    /* package */ void finished(long endTime, boolean successful) {
+        this.endTime = endTime;
+        this.successful = successful;
+    }
+    
+    /* package */ void addBlockedTime(long blocked) {
+        blockedTime += blocked;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ActivationRecord#getActiveDescriptor()
+     */
+    @Override
+    public ActiveDescriptor<?> getActiveDescriptor() {
+        return descriptor;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ActivationRecord#getRunLevel()
+     */
+    @Override
+    public int getRunLevel() {
+        return runLevel;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ActivationRecord#getThreadName()
+     */
+    @Override
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ActivationRecord#getThreadId()
+     */
+    @Override
+    public long getThreadId() {
+        return threadId;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ActivationRecord#getStartTime()
+     */
+    @Override
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ActivationRecord#getEndTime()
+     */
+    @Override
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ActivationRecord#getDuration()
+     */
+    @Override
+    public long getDuration() {
+        return endTime - startTime;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ActivationRecord#getSelfTime()
+     */
+    @Override
+    public long getSelfTime() {
+        long retVal = getDuration() - blockedTime;
+        for (ActivationRecord child : children) {
+            retVal -= child.getDuration();
+        }
+        
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ActivationRecord#getBlockedTime()
+     */
+    @Override
+    public long getBlockedTime() {
+        return blockedTime;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ActivationRecord#getParent()
+     */
+    @Override
+    public ActivationRecord getParent() {
+        return parent;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ActivationRecord#getChildren()
+     */
+    @Override
+    public List<ActivationRecord> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.ActivationRecord#isSuccessful()
+     */
+    @Override
+    public boolean isSuccessful() {
+        return successful;
+    }
+    
+    @Override
+    public String toString() {
+        return "ActivationRecordImpl(" + descriptor.getImplementation() + "," + runLevel + "," +
+            threadName + "," + getDuration() + "," + System.identityHashCode(this) + ")";
+    }
+
+}
@@ -66,7 +66,9 @@ import org.glassfish.hk2.runlevel.CurrentlyRunningException;
 import org.glassfish.hk2.runlevel.RunLevel;
 import org.glassfish.hk2.runlevel.RunLevelController;
 import org.glassfish.hk2.runlevel.RunLevelFuture;
+import org.glassfish.hk2.runlevel.RunLevelProfiler;
 import org.glassfish.hk2.runlevel.utilities.Utilities;
+import org.glassfish.hk2.utilities.general.GeneralUtilities;
 import org.jvnet.hk2.annotations.Service;
 
 /**
@@ -89,6 +91,10 @@ public class AsyncRunLevelContext {
             new SynchronousQueue<Runnable>(true),
             THREAD_FACTORY);
     
+    /** Null if the JVM does not support virtual threads */
+    private static final Executor VIRTUAL_EXECUTOR =
+            GeneralUtilities.getVirtualThreadPerTaskExecutor(RunLevelControllerThread.class.getSimpleName() + "-");
+    
     /**
      * The backing maps for this context.
      */
@@ -116,12 +122,19 @@ public class AsyncRunLevelContext {
     
     private final LinkedList<ActiveDescriptor<?>> orderedCreationList = new LinkedList<ActiveDescriptor<?>>();
     
-    private Executor executor = DEFAULT_EXECUTOR;
+    /** The executor given by the user, or null if none was given */
+    private Executor executor;
     private final ServiceLocator locator;
     private int maxThreads = Integer.MAX_VALUE;
     private RunLevelController.ThreadingPolicy policy = RunLevelController.ThreadingPolicy.FULLY_THREADED;
+    private RunLevelController.SchedulingPolicy schedulingPolicy = RunLevelController.SchedulingPolicy.SORTED;
     private long cancelTimeout = 5 * 1000;
     
+    /**
+     * The profiler found at the last proceedTo, or null if profiling is not enabled
+     */
+    private volatile RunLevelProfilerImpl profiler;
+    
     /**
      * Constructor for the guy who does the work
      * 
@@ -158,6 +171,9 @@ public class AsyncRunLevelContext {
         
         U retVal = null;
         
+        RunLevelProfilerImpl localProfiler = profiler;
+        long blockedTime = 0L;
+        
         int localCurrentLevel;
         synchronized (this) {
             retVal = (U) backingMap.get(activeDescriptor);
@@ -172,6 +188,11 @@ public class AsyncRunLevelContext {
                 throw new MultiException(new WasCancelledException(activeDescriptor), false);
             }
             
+            long blockStart = 0L;
+            if (localProfiler != null && creatingDescriptors.containsKey(activeDescriptor)) {
+                blockStart = System.nanoTime();
+            }
+            
             while (creatingDescriptors.containsKey(activeDescriptor)) {
                 long holdingLock = creatingDescriptors.get(activeDescriptor);
                 if (holdingLock == Thread.currentThread().getId()) {
@@ -192,8 +213,19 @@ public class AsyncRunLevelContext {
                 }
             }
             
+            if (blockStart != 0L) {
+                blockedTime = System.nanoTime() - blockStart;
+            }
+            
             retVal = (U) backingMap.get(activeDescriptor);
-            if (retVal != null) return retVal;
+            if (retVal != null) {
+                if (blockedTime != 0L) {
+                    // Another thread created it, so the service that needed it was the one blocked
+                    localProfiler.blocked(blockedTime);
+                }
+                
+                return retVal;
+            }
             
             previousException = levelErrorMap.get(activeDescriptor);
             if (previousException != null) {
@@ -216,6 +248,13 @@ public class AsyncRunLevelContext {
             }
         }
         
+        ActivationRecordImpl record = null;
+        if (localProfiler != null) {
+            record = localProfiler.activationStarted(activeDescriptor,
+                    Utilities.getRunLevelValue(locator, activeDescriptor),
+                    blockedTime);
+        }
+        
         RuntimeException error = null;
         try {
             int mode = Utilities.getRunLevelMode(locator, activeDescriptor);
@@ -243,6 +282,10 @@ public class AsyncRunLevelContext {
             throw th;
         }
         finally {
+            if (record != null) {
+                localProfiler.activationFinished(record, retVal != null);
+            }
+            
             synchronized (this) {
                 boolean hardCancelled = hardCancelledDescriptors.remove(activeDescriptor);
                 
@@ -367,22 +410,32 @@ public class AsyncRunLevelContext {
     }
     
     /* package */ synchronized void setExecutor(Executor executor) {
-        if (executor == null) {
-            this.executor = DEFAULT_EXECUTOR;
-        }
-        else {
-            this.executor = executor;
-        }
+        this.executor = executor;
     }
     
     /* package */ synchronized Executor getExecutor() {
-        return executor;
+        if (executor != null) return executor;
+        
+        if (policy.equals(RunLevelController.ThreadingPolicy.VIRTUAL_THREADS) &&
+                (VIRTUAL_EXECUTOR != null)) {
+            return VIRTUAL_EXECUTOR;
+        }
+        
+        return DEFAULT_EXECUTOR;
     }
     
     /* package */ synchronized RunLevelController.ThreadingPolicy getPolicy() {
         return policy;
     }
     
+    /* package */ synchronized void setSchedulingPolicy(RunLevelController.SchedulingPolicy schedulingPolicy) {
+        this.schedulingPolicy = schedulingPolicy;
+    }
+    
+    /* package */ synchronized RunLevelController.SchedulingPolicy getSchedulingPolicy() {
+        return schedulingPolicy;
+    }
+    
     /* package */ List<ActiveDescriptor<?>> getOrderedListOfServicesAtLevel(int level) {
         synchronized (this) {
             LinkedList<ActiveDescriptor<?>> retVal = new LinkedList<ActiveDescriptor<?>>();
@@ -410,20 +463,25 @@ public class AsyncRunLevelContext {
      * @throws CurrentlyRunningException If there is already a running job
      */
     public RunLevelFuture proceedTo(int level) throws CurrentlyRunningException {
+        // Looked up outside the lock, and at every proceedTo so that the profiler can be enabled at any time
+        RunLevelProfiler localProfiler = locator.getService(RunLevelProfiler.class);
+        profiler = (localProfiler instanceof RunLevelProfilerImpl) ? (RunLevelProfilerImpl) localProfiler : null;
+        
         CurrentTaskFutureWrapper localTask;
         synchronized (this) {
-            boolean fullyThreaded = policy.equals(RunLevelController.ThreadingPolicy.FULLY_THREADED);
+            boolean fullyThreaded = !policy.equals(RunLevelController.ThreadingPolicy.USE_NO_THREADS);
             
             if (currentTask != null) {
                 throw new CurrentlyRunningException(currentTask);
             }
             
             currentTask = new CurrentTaskFutureWrapper(new CurrentTaskFuture(this,
-                    executor,
+                    getExecutor(),
                     locator,
                     level,
                     maxThreads,
                     fullyThreaded,
+                    schedulingPolicy,
                     cancelTimeout,
                     timer));
             
@@ -39,14 +39,25 @@
  */
 package org.glassfish.hk2.runlevel.internal;
 
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.glassfish.hk2.api.ActiveDescriptor;
 import org.glassfish.hk2.api.Descriptor;
@@ -58,6 +69,7 @@ import org.glassfish.hk2.api.ServiceLocator;
 import org.glassfish.hk2.runlevel.ChangeableRunLevelFuture;
 import org.glassfish.hk2.runlevel.ErrorInformation;
 import org.glassfish.hk2.runlevel.RunLevel;
+import org.glassfish.hk2.runlevel.RunLevelController;
 import org.glassfish.hk2.runlevel.RunLevelListener;
 import org.glassfish.hk2.runlevel.Sorter;
 import org.glassfish.hk2.runlevel.utilities.Utilities;
@@ -72,11 +84,14 @@ import org.glassfish.hk2.runlevel.utilities.Utilities;
  *
  */
 public class CurrentTaskFuture implements ChangeableRunLevelFuture {
+    private static final Logger logger = Logger.getLogger(CurrentTaskFuture.class.getName());
+    
     private final AsyncRunLevelContext asyncContext;
     private final Executor executor;
     private final ServiceLocator locator;
     private int proposedLevel;
     private final boolean useThreads;
+    private final RunLevelController.SchedulingPolicy schedulingPolicy;
     private final List<ServiceHandle<RunLevelListener>> allListenerHandles;
     private final List<ServiceHandle<Sorter>> allSorterHandles;
     private final int maxThreads;
@@ -96,6 +111,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
             int proposedLevel,
             int maxThreads,
             boolean useThreads,
+            RunLevelController.SchedulingPolicy schedulingPolicy,
             long cancelTimeout,
             Timer timer) {
         this.asyncContext = asyncContext;
@@ -103,6 +119,7 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
         this.locator = locator;
         this.proposedLevel = proposedLevel;
         this.useThreads = useThreads;
+        this.schedulingPolicy = schedulingPolicy;
         this.maxThreads = maxThreads;
         this.cancelTimeout = cancelTimeout;
         this.timer = timer;
@@ -741,6 +758,20 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
                 return;
             }
             
+            if (RunLevelController.SchedulingPolicy.DEPENDENCY_GRAPH.equals(schedulingPolicy)) {
+                DependencyGraph graph = new DependencyGraph(upToThisLevel, jobs, this, lock);
+                
+                int runnersToCreate = ((graph.getWidth() < maxThreads) ? graph.getWidth() : maxThreads) - 1;
+                if (!useThreads) runnersToCreate = 0;
+                
+                for (int lcv = 0; lcv < runnersToCreate; lcv++) {
+                    executor.execute(graph);
+                }
+                
+                graph.run();
+                return;
+            }
+            
             int runnersToCreate = ((numJobs < maxThreads) ? numJobs : maxThreads) - 1;
             if (!useThreads) runnersToCreate = 0;
             
@@ -1245,6 +1276,362 @@ public class CurrentTaskFuture implements ChangeableRunLevelFuture {
         }
     }
     
+    /**
+     * Starts the services of one level in the order of the graph
+     * formed by their injection points.  A service is made ready once
+     * every service of the same level it depends on (directly, or
+     * through services of other scopes) has been started.  Every thread
+     * working on the level runs this same object, taking ready services
+     * until all services have been started
+     * 
+     * @author jwells
+     *
+     */
+    private class DependencyGraph implements Runnable {
+        private final Object graphLock = new Object();
+        private final UpOneLevel parent;
+        private final Object parentLock;
+        private final List<GraphNode> nodes;
+        private final PriorityQueue<GraphNode> ready;
+        private final LinkedList<GraphNode> wouldHaveBlocked = new LinkedList<GraphNode>();
+        private int remaining;
+        private int running;
+        private int width;
+        
+        private DependencyGraph(int level,
+                List<ServiceHandle<?>> jobs,
+                UpOneLevel parent,
+                Object parentLock) {
+            this.parent = parent;
+            this.parentLock = parentLock;
+            
+            LinkedHashMap<ActiveDescriptor<?>, GraphNode> byDescriptor =
+                    new LinkedHashMap<ActiveDescriptor<?>, GraphNode>();
+            int order = 0;
+            for (ServiceHandle<?> job : jobs) {
+                byDescriptor.put(job.getActiveDescriptor(), new GraphNode(job, order++));
+            }
+            
+            HashMap<ActiveDescriptor<?>, Set<GraphNode>> reachable = new HashMap<ActiveDescriptor<?>, Set<GraphNode>>();
+            for (GraphNode node : byDescriptor.values()) {
+                for (GraphNode dependency : getDependencies(node.handle.getActiveDescriptor(), byDescriptor, reachable)) {
+                    if (dependency == node) continue;
+                    
+                    dependency.dependents.add(node);
+                    node.waitingOn++;
+                }
+            }
+            
+            nodes = new LinkedList<GraphNode>(byDescriptor.values());
+            remaining = nodes.size();
+            ready = new PriorityQueue<GraphNode>(remaining, new Comparator<GraphNode>() {
+
+                @Override
+                public int compare(GraphNode o1, GraphNode o2) {
+                    return o1.order - o2.order;
+                }
+                
+            });
+            
+            int criticalPath = analyze();
+            
+            for (GraphNode node : nodes) {
+                if (node.waitingOn == 0) {
+                    node.dispatched = true;
+                    ready.add(node);
+                }
+            }
+            
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "Run level {0} has {1} services with a critical path of {2} services and {3} services in dependency cycles",
+                        new Object[] { level, nodes.size(), criticalPath, remaining - countAcyclic() });
+            }
+        }
+        
+        /**
+         * Finds the services of this level that the given service
+         * needs in order to be created, following the injection points
+         * of services of other scopes
+         */
+        private Set<GraphNode> getDependencies(ActiveDescriptor<?> descriptor,
+                Map<ActiveDescriptor<?>, GraphNode> byDescriptor,
+                Map<ActiveDescriptor<?>, Set<GraphNode>> reachable) {
+            LinkedHashSet<GraphNode> retVal = new LinkedHashSet<GraphNode>();
+            
+            if (!descriptor.isReified()) {
+                try {
+                    descriptor = locator.reifyDescriptor(descriptor);
+                }
+                catch (MultiException me) {
+                    // The failure will be reported when the service is created
+                    return retVal;
+                }
+            }
+            
+            for (Injectee ip : descriptor.getInjectees()) {
+                ActiveDescriptor<?> childService;
+                try {
+                    childService = locator.getInjecteeDescriptor(ip);
+                }
+                catch (MultiException me) {
+                    continue;
+                }
+                
+                if (childService == null) continue;
+                
+                GraphNode childNode = byDescriptor.get(childService);
+                if (childNode != null) {
+                    retVal.add(childNode);
+                    continue;
+                }
+                
+                // Services of other levels are either already up or are a validation error
+                if (RunLevel.class.getName().equals(childService.getScope())) continue;
+                
+                Set<GraphNode> childDependencies = reachable.get(childService);
+                if (childDependencies == null) {
+                    // Guards against cycles amongst the services of other scopes
+                    reachable.put(childService, Collections.<GraphNode>emptySet());
+                    
+                    childDependencies = getDependencies(childService, byDescriptor, reachable);
+                    reachable.put(childService, childDependencies);
+                }
+                
+                retVal.addAll(childDependencies);
+            }
+            
+            return retVal;
+        }
+        
+        /**
+         * Walks the graph in topological order, setting the depth of
+         * every node that is not part of a cycle and the width of
+         * the graph (the largest number of nodes at the same depth)
+         * 
+         * @return The number of services in the longest dependency chain
+         */
+        private int analyze() {
+            HashMap<GraphNode, Integer> inDegrees = new HashMap<GraphNode, Integer>();
+            HashMap<GraphNode, Integer> depths = new HashMap<GraphNode, Integer>();
+            LinkedList<GraphNode> roots = new LinkedList<GraphNode>();
+            for (GraphNode node : nodes) {
+                inDegrees.put(node, node.waitingOn);
+                if (node.waitingOn == 0) {
+                    depths.put(node, 1);
+                    roots.add(node);
+                }
+            }
+            
+            HashMap<Integer, Integer> nodesAtDepth = new HashMap<Integer, Integer>();
+            int criticalPath = 0;
+            while (!roots.isEmpty()) {
+                GraphNode node = roots.removeFirst();
+                node.depth = depths.get(node);
+                
+                if (node.depth > criticalPath) criticalPath = node.depth;
+                
+                Integer atDepth = nodesAtDepth.get(node.depth);
+                atDepth = (atDepth == null) ? 1 : atDepth + 1;
+                nodesAtDepth.put(node.depth, atDepth);
+                if (atDepth > width) width = atDepth;
+                
+                for (GraphNode dependent : node.dependents) {
+                    Integer dependentDepth = depths.get(dependent);
+                    if (dependentDepth == null || dependentDepth <= node.depth) {
+                        depths.put(dependent, node.depth + 1);
+                    }
+                    
+                    int inDegree = inDegrees.get(dependent) - 1;
+                    inDegrees.put(dependent, inDegree);
+                    if (inDegree == 0) roots.add(dependent);
+                }
+            }
+            
+            if (width == 0) {
+                // Everything is in a cycle, which will be run one at a time
+                width = 1;
+            }
+            
+            return criticalPath;
+        }
+        
+        private int countAcyclic() {
+            int retVal = 0;
+            for (GraphNode node : nodes) {
+                if (node.depth > 0) retVal++;
+            }
+            
+            return retVal;
+        }
+        
+        /**
+         * The most services that can be started at the same time
+         * 
+         * @return The number of threads that can be used to start this level
+         */
+        private int getWidth() {
+            return width;
+        }
+        
+        /**
+         * Called with the graphLock held when nothing is ready and nothing is
+         * running.  Picks the first service (in sorted order) that has
+         * not been started, which is waiting on a cycle
+         */
+        private GraphNode breakCycle() {
+            GraphNode retVal = null;
+            for (GraphNode node : nodes) {
+                if (node.dispatched) continue;
+                
+                if (retVal == null || node.order < retVal.order) {
+                    retVal = node;
+                }
+            }
+            
+            if (retVal != null) retVal.dispatched = true;
+            
+            return retVal;
+        }
+
+        @Override
+        public void run() {
+            for (;;) {
+                GraphNode node;
+                boolean block;
+                synchronized (graphLock) {
+                    for (;;) {
+                        if (remaining <= 0) return;
+                        
+                        node = ready.poll();
+                        if (node != null) {
+                            block = false;
+                            break;
+                        }
+                        
+                        if (running <= 0) {
+                            // Nothing running can make anything else ready
+                            if (!wouldHaveBlocked.isEmpty()) {
+                                node = wouldHaveBlocked.removeFirst();
+                                block = true;
+                                break;
+                            }
+                            
+                            node = breakCycle();
+                            if (node == null) return;
+                            
+                            block = false;
+                            break;
+                        }
+                        
+                        try {
+                            graphLock.wait();
+                        }
+                        catch (InterruptedException ie) {
+                            throw new RuntimeException(ie);
+                        }
+                    }
+                    
+                    running++;
+                    parent.jobRunning(node.handle);
+                }
+                
+                boolean completed = oneJob(node.handle, block);
+                
+                synchronized (graphLock) {
+                    running--;
+                    parent.jobFinished(node.handle);
+                    
+                    if (completed) {
+                        remaining--;
+                        
+                        for (GraphNode dependent : node.dependents) {
+                            dependent.waitingOn--;
+                            if (dependent.waitingOn == 0 && !dependent.dispatched) {
+                                dependent.dispatched = true;
+                                ready.add(dependent);
+                            }
+                        }
+                        
+                        // Something has been started, so those that would have blocked can try again
+                        ready.addAll(wouldHaveBlocked);
+                        wouldHaveBlocked.clear();
+                    }
+                    else {
+                        wouldHaveBlocked.add(node);
+                    }
+                    
+                    graphLock.notifyAll();
+                }
+                
+                if (completed) {
+                    parent.jobComplete();
+                }
+            }
+        }
+        
+        /**
+         * Starts one service
+         * 
+         * @return false if the service would have blocked on a service
+         * being created by another thread, true otherwise
+         */
+        private boolean oneJob(ServiceHandle<?> fService, boolean block) {
+            fService.setServiceData(!block);
+            try {
+                boolean ok;
+                synchronized (parentLock) {
+                    ok = (!parent.cancelled && (parent.accumulatedExceptions == null));
+                }
+                
+                if (ok) {
+                    fService.getService();
+                }
+            }
+            catch (MultiException me) {
+                if (!block && isWouldBlock(me)) {
+                    return false;
+                }
+                
+                if (!isWasCancelled(me)) {
+                    parent.fail(me, fService.getActiveDescriptor());
+                }
+            }
+            catch (Throwable th) {
+                parent.fail(th, fService.getActiveDescriptor());
+            }
+            finally {
+                fService.setServiceData(null);
+            }
+            
+            return true;
+        }
+    }
+    
+    private static class GraphNode {
+        private final ServiceHandle<?> handle;
+        private final int order;
+        private final List<GraphNode> dependents = new LinkedList<GraphNode>();
+        
+        /** The number of dependencies not yet started, only changed with the graphLock held */
+        private int waitingOn;
+        
+        /** The number of services in the longest chain ending at this one, 0 if in a cycle */
+        private int depth;
+        
+        /** True once this node has been put in the ready queue or picked to break a cycle */
+        private boolean dispatched;
+        
+        private GraphNode(ServiceHandle<?> handle, int order) {
+            this.handle = handle;
+            this.order = order;
+        }
+        
+        @Override
+        public String toString() {
+            return "GraphNode(" + handle.getActiveDescriptor().getImplementation() + "," + order + ")";
+        }
+    }
+    
     private static class DownQueueRunner implements Runnable {
         private final Object queueLock;
         private final List<ActiveDescriptor<?>> queue;
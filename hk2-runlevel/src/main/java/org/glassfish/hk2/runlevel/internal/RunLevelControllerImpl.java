@@ -174,5 +174,16 @@ public class RunLevelControllerImpl implements RunLevelController {
         
         context.setCancelTimeout(cancelTimeout);
     }
+    
+    @Override
+    public void setSchedulingPolicy(SchedulingPolicy policy) {
+        if (policy == null) throw new IllegalArgumentException();
+        context.setSchedulingPolicy(policy);
+    }
+    
+    @Override
+    public SchedulingPolicy getSchedulingPolicy() {
+        return context.getSchedulingPolicy();
+    }
 
 }
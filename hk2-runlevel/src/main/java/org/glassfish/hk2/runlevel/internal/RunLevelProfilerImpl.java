@@ -0,0 +1,371 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.inject.Singleton;
+
+import org.glassfish.hk2.api.ActiveDescriptor;
+import org.glassfish.hk2.runlevel.ActivationRecord;
+import org.glassfish.hk2.runlevel.RunLevelProfiler;
+import org.jvnet.hk2.annotations.ContractsProvided;
+
+/**
+ * The implementation of the {@link RunLevelProfiler}.  This is
+ * purposefully not marked with &#64;Service so that it is only ever
+ * enabled explicitly
+ * 
+ * @author jwells
+ *
+ */
+@Singleton @ContractsProvided(RunLevelProfiler.class)
+public class RunLevelProfilerImpl implements RunLevelProfiler {
+    private final static String TRACE_CATEGORY = "hk2-runlevel";
+    
+    private final ConcurrentLinkedQueue<ActivationRecordImpl> activations = new ConcurrentLinkedQueue<ActivationRecordImpl>();
+    private volatile long baseTime = System.nanoTime();
+    
+    /**
+     * The activations currently in progress on each thread, innermost first
+     */
+    private final ThreadLocal<LinkedList<ActivationRecordImpl>> inProgress = new ThreadLocal<LinkedList<ActivationRecordImpl>>() {
+        @Override
+        protected LinkedList<ActivationRecordImpl> initialValue() {
+            return new LinkedList<ActivationRecordImpl>();
+        }
+        
+    };
+    
+    /**
+     * Called by the {@link AsyncRunLevelContext} just before it creates a service
+     * 
+     * @param descriptor The service about to be created
+     * @param runLevel The run level of the service
+     * @param blockedTime Time already spent waiting for another thread
+     * to create this service
+     * @return The record to pass to {@link #activationFinished(ActivationRecordImpl, boolean)}
+     */
+    /* package */ ActivationRecordImpl activationStarted(ActiveDescriptor<?> descriptor, int runLevel, long blockedTime) {
+        LinkedList<ActivationRecordImpl> stack = inProgress.get();
+        
+        ActivationRecordImpl retVal = new ActivationRecordImpl(descriptor,
+                runLevel,
+                Thread.currentThread(),
+                System.nanoTime() - baseTime,
+                blockedTime,
+                stack.peekFirst());
+        
+        stack.addFirst(retVal);
+        
+        return retVal;
+    }
+    
+    /**
+     * Called by the {@link AsyncRunLevelContext} when it has finished creating a service
+     * 
+     * @param record The record returned from activationStarted
+     * @param successful true if the service was created
+     */
+    /* package */ void activationFinished(ActivationRecordImpl record, boolean successful) {
+        record.finished(System.nanoTime() - baseTime, successful);
+        
+        inProgress.get().remove(record);
+        
+        if (record.getParent() == null) {
+            // Nested records are reachable from their parent
+            activations.add(record);
+        }
+    }
+    
+    /**
+     * Called by the {@link AsyncRunLevelContext} when this thread had to wait
+     * for another thread to create a service, which it then did not create itself
+     * 
+     * @param blockedTime The time spent waiting
+     */
+    /* package */ void blocked(long blockedTime) {
+        ActivationRecordImpl current = inProgress.get().peekFirst();
+        if (current == null) return;
+        
+        current.addBlockedTime(blockedTime);
+    }
+    
+    private static void addAll(List<ActivationRecord> addTo, ActivationRecord record) {
+        addTo.add(record);
+        
+        for (ActivationRecord child : record.getChildren()) {
+            addAll(addTo, child);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelProfiler#getActivations()
+     */
+    @Override
+    public List<ActivationRecord> getActivations() {
+        ArrayList<ActivationRecord> retVal = new ArrayList<ActivationRecord>();
+        for (ActivationRecordImpl record : activations) {
+            addAll(retVal, record);
+        }
+        
+        Collections.sort(retVal, new Comparator<ActivationRecord>() {
+
+            @Override
+            public int compare(ActivationRecord o1, ActivationRecord o2) {
+                return compareLongs(o1.getStartTime(), o2.getStartTime());
+            }
+            
+        });
+        
+        return retVal;
+    }
+    
+    private static int compareLongs(long a, long b) {
+        if (a < b) return -1;
+        if (a > b) return 1;
+        return 0;
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelProfiler#getSlowestActivations(int)
+     */
+    @Override
+    public List<ActivationRecord> getSlowestActivations(int maximum) {
+        List<ActivationRecord> retVal = getActivations();
+        
+        Collections.sort(retVal, new Comparator<ActivationRecord>() {
+
+            @Override
+            public int compare(ActivationRecord o1, ActivationRecord o2) {
+                return compareLongs(o2.getSelfTime(), o1.getSelfTime());
+            }
+            
+        });
+        
+        if (retVal.size() <= maximum) return retVal;
+        
+        return new ArrayList<ActivationRecord>(retVal.subList(0, (maximum < 0) ? 0 : maximum));
+    }
+    
+    private static String millis(long nanos) {
+        return thousandths(nanos / 1000L);
+    }
+    
+    /**
+     * Formats the value divided by 1000 with three decimal places, without
+     * using the default locale (which might use a comma).  Given nanoseconds
+     * this returns microseconds
+     */
+    private static String thousandths(long value) {
+        StringBuilder sb = new StringBuilder();
+        if (value < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        
+        sb.append(value / 1000L).append('.');
+        
+        String fraction = Long.toString(value % 1000L);
+        for (int lcv = fraction.length(); lcv < 3; lcv++) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+        
+        return sb.toString();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelProfiler#dumpSlowestActivations(int, java.io.PrintStream)
+     */
+    @Override
+    public void dumpSlowestActivations(int maximum, PrintStream output) {
+        List<ActivationRecord> all = getActivations();
+        List<ActivationRecord> slowest = getSlowestActivations(maximum);
+        
+        output.println("Slowest " + slowest.size() + " of " + all.size() +
+            " activations (self/total/blocked milliseconds, level, thread, service):");
+        for (ActivationRecord record : slowest) {
+            output.println("  " + millis(record.getSelfTime()) + "/" +
+                millis(record.getDuration()) + "/" +
+                millis(record.getBlockedTime()) + " " +
+                record.getRunLevel() + " " +
+                record.getThreadName() + " " +
+                record.getActiveDescriptor().getImplementation() +
+                (record.isSuccessful() ? "" : " (failed)"));
+        }
+    }
+    
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        
+        for (int lcv = 0; lcv < value.length(); lcv++) {
+            char c = value.charAt(lcv);
+            switch (c) {
+            case '"':
+                writer.write("\\\"");
+                break;
+            case '\\':
+                writer.write("\\\\");
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            case '\r':
+                writer.write("\\r");
+                break;
+            case '\t':
+                writer.write("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    String hex = Integer.toHexString(c);
+                    writer.write("\\u");
+                    for (int pad = hex.length(); pad < 4; pad++) {
+                        writer.write('0');
+                    }
+                    writer.write(hex);
+                }
+                else {
+                    writer.write(c);
+                }
+            }
+        }
+        
+        writer.write('"');
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelProfiler#writeChromeTrace(java.io.Writer)
+     */
+    @Override
+    public void writeChromeTrace(Writer writer) throws IOException {
+        List<ActivationRecord> all = getActivations();
+        
+        Map<Long, String> threads = new LinkedHashMap<Long, String>();
+        for (ActivationRecord record : all) {
+            if (!threads.containsKey(record.getThreadId())) {
+                threads.put(record.getThreadId(), record.getThreadName());
+            }
+        }
+        
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        
+        boolean first = true;
+        for (Map.Entry<Long, String> thread : threads.entrySet()) {
+            if (!first) writer.write(',');
+            first = false;
+            
+            writer.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":");
+            writer.write(Long.toString(thread.getKey()));
+            writer.write(",\"args\":{\"name\":");
+            writeString(writer, thread.getValue());
+            writer.write("}}");
+        }
+        
+        for (ActivationRecord record : all) {
+            if (!first) writer.write(',');
+            first = false;
+            
+            writer.write("\n{\"name\":");
+            writeString(writer, String.valueOf(record.getActiveDescriptor().getImplementation()));
+            writer.write(",\"cat\":");
+            writeString(writer, TRACE_CATEGORY);
+            writer.write(",\"ph\":\"X\",\"pid\":1,\"tid\":");
+            writer.write(Long.toString(record.getThreadId()));
+            writer.write(",\"ts\":");
+            writer.write(thousandths(record.getStartTime()));
+            writer.write(",\"dur\":");
+            writer.write(thousandths(record.getDuration()));
+            writer.write(",\"args\":{\"runLevel\":");
+            writer.write(Integer.toString(record.getRunLevel()));
+            writer.write(",\"blockedMicroseconds\":");
+            writer.write(thousandths(record.getBlockedTime()));
+            writer.write(",\"successful\":");
+            writer.write(Boolean.toString(record.isSuccessful()));
+            writer.write("}}");
+        }
+        
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelProfiler#writeChromeTrace(java.io.File)
+     */
+    @Override
+    public void writeChromeTrace(File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writeChromeTrace(writer);
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.glassfish.hk2.runlevel.RunLevelProfiler#clear()
+     */
+    @Override
+    public void clear() {
+        activations.clear();
+        baseTime = System.nanoTime();
+    }
+    
+    @Override
+    public String toString() {
+        return "RunLevelProfilerImpl(" + activations.size() + "," + System.identityHashCode(this) + ")";
+    }
+
+}
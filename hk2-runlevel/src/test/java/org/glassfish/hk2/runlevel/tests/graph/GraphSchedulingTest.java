@@ -0,0 +1,267 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel.tests.graph;
+
+import java.text.MessageFormat;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.RunLevelController;
+import org.glassfish.hk2.runlevel.internal.CurrentTaskFuture;
+import org.glassfish.hk2.runlevel.tests.utilities.Utilities;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the DEPENDENCY_GRAPH scheduling policy
+ * 
+ * @author jwells
+ *
+ */
+public class GraphSchedulingTest {
+    /* package */ final static String HEAD = "head";
+    /* package */ final static String MIDDLE = "middle";
+    /* package */ final static String TAIL = "tail";
+    
+    private final static Logger LOGGER = Logger.getLogger(CurrentTaskFuture.class.getName());
+    
+    private final List<String> messages = new LinkedList<String>();
+    private Level originalLevel;
+    
+    private final Handler handler = new Handler() {
+
+        @Override
+        public void publish(LogRecord record) {
+            synchronized (messages) {
+                messages.add(MessageFormat.format(record.getMessage(), record.getParameters()));
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws SecurityException {
+        }
+        
+    };
+    
+    @Before
+    public void before() {
+        originalLevel = LOGGER.getLevel();
+        LOGGER.setLevel(Level.FINE);
+        LOGGER.addHandler(handler);
+    }
+    
+    @After
+    public void after() {
+        LOGGER.removeHandler(handler);
+        LOGGER.setLevel(originalLevel);
+    }
+    
+    private String getOnlyMessage() {
+        synchronized (messages) {
+            Assert.assertEquals(messages.toString(), 1, messages.size());
+            return messages.get(0);
+        }
+    }
+    
+    private static RunLevelController getController(ServiceLocator locator) {
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        controller.setSchedulingPolicy(RunLevelController.SchedulingPolicy.DEPENDENCY_GRAPH);
+        
+        return controller;
+    }
+    
+    /**
+     * Tests that the default scheduling policy is SORTED, and that it can be changed
+     */
+    @Test
+    public void testSchedulingPolicyValues() {
+        ServiceLocator locator = Utilities.getServiceLocator();
+        
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        Assert.assertEquals(RunLevelController.SchedulingPolicy.SORTED, controller.getSchedulingPolicy());
+        
+        controller.setSchedulingPolicy(RunLevelController.SchedulingPolicy.DEPENDENCY_GRAPH);
+        Assert.assertEquals(RunLevelController.SchedulingPolicy.DEPENDENCY_GRAPH, controller.getSchedulingPolicy());
+        
+        try {
+            controller.setSchedulingPolicy(null);
+            Assert.fail("Should not have been able to set a null scheduling policy");
+        }
+        catch (IllegalArgumentException iae) {
+            // Expected
+        }
+    }
+    
+    /**
+     * Tests that a chain of services (one link of which goes through
+     * a service of another scope) is started from the tail, and that
+     * the critical path is the length of the chain
+     */
+    @Test
+    public void testChainStartedInDependencyOrder() {
+        ServiceLocator locator = Utilities.getServiceLocator(ChainHead.class,
+                ChainMiddle.class,
+                ChainHelper.class,
+                ChainTail.class,
+                GraphRecorder.class);
+        
+        RunLevelController controller = getController(locator);
+        controller.setMaximumUseableThreads(1);
+        
+        controller.proceedTo(1);
+        
+        List<String> record = locator.getService(GraphRecorder.class).getRecord();
+        Assert.assertEquals(3, record.size());
+        Assert.assertEquals(TAIL, record.get(0));
+        Assert.assertEquals(MIDDLE, record.get(1));
+        Assert.assertEquals(HEAD, record.get(2));
+        
+        Assert.assertEquals("Run level 1 has 3 services with a critical path of 3 services and 0 services in dependency cycles",
+                getOnlyMessage());
+    }
+    
+    /**
+     * Tests that services that do not depend on each other are
+     * started at the same time
+     */
+    @Test
+    public void testIndependentServicesStartedInParallel() {
+        ServiceLocator locator = Utilities.getServiceLocator(ParallelOne.class,
+                ParallelTwo.class,
+                ParallelThree.class,
+                GraphRecorder.class);
+        
+        RunLevelController controller = getController(locator);
+        
+        controller.proceedTo(1);
+        
+        Assert.assertTrue(locator.getService(ParallelOne.class).isStartedInParallel());
+        Assert.assertTrue(locator.getService(ParallelTwo.class).isStartedInParallel());
+        Assert.assertTrue(locator.getService(ParallelThree.class).isStartedInParallel());
+        
+        Assert.assertEquals("Run level 1 has 3 services with a critical path of 1 services and 0 services in dependency cycles",
+                getOnlyMessage());
+    }
+    
+    /**
+     * Tests that services that refer to each other with a
+     * Provider do not depend on each other
+     */
+    @Test
+    public void testProviderIsNotADependency() {
+        ServiceLocator locator = Utilities.getServiceLocator(LazyOne.class,
+                LazyTwo.class);
+        
+        RunLevelController controller = getController(locator);
+        
+        controller.proceedTo(1);
+        
+        LazyOne one = locator.getService(LazyOne.class);
+        LazyTwo two = locator.getService(LazyTwo.class);
+        
+        Assert.assertSame(two, one.getTwo());
+        Assert.assertSame(one, two.getOne());
+        
+        Assert.assertEquals("Run level 1 has 2 services with a critical path of 1 services and 0 services in dependency cycles",
+                getOnlyMessage());
+    }
+    
+    /**
+     * Tests that services in a dependency cycle are tried one at
+     * a time, so that the cycle is reported as an error even when
+     * many threads are allowed
+     */
+    @Test
+    public void testCycleIsReported() {
+        ServiceLocator locator = Utilities.getServiceLocator(CycleOne.class,
+                CycleTwo.class);
+        
+        RunLevelController controller = getController(locator);
+        
+        try {
+            controller.proceedTo(1);
+            Assert.fail("A dependency cycle should not have been started");
+        }
+        catch (MultiException me) {
+            Assert.assertTrue(me.getMessage(), me.getMessage().contains("Circular dependency"));
+        }
+        
+        Assert.assertEquals(0, controller.getCurrentRunLevel());
+        
+        Assert.assertEquals("Run level 1 has 2 services with a critical path of 0 services and 2 services in dependency cycles",
+                getOnlyMessage());
+    }
+    
+    /**
+     * Tests that services come down after having been brought up in dependency order
+     */
+    @Test
+    public void testDownAfterGraphUp() {
+        ServiceLocator locator = Utilities.getServiceLocator(ChainHead.class,
+                ChainMiddle.class,
+                ChainHelper.class,
+                ChainTail.class,
+                GraphRecorder.class);
+        
+        RunLevelController controller = getController(locator);
+        
+        controller.proceedTo(1);
+        Assert.assertEquals(1, controller.getCurrentRunLevel());
+        
+        controller.proceedTo(0);
+        Assert.assertEquals(0, controller.getCurrentRunLevel());
+        
+        controller.proceedTo(1);
+        Assert.assertEquals(6, locator.getService(GraphRecorder.class).getRecord().size());
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel.tests.profiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.ActivationRecord;
+import org.glassfish.hk2.runlevel.RunLevelController;
+import org.glassfish.hk2.runlevel.RunLevelProfiler;
+import org.glassfish.hk2.runlevel.RunLevelServiceUtilities;
+import org.glassfish.hk2.runlevel.tests.utilities.Utilities;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link RunLevelProfiler}
+ * 
+ * @author jwells
+ *
+ */
+public class ProfilerTest {
+    private static ActivationRecord find(List<ActivationRecord> records, Class<?> implementation) {
+        ActivationRecord retVal = null;
+        for (ActivationRecord record : records) {
+            if (implementation.getName().equals(record.getActiveDescriptor().getImplementation())) {
+                Assert.assertNull("Found two records for " + implementation.getName(), retVal);
+                retVal = record;
+            }
+        }
+        
+        Assert.assertNotNull("No record for " + implementation.getName(), retVal);
+        return retVal;
+    }
+    
+    /**
+     * Tests that the profiler is not there unless enabled, and that
+     * enabling it twice gives the same profiler
+     */
+    @Test
+    public void testProfilerOnlyWhenEnabled() {
+        ServiceLocator locator = Utilities.getServiceLocator(QuickService.class,
+                SlowService.class);
+        
+        Assert.assertNull(locator.getService(RunLevelProfiler.class));
+        
+        locator.getService(RunLevelController.class).proceedTo(1);
+        
+        Assert.assertNull(locator.getService(RunLevelProfiler.class));
+        
+        RunLevelProfiler profiler = RunLevelServiceUtilities.enableRunLevelProfiler(locator);
+        Assert.assertNotNull(profiler);
+        Assert.assertSame(profiler, RunLevelServiceUtilities.enableRunLevelProfiler(locator));
+        
+        Assert.assertTrue(profiler.getActivations().isEmpty());
+    }
+    
+    /**
+     * Tests the records of a service that needs another service
+     */
+    @Test
+    public void testNestedActivations() {
+        ServiceLocator locator = Utilities.getServiceLocator(QuickService.class,
+                SlowService.class,
+                LevelTwoService.class);
+        
+        RunLevelProfiler profiler = RunLevelServiceUtilities.enableRunLevelProfiler(locator);
+        
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        controller.setMaximumUseableThreads(1);
+        controller.proceedTo(2);
+        
+        List<ActivationRecord> records = profiler.getActivations();
+        Assert.assertEquals(records.toString(), 3, records.size());
+        
+        ActivationRecord quick = find(records, QuickService.class);
+        ActivationRecord slow = find(records, SlowService.class);
+        ActivationRecord two = find(records, LevelTwoService.class);
+        
+        Assert.assertNull(quick.getParent());
+        Assert.assertEquals(1, quick.getChildren().size());
+        Assert.assertSame(slow, quick.getChildren().get(0));
+        Assert.assertSame(quick, slow.getParent());
+        Assert.assertEquals(quick.getThreadId(), slow.getThreadId());
+        
+        Assert.assertEquals(1, quick.getRunLevel());
+        Assert.assertEquals(1, slow.getRunLevel());
+        Assert.assertEquals(2, two.getRunLevel());
+        
+        Assert.assertTrue(quick.isSuccessful());
+        Assert.assertTrue(slow.isSuccessful());
+        Assert.assertTrue(two.isSuccessful());
+        
+        long slowTime = TimeUnit.MILLISECONDS.toNanos(SlowService.SLOW_TIME);
+        Assert.assertTrue(slow.getSelfTime() >= slowTime);
+        Assert.assertTrue(quick.getDuration() >= slow.getDuration());
+        Assert.assertTrue(quick.getStartTime() <= slow.getStartTime());
+        Assert.assertTrue(quick.getEndTime() >= slow.getEndTime());
+        Assert.assertEquals(quick.getDuration() - slow.getDuration(), quick.getSelfTime());
+        Assert.assertTrue(two.getStartTime() >= quick.getEndTime());
+        
+        List<ActivationRecord> slowest = profiler.getSlowestActivations(1);
+        Assert.assertEquals(1, slowest.size());
+        Assert.assertSame(slow, slowest.get(0));
+        
+        Assert.assertEquals(3, profiler.getSlowestActivations(10).size());
+        
+        profiler.clear();
+        Assert.assertTrue(profiler.getActivations().isEmpty());
+    }
+    
+    /**
+     * Tests the summary and the chrome trace output
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testExports() throws Exception {
+        ServiceLocator locator = Utilities.getServiceLocator(QuickService.class,
+                SlowService.class,
+                LevelTwoService.class);
+        
+        RunLevelProfiler profiler = RunLevelServiceUtilities.enableRunLevelProfiler(locator);
+        
+        locator.getService(RunLevelController.class).proceedTo(2);
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(baos, true, "UTF-8");
+        profiler.dumpSlowestActivations(1, ps);
+        ps.close();
+        
+        String summary = baos.toString("UTF-8");
+        Assert.assertTrue(summary, summary.startsWith("Slowest 1 of 3 activations"));
+        Assert.assertTrue(summary, summary.contains(SlowService.class.getName()));
+        Assert.assertFalse(summary, summary.contains(QuickService.class.getName()));
+        
+        StringWriter writer = new StringWriter();
+        profiler.writeChromeTrace(writer);
+        
+        String trace = writer.toString();
+        Assert.assertTrue(trace, trace.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+        Assert.assertTrue(trace, trace.trim().endsWith("]}"));
+        Assert.assertTrue(trace, trace.contains("\"name\":\"thread_name\""));
+        Assert.assertTrue(trace, trace.contains("\"name\":\"" + QuickService.class.getName() + "\""));
+        Assert.assertTrue(trace, trace.contains("\"name\":\"" + SlowService.class.getName() + "\""));
+        Assert.assertTrue(trace, trace.contains("\"name\":\"" + LevelTwoService.class.getName() + "\""));
+        
+        int completeEvents = trace.split("\"ph\":\"X\"", -1).length - 1;
+        Assert.assertEquals(3, completeEvents);
+    }
+
+}
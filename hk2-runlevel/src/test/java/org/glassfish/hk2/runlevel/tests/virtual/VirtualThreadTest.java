@@ -0,0 +1,217 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.runlevel.tests.virtual;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.hk2.api.DynamicConfiguration;
+import org.glassfish.hk2.api.DynamicConfigurationService;
+import org.glassfish.hk2.api.MultiException;
+import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.runlevel.RunLevel;
+import org.glassfish.hk2.runlevel.RunLevelController;
+import org.glassfish.hk2.runlevel.RunLevelFuture;
+import org.glassfish.hk2.runlevel.tests.blocking.ServiceA;
+import org.glassfish.hk2.runlevel.tests.blocking.ServiceB;
+import org.glassfish.hk2.runlevel.tests.blocking.ServiceC;
+import org.glassfish.hk2.runlevel.tests.executor.ExecutorTest;
+import org.glassfish.hk2.runlevel.tests.graph.CycleOne;
+import org.glassfish.hk2.runlevel.tests.graph.CycleTwo;
+import org.glassfish.hk2.runlevel.tests.utilities.Utilities;
+import org.glassfish.hk2.utilities.BuilderHelper;
+import org.glassfish.hk2.utilities.general.GeneralUtilities;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Tests for the VIRTUAL_THREADS threading policy.  These tests pass
+ * whether or not the JVM supports virtual threads
+ * 
+ * @author jwells
+ *
+ */
+public class VirtualThreadTest {
+    private final static int NUM_SLEEPING_SERVICES = 2000;
+    
+    private static RunLevelController getController(ServiceLocator locator) {
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        controller.setThreadingPolicy(RunLevelController.ThreadingPolicy.VIRTUAL_THREADS);
+        
+        return controller;
+    }
+    
+    /**
+     * Tests that services are started on virtual threads when
+     * the JVM supports them, and on the default threads otherwise
+     */
+    @Test
+    public void testServicesStartedOnVirtualThreads() {
+        ServiceLocator locator = Utilities.getServiceLocator(VirtualThreadRecorderService.class);
+        
+        RunLevelController controller = getController(locator);
+        Assert.assertEquals(RunLevelController.ThreadingPolicy.VIRTUAL_THREADS, controller.getThreadingPolicy());
+        
+        controller.proceedTo(5);
+        
+        VirtualThreadRecorderService service = locator.getService(VirtualThreadRecorderService.class);
+        Assert.assertEquals(GeneralUtilities.isVirtualThreadSupported(), service.isVirtual());
+        Assert.assertTrue(service.getThreadName(), service.getThreadName().startsWith("RunLevelControllerThread-"));
+    }
+    
+    /**
+     * Tests that the executor given by the user is used in preference
+     * to virtual threads, and that virtual threads come back when the
+     * user executor is removed
+     */
+    @Test
+    public void testUserExecutorTakesPrecedence() {
+        ServiceLocator locator = Utilities.getServiceLocator(VirtualThreadRecorderService.class);
+        
+        RunLevelController controller = getController(locator);
+        Executor defaultExecutor = controller.getExecutor();
+        Assert.assertNotNull(defaultExecutor);
+        
+        controller.setExecutor(new ExecutorTest.ExecutorImpl());
+        
+        controller.proceedTo(5);
+        
+        VirtualThreadRecorderService service = locator.getService(VirtualThreadRecorderService.class);
+        Assert.assertEquals(ExecutorTest.ExecutorImpl.THREAD_NAME, service.getThreadName());
+        Assert.assertFalse(service.isVirtual());
+        
+        controller.proceedTo(0);
+        controller.setExecutor(null);
+        Assert.assertSame(defaultExecutor, controller.getExecutor());
+        
+        controller.proceedTo(5);
+        
+        service = locator.getService(VirtualThreadRecorderService.class);
+        Assert.assertEquals(GeneralUtilities.isVirtualThreadSupported(), service.isVirtual());
+    }
+    
+    /**
+     * Tests that a service blocked on a service being created on another
+     * thread is noticed, which depends on the thread ids of virtual threads
+     */
+    @Test
+    public void testBlockingWithVirtualThreads() throws Exception {
+        ServiceLocator locator = Utilities.getServiceLocator(
+                ServiceA.class, ServiceB.class, ServiceC.class);
+        
+        RunLevelController controller = getController(locator);
+        controller.setMaximumUseableThreads(2);  // Must only be two threads in this controller
+        
+        RunLevelFuture future = controller.proceedToAsync(5);
+        future.get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(future.isDone());
+        
+        Assert.assertNotNull(locator.getService(ServiceA.class));
+        Assert.assertNotNull(locator.getService(ServiceB.class));
+        Assert.assertNotNull(locator.getService(ServiceC.class));
+    }
+    
+    /**
+     * Tests that a dependency cycle is still reported on virtual threads
+     */
+    @Test
+    public void testCycleWithVirtualThreads() {
+        ServiceLocator locator = Utilities.getServiceLocator(CycleOne.class,
+                CycleTwo.class);
+        
+        RunLevelController controller = getController(locator);
+        
+        try {
+            controller.proceedTo(1);
+            Assert.fail("A dependency cycle should not have been started");
+        }
+        catch (MultiException me) {
+            Assert.assertTrue(me.getMessage(), me.getMessage().contains("Circular dependency"));
+        }
+        
+        Assert.assertEquals(0, controller.getCurrentRunLevel());
+    }
+    
+    private static long timeStartup(RunLevelController.ThreadingPolicy policy) {
+        ServiceLocator locator = Utilities.getServiceLocator();
+        
+        DynamicConfiguration config = locator.getService(DynamicConfigurationService.class).createDynamicConfiguration();
+        for (int lcv = 0; lcv < NUM_SLEEPING_SERVICES; lcv++) {
+            config.bind(BuilderHelper.link(SleepingService.class.getName()).
+                    in(RunLevel.class.getName()).
+                    named("Sleeping" + lcv).
+                    has(RunLevel.RUNLEVEL_VAL_META_TAG, "1").
+                    build());
+        }
+        config.commit();
+        
+        RunLevelController controller = locator.getService(RunLevelController.class);
+        controller.setThreadingPolicy(policy);
+        
+        long elapsed = System.currentTimeMillis();
+        controller.proceedTo(1);
+        elapsed = System.currentTimeMillis() - elapsed;
+        
+        controller.proceedTo(0);
+        locator.shutdown();
+        
+        return elapsed;
+    }
+    
+    /**
+     * Starts many services that spend their start up waiting, first on
+     * the default threads and then on virtual threads.  Not run by default,
+     * as its results depend on the machine and JVM
+     */
+    @Test @Ignore
+    public void testStartupLatency() {
+        for (int lcv = 0; lcv < 3; lcv++) {
+            long platform = timeStartup(RunLevelController.ThreadingPolicy.FULLY_THREADED);
+            long virtual = timeStartup(RunLevelController.ThreadingPolicy.VIRTUAL_THREADS);
+            
+            System.out.println(NUM_SLEEPING_SERVICES + " services each waiting " + SleepingService.SLEEP_MILLIS +
+                    " milliseconds started in " + platform + " milliseconds on the default threads and in " +
+                    virtual + " milliseconds on " +
+                    (GeneralUtilities.isVirtualThreadSupported() ? "virtual threads" : "the default threads (no virtual thread support)"));
+        }
+    }
+
+}
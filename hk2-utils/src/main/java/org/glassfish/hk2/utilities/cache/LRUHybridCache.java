@@ -39,9 +39,11 @@
  */
 package org.glassfish.hk2.utilities.cache;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -49,6 +51,9 @@ import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Hybrid cache that allows explicit removals of included entries as well
@@ -63,6 +68,17 @@ import java.util.concurrent.TimeoutException;
  * Desired value will only be computed once and computed value stored in the cache.
  * The implementation is based on an example from the "Java Concurrency in Practice" book
  * authored by Brian Goetz and company.
+ * <p>
+ * The least recently used order is kept in an access ordered list so that
+ * the entry to evict is found in constant time.  Cache hits do not modify that list
+ * directly, but are recorded in striped buffers that are applied to the list
+ * in batches, which keeps the hit path free of any global lock.  Should a buffer
+ * be full while another thread is applying the buffers the hit is not recorded,
+ * so under heavy contention the eviction order is an approximation of LRU
+ * <p>
+ * If the cache is given a {@link CacheKeyIndexer} the keys are also indexed by
+ * name, and all entries with a given name can be released without a scan of
+ * the whole cache
  *
  * @author Jakub Podlesak (jakub.podlesak at oracle.com)
  * @param <K> The type for the keys in the cache
@@ -103,7 +119,6 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
         private final K key;
         private final FutureTask<HybridCacheEntry<V>> future;
         private volatile long threadId;
-        private volatile long lastHit;
 
         OriginThreadAwareFuture(LRUHybridCache<K, HybridCacheEntry<V>> cache, final K key) {
             this.key = key;
@@ -120,7 +135,6 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
                 }
             };
             this.future = new FutureTask<HybridCacheEntry<V>>(eval);
-            this.lastHit = System.nanoTime();
         }
 
         @Override
@@ -183,7 +197,74 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
     private final ConcurrentHashMap<K, LRUHybridCache<K,V>.OriginThreadAwareFuture> cache = new ConcurrentHashMap<K, LRUHybridCache<K,V>.OriginThreadAwareFuture>();
     private final Computable<K, HybridCacheEntry<V>> computable;
 
-    private final Object prunningLock = new Object();
+    /**
+     * A buffer of recent cache hits.  Buffers are striped by thread so
+     * that threads recording hits rarely write to the same buffer
+     */
+    private final class HitBuffer {
+        private final AtomicReferenceArray<LRUHybridCache<K,V>.OriginThreadAwareFuture> hits =
+                new AtomicReferenceArray<LRUHybridCache<K,V>.OriginThreadAwareFuture>(HIT_BUFFER_SIZE);
+        private final AtomicInteger writeIndex = new AtomicInteger();
+
+        /**
+         * Records a hit in this buffer
+         *
+         * @param hit The entry that was hit
+         * @return true if this buffer is full and should be drained
+         */
+        private boolean record(LRUHybridCache<K,V>.OriginThreadAwareFuture hit) {
+            int index = writeIndex.getAndIncrement();
+            if (index >= HIT_BUFFER_SIZE) return true;
+
+            hits.lazySet(index, hit);
+            return (index == HIT_BUFFER_SIZE - 1);
+        }
+
+        /**
+         * Applies the recorded hits to the LRU order.  Must be called
+         * with the prunningLock held
+         */
+        private void drain() {
+            int size = Math.min(writeIndex.get(), HIT_BUFFER_SIZE);
+            for (int lcv = 0; lcv < size; lcv++) {
+                LRUHybridCache<K,V>.OriginThreadAwareFuture hit = hits.getAndSet(lcv, null);
+                if (hit == null) continue;
+
+                // An access ordered get moves the entry to the most recently used end
+                lruOrder.get(hit.key);
+            }
+
+            writeIndex.set(0);
+        }
+    }
+
+    private final static int HIT_BUFFER_SIZE = 32;
+    private final static int NUMBER_OF_HIT_BUFFERS;
+    static {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int buffers = 1;
+        while (buffers < processors && buffers < 64) {
+            buffers <<= 1;
+        }
+
+        NUMBER_OF_HIT_BUFFERS = buffers;
+    }
+
+    private final ReentrantLock prunningLock = new ReentrantLock();
+
+    /** May be null, in which case keys are not indexed */
+    private final CacheKeyIndexer<K> indexer;
+
+    /** The keys in the cache by index name.  Guarded by the prunningLock */
+    private final HashMap<String, HashSet<K>> keyIndex = new HashMap<String, HashSet<K>>();
+
+    /** Access ordered, so the eldest entry is the least recently used.  Guarded by the prunningLock */
+    private final LinkedHashMap<K, LRUHybridCache<K,V>.OriginThreadAwareFuture> lruOrder =
+            new LinkedHashMap<K, LRUHybridCache<K,V>.OriginThreadAwareFuture>(16, 0.75f, true);
+
+    /** Created lazily, as most caches are only ever used by a few threads */
+    private final AtomicReferenceArray<HitBuffer> hitBuffers =
+            new AtomicReferenceArray<HitBuffer>(NUMBER_OF_HIT_BUFFERS);
     private final int maxCacheSize;
 
     /**
@@ -204,9 +285,37 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
      * @param cycleHandler What to do if a cycle is detected
      */
     public LRUHybridCache(int maxCacheSize, Computable<K,HybridCacheEntry<V>> computable, LRUHybridCache.CycleHandler<K> cycleHandler) {
+        this(maxCacheSize, computable, cycleHandler, null);
+    }
+
+    /**
+     * Create new cache with given computable that indexes its keys with the given indexer.
+     *
+     * @param maxCacheSize The maximum number of entries in the cache
+     * @param computable The thing that can create the entry
+     * @param indexer Used to index the keys of this cache, so that they can be
+     * released with {@link #releaseIndexed(String)}
+     */
+    @SuppressWarnings("unchecked")
+    public LRUHybridCache(int maxCacheSize, Computable<K,HybridCacheEntry<V>> computable, CacheKeyIndexer<K> indexer) {
+        this(maxCacheSize, computable, (LRUHybridCache.CycleHandler<K>) EMPTY_CYCLE_HANDLER, indexer);
+    }
+
+    /**
+     * Create new cache with given computable, cycleHandler and indexer.
+     *
+     * @param maxCacheSize The maximum number of entries in the cache
+     * @param computable The thing that can create the entry
+     * @param cycleHandler What to do if a cycle is detected
+     * @param indexer Used to index the keys of this cache, so that they can be
+     * released with {@link #releaseIndexed(String)}.  May be null
+     */
+    public LRUHybridCache(int maxCacheSize, Computable<K,HybridCacheEntry<V>> computable, LRUHybridCache.CycleHandler<K> cycleHandler,
+            CacheKeyIndexer<K> indexer) {
         this.maxCacheSize = maxCacheSize;
         this.computable = computable;
         this.cycleHandler = cycleHandler;
+        this.indexer = indexer;
     }
 
     private final class HybridCacheEntryImpl<V1> implements HybridCacheEntry<V1> {
@@ -281,11 +390,21 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
                 LRUHybridCache<K,V>.OriginThreadAwareFuture ft =
                         new LRUHybridCache.OriginThreadAwareFuture(this, key);
 
-                synchronized (prunningLock) {
+                prunningLock.lock();
+                try {
+                    drainHitBuffers();
+
                     if (cache.size() + 1 > maxCacheSize) {
                         removeLRUItem();
                     }
                     f = cache.putIfAbsent(key, ft);
+                    if (f == null) {
+                        lruOrder.put(key, ft);
+                        addToIndex(key);
+                    }
+                }
+                finally {
+                    prunningLock.unlock();
                 }
                 if (f == null) {
                     f = ft;
@@ -297,18 +416,18 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
                 if ((tid != -1) && (Thread.currentThread().getId() == f.threadId)) {
                     cycleHandler.handleCycle(key);
                 }
-                f.lastHit = System.nanoTime();
+                recordHit(f);
             }
             try {
                 final HybridCacheEntry result = f.get();
                 if (result.dropMe()) {
-                    cache.remove(key);
+                    remove(key, f);
                 }
                 return result;
             } catch (InterruptedException ex) {
                 throw new RuntimeException(ex);
             } catch (ExecutionException ex) {
-                cache.remove(key);  // otherwise the exception would be remembered
+                remove(key, f);  // otherwise the exception would be remembered
                 if (ex.getCause() instanceof RuntimeException) {
                     throw (RuntimeException)ex.getCause();
                 } else {
@@ -322,7 +441,15 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
      * Empty the cache.
      */
     public void clear() {
-        cache.clear();
+        prunningLock.lock();
+        try {
+            cache.clear();
+            lruOrder.clear();
+            keyIndex.clear();
+        }
+        finally {
+            prunningLock.unlock();
+        }
     }
 
     /**
@@ -341,27 +468,154 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
      * @param key item key.
      */
     public void remove(final K key) {
-        cache.remove(key);
+        prunningLock.lock();
+        try {
+            if (cache.remove(key) != null) {
+                removeFromIndex(key);
+            }
+            lruOrder.remove(key);
+        }
+        finally {
+            prunningLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the given item from the cache only if it
+     * is still associated with the given future
+     */
+    private void remove(final K key, final LRUHybridCache<K,V>.OriginThreadAwareFuture f) {
+        prunningLock.lock();
+        try {
+            if (cache.remove(key, f)) {
+                lruOrder.remove(key);
+                removeFromIndex(key);
+            }
+        }
+        finally {
+            prunningLock.unlock();
+        }
+    }
+
+    /**
+     * Records a hit of the given entry.  The LRU order is only updated
+     * once the buffer of the current thread is full, and then only if
+     * no other thread is currently modifying the order
+     */
+    private void recordHit(final LRUHybridCache<K,V>.OriginThreadAwareFuture f) {
+        int index = ((int) Thread.currentThread().getId()) & (NUMBER_OF_HIT_BUFFERS - 1);
+
+        HitBuffer buffer = hitBuffers.get(index);
+        if (buffer == null) {
+            hitBuffers.compareAndSet(index, null, new HitBuffer());
+            buffer = hitBuffers.get(index);
+        }
+
+        if (buffer.record(f) && prunningLock.tryLock()) {
+            try {
+                drainHitBuffers();
+            }
+            finally {
+                prunningLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies all recorded hits to the LRU order.  Must
+     * be called with the prunningLock held
+     */
+    private void drainHitBuffers() {
+        for (int lcv = 0; lcv < NUMBER_OF_HIT_BUFFERS; lcv++) {
+            HitBuffer buffer = hitBuffers.get(lcv);
+            if (buffer == null) continue;
+
+            buffer.drain();
+        }
     }
 
     /**
      * Remove least recently used item form the cache.
-     * No checks are done here. The method just tries to remove the least recently used
-     * cache item. An exception will be thrown if the cache is empty.
+     * No checks are done here. The method just removes the least recently used
+     * cache item in constant time.  Must be called with the prunningLock held
      */
     private void removeLRUItem() {
-        final Collection<LRUHybridCache<K,V>.OriginThreadAwareFuture> values = cache.values();
-        cache.remove((K)Collections.min(values, COMPARATOR).key);
+        Iterator<Map.Entry<K, LRUHybridCache<K,V>.OriginThreadAwareFuture>> iterator = lruOrder.entrySet().iterator();
+        if (!iterator.hasNext()) return;
+
+        Map.Entry<K, LRUHybridCache<K,V>.OriginThreadAwareFuture> eldest = iterator.next();
+        iterator.remove();
+
+        if (cache.remove(eldest.getKey(), eldest.getValue())) {
+            removeFromIndex(eldest.getKey());
+        }
     }
 
-    private static final Comparator<LRUHybridCache.OriginThreadAwareFuture> COMPARATOR = new CacheEntryImplComparator();
+    /**
+     * Must be called with the prunningLock held
+     */
+    private void addToIndex(K key) {
+        if (indexer == null) return;
 
-    private static class CacheEntryImplComparator<K,V> implements Comparator<LRUHybridCache<K,V>.OriginThreadAwareFuture> {
+        String indexName = indexer.getIndexName(key);
+        if (indexName == null) return;
 
-        @Override
-        public int compare(LRUHybridCache<K,V>.OriginThreadAwareFuture first, LRUHybridCache<K,V>.OriginThreadAwareFuture second) {
-            final long diff = first.lastHit - second.lastHit;
-            return diff > 0 ? 1 : diff == 0 ? 0 : -1;
+        HashSet<K> keys = keyIndex.get(indexName);
+        if (keys == null) {
+            keys = new HashSet<K>();
+            keyIndex.put(indexName, keys);
+        }
+
+        keys.add(key);
+    }
+
+    /**
+     * Must be called with the prunningLock held
+     */
+    private void removeFromIndex(K key) {
+        if (indexer == null) return;
+
+        String indexName = indexer.getIndexName(key);
+        if (indexName == null) return;
+
+        HashSet<K> keys = keyIndex.get(indexName);
+        if (keys == null) return;
+
+        keys.remove(key);
+        if (keys.isEmpty()) {
+            keyIndex.remove(indexName);
+        }
+    }
+
+    /**
+     * Removes all of the entries whose keys are indexed under the given
+     * name.  Only the entries with that name are visited.  If this cache
+     * was not created with a {@link CacheKeyIndexer} nothing is removed
+     *
+     * @param indexName The index name of the entries to remove.  If null
+     * nothing will be removed from the cache
+     * @return The number of entries removed from the cache
+     */
+    public int releaseIndexed(String indexName) {
+        if (indexName == null) return 0;
+
+        prunningLock.lock();
+        try {
+            HashSet<K> keys = keyIndex.remove(indexName);
+            if (keys == null) return 0;
+
+            int retVal = 0;
+            for (K key : keys) {
+                if (cache.remove(key) != null) {
+                    retVal++;
+                }
+                lruOrder.remove(key);
+            }
+
+            return retVal;
+        }
+        finally {
+            prunningLock.unlock();
         }
     }
 
@@ -375,10 +629,18 @@ public class LRUHybridCache<K,V> implements Computable<K, HybridCacheEntry<V>> {
      */
     public void releaseMatching(CacheKeyFilter<K> filter) {
         if (filter == null) return;
-        for (K key : cache.keySet()) {
-            if (filter.matches(key)) {
-                cache.remove(key);
+        prunningLock.lock();
+        try {
+            for (K key : cache.keySet()) {
+                if (filter.matches(key)) {
+                    cache.remove(key);
+                    lruOrder.remove(key);
+                    removeFromIndex(key);
+                }
             }
         }
+        finally {
+            prunningLock.unlock();
+        }
     }
 }
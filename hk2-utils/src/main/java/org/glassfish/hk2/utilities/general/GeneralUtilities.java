@@ -39,8 +39,11 @@
  */
 package org.glassfish.hk2.utilities.general;
 
+import java.lang.reflect.Method;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This class contains utilities useful for any code
@@ -49,6 +52,43 @@ import java.security.PrivilegedAction;
  *
  */
 public class GeneralUtilities {
+    private final static String EXECUTORS_CLASS = "java.util.concurrent.Executors";
+    private final static String OF_VIRTUAL_CLASS = "java.lang.Thread$Builder$OfVirtual";
+    
+    /** Found reflectively since virtual threads are only in later JVMs, null if not available */
+    private final static Method OF_VIRTUAL;
+    private final static Method NAME;
+    private final static Method FACTORY;
+    private final static Method NEW_THREAD_PER_TASK_EXECUTOR;
+    
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method newThreadPerTaskExecutor = null;
+        
+        try {
+            Class<?> ofVirtualClass = Class.forName(OF_VIRTUAL_CLASS);
+            
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = ofVirtualClass.getMethod("name", String.class, long.class);
+            factory = ofVirtualClass.getMethod("factory");
+            newThreadPerTaskExecutor = Class.forName(EXECUTORS_CLASS).getMethod("newThreadPerTaskExecutor",
+                    ThreadFactory.class);
+            
+            // Throws on JVMs where virtual threads are a preview feature that is not enabled
+            ofVirtual.invoke(null);
+        }
+        catch (Throwable th) {
+            ofVirtual = null;
+        }
+        
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+    
     /**
      * Returns true if a is equals to b, or both
      * and and b are null.  Is safe even if
@@ -84,5 +124,61 @@ public class GeneralUtilities {
             return defaultValue;
         }
     }
+    
+    /**
+     * Returns true if the running JVM supports virtual threads
+     * 
+     * @return true if {@link #getVirtualThreadFactory(String)} and
+     * {@link #getVirtualThreadPerTaskExecutor(String)} can return
+     * non-null values
+     */
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL != null;
+    }
+    
+    /**
+     * Returns a factory of virtual threads if the running JVM
+     * supports them.  Every virtual thread has its own thread id,
+     * just like platform threads
+     * 
+     * @param namePrefix The prefix of the names of the created threads,
+     * which are followed by a counter starting at zero.  May not be null
+     * @return A factory of virtual threads, or null if the running
+     * JVM does not support virtual threads
+     */
+    public static ThreadFactory getVirtualThreadFactory(String namePrefix) {
+        if (OF_VIRTUAL == null) return null;
+        
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = NAME.invoke(builder, namePrefix, 0L);
+            
+            return (ThreadFactory) FACTORY.invoke(builder);
+        }
+        catch (Throwable th) {
+            return null;
+        }
+    }
+    
+    /**
+     * Returns an executor that runs every task on a new virtual thread
+     * if the running JVM supports virtual threads
+     * 
+     * @param namePrefix The prefix of the names of the created threads,
+     * which are followed by a counter starting at zero.  May not be null
+     * @return An executor that creates a virtual thread per task, or
+     * null if the running JVM does not support virtual threads
+     */
+    public static ExecutorService getVirtualThreadPerTaskExecutor(String namePrefix) {
+        ThreadFactory factory = getVirtualThreadFactory(namePrefix);
+        if (factory == null) return null;
+        
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        }
+        catch (Throwable th) {
+            return null;
+        }
+    }
 
 }
@@ -0,0 +1,541 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.general;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable hash map implemented as a hash array mapped trie.
+ * {@link #plus(Object, Object)} and {@link #minus(Object)} return
+ * a new map that shares every node with this one except those on the
+ * path to the changed key, so a copy of the map is free and an update
+ * costs O(log32 n) regardless of the size of the map.
+ * <p>
+ * Null keys and null values are not supported
+ * 
+ * @author jwells
+ *
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+    private final static int BITS = 5;
+    private final static int MASK = (1 << BITS) - 1;
+    
+    /** The deepest a trie can get, bitmap levels for all 32 bits of the hash plus a collision level */
+    private final static int MAX_DEPTH = ((32 + BITS - 1) / BITS) + 1;
+    
+    @SuppressWarnings("rawtypes")
+    private final static PersistentHashMap EMPTY = new PersistentHashMap(null, 0);
+    
+    private final Node root;
+    private final int size;
+    
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+    
+    /**
+     * Returns the empty map
+     * 
+     * @return An empty persistent map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return EMPTY;
+    }
+    
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        
+        // Spread the high bits down, since the low bits are used first
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * Returns a map that has all of the mappings of this
+     * map with the addition (or replacement) of the given mapping.
+     * This map is not modified
+     * 
+     * @param key The non-null key to add
+     * @param value The non-null value to associate with the key
+     * @return A map with the given mapping, which may be this
+     * map if the mapping was already present
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        if (key == null || value == null) throw new IllegalArgumentException();
+        
+        Leaf leaf = new Leaf(hash(key), key, value);
+        boolean added[] = new boolean[1];
+        
+        Node base = (root == null) ? BitmapNode.EMPTY : root;
+        Node newRoot = base.assoc(0, leaf, added);
+        if (newRoot == base) return this;
+        
+        return new PersistentHashMap<K, V>(newRoot, (added[0]) ? size + 1 : size);
+    }
+    
+    /**
+     * Returns a map that has all of the mappings of this
+     * map except for the mapping with the given key.  This
+     * map is not modified
+     * 
+     * @param key The key to remove
+     * @return A map without the given key, which may be this
+     * map if the key was not present
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        if (key == null || root == null) return this;
+        
+        Node newRoot = root.without(0, hash(key), key);
+        if (newRoot == root) return this;
+        if (newRoot == null) return empty();
+        
+        return new PersistentHashMap<K, V>(newRoot, size - 1);
+    }
+    
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#get(java.lang.Object)
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object key) {
+        if (key == null || root == null) return null;
+        
+        Leaf leaf = root.find(0, hash(key), key);
+        if (leaf == null) return null;
+        
+        return (V) leaf.value;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#containsKey(java.lang.Object)
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+    
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#size()
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractMap#entrySet()
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new TrieIterator<K, V>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+            
+        };
+    }
+    
+    private static abstract class Node {
+        /**
+         * Finds the leaf with the given key
+         * 
+         * @return The leaf, or null if not found
+         */
+        abstract Leaf find(int shift, int hash, Object key);
+        
+        /**
+         * Returns a node with the given leaf added, or this node if the leaf
+         * is already present with an identical value.  added[0] is set
+         * to true if the key was not previously present
+         */
+        abstract Node assoc(int shift, Leaf leaf, boolean added[]);
+        
+        /**
+         * Returns a node without the given key, this node if the key is
+         * not present, or null if the resulting node would be empty
+         */
+        abstract Node without(int shift, int hash, Object key);
+        
+        /**
+         * Returns the only leaf of this node, or null if this node
+         * has any other children
+         */
+        abstract Leaf singleLeaf();
+        
+        /**
+         * The children of this node, which are all Nodes or Leafs
+         */
+        abstract Object[] children();
+    }
+    
+    private final static class Leaf implements Map.Entry<Object, Object> {
+        private final int hash;
+        private final Object key;
+        private final Object value;
+        
+        private Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+        
+        private boolean matches(int hash, Object key) {
+            return (this.hash == hash) && this.key.equals(key);
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) return false;
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            
+            return key.equals(other.getKey()) && value.equals(other.getValue());
+        }
+        
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+    
+    private final static class BitmapNode extends Node {
+        private final static BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+        
+        private final int bitmap;
+        private final Object children[];
+        
+        private BitmapNode(int bitmap, Object children[]) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+        
+        private static int bit(int shift, int hash) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+        
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Leaf find(int shift, int hash, Object key) {
+            int bit = bit(shift, hash);
+            if ((bitmap & bit) == 0) return null;
+            
+            Object child = children[index(bit)];
+            if (child instanceof Leaf) {
+                Leaf leaf = (Leaf) child;
+                return leaf.matches(hash, key) ? leaf : null;
+            }
+            
+            return ((Node) child).find(shift + BITS, hash, key);
+        }
+
+        @Override
+        Node assoc(int shift, Leaf leaf, boolean added[]) {
+            int bit = bit(shift, leaf.hash);
+            int index = index(bit);
+            
+            if ((bitmap & bit) == 0) {
+                Object newChildren[] = new Object[children.length + 1];
+                System.arraycopy(children, 0, newChildren, 0, index);
+                newChildren[index] = leaf;
+                System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+                
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newChildren);
+            }
+            
+            Object child = children[index];
+            Object newChild;
+            if (child instanceof Leaf) {
+                Leaf existing = (Leaf) child;
+                if (existing.matches(leaf.hash, leaf.key)) {
+                    if (existing.value == leaf.value) return this;
+                    
+                    newChild = leaf;
+                }
+                else {
+                    newChild = createNode(shift + BITS, existing, leaf);
+                    added[0] = true;
+                }
+            }
+            else {
+                Node node = (Node) child;
+                newChild = node.assoc(shift + BITS, leaf, added);
+                if (newChild == node) return this;
+            }
+            
+            Object newChildren[] = children.clone();
+            newChildren[index] = newChild;
+            
+            return new BitmapNode(bitmap, newChildren);
+        }
+        
+        private static Node createNode(int shift, Leaf first, Leaf second) {
+            if (first.hash == second.hash) {
+                return new CollisionNode(first.hash, new Leaf[] { first, second });
+            }
+            
+            boolean ignored[] = new boolean[1];
+            return EMPTY.assoc(shift, first, ignored).assoc(shift, second, ignored);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            int bit = bit(shift, hash);
+            if ((bitmap & bit) == 0) return this;
+            
+            int index = index(bit);
+            Object child = children[index];
+            if (child instanceof Leaf) {
+                if (!((Leaf) child).matches(hash, key)) return this;
+                
+                return removeChild(bit, index);
+            }
+            
+            Node node = (Node) child;
+            Node newNode = node.without(shift + BITS, hash, key);
+            if (newNode == node) return this;
+            if (newNode == null) return removeChild(bit, index);
+            
+            Object newChildren[] = children.clone();
+            
+            // A sub-trie with a single leaf left in it is pulled up into this level
+            Leaf single = newNode.singleLeaf();
+            newChildren[index] = (single != null) ? single : newNode;
+            
+            return new BitmapNode(bitmap, newChildren);
+        }
+        
+        private Node removeChild(int bit, int index) {
+            if (bitmap == bit) return null;
+            
+            Object newChildren[] = new Object[children.length - 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            
+            return new BitmapNode(bitmap ^ bit, newChildren);
+        }
+
+        @Override
+        Leaf singleLeaf() {
+            if (children.length != 1 || !(children[0] instanceof Leaf)) return null;
+            
+            return (Leaf) children[0];
+        }
+
+        @Override
+        Object[] children() {
+            return children;
+        }
+    }
+    
+    private final static class CollisionNode extends Node {
+        private final int hash;
+        private final Leaf leaves[];
+        
+        private CollisionNode(int hash, Leaf leaves[]) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+        
+        private int indexOf(Object key) {
+            for (int lcv = 0; lcv < leaves.length; lcv++) {
+                if (leaves[lcv].key.equals(key)) return lcv;
+            }
+            
+            return -1;
+        }
+
+        @Override
+        Leaf find(int shift, int hash, Object key) {
+            if (this.hash != hash) return null;
+            
+            int index = indexOf(key);
+            return (index < 0) ? null : leaves[index];
+        }
+
+        @Override
+        Node assoc(int shift, Leaf leaf, boolean added[]) {
+            if (leaf.hash != hash) {
+                // Push this node down one level so the new leaf can sit beside it
+                BitmapNode parent = new BitmapNode(BitmapNode.bit(shift, hash), new Object[] { this });
+                return parent.assoc(shift, leaf, added);
+            }
+            
+            int index = indexOf(leaf.key);
+            if (index >= 0) {
+                if (leaves[index].value == leaf.value) return this;
+                
+                Leaf newLeaves[] = leaves.clone();
+                newLeaves[index] = leaf;
+                return new CollisionNode(hash, newLeaves);
+            }
+            
+            Leaf newLeaves[] = new Leaf[leaves.length + 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+            newLeaves[leaves.length] = leaf;
+            
+            added[0] = true;
+            return new CollisionNode(hash, newLeaves);
+        }
+
+        @Override
+        Node without(int shift, int hash, Object key) {
+            if (this.hash != hash) return this;
+            
+            int index = indexOf(key);
+            if (index < 0) return this;
+            if (leaves.length == 1) return null;
+            
+            Leaf newLeaves[] = new Leaf[leaves.length - 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, index);
+            System.arraycopy(leaves, index + 1, newLeaves, index, leaves.length - index - 1);
+            
+            return new CollisionNode(hash, newLeaves);
+        }
+
+        @Override
+        Leaf singleLeaf() {
+            return (leaves.length == 1) ? leaves[0] : null;
+        }
+
+        @Override
+        Object[] children() {
+            return leaves;
+        }
+    }
+    
+    /**
+     * Depth first walk of the trie
+     */
+    private final static class TrieIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Object stack[][] = new Object[MAX_DEPTH][];
+        private final int positions[] = new int[MAX_DEPTH];
+        private int depth = -1;
+        private Leaf next;
+        
+        private TrieIterator(Node root) {
+            if (root != null) {
+                depth = 0;
+                stack[0] = root.children();
+            }
+            
+            advance();
+        }
+        
+        private void advance() {
+            next = null;
+            
+            while (depth >= 0) {
+                Object current[] = stack[depth];
+                if (positions[depth] >= current.length) {
+                    stack[depth] = null;
+                    positions[depth] = 0;
+                    depth--;
+                    continue;
+                }
+                
+                Object child = current[positions[depth]++];
+                if (child instanceof Leaf) {
+                    next = (Leaf) child;
+                    return;
+                }
+                
+                depth++;
+                stack[depth] = ((Node) child).children();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) throw new NoSuchElementException();
+            
+            Leaf retVal = next;
+            advance();
+            
+            return (Map.Entry<K, V>) (Map.Entry<?, ?>) retVal;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
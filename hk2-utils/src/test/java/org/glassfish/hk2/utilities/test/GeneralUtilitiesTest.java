@@ -39,6 +39,11 @@
  */
 package org.glassfish.hk2.utilities.test;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
 import org.glassfish.hk2.utilities.general.GeneralUtilities;
 import org.junit.Assert;
 import org.junit.Test;
@@ -119,6 +124,72 @@ public class GeneralUtilitiesTest {
         Assert.assertFalse(GeneralUtilities.safeEquals(new Integer(0), zero));
     }
     
+    /**
+     * Tests that virtual threads are supported exactly when the JVM has them
+     */
+    @Test
+    public void testVirtualThreadSupportMatchesJvm() {
+        boolean jvmHasVirtualThreads;
+        try {
+            Thread.class.getMethod("ofVirtual");
+            jvmHasVirtualThreads = true;
+        }
+        catch (NoSuchMethodException nsme) {
+            jvmHasVirtualThreads = false;
+        }
+        
+        Assert.assertEquals(jvmHasVirtualThreads, GeneralUtilities.isVirtualThreadSupported());
+    }
+    
+    /**
+     * Tests the virtual thread factory returns named virtual threads, or null
+     */
+    @Test
+    public void testVirtualThreadFactory() throws Exception {
+        ThreadFactory factory = GeneralUtilities.getVirtualThreadFactory("VirtualTest-");
+        if (!GeneralUtilities.isVirtualThreadSupported()) {
+            Assert.assertNull(factory);
+            return;
+        }
+        
+        Thread thread = factory.newThread(new Runnable() {
+
+            @Override
+            public void run() {
+            }
+            
+        });
+        
+        Assert.assertEquals("VirtualTest-0", thread.getName());
+        Assert.assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread));
+    }
+    
+    /**
+     * Tests the virtual thread executor runs tasks on distinct threads, or is null
+     */
+    @Test
+    public void testVirtualThreadPerTaskExecutor() throws Exception {
+        ExecutorService executor = GeneralUtilities.getVirtualThreadPerTaskExecutor("VirtualTest-");
+        if (!GeneralUtilities.isVirtualThreadSupported()) {
+            Assert.assertNull(executor);
+            return;
+        }
+        
+        Future<Long> first = executor.submit(new ThreadIdTask());
+        Future<Long> second = executor.submit(new ThreadIdTask());
+        
+        Assert.assertFalse(first.get().equals(second.get()));
+        
+        executor.shutdown();
+    }
+    
+    private static class ThreadIdTask implements Callable<Long> {
+        @Override
+        public Long call() {
+            return Thread.currentThread().getId();
+        }
+    }
+    
     private static class IntegerObject {
         private final int value;
         
@@ -41,12 +41,18 @@ package org.glassfish.hk2.utilities.test;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import junit.framework.Assert;
 
 import org.glassfish.hk2.utilities.cache.CacheKeyFilter;
+import org.glassfish.hk2.utilities.cache.CacheKeyIndexer;
 import org.glassfish.hk2.utilities.cache.Computable;
 import org.glassfish.hk2.utilities.cache.HybridCacheEntry;
 import org.glassfish.hk2.utilities.cache.LRUHybridCache;
+import org.junit.Ignore;
 import org.junit.Test;
 
 /**
@@ -340,4 +346,127 @@ public class LRUHybridCacheTest {
             Assert.assertSame((i % 2) == 0 ? 2 : 1, counter.numberOfComputations(i));
         }
     }
+
+    /**
+     * Removes the entries from an indexed cache by index name,
+     * and ensures evicted entries are no longer counted
+     */
+    @Test
+    public void testReleaseIndexedEntries() {
+        reset();
+
+        MyComputable c = new MyComputable();
+        LRUHybridCache<Integer, Integer> indexed = new LRUHybridCache<Integer, Integer>(5, c,
+                new CacheKeyIndexer<Integer>() {
+
+            @Override
+            public String getIndexName(Integer key) {
+                return ((key % 2) == 0) ? "even" : "odd";
+            }
+
+        });
+        c.cache = indexed;
+
+        for (int i = 0; i < 6; i++) {
+            indexed.compute(i);
+        }
+
+        // 0 was evicted, so only 2 and 4 are left
+        Assert.assertEquals(2, indexed.releaseIndexed("even"));
+        Assert.assertEquals(0, indexed.releaseIndexed("even"));
+        Assert.assertEquals(0, indexed.releaseIndexed(null));
+
+        for (int i = 1; i < 6; i++) {
+            Assert.assertSame(i, indexed.compute(i).getValue());
+            Assert.assertSame((i % 2) == 0 ? 2 : 1, counter.numberOfComputations(i));
+        }
+
+        Assert.assertEquals(3, indexed.releaseIndexed("odd"));
+    }
+
+    private final static int PERFORMANCE_CACHE_SIZE = 20000;
+    private final static int PERFORMANCE_THREADS = 8;
+    private final static int PERFORMANCE_LOOKUPS = 2000000;
+
+    /**
+     * Looks up entries in a full cache of 20000 entries from several
+     * threads, where one lookup in ten is a miss that causes an eviction.
+     * It is ignored since the results depend on the machine, so
+     * the results are printed out
+     */
+    @Test @Ignore
+    public void testEvictionPerformance() throws InterruptedException {
+        final LRUHybridCache<Integer, Integer> bigCache = new LRUHybridCache<Integer, Integer>(PERFORMANCE_CACHE_SIZE,
+                new Computable<Integer, HybridCacheEntry<Integer>>() {
+
+            @Override
+            public HybridCacheEntry<Integer> compute(Integer key) {
+                return new HybridCacheEntry<Integer>() {
+
+                    @Override
+                    public void removeFromCache() {
+                    }
+
+                    @Override
+                    public Integer getValue() {
+                        return 0;
+                    }
+
+                    @Override
+                    public boolean dropMe() {
+                        return false;
+                    }
+
+                };
+            }
+
+        });
+
+        // Fill it up
+        for (int lcv = 0; lcv < PERFORMANCE_CACHE_SIZE; lcv++) {
+            bigCache.compute(lcv);
+        }
+
+        final AtomicInteger nextMiss = new AtomicInteger(PERFORMANCE_CACHE_SIZE);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(PERFORMANCE_THREADS);
+
+        for (int lcv = 0; lcv < PERFORMANCE_THREADS; lcv++) {
+            final Random random = new Random(lcv);
+
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+
+                        for (int lookup = 0; lookup < PERFORMANCE_LOOKUPS; lookup++) {
+                            if (random.nextInt(10) == 0) {
+                                bigCache.compute(nextMiss.getAndIncrement());
+                            }
+                            else {
+                                bigCache.compute(nextMiss.get() - 1 - random.nextInt(PERFORMANCE_CACHE_SIZE / 2));
+                            }
+                        }
+                    }
+                    catch (InterruptedException ie) {
+                        // Just finish
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            };
+
+            t.start();
+        }
+
+        long elapsed = System.currentTimeMillis();
+        start.countDown();
+        done.await();
+        elapsed = System.currentTimeMillis() - elapsed;
+
+        System.out.println(PERFORMANCE_THREADS + " threads did " + PERFORMANCE_LOOKUPS +
+            " lookups each with a ten percent miss rate on a cache of size " + PERFORMANCE_CACHE_SIZE +
+            " in " + elapsed + " milliseconds");
+    }
 }
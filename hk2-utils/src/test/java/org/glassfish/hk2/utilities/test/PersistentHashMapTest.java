@@ -0,0 +1,147 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2014 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.hk2.utilities.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.glassfish.hk2.utilities.general.PersistentHashMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the persistent hash map
+ * 
+ * @author jwells
+ *
+ */
+public class PersistentHashMapTest {
+    private final static String KEY1 = "Key1";
+    private final static String KEY2 = "Key2";
+    private final static String VALUE1 = "Value1";
+    private final static String VALUE2 = "Value2";
+    
+    /**
+     * Tests that plus and minus leave the original map alone
+     */
+    @Test
+    public void testUpdatesDoNotModifyOriginal() {
+        PersistentHashMap<String, String> empty = PersistentHashMap.empty();
+        PersistentHashMap<String, String> one = empty.plus(KEY1, VALUE1);
+        PersistentHashMap<String, String> two = one.plus(KEY2, VALUE2);
+        PersistentHashMap<String, String> replaced = two.plus(KEY1, VALUE2);
+        PersistentHashMap<String, String> removed = replaced.minus(KEY2);
+        
+        Assert.assertTrue(empty.isEmpty());
+        
+        Assert.assertEquals(1, one.size());
+        Assert.assertEquals(VALUE1, one.get(KEY1));
+        Assert.assertNull(one.get(KEY2));
+        
+        Assert.assertEquals(2, two.size());
+        Assert.assertEquals(VALUE1, two.get(KEY1));
+        Assert.assertEquals(VALUE2, two.get(KEY2));
+        
+        Assert.assertEquals(2, replaced.size());
+        Assert.assertEquals(VALUE2, replaced.get(KEY1));
+        
+        Assert.assertEquals(1, removed.size());
+        Assert.assertFalse(removed.containsKey(KEY2));
+        Assert.assertEquals(VALUE2, removed.get(KEY1));
+        
+        Assert.assertSame(removed, removed.minus(KEY2));
+        Assert.assertSame(one, one.plus(KEY1, VALUE1));
+    }
+    
+    /**
+     * Tests keys whose hash codes collide
+     */
+    @Test
+    public void testCollidingKeys() {
+        // "Aa" and "BB" have the same hash code
+        PersistentHashMap<String, String> map = PersistentHashMap.<String, String>empty().plus("Aa", VALUE1).plus("BB", VALUE2);
+        
+        Assert.assertEquals(2, map.size());
+        Assert.assertEquals(VALUE1, map.get("Aa"));
+        Assert.assertEquals(VALUE2, map.get("BB"));
+        
+        map = map.minus("Aa");
+        Assert.assertEquals(1, map.size());
+        Assert.assertNull(map.get("Aa"));
+        Assert.assertEquals(VALUE2, map.get("BB"));
+    }
+    
+    /**
+     * Compares many random updates with a HashMap
+     */
+    @Test
+    public void testRandomUpdatesMatchHashMap() {
+        Random random = new Random(13);
+        HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        
+        for (int lcv = 0; lcv < 20000; lcv++) {
+            Integer key = new Integer(random.nextInt(2000));
+            
+            if (random.nextBoolean()) {
+                Integer value = new Integer(lcv);
+                
+                expected.put(key, value);
+                map = map.plus(key, value);
+            }
+            else {
+                expected.remove(key);
+                map = map.minus(key);
+            }
+        }
+        
+        Assert.assertEquals(expected.size(), map.size());
+        Assert.assertEquals(expected, map);
+        
+        int count = 0;
+        for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+            Assert.assertEquals(expected.get(entry.getKey()), entry.getValue());
+            count++;
+        }
+        Assert.assertEquals(expected.size(), count);
+    }
+
+}